@@ -1,7 +1,5 @@
 package com.helospark.financialdata;
 
-import static com.helospark.financialdata.service.Helpers.findIndexWithOrBeforeDate;
-
 import java.time.LocalDate;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
@@ -26,8 +24,11 @@ import com.helospark.financialdata.domain.HistoricalPriceElement;
 import com.helospark.financialdata.domain.Profile;
 import com.helospark.financialdata.domain.SimpleDataElement;
 import com.helospark.financialdata.domain.SimpleDateDataElement;
+import com.helospark.financialdata.flags.FlagCollector;
+import com.helospark.financialdata.flags.FlagContext;
 import com.helospark.financialdata.flags.FlagProvider;
 import com.helospark.financialdata.service.AltmanZCalculator;
+import com.helospark.financialdata.service.BatchDcfCalculator;
 import com.helospark.financialdata.service.CapeCalculator;
 import com.helospark.financialdata.service.DataLoader;
 import com.helospark.financialdata.service.DcfCalculator;
@@ -37,12 +38,14 @@ import com.helospark.financialdata.service.EverythingMoneyCalculator;
 import com.helospark.financialdata.service.FedRateProvider;
 import com.helospark.financialdata.service.GrahamNumberCalculator;
 import com.helospark.financialdata.service.GrowthCalculator;
+import com.helospark.financialdata.service.GrowthWindowIndex;
 import com.helospark.financialdata.service.InvestmentScoreCalculator;
 import com.helospark.financialdata.service.PietroskyScoreCalculator;
 import com.helospark.financialdata.service.RatioCalculator;
 import com.helospark.financialdata.service.ReturnWithDividendCalculator;
 import com.helospark.financialdata.service.RevenueProjector;
 import com.helospark.financialdata.service.RoicCalculator;
+import com.helospark.financialdata.service.RollingGrowthCalculator;
 import com.helospark.financialdata.service.StockBasedCompensationCalculator;
 import com.helospark.financialdata.service.TrailingPegCalculator;
 
@@ -429,52 +432,51 @@ public class FinancialsController {
     @GetMapping("/eps_dcf")
     public List<SimpleDataElement> getEpsDcf(@PathVariable("stock") String stock) {
         CompanyFinancials company = DataLoader.readFinancials(stock);
+        double[] growthByYear = calculateAnyLongTermEpsGrowthByYear(company);
 
-        List<SimpleDataElement> result = new ArrayList<>();
+        double[] eps = new double[company.financials.size()];
+        double[] growths = new double[company.financials.size()];
         for (int i = 0; i < company.financials.size(); ++i) {
-            FinancialsTtm financialsTtm = company.financials.get(i);
-
-            double growth = calculateAnyLongTermEpsGrowthAtYear(company, i);
-
-            double dcf = DcfCalculator.doStockDcfAnalysis(getMeanEps(company.financials, i), growth);
-
-            result.add(new SimpleDataElement(financialsTtm.getDate().toString(), dcf));
+            eps[i] = getMeanEps(company.financials, i);
+            growths[i] = growthByYear[i / 4];
         }
-        return result;
+        return toDateValueList(company.financials, BatchDcfCalculator.doStockDcfAnalysis(eps, growths));
     }
 
     @GetMapping("/fcf_dcf")
     public List<SimpleDataElement> getFcfDcf(@PathVariable("stock") String stock) {
         CompanyFinancials company = DataLoader.readFinancials(stock);
+        double[] growthByYear = calculateAnyLongTermFcfGrowthByYear(company);
 
-        List<SimpleDataElement> result = new ArrayList<>();
+        double[] fcfs = new double[company.financials.size()];
+        double[] growths = new double[company.financials.size()];
         for (int i = 0; i < company.financials.size(); ++i) {
-            FinancialsTtm financialsTtm = company.financials.get(i);
-
-            double growth = calculateAnyLongTermFcfGrowthAtYear(company, i);
-
-            double dcf = DcfCalculator.doStockDcfAnalysis(getMeanFcf(company.financials, i), growth);
-
-            result.add(new SimpleDataElement(financialsTtm.getDate().toString(), dcf));
+            fcfs[i] = getMeanFcf(company.financials, i);
+            growths[i] = growthByYear[i / 4];
         }
-        return result;
+        return toDateValueList(company.financials, BatchDcfCalculator.doStockDcfAnalysis(fcfs, growths));
     }
 
     @GetMapping("/dividend_dcf")
     public List<SimpleDataElement> getDividendDcf(@PathVariable("stock") String stock) {
         CompanyFinancials company = DataLoader.readFinancials(stock);
+        double[] growthByYear = calculateAnyLongTermDividendGrowthByYear(company);
 
-        List<SimpleDataElement> result = new ArrayList<>();
+        double[] dividends = new double[company.financials.size()];
+        double[] startGrowths = new double[company.financials.size()];
+        double[] endGrowths = new double[company.financials.size()];
         for (int i = 0; i < company.financials.size(); ++i) {
-            FinancialsTtm financialsTtm = company.financials.get(i);
-
-            double dividend = calculateDividendPaidPerShare(financialsTtm);
-
-            double growth = calculateAnyLongTermDividendGrowthAtYear(company, i);
-
-            double dcf = DcfCalculator.doCashFlowDcfAnalysisWithGrowth(dividend, growth * 0.9, growth * 0.75);
+            dividends[i] = calculateDividendPaidPerShare(company.financials.get(i));
+            startGrowths[i] = growthByYear[i / 4] * 0.9;
+            endGrowths[i] = growthByYear[i / 4] * 0.75;
+        }
+        return toDateValueList(company.financials, BatchDcfCalculator.doCashFlowDcfAnalysisWithGrowth(dividends, startGrowths, endGrowths));
+    }
 
-            result.add(new SimpleDataElement(financialsTtm.getDate().toString(), dcf));
+    private List<SimpleDataElement> toDateValueList(List<FinancialsTtm> financials, double[] values) {
+        List<SimpleDataElement> result = new ArrayList<>();
+        for (int i = 0; i < financials.size(); ++i) {
+            result.add(new SimpleDataElement(financials.get(i).getDate().toString(), values[i]));
         }
         return result;
     }
@@ -482,13 +484,14 @@ public class FinancialsController {
     @GetMapping("/revenue_projection")
     public List<SimpleDataElement> getRevenueProjection(@PathVariable("stock") String stock) {
         CompanyFinancials company = DataLoader.readFinancials(stock);
+        double[] growthByYear = getAnyRevenueGrowthByYear(company);
 
         List<SimpleDataElement> result = new ArrayList<>();
         for (int i = 0; i < company.financials.size(); ++i) {
             int year = i / 4;
             FinancialsTtm financialsTtm = company.financials.get(i);
 
-            double growth = getAnyRevenueGrowth(company, year);
+            double growth = growthByYear[year];
 
             double dcf = RevenueProjector.projectRevenue(financialsTtm, growth * 0.7, growth * 0.4);
 
@@ -552,22 +555,21 @@ public class FinancialsController {
         return getIncomeData(stock, false, financialsTtm -> (double) financialsTtm.auxilaryInfo.earnSurprisePercent);
     }
 
-    private double getAnyRevenueGrowth(CompanyFinancials company, int year) {
-        List<Double> growths = new ArrayList<>();
-        for (int i = 6; i > 0; --i) {
-            Optional<Double> result = GrowthCalculator.getRevenueGrowthInInterval(company.financials, i + year, year);
-            if (result.isPresent() && !result.get().isNaN()) {
-                growths.add(result.get());
+    private double[] getAnyRevenueGrowthByYear(CompanyFinancials company) {
+        GrowthWindowIndex index = GrowthWindowIndex.of(company.financials);
+        double[] growths = new double[10];
+        double[] result = new double[company.financials.size() / 4 + 1];
+        for (int year = 0; year < result.length; ++year) {
+            int count = 0;
+            for (int i = 6; i > 0; --i) {
+                count = GrowthWindowIndex.addIfPresent(growths, count, index.getRevenueGrowth(i + year, year));
             }
-        }
-        for (int i = 4; i > 0; --i) {
-            Optional<Double> result = GrowthCalculator.getRevenueGrowthInInterval(company.financials, i + year + 2, year + 2);
-            if (result.isPresent() && !result.get().isNaN()) {
-                growths.add(result.get());
+            for (int i = 4; i > 0; --i) {
+                count = GrowthWindowIndex.addIfPresent(growths, count, index.getRevenueGrowth(i + year + 2, year + 2));
             }
+            result[year] = count > 0 ? GrowthWindowIndex.median(growths, count) : 0.0;
         }
-        Collections.sort(growths);
-        return growths.size() > 0 ? growths.get(growths.size() / 2) : 0.0;
+        return result;
     }
 
     private double getMeanFcf(List<FinancialsTtm> financials, int index) {
@@ -588,55 +590,52 @@ public class FinancialsController {
         return epses.size() > 0 ? epses.get(epses.size() / 2) : 0.0;
     }
 
-    private double calculateAnyLongTermEpsGrowthAtYear(CompanyFinancials company, int i) {
-        int year = i / 4;
-        List<Double> growthRateList = new ArrayList<>();
-        for (int offset = 10; offset > 3; --offset) {
-            Optional<Double> growthInYear = GrowthCalculator.getEpsGrowthInInterval(company.financials, offset + year, year);
-            if (growthInYear.isPresent() && !growthInYear.get().isNaN()) {
-                growthRateList.add(growthInYear.get());
+    private double[] calculateAnyLongTermEpsGrowthByYear(CompanyFinancials company) {
+        GrowthWindowIndex index = GrowthWindowIndex.of(company.financials);
+        double[] growthRates = new double[12];
+        double[] result = new double[company.financials.size() / 4 + 1];
+        for (int year = 0; year < result.length; ++year) {
+            int count = 0;
+            for (int offset = 10; offset > 3; --offset) {
+                count = GrowthWindowIndex.addIfPresent(growthRates, count, index.getEpsGrowth(offset + year, year));
             }
-        }
-        for (int offset = 7; offset >= 3; --offset) {
-            Optional<Double> growthInYear = GrowthCalculator.getEpsGrowthInInterval(company.financials, offset + year + 3, 3);
-            if (growthInYear.isPresent() && !growthInYear.get().isNaN()) {
-                growthRateList.add(growthInYear.get());
+            for (int offset = 7; offset >= 3; --offset) {
+                count = GrowthWindowIndex.addIfPresent(growthRates, count, index.getEpsGrowth(offset + year + 3, 3));
             }
+            result[year] = count > 1 ? GrowthWindowIndex.median(growthRates, count) : 0.0;
         }
-        Collections.sort(growthRateList);
-        return growthRateList.size() > 1 ? growthRateList.get(growthRateList.size() / 2) : 0.0;
+        return result;
     }
 
-    private double calculateAnyLongTermFcfGrowthAtYear(CompanyFinancials company, int i) {
-        int year = i / 4;
-        List<Double> growthRateList = new ArrayList<>();
-        for (int offset = 10; offset > 3; --offset) {
-            Optional<Double> growthInYear = GrowthCalculator.getFcfGrowthInInterval(company.financials, offset + year, year);
-            if (growthInYear.isPresent() && !growthInYear.get().isNaN()) {
-                growthRateList.add(growthInYear.get());
+    private double[] calculateAnyLongTermFcfGrowthByYear(CompanyFinancials company) {
+        GrowthWindowIndex index = GrowthWindowIndex.of(company.financials);
+        double[] growthRates = new double[12];
+        double[] result = new double[company.financials.size() / 4 + 1];
+        for (int year = 0; year < result.length; ++year) {
+            int count = 0;
+            for (int offset = 10; offset > 3; --offset) {
+                count = GrowthWindowIndex.addIfPresent(growthRates, count, index.getFcfGrowth(offset + year, year));
             }
-        }
-        for (int offset = 7; offset >= 3; --offset) {
-            Optional<Double> growthInYear = GrowthCalculator.getFcfGrowthInInterval(company.financials, offset + year + 3, 3);
-            if (growthInYear.isPresent() && !growthInYear.get().isNaN()) {
-                growthRateList.add(growthInYear.get());
+            for (int offset = 7; offset >= 3; --offset) {
+                count = GrowthWindowIndex.addIfPresent(growthRates, count, index.getFcfGrowth(offset + year + 3, 3));
             }
+            result[year] = count > 1 ? GrowthWindowIndex.median(growthRates, count) : 0.0;
         }
-        Collections.sort(growthRateList);
-        return growthRateList.size() > 1 ? growthRateList.get(growthRateList.size() / 2) : 0.0;
+        return result;
     }
 
-    private double calculateAnyLongTermDividendGrowthAtYear(CompanyFinancials company, int i) {
-        int year = i / 4;
-        List<Double> growthRateList = new ArrayList<>();
-        for (int offset = 10; offset > 3; --offset) {
-            Optional<Double> growthInYear = GrowthCalculator.getDividendGrowthInInterval(company.financials, offset + year, year);
-            if (growthInYear.isPresent() && !growthInYear.get().isNaN()) {
-                growthRateList.add(growthInYear.get());
+    private double[] calculateAnyLongTermDividendGrowthByYear(CompanyFinancials company) {
+        GrowthWindowIndex index = GrowthWindowIndex.of(company.financials);
+        double[] growthRates = new double[7];
+        double[] result = new double[company.financials.size() / 4 + 1];
+        for (int year = 0; year < result.length; ++year) {
+            int count = 0;
+            for (int offset = 10; offset > 3; --offset) {
+                count = GrowthWindowIndex.addIfPresent(growthRates, count, index.getDividendGrowth(offset + year, year));
             }
+            result[year] = count > 1 ? GrowthWindowIndex.median(growthRates, count) : 0.0;
         }
-        Collections.sort(growthRateList);
-        return growthRateList.size() > 1 ? growthRateList.get(growthRateList.size() / 2) : 0.0;
+        return result;
     }
 
     @GetMapping("/cash")
@@ -894,12 +893,11 @@ public class FinancialsController {
     @GetMapping("/eps_growth_rate_7yr_moving_avg")
     public List<SimpleDataElement> get7yrGrowthRateMovingAvg(@PathVariable("stock") String stock, @RequestParam(name = "year", defaultValue = "7") int year) {
         CompanyFinancials company = DataLoader.readFinancials(stock);
+        double[] growths = RollingGrowthCalculator.getEpsGrowthSeries(company.financials, year, 0.0);
         List<SimpleDataElement> result = new ArrayList<>();
         for (int i = 0; i < company.financials.size(); ++i) {
             FinancialsTtm element = company.financials.get(i);
-            double yearsAgo = calculateYearsAgo(element.getDate());
-            Optional<Double> growth = GrowthCalculator.getEpsGrowthInInterval(company.financials, yearsAgo + year, yearsAgo);
-            result.add(new SimpleDataElement(element.getDate().toString(), growth.orElse(0.0)));
+            result.add(new SimpleDataElement(element.getDate().toString(), growths[i]));
         }
 
         return result;
@@ -925,12 +923,11 @@ public class FinancialsController {
     @GetMapping("/revenue_growth_rate_xyr_moving_avg")
     public List<SimpleDataElement> getXyrGrowthRateMovingAvg(@PathVariable("stock") String stock, @RequestParam(name = "year", defaultValue = "7") int year) {
         CompanyFinancials company = DataLoader.readFinancials(stock);
+        double[] growths = RollingGrowthCalculator.getRevenueGrowthSeries(company.financials, year, 0.0);
         List<SimpleDataElement> result = new ArrayList<>();
         for (int i = 0; i < company.financials.size(); ++i) {
             FinancialsTtm element = company.financials.get(i);
-            double yearsAgo = calculateYearsAgo(element.getDate());
-            Optional<Double> growth = GrowthCalculator.getRevenueGrowthInInterval(company.financials, yearsAgo + year, yearsAgo);
-            result.add(new SimpleDataElement(element.getDate().toString(), growth.orElse(0.0)));
+            result.add(new SimpleDataElement(element.getDate().toString(), growths[i]));
         }
 
         return result;
@@ -940,10 +937,6 @@ public class FinancialsController {
         return Math.abs(ChronoUnit.DAYS.between(date, LocalDate.now()) / 365.0);
     }
 
-    private double calculateYearsDiff(LocalDate date, LocalDate laterDate) {
-        return Math.abs(ChronoUnit.DAYS.between(date, laterDate) / 365.0);
-    }
-
     @GetMapping("revenue_growth_rate")
     public List<SimpleDataElement> getRevenueGrowthRate(@PathVariable("stock") String stock) {
         CompanyFinancials company = DataLoader.readFinancials(stock);
@@ -984,12 +977,11 @@ public class FinancialsController {
     @GetMapping("/fcf_growth_rate_7yr_moving_avg")
     public List<SimpleDataElement> get7yrFcfGrowthRateMovingAvg(@PathVariable("stock") String stock, @RequestParam(name = "year", defaultValue = "7") int year) {
         CompanyFinancials company = DataLoader.readFinancials(stock);
+        double[] growths = RollingGrowthCalculator.getFcfGrowthSeries(company.financials, year, 0.0);
         List<SimpleDataElement> result = new ArrayList<>();
         for (int i = 0; i < company.financials.size(); ++i) {
             FinancialsTtm element = company.financials.get(i);
-            double yearsAgo = calculateYearsAgo(element.getDate());
-            Optional<Double> growth = GrowthCalculator.getFcfGrowthInInterval(company.financials, yearsAgo + year, yearsAgo);
-            result.add(new SimpleDataElement(element.getDate().toString(), growth.orElse(0.0)));
+            result.add(new SimpleDataElement(element.getDate().toString(), growths[i]));
         }
 
         return result;
@@ -1034,31 +1026,14 @@ public class FinancialsController {
         if (company.size() <= 2) {
             return List.of();
         }
-        company.remove(0);
+        // the reinvested series is cached, so the latest element is skipped with a view instead of removing it
+        company = company.subList(1, company.size());
+        double[] growths = RollingGrowthCalculator.getValueGrowthSeries(company, yearInterval);
 
         List<SimpleDataElement> result = new ArrayList<>();
-        for (int i = 0; i < company.size(); ++i) {
-            SimpleDateDataElement element = company.get(i);
-            double yearsAgo = calculateYearsAgo(element.getDate());
-            int newIndex = findIndexWithOrBeforeDate(company, CommonConfig.NOW.minusMonths((int) (yearsAgo * 12.0)));
-            int oldIndex = findIndexWithOrBeforeDate(company, CommonConfig.NOW.minusMonths((int) (yearsAgo * 12.0 + yearInterval * 12.0)));
-
-            if (oldIndex == -1 || newIndex == -1) {
-                break;
-            } else {
-                double oldPrice = company.get(oldIndex).value;
-                double newPrice = company.get(newIndex).value;
-
-                double yearsDiff = calculateYearsDiff(company.get(oldIndex).date, company.get(newIndex).date);
-
-                Double growth = GrowthCalculator.calculateGrowth(newPrice, oldPrice, yearsDiff);
-
-                if (!Double.isFinite(growth)) {
-                    growth = null;
-                }
-
-                result.add(new SimpleDataElement(element.getDate().toString(), growth));
-            }
+        for (int i = 0; i < growths.length; ++i) {
+            Double growth = Double.isNaN(growths[i]) ? null : growths[i];
+            result.add(new SimpleDataElement(company.get(i).getDate().toString(), growth));
         }
 
         if (result.size() == 0) {
@@ -1089,8 +1064,10 @@ public class FinancialsController {
         List<FlagInformation> result = new ArrayList<>();
         CompanyFinancials company = DataLoader.readFinancials(stock);
 
+        FlagContext context = new FlagContext(company, 0.0);
+        FlagCollector collector = FlagCollector.toList(result);
         for (var element : flagProviers) {
-            element.addFlags(company, result, 0.0);
+            element.addFlags(context, collector);
         }
 
         Collections.sort(result, (a, b) -> a.type.compareTo(b.type));
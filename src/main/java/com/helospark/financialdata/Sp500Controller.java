@@ -1,11 +1,8 @@
 package com.helospark.financialdata;
 
-import java.io.File;
-import java.io.IOException;
 import java.time.LocalDate;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
@@ -17,19 +14,15 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
-import com.fasterxml.jackson.core.exc.StreamReadException;
-import com.fasterxml.jackson.databind.DatabindException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.datatype.jsr310.JSR310Module;
 import com.helospark.financialdata.domain.EconomicPriceElement;
 import com.helospark.financialdata.domain.HistoricalPriceElement;
 import com.helospark.financialdata.domain.SimpleDataElement;
 import com.helospark.financialdata.domain.SimpleDateDataElement;
 import com.helospark.financialdata.domain.ThreeDDataElement;
 import com.helospark.financialdata.service.CpiAdjustor;
-import com.helospark.financialdata.service.DataLoader;
+import com.helospark.financialdata.service.EconomicDataProvider;
+import com.helospark.financialdata.service.EconomicDataProvider.IndexedSeries;
 import com.helospark.financialdata.service.GrowthCalculator;
-import com.helospark.financialdata.service.Helpers;
 import com.helospark.financialdata.service.StandardAndPoorPerformanceProvider;
 import com.helospark.financialdata.util.spconstituents.Sp500ConstituentsProvider;
 import com.helospark.financialdata.util.spconstituents.Sp500MetricCalculator;
@@ -47,6 +40,8 @@ public class Sp500Controller {
     @Autowired
     private Sp500MetricCalculator metrics;
 
+    private volatile IndexedSeries<SimpleDataElement> priceWithReinvestedDividends;
+
     @GetMapping("/price")
     public List<SimpleDataElement> getPrice() {
         var asd = StandardAndPoorPerformanceProvider.prices;
@@ -85,6 +80,22 @@ public class Sp500Controller {
 
     @GetMapping("/price_with_reinvested_dividends")
     public List<SimpleDataElement> getPriceWithReinvestedDividends() {
+        return getPriceWithReinvestedDividendsSeries().elements();
+    }
+
+    /**
+     * Calculated once, it only depends on the S&P 500 prices loaded at startup.
+     */
+    private IndexedSeries<SimpleDataElement> getPriceWithReinvestedDividendsSeries() {
+        IndexedSeries<SimpleDataElement> result = priceWithReinvestedDividends;
+        if (result == null) {
+            result = IndexedSeries.of(calculatePriceWithReinvestedDividends());
+            priceWithReinvestedDividends = result;
+        }
+        return result;
+    }
+
+    private List<SimpleDataElement> calculatePriceWithReinvestedDividends() {
         var asd = StandardAndPoorPerformanceProvider.prices;
 
         int maxElements = 300;
@@ -142,7 +153,7 @@ public class Sp500Controller {
             double yearsAgo = (i / 4.0);
             LocalDate date = now.minusMonths((int) (yearsAgo * 12.0));
 
-            int index = Helpers.findIndexWithOrBeforeDate(asd, date);
+            int index = StandardAndPoorPerformanceProvider.findIndexAt(date);
 
             if (index == -1) {
                 break;
@@ -216,8 +227,8 @@ public class Sp500Controller {
             LocalDate date = now.minusMonths((int) (yearsAgo * 12.0));
             LocalDate offsetDate = date.minusMonths((int) (years * 12.0));
 
-            int nowIndex = Helpers.findIndexWithOrBeforeDate(asd, date);
-            int oldIndex = Helpers.findIndexWithOrBeforeDate(asd, offsetDate);
+            int nowIndex = StandardAndPoorPerformanceProvider.findIndexAt(date);
+            int oldIndex = StandardAndPoorPerformanceProvider.findIndexAt(offsetDate);
 
             if (nowIndex == -1 || oldIndex == -1) {
                 break;
@@ -240,7 +251,8 @@ public class Sp500Controller {
 
     @GetMapping("/price_growth_reinv_dividends_x_yr")
     public List<SimpleDataElement> getPriceGrowthInIntervalsWithDividends(@RequestParam(name = "year", required = false, defaultValue = "10") int years) {
-        List<SimpleDataElement> asd = getPriceWithReinvestedDividends();
+        IndexedSeries<SimpleDataElement> series = getPriceWithReinvestedDividendsSeries();
+        List<SimpleDataElement> asd = series.elements();
 
         List<SimpleDataElement> result = new ArrayList<>();
         for (int i = 0; i < asd.size(); i++) {
@@ -248,7 +260,7 @@ public class Sp500Controller {
             LocalDate date = LocalDate.parse(currentElement.date);
             LocalDate offsetDate = date.minusMonths((int) (years * 12.0));
 
-            int oldIndex = Helpers.findIndexWithOrBeforeDate(asd, offsetDate);
+            int oldIndex = series.getIndexAt(offsetDate);
 
             if (oldIndex == -1) {
                 break;
@@ -272,6 +284,8 @@ public class Sp500Controller {
     @GetMapping("/price_growth_x_yrs_intervals_divs_infl_adjusted")
     public List<SimpleDataElement> getPriceGrowthInIntervalsWithDividendsInflAdjusted(@RequestParam(name = "year", required = false, defaultValue = "10") int years) {
         List<SimpleDataElement> asd = getPriceWithReinvestedDividendsInflactionAdjusted();
+        // same dates as the series without the inflation adjustment
+        IndexedSeries<SimpleDataElement> series = getPriceWithReinvestedDividendsSeries();
 
         List<SimpleDataElement> result = new ArrayList<>();
         for (int i = 0; i < asd.size(); i++) {
@@ -279,7 +293,7 @@ public class Sp500Controller {
             LocalDate date = LocalDate.parse(currentElement.date);
             LocalDate offsetDate = date.minusMonths((int) (years * 12.0));
 
-            int oldIndex = Helpers.findIndexWithOrBeforeDate(asd, offsetDate);
+            int oldIndex = series.getIndexAt(offsetDate);
 
             if (oldIndex == -1) {
                 break;
@@ -308,7 +322,7 @@ public class Sp500Controller {
 
         var asd = StandardAndPoorPerformanceProvider.prices;
 
-        List<EconomicPriceElement> cpi = DataLoader.loadEconomicFile(indicator);
+        List<EconomicPriceElement> cpi = EconomicDataProvider.getIndicator(indicator).elements();
 
         int maxElements = 300;
         int step = cpi.size() / maxElements;
@@ -320,7 +334,7 @@ public class Sp500Controller {
         for (int i = 0; i < cpi.size(); i += step) {
             var cpiElement = cpi.get(i);
             LocalDate date = cpiElement.date;
-            int index = Helpers.findIndexWithOrBeforeDate(asd, date);
+            int index = StandardAndPoorPerformanceProvider.findIndexAt(date);
             if (index != -1) {
                 double priceThen = asd.get(index).close;
                 result.add(new SimpleDataElement(date.toString(), priceThen));
@@ -337,7 +351,7 @@ public class Sp500Controller {
             throw new RuntimeException("Invalid indicator");
         }
 
-        List<EconomicPriceElement> unemployment = DataLoader.loadEconomicFile(indicator);
+        List<EconomicPriceElement> unemployment = EconomicDataProvider.getIndicator(indicator).elements();
 
         int maxElements = 300;
         int step = unemployment.size() / maxElements;
@@ -354,33 +368,33 @@ public class Sp500Controller {
     }
 
     @GetMapping("/xyr_shiller_return")
-    public List<ThreeDDataElement> getXYearShillerReturn(@RequestParam(name = "year", required = false, defaultValue = "10") int years) throws IOException {
-        return createBubbleChart(years, loadLttFile("/info/sp500_shiller_pe.json"), 50.0);
+    public List<ThreeDDataElement> getXYearShillerReturn(@RequestParam(name = "year", required = false, defaultValue = "10") int years) {
+        return createBubbleChart(years, EconomicDataProvider.getLttData("/info/sp500_shiller_pe.json"), 50.0);
     }
 
     @GetMapping("/xyr_pe_return")
-    public List<ThreeDDataElement> getXYearPeReturn(@RequestParam(name = "year", required = false, defaultValue = "10") int years) throws IOException {
-        return createBubbleChart(years, loadLttFile("/info/sp500_pe.json"), 50.0);
+    public List<ThreeDDataElement> getXYearPeReturn(@RequestParam(name = "year", required = false, defaultValue = "10") int years) {
+        return createBubbleChart(years, EconomicDataProvider.getLttData("/info/sp500_pe.json"), 50.0);
     }
 
     @GetMapping("/spgdpratio_return")
-    public List<ThreeDDataElement> getSpGdpRatioReturn(@RequestParam(name = "year", required = false, defaultValue = "10") int years) throws IOException {
-        return createBubbleChart(years, loadLttFile("/info/sp_to_gdp_ratio.json"), 50.0);
+    public List<ThreeDDataElement> getSpGdpRatioReturn(@RequestParam(name = "year", required = false, defaultValue = "10") int years) {
+        return createBubbleChart(years, EconomicDataProvider.getLttData("/info/sp_to_gdp_ratio.json"), 50.0);
     }
 
     @GetMapping("/buffet_indicator_return")
-    public List<ThreeDDataElement> getBuffetIndicator(@RequestParam(name = "year", required = false, defaultValue = "10") int years) throws IOException {
-        return createBubbleChart(years, loadLttFile("/info/buffet_indicator.json"), 150.0);
+    public List<ThreeDDataElement> getBuffetIndicator(@RequestParam(name = "year", required = false, defaultValue = "10") int years) {
+        return createBubbleChart(years, EconomicDataProvider.getLttData("/info/buffet_indicator.json"), 150.0);
     }
 
     @GetMapping("/interestrate_return")
-    public List<ThreeDDataElement> getInterestRateReturns(@RequestParam(name = "year", required = false, defaultValue = "10") int years) throws IOException {
-        return createBubbleChart(years, loadFpFile("/info/federalFunds.json"), 30.0);
+    public List<ThreeDDataElement> getInterestRateReturns(@RequestParam(name = "year", required = false, defaultValue = "10") int years) {
+        return createBubbleChart(years, EconomicDataProvider.getFpData("/info/federalFunds.json"), 30.0);
     }
 
     @GetMapping("/inflatation_return")
-    public List<ThreeDDataElement> getInflationReturns(@RequestParam(name = "year", required = false, defaultValue = "10") int years) throws IOException {
-        return createBubbleChart(years, cpiToInflation(loadFpFile("/info/CPI.json")), 30.0);
+    public List<ThreeDDataElement> getInflationReturns(@RequestParam(name = "year", required = false, defaultValue = "10") int years) {
+        return createBubbleChart(years, EconomicDataProvider.getInflationData("/info/CPI.json"), 30.0);
     }
 
     @GetMapping("/getconst")
@@ -393,8 +407,10 @@ public class Sp500Controller {
         return metrics.calculateMetrics();
     }
 
-    public List<ThreeDDataElement> createBubbleChart(int years, List<SimpleDateDataElement> dataElements, double maxValue) throws IOException, StreamReadException, DatabindException {
-        List<SimpleDataElement> spPrices = getPriceWithReinvestedDividends();
+    public List<ThreeDDataElement> createBubbleChart(int years, IndexedSeries<SimpleDateDataElement> dataSeries, double maxValue) {
+        IndexedSeries<SimpleDataElement> spSeries = getPriceWithReinvestedDividendsSeries();
+        List<SimpleDateDataElement> dataElements = dataSeries.elements();
+        List<SimpleDataElement> spPrices = spSeries.elements();
 
         LocalDate lastDate = dataElements.get(0).date;
 
@@ -403,13 +419,13 @@ public class Sp500Controller {
         while (lastDate.compareTo(LocalDate.of(1900, 1, 1)) > 0) {
             LocalDate offsetDate = lastDate.minusYears(years);
 
-            int oldShillerIndex = Helpers.findIndexWithOrBeforeDate(dataElements, offsetDate);
-            int newShillerIndex = Helpers.findIndexWithOrBeforeDate(dataElements, lastDate);
+            int oldShillerIndex = dataSeries.getIndexAt(offsetDate);
+            int newShillerIndex = dataSeries.getIndexAt(lastDate);
             if (oldShillerIndex == -1 || oldShillerIndex > dataElements.size() || newShillerIndex == -1 || newShillerIndex > dataElements.size()) {
                 break;
             }
-            int oldSpIndex = Helpers.findIndexWithOrBeforeDate(spPrices, dataElements.get(oldShillerIndex).date);
-            int newSpIndex = Helpers.findIndexWithOrBeforeDate(spPrices, dataElements.get(newShillerIndex).date);
+            int oldSpIndex = spSeries.getIndexAt(dataElements.get(oldShillerIndex).date);
+            int newSpIndex = spSeries.getIndexAt(dataElements.get(newShillerIndex).date);
 
             if (oldSpIndex == -1 || newSpIndex == -1) {
                 break;
@@ -442,44 +458,4 @@ public class Sp500Controller {
         return result;
     }
 
-    public List<SimpleDateDataElement> loadLttFile(String file) throws IOException, StreamReadException, DatabindException {
-        ObjectMapper om = new ObjectMapper();
-        String[][] shillerRawData = om.readValue(new File(CommonConfig.BASE_FOLDER + file), String[][].class);
-        List<SimpleDateDataElement> dataElements = new ArrayList<>();
-        for (int i = shillerRawData.length - 1; i >= 0; --i) {
-            LocalDate date = LocalDate.parse(shillerRawData[i][0].replaceAll("T.*", ""));
-            double value = Double.parseDouble(shillerRawData[i][1]);
-            SimpleDateDataElement element = new SimpleDateDataElement(date, value);
-
-            dataElements.add(element);
-        }
-        return dataElements;
-    }
-
-    public List<SimpleDateDataElement> loadFpFile(String file) throws IOException, StreamReadException, DatabindException {
-        ObjectMapper om = new ObjectMapper();
-        om.registerModule(new JSR310Module());
-        SimpleDateDataElement[] shillerRawData = om.readValue(new File(CommonConfig.BASE_FOLDER + file), SimpleDateDataElement[].class);
-
-        return Arrays.asList(shillerRawData);
-    }
-
-    private List<SimpleDateDataElement> cpiToInflation(List<SimpleDateDataElement> loadFpFile) {
-        List<SimpleDateDataElement> result = new ArrayList<>();
-
-        int i = 0;
-        while (i < loadFpFile.size() - 13) {
-            double currentCpi = loadFpFile.get(i).value;
-            double previousCpi = loadFpFile.get(i + 12).value;
-
-            double inflation = ((currentCpi - previousCpi) / previousCpi) * 100.0;
-
-            result.add(new SimpleDateDataElement(loadFpFile.get(i).date, inflation));
-
-            ++i;
-        }
-
-        return result;
-    }
-
 }
@@ -17,6 +17,8 @@ import org.springframework.web.bind.annotation.RestController;
 
 import com.helospark.financialdata.management.user.LoginController;
 import com.helospark.financialdata.management.user.repository.AccountType;
+import com.helospark.financialdata.service.DataLoader;
+import com.helospark.financialdata.service.SymbolAtGlanceProvider;
 import com.helospark.financialdata.util.StockDataDownloader;
 
 import jakarta.servlet.http.HttpServletRequest;
@@ -29,6 +31,8 @@ public class StockDataDownloaderController {
 
     @Autowired
     private LoginController loginController;
+    @Autowired
+    private SymbolAtGlanceProvider symbolAtGlanceProvider;
 
     @GetMapping("/start")
     public void start(HttpServletRequest request) {
@@ -38,6 +42,9 @@ public class StockDataDownloaderController {
             future = CompletableFuture.runAsync(() -> {
                 try {
                     StockDataDownloader.main(null);
+                    // new data is prepared on the side and swapped in, the old data is served meanwhile
+                    DataLoader.reloadCaches();
+                    symbolAtGlanceProvider.initCache();
                 } catch (IOException e) {
                     // TODO Auto-generated catch block
                     e.printStackTrace();
@@ -2,7 +2,7 @@ package com.helospark.financialdata.domain;
 
 import java.time.LocalDate;
 
-public class TresuryRate {
+public class TresuryRate implements DateAware {
     public LocalDate date; //2021-09-30,
     public double month1; //0.07,
     public double month2; //0.05,
@@ -16,4 +16,9 @@ public class TresuryRate {
     public double year10; //1.52,
     public double year20; //2.02,
     public double year30; //2.08
+
+    @Override
+    public LocalDate getDate() {
+        return date;
+    }
 }
@@ -10,7 +10,6 @@ import org.springframework.stereotype.Component;
 
 import com.helospark.financialdata.domain.CompanyFinancials;
 import com.helospark.financialdata.domain.FinancialsTtm;
-import com.helospark.financialdata.domain.FlagInformation;
 import com.helospark.financialdata.domain.FlagType;
 import com.helospark.financialdata.service.GrowthStandardDeviationCounter;
 
@@ -21,8 +20,10 @@ public class CompounderFlagProvider implements FlagProvider {
     static double FCF_SD = 40.0;
 
     @Override
-    public void addFlags(CompanyFinancials company, List<FlagInformation> flags, double offset) {
-        List<FinancialsTtm> financials = company.financials;
+    public void addFlags(FlagContext context, FlagCollector flags) {
+        CompanyFinancials company = context.company;
+        double offset = context.offset;
+        List<FinancialsTtm> financials = context.financials;
         Optional<Double> tenYearAvgGrowth = getEpsGrowthInInterval(financials, 7 + offset, offset);
         boolean continouslyProfitable = isProfitableEveryYearSince(financials, 7 + offset, offset);
         Optional<Double> epsDeviation = GrowthStandardDeviationCounter.calculateEpsGrowthDeviation(company.financials, 8, offset);
@@ -32,9 +33,9 @@ public class CompounderFlagProvider implements FlagProvider {
         if (tenYearAvgGrowth.isPresent() && tenYearAvgGrowth.get() > 0.0 && continouslyProfitable && epsDeviation.isPresent() && revenueDeviation.isPresent() && fcfDeviation.isPresent()) {
             Double epsStandardDeviation = epsDeviation.get();
             if (epsStandardDeviation < EPS_SD && revenueDeviation.get() < REV_SD && fcfDeviation.get() < FCF_SD && tenYearAvgGrowth.get() > 10.0) {
-                flags.add(new FlagInformation(FlagType.STAR, "Excellent compounder"));
+                flags.add(FlagType.STAR, "Excellent compounder");
             } else if (epsStandardDeviation < EPS_SD && revenueDeviation.get() < REV_SD && fcfDeviation.get() < 90.0) {
-                flags.add(new FlagInformation(FlagType.GREEN, "Good compounder"));
+                flags.add(FlagType.GREEN, "Good compounder");
             }
         }
 
@@ -1,8 +1,5 @@
 package com.helospark.financialdata.flags;
 
-import static java.lang.String.format;
-
-import java.time.LocalDate;
 import java.util.List;
 import java.util.Optional;
 
@@ -10,40 +7,39 @@ import org.springframework.stereotype.Component;
 
 import com.helospark.financialdata.domain.CompanyFinancials;
 import com.helospark.financialdata.domain.FinancialsTtm;
-import com.helospark.financialdata.domain.FlagInformation;
 import com.helospark.financialdata.domain.FlagType;
 import com.helospark.financialdata.service.DividendCalculator;
 import com.helospark.financialdata.service.GrowthCalculator;
-import com.helospark.financialdata.service.Helpers;
 import com.helospark.financialdata.service.RatioCalculator;
 
 @Component
 public class DividendFlagProvider implements FlagProvider {
 
     @Override
-    public void addFlags(CompanyFinancials company, List<FlagInformation> flags, double offset) {
-        List<FinancialsTtm> financials = company.financials;
-        int index = Helpers.findIndexWithOrBeforeDate(financials, LocalDate.now().minusMonths((long) (12.0 * offset)));
+    public void addFlags(FlagContext context, FlagCollector flags) {
+        CompanyFinancials company = context.company;
+        double offset = context.offset;
+        List<FinancialsTtm> financials = context.financials;
+        int index = context.getIndex();
         if (index != -1) {
 
             double dividend = DividendCalculator.getDividendYield(company, index);
             if (dividend > 0) {
                 Optional<Double> payoutRatio = calculateAvgPayoutRatio(company, index, 3);
                 if (payoutRatio.isPresent() && payoutRatio.get() > 0.9) {
-                    flags.add(new FlagInformation(FlagType.RED, format("Avg payout ratio is above 90%% (ratio=%.2f%%)", payoutRatio.get() * 100.0)));
+                    flags.add(FlagType.RED, "Avg payout ratio is above 90%% (ratio=%.2f%%)", payoutRatio.get() * 100.0);
                 }
                 Optional<Double> fcfPayoutRatio = calculateAvgFcfPayoutRatio(company, index, 3);
                 if (fcfPayoutRatio.isPresent() && fcfPayoutRatio.get() > 0.9) {
-                    flags.add(new FlagInformation(FlagType.RED, format("Avg FCF payout ratio is above 90%% (ratio=%.2f%%)", fcfPayoutRatio.get() * 100.0)));
+                    flags.add(FlagType.RED, "Avg FCF payout ratio is above 90%% (ratio=%.2f%%)", fcfPayoutRatio.get() * 100.0);
                 }
 
                 Optional<Double> dividendGrowth = GrowthCalculator.getDividendGrowthInInterval(financials, offset + 5, offset);
                 if (dividendGrowth.isPresent()) {
                     if (dividendGrowth.get() < 0.0) {
-                        flags.add(new FlagInformation(FlagType.YELLOW, format("Dividend decreased in the past 5 years (annually %.2f%%)", dividendGrowth.get().doubleValue())));
+                        flags.add(FlagType.YELLOW, "Dividend decreased in the past 5 years (annually %.2f%%)", dividendGrowth.get().doubleValue());
                     } else if (dividendGrowth.get() > 10.0) {
-                        flags.add(
-                                new FlagInformation(FlagType.GREEN, format("Dividend increased more than 10%% annually in the past 5 years (annually %.2f%%)", (dividendGrowth.get().doubleValue()))));
+                        flags.add(FlagType.GREEN, "Dividend increased more than 10%% annually in the past 5 years (annually %.2f%%)", dividendGrowth.get().doubleValue());
                     }
                 }
             }
@@ -0,0 +1,43 @@
+package com.helospark.financialdata.flags;
+
+import java.util.List;
+
+import com.helospark.financialdata.domain.FlagInformation;
+import com.helospark.financialdata.domain.FlagType;
+
+/**
+ * Receives the flags of a company. The message is given as a format and its argument, so collectors which only count the flags
+ * never format it.
+ */
+public interface FlagCollector {
+
+    public void add(FlagType type, String text);
+
+    public void add(FlagType type, String format, double value);
+
+    public void add(FlagType type, String format, int value);
+
+    /**
+     * Collector formatting every flag into the given list, used where the messages are shown.
+     */
+    public static FlagCollector toList(List<FlagInformation> flags) {
+        return new FlagCollector() {
+
+            @Override
+            public void add(FlagType type, String text) {
+                flags.add(new FlagInformation(type, text));
+            }
+
+            @Override
+            public void add(FlagType type, String format, double value) {
+                flags.add(new FlagInformation(type, String.format(format, value)));
+            }
+
+            @Override
+            public void add(FlagType type, String format, int value) {
+                flags.add(new FlagInformation(type, String.format(format, value)));
+            }
+        };
+    }
+
+}
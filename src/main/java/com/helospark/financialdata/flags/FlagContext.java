@@ -0,0 +1,38 @@
+package com.helospark.financialdata.flags;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import com.helospark.financialdata.domain.CompanyFinancials;
+import com.helospark.financialdata.domain.FinancialsTtm;
+import com.helospark.financialdata.service.Helpers;
+
+/**
+ * Company and date the flags are evaluated at, inputs needed by several providers are computed once and shared between them.
+ */
+public class FlagContext {
+    private static final int NOT_CALCULATED = -2;
+
+    public final CompanyFinancials company;
+    public final List<FinancialsTtm> financials;
+    public final double offset;
+
+    private int index = NOT_CALCULATED;
+
+    public FlagContext(CompanyFinancials company, double offset) {
+        this.company = company;
+        this.financials = company.financials;
+        this.offset = offset;
+    }
+
+    /**
+     * Index of the financials at offset years ago, -1 if there is none.
+     */
+    public int getIndex() {
+        if (index == NOT_CALCULATED) {
+            index = Helpers.findIndexWithOrBeforeDate(financials, LocalDate.now().minusMonths((long) (12.0 * offset)));
+        }
+        return index;
+    }
+
+}
@@ -0,0 +1,30 @@
+package com.helospark.financialdata.flags;
+
+import com.helospark.financialdata.domain.FlagType;
+
+/**
+ * Counts the flags by type without building their messages.
+ */
+public class FlagCounter implements FlagCollector {
+    private final int[] counts = new int[FlagType.values().length];
+
+    @Override
+    public void add(FlagType type, String text) {
+        ++counts[type.ordinal()];
+    }
+
+    @Override
+    public void add(FlagType type, String format, double value) {
+        ++counts[type.ordinal()];
+    }
+
+    @Override
+    public void add(FlagType type, String format, int value) {
+        ++counts[type.ordinal()];
+    }
+
+    public int getCount(FlagType type) {
+        return counts[type.ordinal()];
+    }
+
+}
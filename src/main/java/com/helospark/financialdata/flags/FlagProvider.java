@@ -7,6 +7,10 @@ import com.helospark.financialdata.domain.FlagInformation;
 
 public interface FlagProvider {
 
-    public void addFlags(CompanyFinancials company, List<FlagInformation> flags, double offset);
+    public void addFlags(FlagContext context, FlagCollector flags);
+
+    public default void addFlags(CompanyFinancials company, List<FlagInformation> flags, double offset) {
+        addFlags(new FlagContext(company, offset), FlagCollector.toList(flags));
+    }
 
 }
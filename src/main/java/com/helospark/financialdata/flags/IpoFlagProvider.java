@@ -6,22 +6,20 @@ import java.util.List;
 
 import org.springframework.stereotype.Component;
 
-import com.helospark.financialdata.domain.CompanyFinancials;
 import com.helospark.financialdata.domain.FinancialsTtm;
-import com.helospark.financialdata.domain.FlagInformation;
 import com.helospark.financialdata.domain.FlagType;
 
 @Component
 public class IpoFlagProvider implements FlagProvider {
 
     @Override
-    public void addFlags(CompanyFinancials company, List<FlagInformation> flags, double offset) {
-        List<FinancialsTtm> financials = company.financials;
+    public void addFlags(FlagContext context, FlagCollector flags) {
+        List<FinancialsTtm> financials = context.financials;
         if (financials.size() > 0) {
             var date = financials.get(financials.size() - 1).getDate();
             long yearsDiff = ChronoUnit.YEARS.between(date, LocalDate.now());
             if (yearsDiff < 5) {
-                flags.add(new FlagInformation(FlagType.YELLOW, "Company went public less than 5 years ago, many check are not available"));
+                flags.add(FlagType.YELLOW, "Company went public less than 5 years ago, many check are not available");
             }
         }
     }
@@ -1,8 +1,5 @@
 package com.helospark.financialdata.flags;
 
-import static java.lang.String.format;
-
-import java.time.LocalDate;
 import java.util.List;
 import java.util.Optional;
 
@@ -10,9 +7,7 @@ import org.springframework.stereotype.Component;
 
 import com.helospark.financialdata.domain.CompanyFinancials;
 import com.helospark.financialdata.domain.FinancialsTtm;
-import com.helospark.financialdata.domain.FlagInformation;
 import com.helospark.financialdata.domain.FlagType;
-import com.helospark.financialdata.service.Helpers;
 import com.helospark.financialdata.service.PietroskyScoreCalculator;
 
 @Component
@@ -22,17 +17,18 @@ public class PietroskyFlagProvider implements FlagProvider {
     static double FCF_SD = 40.0;
 
     @Override
-    public void addFlags(CompanyFinancials company, List<FlagInformation> flags, double offset) {
-        List<FinancialsTtm> financials = company.financials;
-        int index = Helpers.findIndexWithOrBeforeDate(financials, LocalDate.now().minusMonths((long) (12.0 * offset)));
+    public void addFlags(FlagContext context, FlagCollector flags) {
+        CompanyFinancials company = context.company;
+        List<FinancialsTtm> financials = context.financials;
+        int index = context.getIndex();
 
         if (financials.size() > 0 && index != -1) {
             Optional<Integer> pietrosky = PietroskyScoreCalculator.calculatePietroskyScore(company, company.financials.get(index));
             if (pietrosky.isPresent()) {
                 if (pietrosky.get() >= 8) {
-                    flags.add(new FlagInformation(FlagType.GREEN, format("Good piotrosky score (%d)", pietrosky.get())));
+                    flags.add(FlagType.GREEN, "Good piotrosky score (%d)", pietrosky.get());
                 } else if (pietrosky.get() <= 2) {
-                    flags.add(new FlagInformation(FlagType.RED, format("Poor piotrosky score (%d)", pietrosky.get())));
+                    flags.add(FlagType.RED, "Poor piotrosky score (%d)", pietrosky.get());
                 }
             }
         }
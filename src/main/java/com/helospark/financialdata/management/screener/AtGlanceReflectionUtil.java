@@ -1,5 +1,57 @@
 package com.helospark.financialdata.management.screener;
 
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.ToDoubleFunction;
+
+import com.helospark.financialdata.management.screener.annotation.ScreenerElement;
+import com.helospark.financialdata.util.glance.AtGlanceData;
+
 public class AtGlanceReflectionUtil {
 
+    /**
+     * Reflective reader of every @ScreenerElement field and method of AtGlanceData by screener id, in declaration order.
+     * Meant for bulk processing, like snapshot building, the screener itself reads values without reflection.
+     */
+    public static Map<String, ToDoubleFunction<AtGlanceData>> getScreenerElementReaders() {
+        Map<String, ToDoubleFunction<AtGlanceData>> result = new LinkedHashMap<>();
+        for (Field field : AtGlanceData.class.getDeclaredFields()) {
+            ScreenerElement screenerElement = field.getAnnotation(ScreenerElement.class);
+            if (screenerElement != null) {
+                field.setAccessible(true);
+                result.put(getId(screenerElement, field.getName()), data -> {
+                    try {
+                        return toDouble(field.get(data));
+                    } catch (IllegalAccessException e) {
+                        throw new RuntimeException(e);
+                    }
+                });
+            }
+        }
+        for (Method method : AtGlanceData.class.getDeclaredMethods()) {
+            ScreenerElement screenerElement = method.getAnnotation(ScreenerElement.class);
+            if (screenerElement != null && method.getParameterCount() == 0) {
+                method.setAccessible(true);
+                result.put(getId(screenerElement, method.getName()), data -> {
+                    try {
+                        return toDouble(method.invoke(data));
+                    } catch (ReflectiveOperationException e) {
+                        throw new RuntimeException(e);
+                    }
+                });
+            }
+        }
+        return result;
+    }
+
+    private static String getId(ScreenerElement screenerElement, String memberName) {
+        return screenerElement.id().equals("") ? memberName : screenerElement.id();
+    }
+
+    private static double toDouble(Object value) {
+        return value == null ? Double.NaN : ((Number) value).doubleValue();
+    }
+
 }
@@ -0,0 +1,86 @@
+package com.helospark.financialdata.management.screener;
+
+import java.util.Optional;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.auth0.jwt.interfaces.DecodedJWT;
+import com.helospark.financialdata.management.config.ratelimit.RateLimit;
+import com.helospark.financialdata.management.screener.domain.BacktestJobStatus;
+import com.helospark.financialdata.management.screener.domain.BacktestRequest;
+import com.helospark.financialdata.management.screener.domain.GenericErrorResponse;
+import com.helospark.financialdata.management.user.LoginController;
+import com.helospark.financialdata.management.user.repository.AccountType;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+/**
+ * Backtests as jobs: submit returns the job id right away, the job is polled until it's done.
+ */
+@RestController
+@RequestMapping("/screener/backtest/jobs")
+public class BacktestJobController {
+    private static final Logger LOGGER = LoggerFactory.getLogger(BacktestJobController.class);
+    @Autowired
+    private ScreenerController screenerController;
+    @Autowired
+    private BacktestJobService backtestJobService;
+    @Autowired
+    private LoginController loginController;
+
+    @PostMapping
+    @RateLimit(requestPerMinute = 20)
+    public BacktestJobStatus submitBacktest(@RequestBody BacktestRequest request, HttpServletRequest httpRequest) {
+        LOGGER.info("Received backtest job request '{}'", request);
+        DecodedJWT jwt = getAdvancedUserJwt(httpRequest);
+        screenerController.validateRequest(request.operations, request.expression, request.exchanges, httpRequest);
+        screenerController.validateBacktestRequest(request);
+
+        return backtestJobService.submit(jwt.getSubject(), request);
+    }
+
+    @GetMapping("/{jobId}")
+    public BacktestJobStatus getBacktestJob(@PathVariable("jobId") String jobId, HttpServletRequest httpRequest) {
+        DecodedJWT jwt = getAdvancedUserJwt(httpRequest);
+        return backtestJobService.getStatus(jwt.getSubject(), jobId)
+                .orElseThrow(() -> new ScreenerClientSideException("Backtest job not found, it may have expired"));
+    }
+
+    private DecodedJWT getAdvancedUserJwt(HttpServletRequest httpRequest) {
+        Optional<DecodedJWT> jwt = loginController.getJwt(httpRequest);
+        if (!jwt.isPresent()) {
+            throw new ScreenerClientSideException("This feature require login");
+        }
+        AccountType accountType = loginController.getAccountType(jwt.get());
+        if (!(accountType == AccountType.ADVANCED || accountType == AccountType.ADMIN)) {
+            throw new ScreenerClientSideException("Backtest is only available for users with 'Advanced' plan");
+        }
+        return jwt.get();
+    }
+
+    @ExceptionHandler(ScreenerClientSideException.class)
+    @ResponseStatus(code = HttpStatus.BAD_REQUEST)
+    public GenericErrorResponse exceptionHandler(ScreenerClientSideException exception) {
+        LOGGER.warn("Client side error while handling backtest job {}", exception.getMessage());
+        return new GenericErrorResponse(exception.getMessage());
+    }
+
+    @ExceptionHandler(Exception.class)
+    @ResponseStatus(code = HttpStatus.INTERNAL_SERVER_ERROR)
+    public GenericErrorResponse exceptionHandler(Exception exception) {
+        LOGGER.error("Unexpected error while handling backtest job", exception);
+        return new GenericErrorResponse("Unexpected error while handling backtest job");
+    }
+
+}
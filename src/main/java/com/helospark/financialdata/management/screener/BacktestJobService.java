@@ -0,0 +1,349 @@
+package com.helospark.financialdata.management.screener;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.helospark.financialdata.management.screener.domain.BacktestJobStatus;
+import com.helospark.financialdata.management.screener.domain.BacktestJobStatus.BacktestJobState;
+import com.helospark.financialdata.management.screener.domain.BacktestRequest;
+import com.helospark.financialdata.management.screener.domain.BacktestResult;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Runs backtests in the background on a bounded worker pool, clients poll the job for progress and the result.
+ * <p>
+ * Jobs wait in a queue per user, a free worker takes the next job from the users in turn, and a user has at most
+ * maxRunningPerUser jobs running, so one user submitting many backtests doesn't delay everyone else.
+ * Finished results are cached by the normalized request (including the dataset version), so a repeated backtest
+ * is answered without running it again. Jobs for a backtest which is already running follow that run, sharing its progress
+ * and result without taking a worker.
+ * Jobs are kept in memory, they are lost on restart.
+ */
+@Component
+public class BacktestJobService {
+    private static final Logger LOGGER = LoggerFactory.getLogger(BacktestJobService.class);
+
+    private final Function<BacktestRequest, String> resultKeyProvider;
+    private final BacktestRunner backtestRunner;
+    private final int threads;
+    private final int maxRunningPerUser;
+    private final int maxQueuedPerUser;
+    private final ExecutorService workerPool;
+
+    private final Cache<String, BacktestJob> jobs = Caffeine.newBuilder()
+            .expireAfterAccess(1, TimeUnit.HOURS)
+            .maximumSize(10_000)
+            .build();
+    private final Cache<String, BacktestResult> results = Caffeine.newBuilder()
+            .expireAfterAccess(1, TimeUnit.DAYS)
+            .maximumSize(500)
+            .build();
+
+    // guarded by this, queuedJobs only has users with waiting jobs, lastDispatch users with waiting or running jobs
+    private final LinkedHashMap<String, ArrayDeque<BacktestJob>> queuedJobs = new LinkedHashMap<>();
+    private final Map<String, RunningBacktest> runningBacktests = new HashMap<>();
+    private final Map<String, Integer> runningJobsPerUser = new HashMap<>();
+    private final Map<String, Long> lastDispatch = new HashMap<>();
+    private long dispatchCount;
+    private int runningJobs;
+
+    @Autowired
+    public BacktestJobService(ScreenerController screenerController,
+            @Value("${backtest.jobs.threads:2}") int threads,
+            @Value("${backtest.jobs.max-running-per-user:1}") int maxRunningPerUser,
+            @Value("${backtest.jobs.max-queued-per-user:5}") int maxQueuedPerUser) {
+        this(screenerController::getBacktestKey, screenerController::performBacktestInternal, threads, maxRunningPerUser, maxQueuedPerUser);
+    }
+
+    public BacktestJobService(Function<BacktestRequest, String> resultKeyProvider, BacktestRunner backtestRunner, int threads, int maxRunningPerUser, int maxQueuedPerUser) {
+        this.resultKeyProvider = resultKeyProvider;
+        this.backtestRunner = backtestRunner;
+        this.threads = threads;
+        this.maxRunningPerUser = maxRunningPerUser;
+        this.maxQueuedPerUser = maxQueuedPerUser;
+        this.workerPool = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "backtest-job");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void destroy() {
+        workerPool.shutdownNow();
+    }
+
+    /**
+     * Returns immediately, the job is already done if the same backtest has a cached result.
+     */
+    public BacktestJobStatus submit(String user, BacktestRequest request) {
+        return submitJob(user, request).toStatus();
+    }
+
+    /**
+     * Submits the backtest as a job and waits for its result, a repeated backtest is answered from the cache without waiting.
+     * After the timeout the job keeps running, so the backtest can be polled or requested again for the cached result.
+     */
+    public BacktestResult submitAndWait(String user, BacktestRequest request, long timeoutMillis) {
+        BacktestJob job = submitJob(user, request);
+        try {
+            if (!job.finished.await(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new ScreenerClientSideException("Backtest is still running, please retry later or use backtest jobs to follow its progress");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        if (job.state == BacktestJobState.FAILED) {
+            throw new ScreenerClientSideException(job.errorMessage);
+        }
+        return job.result;
+    }
+
+    private BacktestJob submitJob(String user, BacktestRequest request) {
+        String resultKey = resultKeyProvider.apply(request);
+        BacktestJob job = new BacktestJob(UUID.randomUUID().toString(), user, request, resultKey);
+
+        BacktestResult cachedResult = results.getIfPresent(resultKey);
+        if (cachedResult != null) {
+            job.finish(cachedResult);
+            jobs.put(job.id, job);
+            return job;
+        }
+
+        synchronized (this) {
+            RunningBacktest running = runningBacktests.get(resultKey);
+            if (running != null) {
+                running.attach(job);
+                jobs.put(job.id, job);
+                LOGGER.info("Backtest job {} submitted, following job {}", job.id, running.leader.id);
+                return job;
+            }
+            ArrayDeque<BacktestJob> userQueue = queuedJobs.computeIfAbsent(user, key -> new ArrayDeque<>());
+            if (userQueue.size() >= maxQueuedPerUser) {
+                throw new ScreenerClientSideException("Too many backtests waiting, please wait for your previous backtests to finish");
+            }
+            userQueue.add(job);
+            jobs.put(job.id, job);
+            dispatch();
+        }
+        LOGGER.info("Backtest job {} submitted", job.id);
+        return job;
+    }
+
+    /**
+     * Empty if the job doesn't exist, expired or belongs to another user.
+     */
+    public Optional<BacktestJobStatus> getStatus(String user, String jobId) {
+        BacktestJob job = jobs.getIfPresent(jobId);
+        if (job == null || !job.user.equals(user)) {
+            return Optional.empty();
+        }
+        return Optional.of(job.toStatus());
+    }
+
+    private synchronized void dispatch() {
+        while (runningJobs < threads) {
+            BacktestJob job = pollNextJob();
+            if (job == null) {
+                return;
+            }
+            ++runningJobs;
+            runningJobsPerUser.merge(job.user, 1, Integer::sum);
+            RunningBacktest running = new RunningBacktest(job);
+            runningBacktests.put(job.resultKey, running);
+            attachQueuedJobs(running);
+            workerPool.execute(() -> run(running));
+        }
+    }
+
+    /**
+     * Waiting jobs of the same backtest follow the started one instead of waiting for a worker.
+     */
+    private void attachQueuedJobs(RunningBacktest running) {
+        for (var iterator = queuedJobs.values().iterator(); iterator.hasNext();) {
+            ArrayDeque<BacktestJob> userQueue = iterator.next();
+            userQueue.removeIf(queuedJob -> {
+                if (queuedJob.resultKey.equals(running.resultKey)) {
+                    running.attach(queuedJob);
+                    return true;
+                }
+                return false;
+            });
+            if (userQueue.isEmpty()) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * First waiting job of the user below the running limit whose job was started the longest time ago,
+     * users without a recent job go first, in the order they submitted.
+     */
+    private BacktestJob pollNextJob() {
+        String nextUser = null;
+        long nextUserLastDispatch = Long.MAX_VALUE;
+        for (var user : queuedJobs.keySet()) {
+            long userLastDispatch = lastDispatch.getOrDefault(user, 0L);
+            if (runningJobsPerUser.getOrDefault(user, 0) < maxRunningPerUser && userLastDispatch < nextUserLastDispatch) {
+                nextUser = user;
+                nextUserLastDispatch = userLastDispatch;
+            }
+        }
+        if (nextUser == null) {
+            return null;
+        }
+        ArrayDeque<BacktestJob> userQueue = queuedJobs.get(nextUser);
+        BacktestJob job = userQueue.poll();
+        if (userQueue.isEmpty()) {
+            queuedJobs.remove(nextUser);
+        }
+        lastDispatch.put(nextUser, ++dispatchCount);
+        return job;
+    }
+
+    private void run(RunningBacktest running) {
+        BacktestJob job = running.leader;
+        BacktestResult result = null;
+        String errorMessage = "Unexpected error while running the backtest";
+        try {
+            result = results.getIfPresent(job.resultKey);
+            if (result == null) {
+                result = backtestRunner.run(job.request, running::onProgress);
+                results.put(job.resultKey, result);
+            }
+        } catch (ScreenerClientSideException e) {
+            errorMessage = e.getMessage();
+        } catch (RuntimeException e) {
+            LOGGER.error("Backtest job {} failed", job.id, e);
+        } finally {
+            synchronized (this) {
+                runningBacktests.remove(job.resultKey);
+                --runningJobs;
+                runningJobsPerUser.computeIfPresent(job.user, (key, count) -> count > 1 ? count - 1 : null);
+                if (!runningJobsPerUser.containsKey(job.user) && !queuedJobs.containsKey(job.user)) {
+                    lastDispatch.remove(job.user);
+                }
+            }
+            // no job is attached after the backtest is removed from runningBacktests
+            for (var attachedJob : running.jobs) {
+                if (result != null) {
+                    attachedJob.finish(result);
+                } else {
+                    attachedJob.fail(errorMessage);
+                }
+            }
+            dispatch();
+        }
+    }
+
+    public interface BacktestRunner {
+        public BacktestResult run(BacktestRequest request, BacktestProgressListener progressListener);
+    }
+
+    /**
+     * One evaluation of a backtest, and every job waiting for its result, starting with the job it was started for.
+     */
+    static class RunningBacktest {
+        final BacktestJob leader;
+        final String resultKey;
+        final List<BacktestJob> jobs = new CopyOnWriteArrayList<>();
+        volatile int finishedPeriods;
+        volatile int totalPeriods;
+
+        RunningBacktest(BacktestJob leader) {
+            this.leader = leader;
+            this.resultKey = leader.resultKey;
+            attach(leader);
+        }
+
+        void attach(BacktestJob job) {
+            job.state = BacktestJobState.RUNNING;
+            job.onProgress(finishedPeriods, totalPeriods);
+            jobs.add(job);
+        }
+
+        void onProgress(int finishedPeriods, int totalPeriods) {
+            this.totalPeriods = totalPeriods;
+            this.finishedPeriods = finishedPeriods;
+            for (var job : jobs) {
+                job.onProgress(finishedPeriods, totalPeriods);
+            }
+        }
+    }
+
+    static class BacktestJob {
+        final String id;
+        final String user;
+        final BacktestRequest request;
+        final String resultKey;
+        volatile BacktestJobState state = BacktestJobState.QUEUED;
+        volatile int finishedPeriods;
+        volatile int totalPeriods;
+        volatile BacktestResult result;
+        volatile String errorMessage;
+        final CountDownLatch finished = new CountDownLatch(1);
+
+        BacktestJob(String id, String user, BacktestRequest request, String resultKey) {
+            this.id = id;
+            this.user = user;
+            this.request = request;
+            this.resultKey = resultKey;
+        }
+
+        void onProgress(int finishedPeriods, int totalPeriods) {
+            this.totalPeriods = totalPeriods;
+            this.finishedPeriods = finishedPeriods;
+        }
+
+        void finish(BacktestResult result) {
+            this.result = result;
+            this.finishedPeriods = totalPeriods;
+            this.state = BacktestJobState.DONE;
+            finished.countDown();
+        }
+
+        void fail(String errorMessage) {
+            this.errorMessage = errorMessage;
+            this.state = BacktestJobState.FAILED;
+            finished.countDown();
+        }
+
+        BacktestJobStatus toStatus() {
+            BacktestJobStatus status = new BacktestJobStatus();
+            status.jobId = id;
+            status.state = state;
+            status.finishedPeriods = finishedPeriods;
+            status.totalPeriods = totalPeriods;
+            if (state == BacktestJobState.DONE) {
+                status.progressPercent = 100.0;
+            } else if (totalPeriods > 0) {
+                status.progressPercent = finishedPeriods * 100.0 / totalPeriods;
+            }
+            status.result = result;
+            status.errorMessage = errorMessage;
+            return status;
+        }
+    }
+
+}
@@ -0,0 +1,10 @@
+package com.helospark.financialdata.management.screener;
+
+public interface BacktestProgressListener {
+
+    /**
+     * Called after each rebalance period of the backtest is evaluated.
+     */
+    public void onPeriodFinished(int finishedPeriods, int totalPeriods);
+
+}
@@ -1,9 +1,16 @@
 package com.helospark.financialdata.management.screener;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -13,21 +20,26 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
 
@@ -39,21 +51,31 @@ import com.helospark.financialdata.management.screener.annotation.AtGlanceFormat
 import com.helospark.financialdata.management.screener.annotation.ScreenerElement;
 import com.helospark.financialdata.management.screener.domain.BacktestRequest;
 import com.helospark.financialdata.management.screener.domain.BacktestResult;
+import com.helospark.financialdata.management.screener.domain.BacktestStockReturn;
 import com.helospark.financialdata.management.screener.domain.BacktestYearInformation;
 import com.helospark.financialdata.management.screener.domain.GenericErrorResponse;
+import com.helospark.financialdata.management.screener.domain.RebalanceFrequency;
 import com.helospark.financialdata.management.screener.domain.ScreenerDescription;
 import com.helospark.financialdata.management.screener.domain.ScreenerDescription.Source;
 import com.helospark.financialdata.management.screener.domain.ScreenerResult;
+import com.helospark.financialdata.management.screener.expression.NumericExpression;
+import com.helospark.financialdata.management.screener.expression.ScreenerExpression;
+import com.helospark.financialdata.management.screener.expression.ScreenerExpressionCompiler;
 import com.helospark.financialdata.management.screener.strategy.ScreenerStrategy;
 import com.helospark.financialdata.management.user.LoginController;
 import com.helospark.financialdata.management.user.repository.AccountType;
 import com.helospark.financialdata.service.DataLoader;
+import com.helospark.financialdata.service.ForwardReturnsTable;
+import com.helospark.financialdata.service.PercentileRankTable;
+import com.helospark.financialdata.service.PointInTimeAtGlanceProvider;
+import com.helospark.financialdata.service.PercentileRankTable.RankGroup;
 import com.helospark.financialdata.service.StandardAndPoorPerformanceProvider;
 import com.helospark.financialdata.service.SymbolAtGlanceProvider;
 import com.helospark.financialdata.service.exchanges.Exchanges;
 import com.helospark.financialdata.util.glance.AtGlanceData;
 
 import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 
 @RestController
 @RequestMapping("/screener")
@@ -63,7 +85,10 @@ public class ScreenerController {
     private static final String TOTAL_RETURN_COLUMN = "Total return (%)";
     private static final Logger LOGGER = LoggerFactory.getLogger(ScreenerController.class);
     public static final int MAX_RESULTS = 101;
+    public static final int PAGE_SIZE = MAX_RESULTS - 1;
     public static double BACKTEST_INVEST_AMOUNT = 1000.0;
+    /** Every rebalance date between the stored snapshots builds the data of the whole universe */
+    public static final int MAX_BACKTEST_PERIODS = 520;
     Map<String, ScreenerDescription> idToDescription = new LinkedHashMap<>();
     private static final Set<String> blacklistedStocks = Set.of(
             "CHSCP", // incorrect dividend information
@@ -72,6 +97,7 @@ public class ScreenerController {
     private static final ScreenerDescription SEPARATOR = new ScreenerDescription();
 
     private SymbolAtGlanceProvider symbolAtGlanceProvider;
+    private PointInTimeAtGlanceProvider pointInTimeAtGlanceProvider;
     private List<ScreenerStrategy> screenerStrategies;
     private LoginController loginController;
     static Cache<LocalDate, Double> spPriceCache = Caffeine.newBuilder()
@@ -79,13 +105,36 @@ public class ScreenerController {
             .maximumSize(2000)
             .build();
     private boolean isHistoricalFilesInitialized;
+    private volatile LoadedForwardReturns forwardReturns;
+    private final ScreenerExpressionCompiler expressionCompiler = new ScreenerExpressionCompiler(this::getValueAccessor);
+    private final Cache<String, ScreenerExpression> compiledExpressions = Caffeine.newBuilder()
+            .maximumSize(1000)
+            .build();
+    private final Cache<String, ScreenerMatchList> matchLists = Caffeine.newBuilder()
+            .expireAfterAccess(30, TimeUnit.MINUTES)
+            .maximumWeight(5_000_000)
+            .weigher((String id, ScreenerMatchList matchList) -> matchList.size() + 1)
+            .build();
 
     @Value("${backtest.multimonth:false}")
     public boolean backtestMultiMonth;
+    @Value("${backtest.sync.timeout-seconds:60}")
+    public int backtestTimeoutSeconds;
+    /** Lazy, since the job service runs the backtests of this controller */
+    @Lazy
+    @Autowired
+    private BacktestJobService backtestJobService;
 
     public ScreenerController(SymbolAtGlanceProvider symbolAtGlanceProvider, List<ScreenerStrategy> screenerStrategies,
             LoginController loginController) {
+        this(symbolAtGlanceProvider, new PointInTimeAtGlanceProvider(symbolAtGlanceProvider), screenerStrategies, loginController);
+    }
+
+    @Autowired
+    public ScreenerController(SymbolAtGlanceProvider symbolAtGlanceProvider, PointInTimeAtGlanceProvider pointInTimeAtGlanceProvider, List<ScreenerStrategy> screenerStrategies,
+            LoginController loginController) {
         this.symbolAtGlanceProvider = symbolAtGlanceProvider;
+        this.pointInTimeAtGlanceProvider = pointInTimeAtGlanceProvider;
         this.screenerStrategies = screenerStrategies;
         this.loginController = loginController;
 
@@ -173,84 +222,61 @@ public class ScreenerController {
     @RateLimit(requestPerMinute = 20)
     public ScreenerResult screenStocks(@RequestBody ScreenerRequest request, HttpServletRequest httpRequest) {
         LOGGER.info("Received screener request '{}'", request);
-        validateRequest(request.operations, request.exchanges, httpRequest);
+        validateRequest(request.operations, request.expression, request.exchanges, httpRequest);
+        if (request.onDate != null && !loginController.getAccountType(httpRequest).map(AccountType::isAtLeastStandard).orElse(false)) {
+            request.onDate = PointInTimeAtGlanceProvider.snapToSnapshotDate(request.onDate);
+        }
         return screenStockInternal(request);
     }
 
     public ScreenerResult screenStockInternal(ScreenerRequest request) {
-        boolean nextPageRequested = request.lastItem != null;
-        boolean previousPageRequested = request.prevItem != null;
-
-        LinkedHashMap<String, AtGlanceData> data;
-
-        if (request.onDate == null) {
-            data = symbolAtGlanceProvider.getSymbolCompanyNameCache();
-        } else {
-            data = new LinkedHashMap<>(symbolAtGlanceProvider.loadAtGlanceDataAtYear(request.onDate.getYear(), 1).orElse(Map.of()));
-        }
-        if (nextPageRequested) {
-            LinkedHashMap<String, AtGlanceData> filteredData = new LinkedHashMap<>();
-            boolean foundElement = false;
-            for (var entry : data.entrySet()) {
-                if (foundElement) {
-                    filteredData.put(entry.getKey(), entry.getValue());
-                }
-                if (entry.getKey().equals(request.lastItem)) {
-                    foundElement = true;
-                }
+        ScreenerMatchList matchList;
+        int from;
+        int to;
+        if (request.cursor != null) {
+            ScreenerMatchList.Cursor cursor = ScreenerMatchList.parseCursor(request.cursor);
+            matchList = matchLists.getIfPresent(cursor.matchListId());
+            if (matchList == null) {
+                throw new ScreenerClientSideException("Screener results expired, please run the screener again");
             }
-            data = filteredData;
-        }
-        if (previousPageRequested) {
-            LinkedHashMap<String, AtGlanceData> filteredData = new LinkedHashMap<>();
-            boolean foundElement = false;
-            List<String> keySet = new ArrayList<>(data.keySet());
-            for (int i = keySet.size() - 1; i >= 0; --i) {
-                String key = keySet.get(i);
-                if (foundElement) {
-                    var value = data.get(key);
-                    filteredData.put(key, value);
-                }
-                if (key.equals(request.prevItem)) {
-                    foundElement = true;
-                }
+            if (!matchList.screenKey.equals(getScreenKey(request))) {
+                throw new ScreenerClientSideException("The cursor belongs to a different screen, please run the screener again");
+            }
+            from = Math.min(cursor.offset(), matchList.size());
+            to = Math.min(from + PAGE_SIZE, matchList.size());
+        } else {
+            matchList = getMatchList(request);
+            from = 0;
+            to = Math.min(PAGE_SIZE, matchList.size());
+            if (request.lastItem != null) {
+                int position = matchList.getPosition(request.lastItem);
+                from = position == -1 ? matchList.size() : position + 1;
+                to = Math.min(from + PAGE_SIZE, matchList.size());
+            } else if (request.prevItem != null) {
+                int position = matchList.getPosition(request.prevItem);
+                to = position == -1 ? 0 : position;
+                from = Math.max(0, to - PAGE_SIZE);
             }
-            data = filteredData;
-        }
-        List<AtGlanceData> matchedStocks = findMatchingStocks(data, request, getSymbolsInExchanges(request.exchanges), false, List.of());
-
-        if (previousPageRequested) {
-            Collections.reverse(matchedStocks);
         }
 
         ScreenerResult result = new ScreenerResult();
-        result.hasMoreResults = (matchedStocks.size() >= MAX_RESULTS) || previousPageRequested;
-        result.hasPreviousResults = nextPageRequested || (matchedStocks.size() >= MAX_RESULTS && previousPageRequested);
-
-        if (matchedStocks.size() >= MAX_RESULTS && !previousPageRequested) {
-            matchedStocks.remove(matchedStocks.size() - 1);
-        }
-        if (matchedStocks.size() >= MAX_RESULTS && previousPageRequested) {
-            matchedStocks.remove(0);
-        }
+        result.hasMoreResults = to < matchList.size();
+        result.hasPreviousResults = from > 0;
+        result.nextCursor = result.hasMoreResults ? matchList.createCursor(to) : null;
+        result.previousCursor = result.hasPreviousResults ? matchList.createCursor(Math.max(0, from - PAGE_SIZE)) : null;
+        result.numberOfMatches = matchList.size();
 
         result.columns.add("Symbol");
         result.columns.add("Company");
 
-        Map<String, ScreenerOperation> dedupedScreenersMap = new LinkedHashMap<>();
-
-        for (var element : request.operations) {
-            if (!dedupedScreenersMap.containsKey(element.id)) {
-                dedupedScreenersMap.put(element.id, element);
-            }
-        }
-        var dedupedOperations = dedupedScreenersMap.values();
-
+        Collection<ScreenerOperation> dedupedOperations = dedupeByColumn(matchList.operations);
         for (var element : dedupedOperations) {
-            result.columns.add(idToDescription.get(element.id).readableName);
+            result.columns.add(getColumnName(element));
         }
 
-        for (var stock : matchedStocks) {
+        PercentileRankTable ranks = matchList.ranks;
+        for (int i = from; i < to; ++i) {
+            AtGlanceData stock = matchList.matches[i];
             if (stock.symbol.equals("FB")) { // ticker changed
                 continue;
             }
@@ -260,9 +286,14 @@ public class ScreenerController {
 
             for (var element : dedupedOperations) {
                 ScreenerDescription screenerDescription = idToDescription.get(element.id);
-                String columnName = screenerDescription.readableName;
-                Double value = unreflectGetValue(stock, element, screenerDescription);
-                columnResult.put(columnName, screenerDescription.format.format(value));
+                String columnName = getColumnName(element);
+                if (element.rankGroup != null) {
+                    double rank = ranks.getRank(ranks.getColumn(element.id, element.rankGroup), stock.symbol);
+                    columnResult.put(columnName, AtGlanceFormat.SIMPLE_NUMBER.format(rank));
+                } else {
+                    Double value = unreflectGetValue(stock, element, screenerDescription);
+                    columnResult.put(columnName, screenerDescription.format.format(value));
+                }
             }
             result.portfolio.add(columnResult);
         }
@@ -270,8 +301,150 @@ public class ScreenerController {
         return result;
     }
 
-    public List<AtGlanceData> findMatchingStocks(Map<String, AtGlanceData> data, ScreenerRequest request, List<String> symbolsInExchanges, boolean randomize, List<String> excludedStocks) {
+    /**
+     * All matches of the request on the current version of the data, evaluated once and shared by every page and identical request.
+     */
+    private ScreenerMatchList getMatchList(ScreenerRequest request) {
+        long datasetVersion = symbolAtGlanceProvider.getDatasetVersion();
+        String screenKey = getScreenKey(request);
+        String id = createMatchListId(screenKey, datasetVersion);
+        return matchLists.get(id, key -> {
+            Map<String, AtGlanceData> data = getScreenedData(request.onDate);
+            PercentileRankTable ranks = getScreenedRanks(request.onDate, request.operations);
+            List<AtGlanceData> matches = new ArrayList<>();
+            forEachMatchingStock(data, ranks, request, getSymbolsInExchanges(request.exchanges), false, List.of(), stock -> matches.add(stock));
+            return new ScreenerMatchList(key, screenKey, datasetVersion, request.operations, ranks, matches);
+        });
+    }
+
+    /**
+     * Same id for requests with the same matches, opaque for the client.
+     */
+    private String createMatchListId(String screenKey, long datasetVersion) {
+        String key = datasetVersion + "|" + screenKey;
+        return UUID.nameUUIDFromBytes(key.getBytes(StandardCharsets.UTF_8)).toString();
+    }
+
+    /**
+     * Date and normalized screen of the request, a cursor can only be used with the request it was created for.
+     */
+    private String getScreenKey(ScreenerRequest request) {
+        return (request.onDate == null ? "" : request.onDate) + "|" + getNormalizedScreenKey(request);
+    }
+
+    /**
+     * Exchanges, operations and expression of the screen, independent of the order of exchanges and of whitespace around the expression.
+     */
+    private String getNormalizedScreenKey(ScreenerRequest request) {
+        StringBuilder key = new StringBuilder();
+        key.append(request.exchanges.stream().sorted().collect(Collectors.joining(",")));
+        for (var operation : request.operations) {
+            key.append('|').append(operation.id).append(' ').append(operation.operation).append(' ').append(operation.number1).append(' ').append(operation.number2)
+                    .append(' ').append(operation.rankGroup);
+        }
+        key.append('|').append(request.expression == null ? "" : request.expression.strip());
+        return key.toString();
+    }
+
+    private Map<String, AtGlanceData> getScreenedData(LocalDate onDate) {
+        if (onDate == null) {
+            return symbolAtGlanceProvider.getSymbolCompanyNameCache();
+        } else {
+            return pointInTimeAtGlanceProvider.getAtGlanceDataAt(onDate);
+        }
+    }
+
+    private PercentileRankTable getScreenedRanks(LocalDate onDate, List<ScreenerOperation> operations) {
+        if (!hasRankedOperation(operations)) {
+            return PercentileRankTable.EMPTY;
+        } else if (onDate == null) {
+            return symbolAtGlanceProvider.getPercentileRanks();
+        } else {
+            return pointInTimeAtGlanceProvider.getPercentileRanksAt(onDate);
+        }
+    }
+
+    private Collection<ScreenerOperation> dedupeByColumn(List<ScreenerOperation> operations) {
+        Map<String, ScreenerOperation> dedupedScreenersMap = new LinkedHashMap<>();
+        for (var element : operations) {
+            String columnName = getColumnName(element);
+            if (!dedupedScreenersMap.containsKey(columnName)) {
+                dedupedScreenersMap.put(columnName, element);
+            }
+        }
+        return dedupedScreenersMap.values();
+    }
+
+    /**
+     * Streams every match of the screen as CSV or NDJSON (one JSON object per line), rows are written as they are found.
+     */
+    @PostMapping("/export")
+    @RateLimit(requestPerMinute = 5)
+    public void exportScreener(@RequestBody ScreenerRequest request, @RequestParam(defaultValue = "csv") String format, HttpServletRequest httpRequest,
+            HttpServletResponse httpResponse) throws IOException {
+        LOGGER.info("Received screener export request '{}'", request);
+        Optional<DecodedJWT> jwt = loginController.getJwt(httpRequest);
+        if (!jwt.isPresent() || !AccountType.isAtLeastStandard(loginController.getAccountType(jwt.get()))) {
+            throw new ScreenerClientSideException("Export is only available for users with 'Standard' or higher plan");
+        }
+        validateRequest(request.operations, request.expression, request.exchanges, httpRequest);
+
+        Map<String, AtGlanceData> data = getScreenedData(request.onDate);
+        PercentileRankTable ranks = getScreenedRanks(request.onDate, request.operations);
+        List<ScreenerOperation> operations = new ArrayList<>(dedupeByColumn(request.operations));
+        List<String> columns = operations.stream().map(operation -> getColumnName(operation)).toList();
+        int[] rankColumns = operations.stream().mapToInt(operation -> operation.rankGroup == null ? -1 : ranks.getColumn(operation.id, operation.rankGroup)).toArray();
+
+        Writer writer = new BufferedWriter(new OutputStreamWriter(httpResponse.getOutputStream(), StandardCharsets.UTF_8));
+        ScreenerExportWriter exportWriter = ScreenerExportWriter.create(format, writer, columns);
+        httpResponse.setContentType(exportWriter.getContentType());
+        httpResponse.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        httpResponse.setHeader("Content-Disposition", "attachment; filename=\"screener." + exportWriter.getFileExtension() + "\"");
+        exportWriter.writeHeader();
+        double[] values = new double[operations.size()];
+        try {
+            forEachMatchingStock(data, ranks, request, getSymbolsInExchanges(request.exchanges), false, List.of(), stock -> {
+                for (int i = 0; i < values.length; ++i) {
+                    ScreenerOperation operation = operations.get(i);
+                    values[i] = operation.rankGroup != null ? ranks.getRank(rankColumns[i], stock.symbol) : unreflectGetValue(stock, operation, idToDescription.get(operation.id));
+                }
+                try {
+                    exportWriter.writeRow(stock.symbol, stock.companyName, values);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return true;
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        writer.flush();
+    }
+
+    /**
+     * The first MAX_RESULTS matches, in market cap order or in random order.
+     */
+    public List<AtGlanceData> findMatchingStocks(Map<String, AtGlanceData> data, PercentileRankTable ranks, ScreenerRequest request, List<String> symbolsInExchanges,
+            boolean randomize, List<String> excludedStocks) {
         List<AtGlanceData> matchedStocks = new ArrayList<>();
+        forEachMatchingStock(data, ranks, request, symbolsInExchanges, randomize, excludedStocks, stock -> {
+            matchedStocks.add(stock);
+            return matchedStocks.size() < MAX_RESULTS;
+        });
+        return matchedStocks;
+    }
+
+    /**
+     * Passes the matching stocks to the consumer in market cap order or in random order, until the consumer returns false.
+     */
+    public void forEachMatchingStock(Map<String, AtGlanceData> data, PercentileRankTable ranks, ScreenerRequest request, List<String> symbolsInExchanges,
+            boolean randomize, List<String> excludedStocks, Predicate<AtGlanceData> consumer) {
+        List<ScreenerOperation> operations = request.operations;
+        int[] rankColumns = new int[operations.size()];
+        for (int i = 0; i < operations.size(); ++i) {
+            rankColumns[i] = operations.get(i).rankGroup == null ? -1 : ranks.getColumn(operations.get(i).id, operations.get(i).rankGroup);
+        }
+        ScreenerExpression expression = request.expression == null ? null : compileExpression(request.expression);
         List<String> symbols = symbolsInExchanges;
 
         if (randomize) {
@@ -289,28 +462,32 @@ public class ScreenerController {
 
         for (var entry : symbols) {
             var atGlanceData = data.get(entry);
-            if (atGlanceData == null || blacklistedStocks.contains(entry) || excludedStocks.contains(entry)) {
+            if (atGlanceData == null || isBlacklisted(entry) || excludedStocks.contains(entry)) {
                 continue;
             }
 
             boolean allMatch = true;
-            for (var operation : request.operations) {
-                ScreenerDescription source = idToDescription.get(operation.id);
-                double value = unreflectGetValue(atGlanceData, operation, source);
+            for (int i = 0; i < operations.size(); ++i) {
+                ScreenerOperation operation = operations.get(i);
+                double value;
+                if (operation.rankGroup != null) {
+                    value = ranks.getRank(rankColumns[i], entry);
+                } else {
+                    value = unreflectGetValue(atGlanceData, operation, idToDescription.get(operation.id));
+                }
                 ScreenerStrategy screenerStrategy = operation.screenerStrategy;
                 if (!screenerStrategy.matches(value, operation)) {
                     allMatch = false;
                     break;
                 }
             }
-            if (allMatch) {
-                matchedStocks.add(atGlanceData);
-                if (matchedStocks.size() >= MAX_RESULTS) {
-                    break;
-                }
+            if (allMatch && expression != null) {
+                allMatch = expression.matches(atGlanceData);
+            }
+            if (allMatch && !consumer.test(atGlanceData)) {
+                break;
             }
         }
-        return matchedStocks;
     }
 
     @PostMapping("/backtest")
@@ -324,26 +501,24 @@ public class ScreenerController {
                 throw new ScreenerClientSideException("Backtest is only available for users with 'Advanced' plan");
             }
         }
-        validateRequest(request.operations, request.exchanges, httpRequest);
+        validateRequest(request.operations, request.expression, request.exchanges, httpRequest);
+        if (!validateBacktestRequest(request).isOnSnapshotDates()) {
+            throw new ScreenerClientSideException("Monthly and weekly rebalancing is only available for backtest jobs");
+        }
 
-        return performBacktestInternal(request);
+        return backtestJobService.submitAndWait(jwt.get().getSubject(), request, backtestTimeoutSeconds * 1000L);
     }
 
     public BacktestResult performBacktestInternal(BacktestRequest request) {
-        if (request.endYear < request.startYear) {
-            throw new ScreenerClientSideException("End date must be greater than start time");
-        }
-        if (request.endYear - request.startYear < 2) {
-            throw new ScreenerClientSideException("More than 2 year difference expected");
-        }
-        if (request.endYear > LocalDate.now().getYear()) {
-            throw new ScreenerClientSideException("Unfortunataly our datasource doesn't provide the future stock prices :(");
-        }
-        if (request.startYear < 1990) {
-            throw new ScreenerClientSideException("We only have data from 1990");
-        }
+        return performBacktestInternal(request, (finishedPeriods, totalPeriods) -> {
+        });
+    }
+
+    public BacktestResult performBacktestInternal(BacktestRequest request, BacktestProgressListener progressListener) {
+        RebalanceFrequency rebalance = validateBacktestRequest(request);
 
         boolean useLatestData = (request.endYear == LocalDate.now().getYear());
+        List<LocalDate> rebalanceDates = getRebalanceDates(request, rebalance);
 
         Map<String, BacktestYearInformation> yearResults = new LinkedHashMap<>();
 
@@ -357,130 +532,159 @@ public class ScreenerController {
         columns.add(ANNUAL_RETURNS_WITH_DIVIDENDS_REINVESTED);
         LocalDate currentDate = LocalDate.now();
 
-        double totalInvested = 0;
-        double totalScreenerReturned = 0;
-        double totalScreenerReturnedWithDividends = 0.0;
-        double totalSpReturned = 0;
-        double totalSpReturnedWithDividends = 0;
-
         List<String> symbolsInExchanges = getSymbolsInExchanges(request.exchanges);
+        boolean rankedOperations = hasRankedOperation(request.operations);
 
         if (!isHistoricalFilesInitialized) {
             initializeHistoricalFile();
         }
 
-        for (int year = request.startYear; year < request.endYear - 1; ++year) {
-            for (int month = 1; month < (backtestMultiMonth ? 12 : 2); month += 3) {
-                List<Map<String, String>> bought = new ArrayList<>();
-                double yearSp500Sum = 0.0;
-                double yearSp500SumWithDividends = 0.0;
-                double yearScreenerSum = 0.0;
-                double yearScreenerWithDividendSum = 0.0;
-                int yearCount = 0;
-
-                LocalDate date = LocalDate.of(year, month, 1);
-                LocalDate endDate2 = useLatestData ? currentDate : LocalDate.of(request.endYear, 1, 1);
-                double yearAgo = calculateYearsDiff(date, endDate2);
-
-                Map<String, AtGlanceData> data = symbolAtGlanceProvider.loadAtGlanceDataAtYear(year, month).orElse(null);
-                List<AtGlanceData> matchedStocks = List.of();
-                if (data != null) {
-                    matchedStocks = findMatchingStocks(data, request, symbolsInExchanges, true, request.excludedStocks);
-
-                    for (var stockThen : matchedStocks) {
-                        var stockNow = getLatestStockData(stockThen, request.endYear, useLatestData);
-                        ++yearCount;
-
-                        LocalDate actualDate = stockThen.actualDate;
-
-                        if (stockThen.actualDate == null || stockNow.isEmpty()) {
-                            continue;
-                        }
-                        LocalDate nowDate = stockNow.get().actualDate;
-                        double yearAgoExact = calculateYearsDiff(actualDate, nowDate);
-
-                        double sp500PriceThen = spPriceCache.get(actualDate, date2 -> StandardAndPoorPerformanceProvider.getPriceAt(actualDate));
-                        double sp500PriceNow;
-                        if (useLatestData) {
-                            sp500PriceNow = StandardAndPoorPerformanceProvider.getLatestPrice();
-                        } else {
-                            sp500PriceNow = spPriceCache.get(nowDate, date2 -> StandardAndPoorPerformanceProvider.getPriceAt(nowDate));
-                        }
-
-                        double stockPriceThen = stockThen.latestStockPriceUsd;
-                        double stockPriceNow = stockNow.get().latestStockPriceUsd;
-
-                        double screenerIncrease = (stockPriceNow / stockPriceThen) * BACKTEST_INVEST_AMOUNT;
-
-                        double initialShareCount = BACKTEST_INVEST_AMOUNT / stockPriceThen;
-                        double totalSharesWithDividendsReinvested = calculateTotalSharesWithDividendsReinvested(initialShareCount, year, request.endYear, stockThen.symbol);
-
-                        double finalScreenerCost = stockPriceNow * totalSharesWithDividendsReinvested;
+        for (int period = 0; period < rebalanceDates.size(); ++period) {
+            LocalDate date = rebalanceDates.get(period);
+            int year = date.getYear();
+            List<Map<String, String>> bought = new ArrayList<>();
+            double yearSp500Sum = 0.0;
+            double yearSp500SumWithDividends = 0.0;
+            double yearScreenerSum = 0.0;
+            double yearScreenerWithDividendSum = 0.0;
+            int yearCount = 0;
+
+            LocalDate endDate2 = useLatestData ? currentDate : LocalDate.of(request.endYear, 1, 1);
+            double yearAgo = calculateYearsDiff(date, endDate2);
+
+            Map<String, AtGlanceData> data = getBacktestData(date);
+            List<AtGlanceData> matchedStocks = List.of();
+            if (data != null) {
+                PercentileRankTable ranks = rankedOperations ? getBacktestRanks(date) : PercentileRankTable.EMPTY;
+                matchedStocks = findMatchingStocks(data, ranks, request, symbolsInExchanges, true, request.excludedStocks);
+
+                for (var stockThen : matchedStocks) {
+                    ++yearCount;
+                    Optional<BacktestStockReturn> optionalStockReturn = calculateStockReturn(stockThen, year, request.endYear, useLatestData);
+                    if (optionalStockReturn.isEmpty()) {
+                        continue;
+                    }
+                    BacktestStockReturn stockReturn = optionalStockReturn.get();
+                    double stockPriceThen = stockReturn.stockPriceThen;
+                    double stockPriceNow = stockReturn.stockPriceNow;
+                    double finalScreenerCost = stockReturn.finalScreenerCost;
+
+                    yearSp500Sum += (stockReturn.sp500PriceNow / stockReturn.sp500PriceThen) * BACKTEST_INVEST_AMOUNT;
+                    yearSp500SumWithDividends += (stockReturn.finalSpCost);
+                    yearScreenerSum += (stockPriceNow / stockPriceThen) * BACKTEST_INVEST_AMOUNT;
+                    yearScreenerWithDividendSum += (finalScreenerCost);
+
+                    if (request.addResultTable) {
+                        double yearAgoExact = stockReturn.yearAgoExact;
+                        String name = symbolAtGlanceProvider.getAtGlanceData(stockThen.symbol).map(a -> a.companyName).orElse("");
+                        Map<String, String> columnResult = new HashMap<>();
+                        columnResult.put("Symbol", createSymbolLink(stockReturn.symbolNow));
+                        columnResult.put("Name", name);
+                        columnResult.put("Buy price", formatString(stockPriceThen));
+                        columnResult.put("Current price", formatString(stockPriceNow));
+                        columnResult.put(TOTAL_RETURN_COLUMN, formatString(((stockPriceNow / stockPriceThen) - 1.0) * 100.0));
+                        columnResult.put(ANNUAL_RETURN_COLUMN, formatString((Math.pow((stockPriceNow / stockPriceThen), (1.0 / yearAgoExact)) - 1.0) * 100.0));
+                        columnResult.put(ANNUAL_RETURNS_WITH_DIVIDENDS_REINVESTED, formatString((Math.pow((finalScreenerCost / BACKTEST_INVEST_AMOUNT), (1.0 / yearAgoExact)) - 1.0) * 100.0));
+                        bought.add(columnResult);
+                    }
+                }
+            }
 
-                        double initialSpShareCount = BACKTEST_INVEST_AMOUNT / sp500PriceThen;
-                        double totalSpSharesWithDividendsReinvested = calculateTotalSPSharesWithDividendsReinvested(initialSpShareCount, year, request.endYear);
+            BacktestYearInformation yearInfo = createYearInformation(yearCount, yearSp500Sum, yearSp500SumWithDividends, yearScreenerSum, yearScreenerWithDividendSum, yearAgo);
+            yearInfo.investedInAllMatching = matchedStocks.size() < MAX_RESULTS;
 
-                        double finalSpCost = sp500PriceNow * totalSpSharesWithDividendsReinvested;
+            yearInfo.investedStocks = bought;
 
-                        if (!Double.isFinite(screenerIncrease)) {
-                            continue;
-                        }
+            String label = rebalance.getLabel(date);
 
-                        yearSp500Sum += (sp500PriceNow / sp500PriceThen) * BACKTEST_INVEST_AMOUNT;
-                        yearSp500SumWithDividends += (finalSpCost);
-                        yearScreenerSum += screenerIncrease;
-                        yearScreenerWithDividendSum += (finalScreenerCost);
-
-                        if (request.addResultTable) {
-                            String name = symbolAtGlanceProvider.getAtGlanceData(stockThen.symbol).map(a -> a.companyName).orElse("");
-                            Map<String, String> columnResult = new HashMap<>();
-                            columnResult.put("Symbol", createSymbolLink(stockNow.get().symbol));
-                            columnResult.put("Name", name);
-                            columnResult.put("Buy price", formatString(stockPriceThen));
-                            columnResult.put("Current price", formatString(stockPriceNow));
-                            columnResult.put(TOTAL_RETURN_COLUMN, formatString(((stockPriceNow / stockPriceThen) - 1.0) * 100.0));
-                            columnResult.put(ANNUAL_RETURN_COLUMN, formatString((Math.pow((stockPriceNow / stockPriceThen), (1.0 / yearAgoExact)) - 1.0) * 100.0));
-                            columnResult.put(ANNUAL_RETURNS_WITH_DIVIDENDS_REINVESTED, formatString((Math.pow((finalScreenerCost / BACKTEST_INVEST_AMOUNT), (1.0 / yearAgoExact)) - 1.0) * 100.0));
-                            bought.add(columnResult);
-                        }
-                    }
-                }
+            yearResults.put(label, yearInfo);
+            progressListener.onPeriodFinished(period + 1, rebalanceDates.size());
+        }
 
-                BacktestYearInformation yearInfo = new BacktestYearInformation();
-                double yearTotalInvested = yearCount * BACKTEST_INVEST_AMOUNT;
-                yearInfo.investedAmount = yearTotalInvested;
+        BacktestResult result = createBacktestResult(yearResults);
+        result.columns = columns;
 
-                yearInfo.spTotalReturnPercent = ((yearSp500Sum / yearTotalInvested) - 1.0) * 100.0;
-                yearInfo.spTotalReturnPercentWithDividends = ((yearSp500SumWithDividends / yearTotalInvested) - 1.0) * 100.0;
-                yearInfo.screenerTotalReturnPercent = ((yearScreenerSum / yearTotalInvested) - 1.0) * 100.0;
-                yearInfo.screenerTotalReturnPercentWithDividends = ((yearScreenerWithDividendSum / yearTotalInvested) - 1.0) * 100.0;
+        LOGGER.info("Backtest result invested={} medianReturn={} avgReturn={} medianReturnWithDividends={} avgReturnWithDividends={} beatPercent={}", result.investedAmount,
+                result.screenerMedianPercent, result.screenerAvgPercent,
+                result.screenerWithDividendsMedianPercent, result.screenerWithDividendsAvgPercent, result.beatPercent);
 
-                yearInfo.spAnnualReturnPercent = (Math.pow(yearSp500Sum / yearTotalInvested, (1.0 / yearAgo)) - 1.0) * 100.0;
-                yearInfo.spAnnualReturnPercentWithDividends = (Math.pow(yearSp500SumWithDividends / yearTotalInvested, (1.0 / yearAgo)) - 1.0) * 100.0;
-                yearInfo.screenerAnnualReturnPercent = (Math.pow(yearScreenerSum / yearTotalInvested, (1.0 / yearAgo)) - 1.0) * 100.0;
-                yearInfo.screenerAnnualReturnPercentWithDividends = (Math.pow(yearScreenerWithDividendSum / yearTotalInvested, (1.0 / yearAgo)) - 1.0) * 100.0;
+        return result;
+    }
 
-                yearInfo.spReturnDollar = yearSp500Sum;
-                yearInfo.spReturnDollarWithDividends = yearSp500SumWithDividends;
-                yearInfo.screenerReturnDollar = yearScreenerSum;
-                yearInfo.screenerReturnDollarWithDividends = yearScreenerWithDividendSum;
+    /**
+     * Throws if the backtest can't be run, returns the rebalance frequency to use.
+     */
+    public RebalanceFrequency validateBacktestRequest(BacktestRequest request) {
+        if (request.endYear < request.startYear) {
+            throw new ScreenerClientSideException("End date must be greater than start time");
+        }
+        if (request.endYear - request.startYear < 2) {
+            throw new ScreenerClientSideException("More than 2 year difference expected");
+        }
+        if (request.endYear > LocalDate.now().getYear()) {
+            throw new ScreenerClientSideException("Unfortunataly our datasource doesn't provide the future stock prices :(");
+        }
+        if (request.startYear < 1990) {
+            throw new ScreenerClientSideException("We only have data from 1990");
+        }
 
-                yearInfo.investedInAllMatching = matchedStocks.size() < MAX_RESULTS;
+        RebalanceFrequency rebalance = backtestMultiMonth ? RebalanceFrequency.QUARTERLY : RebalanceFrequency.YEARLY;
+        if (request.rebalance != null) {
+            try {
+                rebalance = RebalanceFrequency.valueOf(request.rebalance.toUpperCase());
+            } catch (IllegalArgumentException e) {
+                throw new ScreenerClientSideException(request.rebalance + " is not a valid rebalance frequency, expected one of " + Arrays.toString(RebalanceFrequency.values()));
+            }
+        }
+        int periods = getRebalanceDates(request, rebalance).size();
+        if (periods > MAX_BACKTEST_PERIODS) {
+            throw new ScreenerClientSideException("Backtest would rebalance " + periods + " times, at most " + MAX_BACKTEST_PERIODS
+                    + " is allowed, use a shorter time range or less frequent rebalancing");
+        }
+        return rebalance;
+    }
 
-                totalInvested += yearTotalInvested;
-                totalScreenerReturned += yearScreenerSum;
-                totalScreenerReturnedWithDividends += yearScreenerWithDividendSum;
-                totalSpReturned += yearSp500Sum;
-                totalSpReturnedWithDividends += yearSp500SumWithDividends;
+    private List<LocalDate> getRebalanceDates(BacktestRequest request, RebalanceFrequency rebalance) {
+        List<LocalDate> rebalanceDates = new ArrayList<>();
+        for (LocalDate date = LocalDate.of(request.startYear, 1, 1); date.getYear() < request.endYear - 1; date = rebalance.next(date)) {
+            rebalanceDates.add(date);
+        }
+        return rebalanceDates;
+    }
 
-                yearInfo.investedStocks = bought;
+    /**
+     * Same key for backtests with the same result on the same data, independent of the order of exchanges and excluded stocks.
+     */
+    public String getBacktestKey(BacktestRequest request) {
+        StringBuilder key = new StringBuilder(getNormalizedScreenKey(request));
+        key.append('|').append(request.startYear).append('-').append(request.endYear).append('|').append(validateBacktestRequest(request));
+        key.append('|').append(request.addResultTable);
+        key.append('|').append(request.excludedStocks == null ? "" : request.excludedStocks.stream().sorted().collect(Collectors.joining(",")));
+        key.append('|').append(symbolAtGlanceProvider.getDatasetVersion());
+        return key.toString();
+    }
 
-                String label = backtestMultiMonth ? String.format("%04d-%02d", year, month) : String.valueOf(year);
+    /**
+     * Stored snapshot on its quarterly grid date (null if it was not generated), data calculated for the date otherwise.
+     */
+    private Map<String, AtGlanceData> getBacktestData(LocalDate date) {
+        if (date.getDayOfMonth() == 1 && date.getMonthValue() % 3 == 1) {
+            return symbolAtGlanceProvider.loadAtGlanceDataAtYear(date.getYear(), date.getMonthValue()).orElse(null);
+        }
+        return pointInTimeAtGlanceProvider.getAtGlanceDataAt(date);
+    }
 
-                yearResults.put(label, yearInfo);
-            }
+    private PercentileRankTable getBacktestRanks(LocalDate date) {
+        if (date.getDayOfMonth() == 1 && date.getMonthValue() % 3 == 1) {
+            return symbolAtGlanceProvider.getPercentileRanksAtYear(date.getYear(), date.getMonthValue());
         }
+        return pointInTimeAtGlanceProvider.getPercentileRanksAt(date);
+    }
 
+    /**
+     * Aggregates the per period results of a backtest, periods without investment are ignored in the averages.
+     */
+    public BacktestResult createBacktestResult(Map<String, BacktestYearInformation> yearResults) {
         int beatCount = 0;
         int investedCount = 0;
         for (var entry : yearResults.values()) {
@@ -496,13 +700,14 @@ public class ScreenerController {
         result.beatCount = beatCount;
         result.investedCount = investedCount;
         result.beatPercent = ((double) beatCount / investedCount) * 100.0;
-        result.columns = columns;
 
-        result.investedAmount = totalInvested;
-        result.sp500Returned = totalSpReturned;
-        result.sp500ReturnedWithDividends = totalSpReturnedWithDividends;
-        result.screenerReturned = totalScreenerReturned;
-        result.screenerReturnedWithDividends = totalScreenerReturnedWithDividends;
+        for (var entry : yearResults.values()) {
+            result.investedAmount += entry.investedAmount;
+            result.sp500Returned += entry.spReturnDollar;
+            result.sp500ReturnedWithDividends += entry.spReturnDollarWithDividends;
+            result.screenerReturned += entry.screenerReturnDollar;
+            result.screenerReturnedWithDividends += entry.screenerReturnDollarWithDividends;
+        }
 
         result.screenerAvgPercent = calculateAverage(yearResults, a -> a.screenerAnnualReturnPercent);
         result.screenerMedianPercent = calculateMedian(yearResults, a -> a.screenerAnnualReturnPercent);
@@ -519,13 +724,121 @@ public class ScreenerController {
         result.yearData = yearResults;
         result.investedInAllMatching = yearResults.values().stream().allMatch(a -> a.investedInAllMatching);
 
-        LOGGER.info("Backtest result invested={} medianReturn={} avgReturn={} medianReturnWithDividends={} avgReturnWithDividends={} beatPercent={}", result.investedAmount,
-                result.screenerMedianPercent, result.screenerAvgPercent,
-                result.screenerWithDividendsMedianPercent, result.screenerWithDividendsAvgPercent, result.beatPercent);
-
         return result;
     }
 
+    public BacktestYearInformation createYearInformation(int yearCount, double yearSp500Sum, double yearSp500SumWithDividends, double yearScreenerSum, double yearScreenerWithDividendSum,
+            double yearAgo) {
+        BacktestYearInformation yearInfo = new BacktestYearInformation();
+        double yearTotalInvested = yearCount * BACKTEST_INVEST_AMOUNT;
+        yearInfo.investedAmount = yearTotalInvested;
+
+        yearInfo.spTotalReturnPercent = ((yearSp500Sum / yearTotalInvested) - 1.0) * 100.0;
+        yearInfo.spTotalReturnPercentWithDividends = ((yearSp500SumWithDividends / yearTotalInvested) - 1.0) * 100.0;
+        yearInfo.screenerTotalReturnPercent = ((yearScreenerSum / yearTotalInvested) - 1.0) * 100.0;
+        yearInfo.screenerTotalReturnPercentWithDividends = ((yearScreenerWithDividendSum / yearTotalInvested) - 1.0) * 100.0;
+
+        yearInfo.spAnnualReturnPercent = (Math.pow(yearSp500Sum / yearTotalInvested, (1.0 / yearAgo)) - 1.0) * 100.0;
+        yearInfo.spAnnualReturnPercentWithDividends = (Math.pow(yearSp500SumWithDividends / yearTotalInvested, (1.0 / yearAgo)) - 1.0) * 100.0;
+        yearInfo.screenerAnnualReturnPercent = (Math.pow(yearScreenerSum / yearTotalInvested, (1.0 / yearAgo)) - 1.0) * 100.0;
+        yearInfo.screenerAnnualReturnPercentWithDividends = (Math.pow(yearScreenerWithDividendSum / yearTotalInvested, (1.0 / yearAgo)) - 1.0) * 100.0;
+
+        yearInfo.spReturnDollar = yearSp500Sum;
+        yearInfo.spReturnDollarWithDividends = yearSp500SumWithDividends;
+        yearInfo.screenerReturnDollar = yearScreenerSum;
+        yearInfo.screenerReturnDollarWithDividends = yearScreenerWithDividendSum;
+
+        return yearInfo;
+    }
+
+    /**
+     * Calculates the return of the stock bought at the given year until endYear, or empty if the return cannot be calculated.
+     */
+    public Optional<BacktestStockReturn> calculateStockReturn(AtGlanceData stockThen, int year, int endYear, boolean useLatestData) {
+        ForwardReturnsTable forwardReturns = getForwardReturnsTable();
+        int symbolIndex = forwardReturns.getSymbolIndex(stockThen.symbol);
+        LocalDate actualDate = stockThen.actualDate;
+
+        if (actualDate == null) {
+            return Optional.empty();
+        }
+
+        BacktestStockReturn result = new BacktestStockReturn();
+        LocalDate nowDate;
+        Optional<AtGlanceData> latestData = useLatestData ? symbolAtGlanceProvider.getAtGlanceData(stockThen.symbol) : Optional.empty();
+        if (latestData.isPresent()) {
+            nowDate = latestData.get().actualDate;
+            result.symbolNow = latestData.get().symbol;
+            result.stockPriceNow = latestData.get().latestStockPriceUsd;
+        } else {
+            int nowPeriod = symbolIndex == -1 ? -1 : forwardReturns.findLatestJanuaryPeriod(symbolIndex, endYear);
+            if (nowPeriod == -1) {
+                return Optional.empty();
+            }
+            nowDate = forwardReturns.getActualDate(symbolIndex, nowPeriod);
+            result.symbolNow = stockThen.symbol;
+            result.stockPriceNow = forwardReturns.getPriceUsd(symbolIndex, nowPeriod);
+        }
+        if (nowDate == null) {
+            return Optional.empty();
+        }
+        result.yearAgoExact = calculateYearsDiff(actualDate, nowDate);
+
+        result.sp500PriceThen = spPriceCache.get(actualDate, date2 -> StandardAndPoorPerformanceProvider.getPriceAt(actualDate));
+        if (useLatestData) {
+            result.sp500PriceNow = StandardAndPoorPerformanceProvider.getLatestPrice();
+        } else {
+            result.sp500PriceNow = spPriceCache.get(nowDate, date2 -> StandardAndPoorPerformanceProvider.getPriceAt(nowDate));
+        }
+
+        result.stockPriceThen = stockThen.latestStockPriceUsd;
+
+        double screenerIncrease = (result.stockPriceNow / result.stockPriceThen) * BACKTEST_INVEST_AMOUNT;
+        if (!Double.isFinite(screenerIncrease)) {
+            return Optional.empty();
+        }
+
+        double initialShareCount = BACKTEST_INVEST_AMOUNT / result.stockPriceThen;
+        double totalSharesWithDividendsReinvested = initialShareCount * (symbolIndex == -1 ? 1.0 : forwardReturns.getDividendReinvestMultiplier(symbolIndex, year, endYear));
+        if (!Double.isFinite(totalSharesWithDividendsReinvested)) {
+            totalSharesWithDividendsReinvested = initialShareCount;
+        }
+        result.finalScreenerCost = result.stockPriceNow * totalSharesWithDividendsReinvested;
+
+        double initialSpShareCount = BACKTEST_INVEST_AMOUNT / result.sp500PriceThen;
+        double totalSpSharesWithDividendsReinvested = calculateTotalSPSharesWithDividendsReinvested(initialSpShareCount, year, endYear);
+        result.finalSpCost = result.sp500PriceNow * totalSpSharesWithDividendsReinvested;
+
+        return Optional.of(result);
+    }
+
+    /**
+     * Checked again whenever the at glance data is reloaded, and rebuilt only if the historical snapshots changed since.
+     */
+    private ForwardReturnsTable getForwardReturnsTable() {
+        long datasetVersion = symbolAtGlanceProvider.getDatasetVersion();
+        LoadedForwardReturns result = forwardReturns;
+        if (result == null || result.datasetVersion != datasetVersion) {
+            synchronized (this) {
+                result = forwardReturns;
+                if (result == null || result.datasetVersion != datasetVersion) {
+                    long snapshotModification = ForwardReturnsTable.getNewestSnapshotModification();
+                    if (result != null && result.snapshotModification == snapshotModification) {
+                        result = new LoadedForwardReturns(result.table, datasetVersion, snapshotModification);
+                    } else {
+                        ForwardReturnsTable table = ForwardReturnsTable.loadOrBuild((year, month) -> symbolAtGlanceProvider.loadAtGlanceDataAtYear(year, month));
+                        result = new LoadedForwardReturns(table, datasetVersion, snapshotModification);
+                    }
+                    forwardReturns = result;
+                }
+            }
+        }
+        return result.table;
+    }
+
+    record LoadedForwardReturns(ForwardReturnsTable table, long datasetVersion, long snapshotModification) {
+    }
+
     private void initializeHistoricalFile() {
         synchronized (this) {
             if (!isHistoricalFilesInitialized) {
@@ -556,6 +869,22 @@ public class ScreenerController {
         }
     }
 
+    private boolean hasRankedOperation(List<ScreenerOperation> operations) {
+        return operations.stream().anyMatch(operation -> operation.rankGroup != null);
+    }
+
+    private String getColumnName(ScreenerOperation operation) {
+        String readableName = idToDescription.get(operation.id).readableName;
+        if (operation.rankGroup == null) {
+            return readableName;
+        }
+        return readableName + " (" + operation.rankGroup.name().toLowerCase() + " percentile)";
+    }
+
+    public boolean isBlacklisted(String symbol) {
+        return blacklistedStocks.contains(symbol);
+    }
+
     public List<String> getSymbolsInExchanges(List<String> exchangesInput) {
         Set<Exchanges> exchanges = new HashSet<>();
         if (exchangesInput.isEmpty() || exchangesInput.contains("ALL")) {
@@ -569,26 +898,10 @@ public class ScreenerController {
         return new ArrayList<>(DataLoader.provideSymbolsIn(exchanges));
     }
 
-    private double calculateYearsDiff(LocalDate date, LocalDate laterDate) {
+    public double calculateYearsDiff(LocalDate date, LocalDate laterDate) {
         return Math.abs(ChronoUnit.DAYS.between(date, laterDate) / 365.0);
     }
 
-    public Optional<AtGlanceData> getLatestStockData(AtGlanceData stockThen, int endYear, boolean useLatestData) {
-        if (useLatestData) {
-            Optional<AtGlanceData> result = symbolAtGlanceProvider.getAtGlanceData(stockThen.symbol);
-            if (result.isPresent()) {
-                return result;
-            }
-        }
-        for (int i = endYear; i >= 1991; --i) {
-            AtGlanceData data = symbolAtGlanceProvider.loadAtGlanceDataAtYear(i, 1).map(a -> a.get(stockThen.symbol)).orElse(null);
-            if (data != null) {
-                return Optional.of(data);
-            }
-        }
-        return Optional.empty();
-    }
-
     public double calculateAverage(Map<String, BacktestYearInformation> yearResults, Function<BacktestYearInformation, Double> valueSupplier) {
         return yearResults.values().stream().filter(a -> a.investedAmount > 0).mapToDouble(a -> valueSupplier.apply(a)).average().orElse(0.0);
     }
@@ -615,24 +928,6 @@ public class ScreenerController {
         return shareCount;
     }
 
-    private double calculateTotalSharesWithDividendsReinvested(double initialShareCount, int year, int endYear, String symbol) {
-        double shareCount = initialShareCount;
-        for (int i = year + 1; i < endYear; ++i) {
-            Map<String, AtGlanceData> data = symbolAtGlanceProvider.loadAtGlanceDataAtYear(i, 1).orElse(null);
-            if (data != null) {
-                AtGlanceData dataAtYear = data.get(symbol);
-                if (dataAtYear != null && dataAtYear.dividendYield < 100.0) { // data issues
-                    float dividendPaid = dataAtYear.dividendPaid;
-                    shareCount += (dividendPaid * shareCount) / dataAtYear.latestStockPrice;
-                }
-            }
-        }
-        if (!Double.isFinite(shareCount)) {
-            return initialShareCount;
-        }
-        return shareCount;
-    }
-
     public String formatString(Double value) {
         if (value == null) {
             return "-";
@@ -642,15 +937,26 @@ public class ScreenerController {
     }
 
     public void validateRequest(List<ScreenerOperation> operations, List<String> exchanges, HttpServletRequest httpRequest) {
-        if (operations.size() > 20) {
-            throw new ScreenerClientSideException("Maximum of 20 screeners allowed, " + operations.size() + " found");
+        validateRequest(operations, null, exchanges, httpRequest);
+    }
+
+    /**
+     * The expression counts as one screener, it is compiled here so syntax errors are reported as client side errors.
+     */
+    public void validateRequest(List<ScreenerOperation> operations, String expression, List<String> exchanges, HttpServletRequest httpRequest) {
+        int numberOfScreeners = operations.size() + (expression == null ? 0 : 1);
+        if (numberOfScreeners > 20) {
+            throw new ScreenerClientSideException("Maximum of 20 screeners allowed, " + numberOfScreeners + " found");
         }
         if (exchanges.size() > Exchanges.values().length) {
             throw new ScreenerClientSideException("Too many exchanges");
         }
         Optional<DecodedJWT> jwt = loginController.getJwt(httpRequest);
-        if (!jwt.isPresent() && operations.size() > 1) {
-            throw new ScreenerClientSideException("Logged out users can add maximum of 1 screeners, " + operations.size() + " found");
+        if (!jwt.isPresent() && numberOfScreeners > 1) {
+            throw new ScreenerClientSideException("Logged out users can add maximum of 1 screeners, " + numberOfScreeners + " found");
+        }
+        if (expression != null) {
+            compileExpression(expression);
         }
 
         for (var element : operations) {
@@ -674,7 +980,37 @@ public class ScreenerController {
             }
 
             element.screenerStrategy = findScreenerStrategy(element.operation); // cache
+
+            element.rankGroup = null;
+            if (element.rankWithin != null) {
+                try {
+                    element.rankGroup = RankGroup.valueOf(element.rankWithin.toUpperCase());
+                } catch (IllegalArgumentException e) {
+                    throw new ScreenerClientSideException(element.rankWithin + " is not a valid rank group, expected one of " + Arrays.toString(RankGroup.values()));
+                }
+            }
+        }
+    }
+
+    /**
+     * Compiled form of the screener expression, cached by its text.
+     */
+    public ScreenerExpression compileExpression(String expression) {
+        return compiledExpressions.get(expression.strip(), expressionCompiler::compile);
+    }
+
+    /**
+     * Primitive accessor of the screener element with the given id, null if there is no such element.
+     */
+    public NumericExpression getValueAccessor(String id) {
+        ScreenerDescription description = idToDescription.get(id);
+        if (description == null || description.data == null) {
+            return null;
+        }
+        if (description.source.equals(Source.METHOD)) {
+            return glance -> unreflectiveGetMethod(id, glance);
         }
+        return glance -> unreflectiveGetField(id, glance);
     }
 
     public double unreflectGetValue(AtGlanceData glance, ScreenerOperation operation, ScreenerDescription screenerDescriptor) {
@@ -0,0 +1,130 @@
+package com.helospark.financialdata.management.screener;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Writes screener matches one row at a time, so an export never holds more than the current row.
+ */
+public abstract class ScreenerExportWriter {
+    protected final Writer writer;
+    protected final List<String> columns;
+
+    protected ScreenerExportWriter(Writer writer, List<String> columns) {
+        this.writer = writer;
+        this.columns = columns;
+    }
+
+    /**
+     * @param format csv or ndjson
+     */
+    public static ScreenerExportWriter create(String format, Writer writer, List<String> columns) {
+        switch (format.toLowerCase()) {
+            case "csv":
+                return new CsvWriter(writer, columns);
+            case "ndjson":
+                return new NdjsonWriter(writer, columns);
+            default:
+                throw new ScreenerClientSideException(format + " is not a valid export format, expected csv or ndjson");
+        }
+    }
+
+    public abstract String getContentType();
+
+    public abstract String getFileExtension();
+
+    public abstract void writeHeader() throws IOException;
+
+    /**
+     * @param values NaN if the value is missing
+     */
+    public abstract void writeRow(String symbol, String companyName, double[] values) throws IOException;
+
+    static class CsvWriter extends ScreenerExportWriter {
+
+        public CsvWriter(Writer writer, List<String> columns) {
+            super(writer, columns);
+        }
+
+        @Override
+        public String getContentType() {
+            return "text/csv";
+        }
+
+        @Override
+        public String getFileExtension() {
+            return "csv";
+        }
+
+        @Override
+        public void writeHeader() throws IOException {
+            writer.write("Symbol,Company");
+            for (var column : columns) {
+                writer.write(',');
+                writer.write(escape(column));
+            }
+            writer.write('\n');
+        }
+
+        @Override
+        public void writeRow(String symbol, String companyName, double[] values) throws IOException {
+            writer.write(escape(symbol));
+            writer.write(',');
+            writer.write(escape(companyName == null ? "" : companyName));
+            for (double value : values) {
+                writer.write(',');
+                if (Double.isFinite(value)) {
+                    writer.write(Double.toString(value));
+                }
+            }
+            writer.write('\n');
+        }
+
+        private String escape(String value) {
+            if (value.indexOf(',') == -1 && value.indexOf('"') == -1 && value.indexOf('\n') == -1) {
+                return value;
+            }
+            return '"' + value.replace("\"", "\"\"") + '"';
+        }
+    }
+
+    static class NdjsonWriter extends ScreenerExportWriter {
+        private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+        public NdjsonWriter(Writer writer, List<String> columns) {
+            super(writer, columns);
+        }
+
+        @Override
+        public String getContentType() {
+            return "application/x-ndjson";
+        }
+
+        @Override
+        public String getFileExtension() {
+            return "ndjson";
+        }
+
+        @Override
+        public void writeHeader() {
+        }
+
+        @Override
+        public void writeRow(String symbol, String companyName, double[] values) throws IOException {
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("Symbol", symbol);
+            row.put("Company", companyName);
+            for (int i = 0; i < values.length; ++i) {
+                row.put(columns.get(i), Double.isFinite(values[i]) ? values[i] : null);
+            }
+            writer.write(OBJECT_MAPPER.writeValueAsString(row));
+            writer.write('\n');
+        }
+    }
+
+}
@@ -0,0 +1,75 @@
+package com.helospark.financialdata.management.screener;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.helospark.financialdata.service.PercentileRankTable;
+import com.helospark.financialdata.util.glance.AtGlanceData;
+
+/**
+ * Every stock matching a screen in the screener's order, evaluated once on one version of the data and never modified afterwards.
+ * Pages are slices of it, addressed by an opaque cursor of the list id and the page's offset, so every page is consistent with the first
+ * one and costs O(page size) instead of a new scan.
+ */
+public class ScreenerMatchList {
+    final String id;
+    /** Date and normalized screen the list was created for */
+    final String screenKey;
+    final long datasetVersion;
+    final List<ScreenerOperation> operations;
+    final PercentileRankTable ranks;
+    final AtGlanceData[] matches;
+    private final Map<String, Integer> symbolToPosition = new HashMap<>();
+
+    public ScreenerMatchList(String id, String screenKey, long datasetVersion, List<ScreenerOperation> operations, PercentileRankTable ranks, List<AtGlanceData> matches) {
+        this.id = id;
+        this.screenKey = screenKey;
+        this.datasetVersion = datasetVersion;
+        this.operations = List.copyOf(operations);
+        this.ranks = ranks;
+        this.matches = matches.toArray(new AtGlanceData[0]);
+        for (int i = 0; i < this.matches.length; ++i) {
+            symbolToPosition.put(this.matches[i].symbol, i);
+        }
+    }
+
+    public int size() {
+        return matches.length;
+    }
+
+    /**
+     * Position of the symbol in the list, -1 if it's not a match.
+     */
+    public int getPosition(String symbol) {
+        return symbolToPosition.getOrDefault(symbol, -1);
+    }
+
+    public String createCursor(int offset) {
+        String cursor = id + ":" + offset;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(cursor.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decodes a cursor created by createCursor into the list id and offset.
+     */
+    public static Cursor parseCursor(String cursor) {
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = decoded.lastIndexOf(':');
+            int offset = Integer.parseInt(decoded.substring(separator + 1));
+            if (separator <= 0 || offset < 0) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+            return new Cursor(decoded.substring(0, separator), offset);
+        } catch (IllegalArgumentException e) {
+            throw new ScreenerClientSideException("Invalid cursor");
+        }
+    }
+
+    public record Cursor(String matchListId, int offset) {
+    }
+
+}
@@ -2,19 +2,24 @@ package com.helospark.financialdata.management.screener;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.helospark.financialdata.management.screener.strategy.ScreenerStrategy;
+import com.helospark.financialdata.service.PercentileRankTable.RankGroup;
 
 public class ScreenerOperation {
     public String id;
     public String operation;
     public Double number1;
     public Double number2;
+    /** SECTOR, INDUSTRY or EXCHANGE to screen on the percentile rank of the value within that group, null to screen on the value */
+    public String rankWithin;
 
     @JsonIgnore
     public ScreenerStrategy screenerStrategy;
+    @JsonIgnore
+    public RankGroup rankGroup;
 
     @Override
     public String toString() {
-        return id + " " + operation + " " + number1;
+        return id + (rankWithin == null ? "" : " rank within " + rankWithin) + " " + operation + " " + number1;
     }
 
 }
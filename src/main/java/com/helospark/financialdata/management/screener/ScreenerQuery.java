@@ -8,12 +8,13 @@ public class ScreenerQuery {
     public String id;
     @NotNull
     public List<ScreenerOperation> operations;
+    public String expression;
 
     public List<String> exchanges;
 
     @Override
     public String toString() {
-        return "ScreenerRequest [id=" + id + ", operations=" + operations + ", exchanges=" + exchanges + "]";
+        return "ScreenerRequest [id=" + id + ", operations=" + operations + ", expression=" + expression + ", exchanges=" + exchanges + "]";
     }
 
 }
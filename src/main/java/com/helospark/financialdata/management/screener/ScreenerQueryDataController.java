@@ -42,7 +42,7 @@ public class ScreenerQueryDataController {
             throw new ScreenerClientSideException("This feature require login");
         }
 
-        screenerController.validateRequest(query.operations, query.exchanges, httpRequest);
+        screenerController.validateRequest(query.operations, query.expression, query.exchanges, httpRequest);
         if (query.id == null) {
             throw new ScreenerClientSideException("Screener name is mandatory");
         }
@@ -8,17 +8,22 @@ import jakarta.validation.constraints.NotNull;
 public class ScreenerRequest {
     @NotNull
     public List<ScreenerOperation> operations;
+    /** Optional formula over the screener elements, matched together with the operations, see ScreenerExpressionCompiler */
+    public String expression;
 
     public List<String> exchanges;
 
     public String lastItem;
     public String prevItem;
+    /** Opaque position in an earlier result from ScreenerResult.nextCursor or previousCursor, takes precedence over lastItem and prevItem */
+    public String cursor;
 
+    /** Screen as of this date, snapped to the quarterly snapshot dates for free and logged out users */
     public LocalDate onDate;
 
     @Override
     public String toString() {
-        return "ScreenerRequest [operations=" + operations + ", exchanges=" + exchanges + ", lastItem=" + lastItem + ", prevItem=" + prevItem + ", onDate=" + onDate + "]";
+        return "ScreenerRequest [operations=" + operations + ", expression=" + expression + ", exchanges=" + exchanges + ", lastItem=" + lastItem + ", prevItem=" + prevItem + ", cursor=" + cursor + ", onDate=" + onDate + "]";
     }
 
 }
@@ -0,0 +1,18 @@
+package com.helospark.financialdata.management.screener.domain;
+
+public class BacktestJobStatus {
+    public String jobId;
+    public BacktestJobState state;
+    public int finishedPeriods;
+    public int totalPeriods;
+    public double progressPercent;
+    public BacktestResult result;
+    public String errorMessage;
+
+    public enum BacktestJobState {
+        QUEUED,
+        RUNNING,
+        DONE,
+        FAILED
+    }
+}
@@ -10,11 +10,13 @@ public class BacktestRequest extends ScreenerRequest {
     public int endYear;
     public boolean addResultTable = true;
     public List<String> excludedStocks = new ArrayList<>();
+    /** Optional RebalanceFrequency name, yearly (or quarterly when backtest.multimonth is set) if missing */
+    public String rebalance;
 
     @Override
     public String toString() {
-        return "BacktestRequest [startYear=" + startYear + ", endYear=" + endYear + ", operations=" + operations + ", exchanges=" + exchanges + ", lastItem=" + lastItem + ", prevItem=" + prevItem
-                + "]";
+        return "BacktestRequest [startYear=" + startYear + ", endYear=" + endYear + ", operations=" + operations + ", expression=" + expression + ", exchanges=" + exchanges + ", lastItem=" + lastItem + ", prevItem=" + prevItem
+                + ", rebalance=" + rebalance + "]";
     }
 
 }
@@ -0,0 +1,17 @@
+package com.helospark.financialdata.management.screener.domain;
+
+/**
+ * Return of a single stock bought at a backtest period and held until the end of the backtest, compared to S&P500.
+ */
+public class BacktestStockReturn {
+    public String symbolNow;
+    public double yearAgoExact;
+
+    public double stockPriceThen;
+    public double stockPriceNow;
+    public double finalScreenerCost;
+
+    public double sp500PriceThen;
+    public double sp500PriceNow;
+    public double finalSpCost;
+}
@@ -0,0 +1,47 @@
+package com.helospark.financialdata.management.screener.domain;
+
+import java.time.LocalDate;
+
+/**
+ * How often a backtest buys the matching stocks again.
+ */
+public enum RebalanceFrequency {
+    YEARLY,
+    QUARTERLY,
+    MONTHLY,
+    WEEKLY;
+
+    public LocalDate next(LocalDate date) {
+        switch (this) {
+            case YEARLY:
+                return date.plusYears(1);
+            case QUARTERLY:
+                return date.plusMonths(3);
+            case MONTHLY:
+                return date.plusMonths(1);
+            default:
+                return date.plusWeeks(1);
+        }
+    }
+
+    /**
+     * Whether every rebalance date is on the quarterly grid of the stored snapshots, other dates build the data of the whole universe.
+     */
+    public boolean isOnSnapshotDates() {
+        return this == YEARLY || this == QUARTERLY;
+    }
+
+    /**
+     * Label of the period starting at the date in the backtest result.
+     */
+    public String getLabel(LocalDate date) {
+        switch (this) {
+            case YEARLY:
+                return String.valueOf(date.getYear());
+            case QUARTERLY:
+                return String.format("%04d-%02d", date.getYear(), date.getMonthValue());
+            default:
+                return date.toString();
+        }
+    }
+}
@@ -7,6 +7,9 @@ import java.util.Map;
 public class ScreenerResult {
     public boolean hasMoreResults;
     public boolean hasPreviousResults;
+    public String nextCursor;
+    public String previousCursor;
+    public int numberOfMatches;
     public List<String> columns = new ArrayList<>();
     public List<Map<String, String>> portfolio = new ArrayList<>();
 }
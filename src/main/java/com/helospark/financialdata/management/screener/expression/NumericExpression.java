@@ -0,0 +1,13 @@
+package com.helospark.financialdata.management.screener.expression;
+
+import com.helospark.financialdata.util.glance.AtGlanceData;
+
+/**
+ * Compiled numeric part of a screener formula.
+ */
+@FunctionalInterface
+public interface NumericExpression {
+
+    public double evaluate(AtGlanceData data);
+
+}
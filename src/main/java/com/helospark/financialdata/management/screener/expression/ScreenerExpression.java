@@ -0,0 +1,13 @@
+package com.helospark.financialdata.management.screener.expression;
+
+import com.helospark.financialdata.util.glance.AtGlanceData;
+
+/**
+ * Compiled screener formula, immutable and safe to share between threads.
+ */
+@FunctionalInterface
+public interface ScreenerExpression {
+
+    public boolean matches(AtGlanceData data);
+
+}
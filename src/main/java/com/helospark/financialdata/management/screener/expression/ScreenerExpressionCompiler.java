@@ -0,0 +1,424 @@
+package com.helospark.financialdata.management.screener.expression;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+import com.helospark.financialdata.management.screener.ScreenerClientSideException;
+
+/**
+ * Compiles screener formulas over the @ScreenerElement ids of AtGlanceData, for example
+ * <code>fcf_yield &gt; 2 * dividendYield AND (roic - 10 &gt; 5 OR NOT pe BETWEEN 0 AND 15)</code>.
+ * <p>
+ * Supports + - * / with parentheses, abs, min, max, the comparisons &gt; &gt;= &lt; &lt;= = != and BETWEEN, and AND, OR, NOT (also &amp;&amp; || !).
+ * The formula is parsed once into a tree of lambdas that call their children directly, with constant subexpressions folded. Field reads use
+ * the primitive accessors of the screener, so evaluating a stock allocates nothing.
+ * <p>
+ * A comparison with a missing (NaN) value is unknown, which is neither true nor false, so also <code>NOT pe BETWEEN 0 AND 15</code> is false
+ * for a stock without PE. For this every condition is compiled together with its negation, and NOT swaps the two.
+ */
+public class ScreenerExpressionCompiler {
+    public static final int MAX_EXPRESSION_LENGTH = 1000;
+
+    private final Function<String, NumericExpression> fieldAccessorProvider;
+
+    /**
+     * @param fieldAccessorProvider accessor of a screener element by id, null if the id is unknown
+     */
+    public ScreenerExpressionCompiler(Function<String, NumericExpression> fieldAccessorProvider) {
+        this.fieldAccessorProvider = fieldAccessorProvider;
+    }
+
+    public ScreenerExpression compile(String formula) {
+        if (formula.length() > MAX_EXPRESSION_LENGTH) {
+            throw new ScreenerClientSideException("Maximum expression length is " + MAX_EXPRESSION_LENGTH + " characters");
+        }
+        Parser parser = new Parser(tokenize(formula));
+        Operand result = parser.parseOr();
+        if (parser.peek().type != TokenType.END) {
+            throw parser.error("Unexpected '" + parser.peek().text + "'");
+        }
+        return result.asCondition(0);
+    }
+
+    private static List<Token> tokenize(String formula) {
+        List<Token> result = new ArrayList<>();
+        int i = 0;
+        while (i < formula.length()) {
+            char c = formula.charAt(i);
+            int start = i;
+            if (Character.isWhitespace(c)) {
+                ++i;
+            } else if (Character.isDigit(c) || (c == '.' && i + 1 < formula.length() && Character.isDigit(formula.charAt(i + 1)))) {
+                while (i < formula.length() && (Character.isDigit(formula.charAt(i)) || formula.charAt(i) == '.')) {
+                    ++i;
+                }
+                result.add(new Token(TokenType.NUMBER, formula.substring(start, i), start));
+            } else if (Character.isLetter(c) || c == '_') {
+                while (i < formula.length() && (Character.isLetterOrDigit(formula.charAt(i)) || formula.charAt(i) == '_')) {
+                    ++i;
+                }
+                result.add(new Token(TokenType.IDENTIFIER, formula.substring(start, i), start));
+            } else {
+                String twoCharacters = formula.substring(i, Math.min(i + 2, formula.length()));
+                if (List.of(">=", "<=", "==", "!=", "&&", "||").contains(twoCharacters)) {
+                    i += 2;
+                    result.add(new Token(TokenType.OPERATOR, twoCharacters, start));
+                } else if ("+-*/()<>=!,".indexOf(c) != -1) {
+                    ++i;
+                    result.add(new Token(TokenType.OPERATOR, String.valueOf(c), start));
+                } else {
+                    throw new ScreenerClientSideException("Unexpected character '" + c + "' at position " + start + " of the expression");
+                }
+            }
+        }
+        result.add(new Token(TokenType.END, "end of expression", formula.length()));
+        return result;
+    }
+
+    class Parser {
+        private final List<Token> tokens;
+        private int index = 0;
+
+        public Parser(List<Token> tokens) {
+            this.tokens = tokens;
+        }
+
+        public Operand parseOr() {
+            Operand left = parseAnd();
+            while (acceptKeyword("OR") || accept("||")) {
+                int position = previous().position;
+                Operand a = left.checkCondition(position);
+                Operand b = parseAnd().checkCondition(position);
+                left = Operand.condition(data -> a.condition.matches(data) || b.condition.matches(data),
+                        data -> a.negated.matches(data) && b.negated.matches(data));
+            }
+            return left;
+        }
+
+        private Operand parseAnd() {
+            Operand left = parseNot();
+            while (acceptKeyword("AND") || accept("&&")) {
+                int position = previous().position;
+                Operand a = left.checkCondition(position);
+                Operand b = parseNot().checkCondition(position);
+                left = Operand.condition(data -> a.condition.matches(data) && b.condition.matches(data),
+                        data -> a.negated.matches(data) || b.negated.matches(data));
+            }
+            return left;
+        }
+
+        private Operand parseNot() {
+            if (acceptKeyword("NOT") || accept("!")) {
+                Operand a = parseNot().checkCondition(previous().position);
+                return Operand.condition(a.negated, a.condition);
+            }
+            return parseComparison();
+        }
+
+        private Operand parseComparison() {
+            Operand left = parseSum();
+            if (acceptKeyword("BETWEEN")) {
+                int position = previous().position;
+                NumericExpression value = left.asNumber(position);
+                NumericExpression low = parseSum().asNumber(position);
+                if (!acceptKeyword("AND")) {
+                    throw error("Expected AND in BETWEEN");
+                }
+                NumericExpression high = parseSum().asNumber(position);
+                return Operand.condition(data -> {
+                    double v = value.evaluate(data);
+                    return v >= low.evaluate(data) && v <= high.evaluate(data);
+                }, data -> {
+                    double v = value.evaluate(data);
+                    return v < low.evaluate(data) || v > high.evaluate(data);
+                });
+            }
+            Token token = peek();
+            if (token.type == TokenType.OPERATOR && List.of(">", ">=", "<", "<=", "=", "==", "!=").contains(token.text)) {
+                ++index;
+                return compare(token, left.asNumber(token.position), parseSum());
+            }
+            return left;
+        }
+
+        private Operand compare(Token operator, NumericExpression a, Operand right) {
+            if (right.isConstant()) {
+                double b = right.constant;
+                ScreenerExpression equal = data -> a.evaluate(data) == b;
+                ScreenerExpression notEqual = data -> {
+                    double v = a.evaluate(data);
+                    return v < b || v > b;
+                };
+                ScreenerExpression greater = data -> a.evaluate(data) > b;
+                ScreenerExpression greaterOrEqual = data -> a.evaluate(data) >= b;
+                ScreenerExpression less = data -> a.evaluate(data) < b;
+                ScreenerExpression lessOrEqual = data -> a.evaluate(data) <= b;
+                switch (operator.text) {
+                    case ">":
+                        return Operand.condition(greater, lessOrEqual);
+                    case ">=":
+                        return Operand.condition(greaterOrEqual, less);
+                    case "<":
+                        return Operand.condition(less, greaterOrEqual);
+                    case "<=":
+                        return Operand.condition(lessOrEqual, greater);
+                    case "!=":
+                        return Operand.condition(notEqual, equal);
+                    default:
+                        return Operand.condition(equal, notEqual);
+                }
+            }
+            NumericExpression b = right.asNumber(operator.position);
+            ScreenerExpression equal = data -> a.evaluate(data) == b.evaluate(data);
+            ScreenerExpression notEqual = data -> {
+                double v = a.evaluate(data);
+                double w = b.evaluate(data);
+                return v < w || v > w;
+            };
+            ScreenerExpression greater = data -> a.evaluate(data) > b.evaluate(data);
+            ScreenerExpression greaterOrEqual = data -> a.evaluate(data) >= b.evaluate(data);
+            ScreenerExpression less = data -> a.evaluate(data) < b.evaluate(data);
+            ScreenerExpression lessOrEqual = data -> a.evaluate(data) <= b.evaluate(data);
+            switch (operator.text) {
+                case ">":
+                    return Operand.condition(greater, lessOrEqual);
+                case ">=":
+                    return Operand.condition(greaterOrEqual, less);
+                case "<":
+                    return Operand.condition(less, greaterOrEqual);
+                case "<=":
+                    return Operand.condition(lessOrEqual, greater);
+                case "!=":
+                    return Operand.condition(notEqual, equal);
+                default:
+                    return Operand.condition(equal, notEqual);
+            }
+        }
+
+        private Operand parseSum() {
+            Operand left = parseProduct();
+            while (peek().type == TokenType.OPERATOR && (peek().text.equals("+") || peek().text.equals("-"))) {
+                Token operator = tokens.get(index++);
+                left = arithmetic(operator, left, parseProduct());
+            }
+            return left;
+        }
+
+        private Operand parseProduct() {
+            Operand left = parseUnary();
+            while (peek().type == TokenType.OPERATOR && (peek().text.equals("*") || peek().text.equals("/"))) {
+                Token operator = tokens.get(index++);
+                left = arithmetic(operator, left, parseUnary());
+            }
+            return left;
+        }
+
+        private Operand arithmetic(Token operator, Operand left, Operand right) {
+            NumericExpression a = left.asNumber(operator.position);
+            NumericExpression b = right.asNumber(operator.position);
+            Operand result;
+            switch (operator.text) {
+                case "+":
+                    result = Operand.number(data -> a.evaluate(data) + b.evaluate(data));
+                    break;
+                case "-":
+                    result = Operand.number(data -> a.evaluate(data) - b.evaluate(data));
+                    break;
+                case "*":
+                    result = Operand.number(data -> a.evaluate(data) * b.evaluate(data));
+                    break;
+                default:
+                    result = Operand.number(data -> a.evaluate(data) / b.evaluate(data));
+            }
+            return (left.isConstant() && right.isConstant()) ? result.fold() : result;
+        }
+
+        private Operand parseUnary() {
+            if (accept("-")) {
+                Operand operand = parseUnary();
+                NumericExpression a = operand.asNumber(previous().position);
+                Operand result = Operand.number(data -> -a.evaluate(data));
+                return operand.isConstant() ? result.fold() : result;
+            }
+            return parsePrimary();
+        }
+
+        private Operand parsePrimary() {
+            Token token = tokens.get(index++);
+            if (token.type == TokenType.NUMBER) {
+                try {
+                    return Operand.constant(Double.parseDouble(token.text));
+                } catch (NumberFormatException e) {
+                    throw new ScreenerClientSideException("Invalid number '" + token.text + "' at position " + token.position + " of the expression");
+                }
+            }
+            if (token.type == TokenType.OPERATOR && token.text.equals("(")) {
+                Operand result = parseOr();
+                expect(")");
+                return result;
+            }
+            if (token.type == TokenType.IDENTIFIER && accept("(")) {
+                return parseFunction(token);
+            }
+            if (token.type == TokenType.IDENTIFIER) {
+                NumericExpression accessor = fieldAccessorProvider.apply(token.text);
+                if (accessor == null) {
+                    throw new ScreenerClientSideException("'" + token.text + "' at position " + token.position + " is not a valid screener element");
+                }
+                return Operand.number(accessor);
+            }
+            --index;
+            throw error("Unexpected '" + token.text + "'");
+        }
+
+        private Operand parseFunction(Token name) {
+            List<Operand> arguments = new ArrayList<>();
+            if (!accept(")")) {
+                do {
+                    arguments.add(parseSum());
+                } while (accept(","));
+                expect(")");
+            }
+            boolean constant = arguments.stream().allMatch(a -> a.isConstant());
+            Operand result;
+            switch (name.text.toLowerCase()) {
+                case "abs": {
+                    checkArgumentCount(name, arguments, 1);
+                    NumericExpression a = arguments.get(0).asNumber(name.position);
+                    result = Operand.number(data -> Math.abs(a.evaluate(data)));
+                    break;
+                }
+                case "min": {
+                    checkArgumentCount(name, arguments, 2);
+                    NumericExpression a = arguments.get(0).asNumber(name.position);
+                    NumericExpression b = arguments.get(1).asNumber(name.position);
+                    result = Operand.number(data -> Math.min(a.evaluate(data), b.evaluate(data)));
+                    break;
+                }
+                case "max": {
+                    checkArgumentCount(name, arguments, 2);
+                    NumericExpression a = arguments.get(0).asNumber(name.position);
+                    NumericExpression b = arguments.get(1).asNumber(name.position);
+                    result = Operand.number(data -> Math.max(a.evaluate(data), b.evaluate(data)));
+                    break;
+                }
+                default:
+                    throw new ScreenerClientSideException("Unknown function '" + name.text + "' at position " + name.position + " of the expression");
+            }
+            return constant ? result.fold() : result;
+        }
+
+        private void checkArgumentCount(Token name, List<Operand> arguments, int expected) {
+            if (arguments.size() != expected) {
+                throw new ScreenerClientSideException(name.text + " expects " + expected + " arguments, " + arguments.size() + " found at position " + name.position);
+            }
+        }
+
+        private boolean accept(String operator) {
+            if (peek().type == TokenType.OPERATOR && peek().text.equals(operator)) {
+                ++index;
+                return true;
+            }
+            return false;
+        }
+
+        private boolean acceptKeyword(String keyword) {
+            if (peek().type == TokenType.IDENTIFIER && peek().text.equalsIgnoreCase(keyword)) {
+                ++index;
+                return true;
+            }
+            return false;
+        }
+
+        private void expect(String operator) {
+            if (!accept(operator)) {
+                throw error("Expected '" + operator + "'");
+            }
+        }
+
+        private Token peek() {
+            return tokens.get(index);
+        }
+
+        private Token previous() {
+            return tokens.get(index - 1);
+        }
+
+        private ScreenerClientSideException error(String message) {
+            return new ScreenerClientSideException(message + " at position " + peek().position + " of the expression");
+        }
+    }
+
+    /**
+     * Either a number or a condition, parentheses can contain both, so the type is only checked where it is used.
+     */
+    static class Operand {
+        final NumericExpression number;
+        final ScreenerExpression condition;
+        /** True where the condition is false, both are false where the condition is unknown due to a missing value */
+        final ScreenerExpression negated;
+        /** Value if the number does not depend on the stock, NaN otherwise */
+        final double constant;
+
+        private Operand(NumericExpression number, ScreenerExpression condition, ScreenerExpression negated, double constant) {
+            this.number = number;
+            this.condition = condition;
+            this.negated = negated;
+            this.constant = constant;
+        }
+
+        static Operand number(NumericExpression number) {
+            return new Operand(number, null, null, Double.NaN);
+        }
+
+        static Operand constant(double value) {
+            return new Operand(data -> value, null, null, value);
+        }
+
+        static Operand condition(ScreenerExpression condition, ScreenerExpression negated) {
+            return new Operand(null, condition, negated, Double.NaN);
+        }
+
+        boolean isConstant() {
+            return !Double.isNaN(constant);
+        }
+
+        /**
+         * Evaluates the number once, only valid if it doesn't read any field.
+         */
+        Operand fold() {
+            double value = number.evaluate(null);
+            return Double.isNaN(value) ? this : constant(value);
+        }
+
+        NumericExpression asNumber(int position) {
+            if (number == null) {
+                throw new ScreenerClientSideException("Expected a number, but found a condition near position " + position + " of the expression");
+            }
+            return number;
+        }
+
+        ScreenerExpression asCondition(int position) {
+            return checkCondition(position).condition;
+        }
+
+        Operand checkCondition(int position) {
+            if (condition == null) {
+                throw new ScreenerClientSideException("Expected a condition, but found a number near position " + position + " of the expression");
+            }
+            return this;
+        }
+    }
+
+    enum TokenType {
+        NUMBER,
+        IDENTIFIER,
+        OPERATOR,
+        END
+    }
+
+    record Token(TokenType type, String text, int position) {
+    }
+
+}
@@ -0,0 +1,137 @@
+package com.helospark.financialdata.management.user;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.helospark.financialdata.management.user.repository.User;
+import com.helospark.financialdata.management.user.repository.UserRepository;
+import com.helospark.financialdata.management.watchlist.repository.JobLastRunData;
+import com.helospark.financialdata.management.watchlist.repository.JobLastRunRepository;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Runs per user batch work over a parallel segmented scan of the User table.
+ * <p>
+ * Each segment is scanned and processed on a bounded worker pool, users are handed to the processor in batches.
+ * Finished segments are checkpointed in JobLastRunData (as jobName_segment_N with the run date), so a run interrupted
+ * by a crash or restart continues with the unfinished segments. A segment interrupted in the middle is processed again,
+ * so processors should skip users already done for the run date.
+ */
+@Component
+public class UserBatchJobRunner {
+    private static final Logger LOGGER = LoggerFactory.getLogger(UserBatchJobRunner.class);
+
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private JobLastRunRepository jobLastRunRepository;
+
+    @Value("${user-batch-job.segments:8}")
+    private int totalSegments;
+    @Value("${user-batch-job.batch-size:25}")
+    private int batchSize;
+
+    private ExecutorService workerPool;
+
+    @Value("${user-batch-job.threads:4}")
+    public void setThreads(int threads) {
+        workerPool = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "user-batch-job");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void destroy() {
+        workerPool.shutdownNow();
+    }
+
+    public interface UserBatchProcessor {
+        void processBatch(List<User> users, LocalDate runDate);
+    }
+
+    /**
+     * Continues the unfinished run if there is one, otherwise starts a new one with the given date.
+     * @return the run date, completes when all segments are done
+     */
+    public CompletableFuture<LocalDate> run(String jobName, LocalDate currentDate, UserBatchProcessor processor) {
+        LocalDate runDate = findUnfinishedRun(jobName).orElse(currentDate);
+        jobLastRunRepository.save(new JobLastRunData(getInProgressName(jobName), runDate));
+
+        List<CompletableFuture<Void>> segmentFutures = new ArrayList<>();
+        for (int segment = 0; segment < totalSegments; ++segment) {
+            String segmentName = getSegmentName(jobName, segment);
+            Optional<JobLastRunData> checkpoint = jobLastRunRepository.readJobLastRanByName(segmentName);
+            if (checkpoint.isPresent() && checkpoint.get().getDate().equals(runDate)) {
+                LOGGER.info("Segment {} of {} already done for {}", segment, jobName, runDate);
+                continue;
+            }
+            int currentSegment = segment;
+            segmentFutures.add(CompletableFuture.runAsync(() -> {
+                processSegment(currentSegment, runDate, processor);
+                jobLastRunRepository.save(new JobLastRunData(segmentName, runDate));
+            }, workerPool));
+        }
+
+        return CompletableFuture.allOf(segmentFutures.toArray(new CompletableFuture<?>[0]))
+                .thenApply(ignored -> {
+                    jobLastRunRepository.save(new JobLastRunData(jobName, runDate));
+                    return runDate;
+                });
+    }
+
+    private void processSegment(int segment, LocalDate runDate, UserBatchProcessor processor) {
+        long start = System.currentTimeMillis();
+        int processed = 0;
+        List<User> batch = new ArrayList<>(batchSize);
+        for (var user : userRepository.scanSegment(segment, totalSegments)) {
+            batch.add(user);
+            if (batch.size() >= batchSize) {
+                processor.processBatch(batch, runDate);
+                processed += batch.size();
+                batch = new ArrayList<>(batchSize);
+            }
+        }
+        if (!batch.isEmpty()) {
+            processor.processBatch(batch, runDate);
+            processed += batch.size();
+        }
+        LOGGER.info("Processed segment {} with {} users in {} ms", segment, processed, (System.currentTimeMillis() - start));
+    }
+
+    private Optional<LocalDate> findUnfinishedRun(String jobName) {
+        Optional<LocalDate> inProgress = jobLastRunRepository.readJobLastRanByName(getInProgressName(jobName)).map(data -> data.getDate());
+        Optional<LocalDate> lastFinished = jobLastRunRepository.readJobLastRanByName(jobName).map(data -> data.getDate());
+
+        if (inProgress.isPresent() && (lastFinished.isEmpty() || inProgress.get().isAfter(lastFinished.get()))) {
+            return inProgress;
+        }
+        return Optional.empty();
+    }
+
+    public boolean hasUnfinishedRun(String jobName) {
+        return findUnfinishedRun(jobName).isPresent();
+    }
+
+    private String getInProgressName(String jobName) {
+        return jobName + "_in_progress";
+    }
+
+    private String getSegmentName(String jobName, int segment) {
+        return jobName + "_segment_" + segment;
+    }
+
+}
@@ -30,4 +30,13 @@ public class UserRepository {
         return mapper.scan(User.class, new DynamoDBScanExpression());
     }
 
+    /**
+     * One segment of a parallel scan, the returned list lazily loads pages while iterated.
+     */
+    public List<User> scanSegment(int segment, int totalSegments) {
+        return mapper.scan(User.class, new DynamoDBScanExpression()
+                .withSegment(segment)
+                .withTotalSegments(totalSegments));
+    }
+
 }
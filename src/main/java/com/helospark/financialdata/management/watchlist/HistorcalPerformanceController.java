@@ -1,7 +1,5 @@
 package com.helospark.financialdata.management.watchlist;
 
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 import java.util.function.Function;
@@ -20,10 +18,7 @@ import com.auth0.jwt.interfaces.DecodedJWT;
 import com.helospark.financialdata.domain.SimpleDataElement;
 import com.helospark.financialdata.management.user.GenericResponseAccountResult;
 import com.helospark.financialdata.management.user.LoginController;
-import com.helospark.financialdata.management.watchlist.repository.MessageCompresser;
-import com.helospark.financialdata.management.watchlist.repository.PortfolioPerformanceHistory;
-import com.helospark.financialdata.management.watchlist.repository.PortfolioPerformanceHistoryElement;
-import com.helospark.financialdata.management.watchlist.repository.PortfolioPerformanceHistoryRepository;
+import com.helospark.financialdata.management.watchlist.PortfolioHistoryAnalyticsService.PortfolioHistoryAnalytics;
 
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
@@ -33,65 +28,42 @@ import jakarta.servlet.http.HttpServletResponse;
 public class HistorcalPerformanceController {
     private static final Logger LOGGER = LoggerFactory.getLogger(HistorcalPerformanceController.class);
 
-    @Autowired
-    private PortfolioPerformanceHistoryRepository portfolioHistoricalRepository;
     @Autowired
     private LoginController loginController;
     @Autowired
-    private MessageCompresser messageCompresser;
+    private PortfolioHistoryAnalyticsService portfolioHistoryAnalyticsService;
 
     @GetMapping("/eps")
     public List<SimpleDataElement> getEps(HttpServletRequest request, HttpServletResponse response) {
-        return getSimplePortfolioResult(request, element -> element.getEps());
+        return getSimplePortfolioResult(request, analytics -> analytics.eps);
     }
 
     @GetMapping("/fcf")
     public List<SimpleDataElement> getFcf(HttpServletRequest request, HttpServletResponse response) {
-        return getSimplePortfolioResult(request, element -> element.getFcf());
+        return getSimplePortfolioResult(request, analytics -> analytics.fcf);
     }
 
     @GetMapping("/total")
     public List<SimpleDataElement> getTotal(HttpServletRequest request, HttpServletResponse response) {
-        return getSimplePortfolioResult(request, element -> element.getTotal());
+        return getSimplePortfolioResult(request, analytics -> analytics.total);
     }
 
     @GetMapping("/equity")
     public List<SimpleDataElement> getEquity(HttpServletRequest request, HttpServletResponse response) {
-        return getSimplePortfolioResult(request, element -> element.getTotalEquity());
+        return getSimplePortfolioResult(request, analytics -> analytics.equity);
     }
 
     @GetMapping("/number-of-holdings")
     public List<SimpleDataElement> getNumberOfHoldings(HttpServletRequest request, HttpServletResponse response) {
-        return getSimplePortfolioResult(request, element -> (double) element.getHoldings().size());
+        return getSimplePortfolioResult(request, analytics -> analytics.numberOfHoldings);
     }
 
-    public List<SimpleDataElement> getSimplePortfolioResult(HttpServletRequest request, Function<PortfolioPerformanceHistoryElement, Double> function) {
+    public List<SimpleDataElement> getSimplePortfolioResult(HttpServletRequest request, Function<PortfolioHistoryAnalytics, List<SimpleDataElement>> function) {
         Optional<DecodedJWT> user = loginController.getJwt(request);
         if (!user.isPresent()) {
             throw new WatchlistPermissionDeniedException("Not logged in");
         }
-        List<PortfolioPerformanceHistoryElement> historicalPerformance = getHistoricalPerformance(user);
-
-        List<SimpleDataElement> result = new ArrayList<>();
-        for (var element : historicalPerformance) {
-            result.add(new SimpleDataElement(element.getDate().toString(), function.apply(element)));
-        }
-
-        return result;
-    }
-
-    public List<PortfolioPerformanceHistoryElement> getHistoricalPerformance(Optional<DecodedJWT> user) {
-        Optional<PortfolioPerformanceHistory> historicalPerformance = portfolioHistoricalRepository.readHistoricalPortfolio(user.get().getSubject());
-
-        if (historicalPerformance.isEmpty()) {
-            return List.of();
-        }
-
-        ArrayList<PortfolioPerformanceHistoryElement> result = new ArrayList<>(messageCompresser.uncompressListOf(historicalPerformance.get().getHistory(), PortfolioPerformanceHistoryElement.class));
-
-        Collections.sort(result, (a, b) -> a.getDate().compareTo(b.getDate()));
-
-        return result;
+        return function.apply(portfolioHistoryAnalyticsService.getAnalytics(user.get().getSubject()));
     }
 
     @ExceptionHandler(WatchlistPermissionDeniedException.class)
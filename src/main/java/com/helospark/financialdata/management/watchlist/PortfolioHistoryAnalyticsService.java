@@ -0,0 +1,96 @@
+package com.helospark.financialdata.management.watchlist;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.helospark.financialdata.domain.SimpleDataElement;
+import com.helospark.financialdata.management.watchlist.repository.MessageCompresser;
+import com.helospark.financialdata.management.watchlist.repository.PortfolioPerformanceHistory;
+import com.helospark.financialdata.management.watchlist.repository.PortfolioPerformanceHistoryElement;
+import com.helospark.financialdata.management.watchlist.repository.PortfolioPerformanceHistoryRepository;
+
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Decodes the portfolio history of a user once and calculates every chart of the historical performance page in one pass.
+ * Invalidated whenever the user's history is saved or deleted.
+ */
+@Service
+public class PortfolioHistoryAnalyticsService {
+    @Autowired
+    private PortfolioPerformanceHistoryRepository portfolioHistoricalRepository;
+    @Autowired
+    private MessageCompresser messageCompresser;
+
+    // Only for single server setup
+    Cache<String, PortfolioHistoryAnalytics> cache = Caffeine.newBuilder()
+            .expireAfterWrite(1, TimeUnit.DAYS)
+            .maximumSize(1000)
+            .build();
+
+    @PostConstruct
+    public void init() {
+        portfolioHistoricalRepository.addChangeListener(email -> invalidate(email));
+    }
+
+    public PortfolioHistoryAnalytics getAnalytics(String email) {
+        return cache.get(email, email2 -> calculateAnalytics(email2));
+    }
+
+    public void invalidate(String email) {
+        cache.invalidate(email);
+    }
+
+    private PortfolioHistoryAnalytics calculateAnalytics(String email) {
+        Optional<PortfolioPerformanceHistory> historicalPerformance = portfolioHistoricalRepository.readHistoricalPortfolio(email);
+
+        if (historicalPerformance.isEmpty()) {
+            return new PortfolioHistoryAnalytics(List.of(), List.of(), List.of(), List.of(), List.of());
+        }
+
+        List<PortfolioPerformanceHistoryElement> history = new ArrayList<>(messageCompresser.uncompressListOf(historicalPerformance.get().getHistory(), PortfolioPerformanceHistoryElement.class));
+        Collections.sort(history, (a, b) -> a.getDate().compareTo(b.getDate()));
+
+        List<SimpleDataElement> eps = new ArrayList<>(history.size());
+        List<SimpleDataElement> fcf = new ArrayList<>(history.size());
+        List<SimpleDataElement> total = new ArrayList<>(history.size());
+        List<SimpleDataElement> equity = new ArrayList<>(history.size());
+        List<SimpleDataElement> numberOfHoldings = new ArrayList<>(history.size());
+        for (var element : history) {
+            String date = element.getDate().toString();
+            eps.add(new SimpleDataElement(date, element.getEps()));
+            fcf.add(new SimpleDataElement(date, element.getFcf()));
+            total.add(new SimpleDataElement(date, element.getTotal()));
+            equity.add(new SimpleDataElement(date, element.getTotalEquity()));
+            numberOfHoldings.add(new SimpleDataElement(date, (double) element.getHoldings().size()));
+        }
+
+        return new PortfolioHistoryAnalytics(eps, fcf, total, equity, numberOfHoldings);
+    }
+
+    public static class PortfolioHistoryAnalytics {
+        public final List<SimpleDataElement> eps;
+        public final List<SimpleDataElement> fcf;
+        public final List<SimpleDataElement> total;
+        public final List<SimpleDataElement> equity;
+        public final List<SimpleDataElement> numberOfHoldings;
+
+        public PortfolioHistoryAnalytics(List<SimpleDataElement> eps, List<SimpleDataElement> fcf, List<SimpleDataElement> total, List<SimpleDataElement> equity,
+                List<SimpleDataElement> numberOfHoldings) {
+            this.eps = Collections.unmodifiableList(eps);
+            this.fcf = Collections.unmodifiableList(fcf);
+            this.total = Collections.unmodifiableList(total);
+            this.equity = Collections.unmodifiableList(equity);
+            this.numberOfHoldings = Collections.unmodifiableList(numberOfHoldings);
+        }
+    }
+
+}
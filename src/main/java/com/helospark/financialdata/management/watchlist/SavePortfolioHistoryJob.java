@@ -4,9 +4,15 @@ import java.io.IOException;
 import java.time.LocalDate;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
@@ -16,10 +22,11 @@ import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import com.helospark.financialdata.management.user.repository.User;
-import com.helospark.financialdata.management.user.repository.UserRepository;
+import com.helospark.financialdata.management.user.UserBatchJobRunner;
 import com.helospark.financialdata.management.watchlist.domain.Portfolio;
 import com.helospark.financialdata.management.watchlist.repository.JobLastRunData;
 import com.helospark.financialdata.management.watchlist.repository.JobLastRunRepository;
+import com.helospark.financialdata.management.watchlist.repository.LatestPriceProvider;
 import com.helospark.financialdata.management.watchlist.repository.MessageCompresser;
 import com.helospark.financialdata.management.watchlist.repository.PortfolioPerformanceHistory;
 import com.helospark.financialdata.management.watchlist.repository.PortfolioPerformanceHistoryElement;
@@ -42,28 +49,113 @@ public class SavePortfolioHistoryJob {
     @Autowired
     private WatchlistService watchlistService;
     @Autowired
-    private UserRepository userRepository;
-    @Autowired
     private MessageCompresser messageCompresser;
 
+    @Autowired
+    private UserBatchJobRunner userBatchJobRunner;
+    @Autowired
+    private LatestPriceProvider latestPriceProvider;
+
+    private AtomicBoolean running = new AtomicBoolean(false);
+
+    /**
+     * Only starts the run, users are processed on the batch job's worker pool, so the scheduler thread is not blocked.
+     */
     @Scheduled(fixedDelay = 1, timeUnit = TimeUnit.DAYS)
     public void savePortfolioHistory() {
         LocalDate currentDate = LocalDate.now();
         Optional<JobLastRunData> result = jobLastRunRepository.readJobLastRanByName(JOB_NAME);
 
-        if (result.isEmpty() || jobRanMoreThanAMonthAgo(currentDate, result.get().getDate())) {
-            LOGGER.info("Running portfolio performance history job");
+        if (result.isEmpty() || jobRanMoreThanAMonthAgo(currentDate, result.get().getDate()) || userBatchJobRunner.hasUnfinishedRun(JOB_NAME)) {
             runJob(currentDate);
-            jobLastRunRepository.save(new JobLastRunData(JOB_NAME, currentDate));
-            LOGGER.info("Finished portfolio performance history job");
         }
     }
 
-    public void runJob(LocalDate currentDate) {
-        List<User> users = userRepository.getAllUsers();
+    public CompletableFuture<LocalDate> runJob(LocalDate currentDate) {
+        if (!running.compareAndSet(false, true)) {
+            LOGGER.info("Portfolio performance history job is already running");
+            return CompletableFuture.completedFuture(currentDate);
+        }
+        LOGGER.info("Running portfolio performance history job");
+        return userBatchJobRunner.run(JOB_NAME, currentDate, (users, runDate) -> runJobForUsers(users, runDate))
+                .whenComplete((runDate, exception) -> {
+                    running.set(false);
+                    if (exception != null) {
+                        LOGGER.error("Portfolio performance history job failed, unfinished segments are continued on the next run", exception);
+                    } else {
+                        LOGGER.info("Finished portfolio performance history job for {}", runDate);
+                    }
+                });
+    }
 
+    /**
+     * Valuates a batch of users, the distinct symbols of the batch are priced once up front, then results are saved with a batch write.
+     */
+    public void runJobForUsers(List<User> users, LocalDate currentDate) {
+        Map<String, List<WatchlistElement>> userToWatchlist = new LinkedHashMap<>();
         for (var user : users) {
-            runJobForUser(user, currentDate);
+            try {
+                List<WatchlistElement> watchlistElements = watchlistService.readWatchlistFromDb(user.getEmail())
+                        .stream()
+                        .filter(element -> element.ownedShares > 0)
+                        .collect(Collectors.toList());
+                if (watchlistElements.size() > 0) {
+                    userToWatchlist.put(user.getEmail(), watchlistElements);
+                }
+            } catch (Exception e) {
+                LOGGER.error("Unable to read watchlist for {}", user.getEmail(), e);
+            }
+        }
+        if (userToWatchlist.isEmpty()) {
+            return;
+        }
+
+        prefetchPrices(userToWatchlist);
+
+        Map<String, PortfolioPerformanceHistory> existingHistories = portfolioPerformanceHistoryRepository.readHistoricalPortfolios(userToWatchlist.keySet());
+        List<PortfolioPerformanceHistory> toSave = new ArrayList<>();
+        for (var user : users) {
+            List<WatchlistElement> watchlistElements = userToWatchlist.get(user.getEmail());
+            if (watchlistElements == null) {
+                continue;
+            }
+            try {
+                PortfolioPerformanceHistory data = existingHistories.get(user.getEmail());
+                if (data == null) {
+                    data = createNewPortfolioHistory(user);
+                }
+                createHistoryElement(user, data, watchlistElements, currentDate)
+                        .ifPresent(element -> toSave.add(element));
+            } catch (Exception e) {
+                LOGGER.error("Unable to save portfolio performance for {}", user.getEmail(), e);
+            }
+        }
+
+        if (!toSave.isEmpty()) {
+            List<PortfolioPerformanceHistory> failed = portfolioPerformanceHistoryRepository.saveAll(toSave);
+            for (var element : failed) {
+                LOGGER.error("Unable to save portfolio performance for {}", element.getEmail());
+            }
+            LOGGER.info("Performance history data saved for {} users", toSave.size() - failed.size());
+        }
+    }
+
+    private void prefetchPrices(Map<String, List<WatchlistElement>> userToWatchlist) {
+        Set<String> symbols = new HashSet<>();
+        for (var watchlist : userToWatchlist.values()) {
+            for (var element : watchlist) {
+                symbols.add(element.symbol);
+            }
+        }
+        List<CompletableFuture<Double>> prices = new ArrayList<>();
+        for (var symbol : symbols) {
+            prices.add(latestPriceProvider.provideLatestPriceAsync(symbol));
+        }
+        try {
+            CompletableFuture.allOf(prices.toArray(new CompletableFuture<?>[0])).join();
+        } catch (Exception e) {
+            // failed prices are retried when valuating, and reported per user
+            LOGGER.warn("Unable to prefetch some of the prices", e);
         }
     }
 
@@ -76,35 +168,49 @@ public class SavePortfolioHistoryJob {
 
             PortfolioPerformanceHistory data = portfolioPerformanceHistoryRepository.readHistoricalPortfolio(user.getEmail()).orElse(createNewPortfolioHistory(user));
 
-            List<PortfolioPerformanceHistoryElement> currentHistory = new ArrayList<>(messageCompresser.uncompressListOf(data.getHistory(), PortfolioPerformanceHistoryElement.class));
-
             if (watchlistElements.size() > 0) {
-                Portfolio result = portfolioController.createSummaryTable(true, watchlistElements);
-
-                PortfolioPerformanceHistoryElement toSave = convert(user, result, watchlistElements, currentDate);
-
-                currentHistory.add(toSave);
-
-                data.setHistory(messageCompresser.createCompressedValue(currentHistory));
-
-                portfolioPerformanceHistoryRepository.save(data);
-                LOGGER.info("Performance history data saved for {}", user.getEmail());
+                Optional<PortfolioPerformanceHistory> toSave = createHistoryElement(user, data, watchlistElements, currentDate);
+                if (toSave.isPresent()) {
+                    portfolioPerformanceHistoryRepository.save(toSave.get());
+                    LOGGER.info("Performance history data saved for {}", user.getEmail());
+                }
             }
         } catch (Exception e) {
             LOGGER.error("Unable to save portfolio performance for {}", user.getEmail(), e);
         }
     }
 
+    /**
+     * Appends the current valuation to the history. Empty if there is already an element for the date,
+     * which happens when an interrupted segment is processed again.
+     */
+    private Optional<PortfolioPerformanceHistory> createHistoryElement(User user, PortfolioPerformanceHistory data, List<WatchlistElement> watchlistElements, LocalDate currentDate) {
+        List<PortfolioPerformanceHistoryElement> currentHistory = new ArrayList<>(messageCompresser.uncompressListOf(data.getHistory(), PortfolioPerformanceHistoryElement.class));
+
+        if (currentHistory.size() > 0 && currentDate.equals(currentHistory.get(currentHistory.size() - 1).getDate())) {
+            return Optional.empty();
+        }
+
+        Portfolio result = portfolioController.createSummaryTable(true, watchlistElements);
+
+        currentHistory.add(convert(user, result, watchlistElements, currentDate));
+
+        data.setHistory(messageCompresser.createCompressedValue(currentHistory));
+        return Optional.of(data);
+    }
+
     public PortfolioPerformanceHistory createNewPortfolioHistory(User user) throws IOException {
         PortfolioPerformanceHistory result = new PortfolioPerformanceHistory();
         result.setEmail(user.getEmail());
-        result.setHistory(messageCompresser.compressString("[]".getBytes()));
+        result.setHistory(messageCompresser.createCompressedValue(List.of()));
         return result;
     }
 
     private PortfolioPerformanceHistoryElement convert(User user, Portfolio portfolio, List<WatchlistElement> watchlistElements, LocalDate currentDate) {
         PortfolioPerformanceHistoryElement result = new PortfolioPerformanceHistoryElement();
         result.setDate(currentDate);
+        // a resumed run values the portfolio with the latest prices, which can be later than the run date
+        result.setPriceDate(LocalDate.now());
         result.setEmail(user.getEmail());
         result.setEps(portfolio.totalEarnings);
         result.setFcf(portfolio.totalFcf);
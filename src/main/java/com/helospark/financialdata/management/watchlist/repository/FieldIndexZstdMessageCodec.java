@@ -0,0 +1,270 @@
+package com.helospark.financialdata.management.watchlist.repository;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import com.github.luben.zstd.Zstd;
+
+/**
+ * Binary encoding of the Jackson token stream of the same mapped classes, compressed with Zstandard at its default, fast level.
+ * <p>
+ * Property names are stored once per message, later occurrences only store their index,
+ * so a list of objects stores little more than the values after its first element.
+ * Decoding still goes by name, so fields can be added to or removed from the domain classes, like with JSON.
+ * <p>
+ * Layout: MAGIC, version, flags, then the token stream. Small payloads which don't compress are stored as is.
+ */
+public class FieldIndexZstdMessageCodec implements MessageCodec {
+    public static final byte MAGIC = (byte) 0xB7;
+    public static final int VERSION = 1;
+    private static final int FLAG_RAW = 0;
+    private static final int FLAG_ZSTD = 1;
+    private static final int COMPRESSION_LEVEL = 3;
+
+    private static final int TAG_START_OBJECT = 1;
+    private static final int TAG_END_OBJECT = 2;
+    private static final int TAG_START_ARRAY = 3;
+    private static final int TAG_END_ARRAY = 4;
+    private static final int TAG_NEW_FIELD_NAME = 5;
+    private static final int TAG_FIELD_NAME_INDEX = 6;
+    private static final int TAG_STRING = 7;
+    private static final int TAG_LONG = 8;
+    private static final int TAG_DOUBLE = 9;
+    private static final int TAG_INTEGRAL_DOUBLE = 10;
+    private static final int TAG_TRUE = 11;
+    private static final int TAG_FALSE = 12;
+    private static final int TAG_NULL = 13;
+    private static final int TAG_BIG_INTEGER = 14;
+    private static final int TAG_BIG_DECIMAL = 15;
+
+    private ObjectMapper objectMapper;
+
+    public FieldIndexZstdMessageCodec(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public int getVersion() {
+        return VERSION;
+    }
+
+    @Override
+    public byte[] encode(Object value) throws IOException {
+        TokenBuffer tokens = new TokenBuffer(objectMapper, false);
+        objectMapper.writeValue(tokens, value);
+        byte[] uncompressed = writeTokens(tokens.asParser(objectMapper));
+
+        byte[] compressed = Zstd.compress(uncompressed, COMPRESSION_LEVEL);
+        int compressedLength = compressed.length;
+
+        ByteArrayOutputStream result = new ByteArrayOutputStream(Math.min(compressedLength, uncompressed.length) + 3);
+        result.write(MAGIC);
+        result.write(VERSION);
+        if (compressedLength < uncompressed.length) {
+            result.write(FLAG_ZSTD);
+            result.write(compressed, 0, compressedLength);
+        } else {
+            result.write(FLAG_RAW);
+            result.write(uncompressed);
+        }
+        return result.toByteArray();
+    }
+
+    @Override
+    public <T> T decode(byte[] data, int offset, int length, JavaType type) throws IOException {
+        int flags = data[offset + 2];
+        int payloadOffset = offset + 3;
+        int payloadLength = length - 3;
+        TokenBuffer tokens;
+        if (flags == FLAG_RAW) {
+            tokens = readTokens(data, payloadOffset, payloadOffset + payloadLength);
+        } else {
+            // the frame header written by Zstd.compress contains the uncompressed size
+            long uncompressedLength = Zstd.getFrameContentSize(data, payloadOffset, payloadLength);
+            if (uncompressedLength < 0 || uncompressedLength > Integer.MAX_VALUE) {
+                throw new IOException("Corrupted message, invalid uncompressed size " + uncompressedLength);
+            }
+            byte[] uncompressed = new byte[(int) uncompressedLength];
+            long result = Zstd.decompressByteArray(uncompressed, 0, uncompressed.length, data, payloadOffset, payloadLength);
+            if (Zstd.isError(result) || result != uncompressedLength) {
+                throw new IOException("Corrupted message, " + (Zstd.isError(result) ? Zstd.getErrorName(result) : "expected " + uncompressedLength + " bytes, but got " + result));
+            }
+            tokens = readTokens(uncompressed, 0, uncompressed.length);
+        }
+        try (JsonParser parser = tokens.asParser(objectMapper)) {
+            return objectMapper.readValue(parser, type);
+        }
+    }
+
+    public static boolean isFieldIndexZstd(byte[] data, int offset, int length) {
+        return length >= 3 && data[offset] == MAGIC;
+    }
+
+    private byte[] writeTokens(JsonParser parser) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream(256);
+        Map<String, Integer> fieldNameIndices = new HashMap<>();
+        JsonToken token;
+        while ((token = parser.nextToken()) != null) {
+            switch (token) {
+                case START_OBJECT -> output.write(TAG_START_OBJECT);
+                case END_OBJECT -> output.write(TAG_END_OBJECT);
+                case START_ARRAY -> output.write(TAG_START_ARRAY);
+                case END_ARRAY -> output.write(TAG_END_ARRAY);
+                case FIELD_NAME -> {
+                    String name = parser.getCurrentName();
+                    Integer index = fieldNameIndices.get(name);
+                    if (index != null) {
+                        output.write(TAG_FIELD_NAME_INDEX);
+                        writeVarLong(output, index);
+                    } else {
+                        fieldNameIndices.put(name, fieldNameIndices.size());
+                        output.write(TAG_NEW_FIELD_NAME);
+                        writeString(output, name);
+                    }
+                }
+                case VALUE_STRING -> {
+                    output.write(TAG_STRING);
+                    writeString(output, parser.getText());
+                }
+                case VALUE_NUMBER_INT -> {
+                    if (parser.getNumberType() == JsonParser.NumberType.BIG_INTEGER) {
+                        output.write(TAG_BIG_INTEGER);
+                        writeString(output, parser.getBigIntegerValue().toString());
+                    } else {
+                        output.write(TAG_LONG);
+                        writeVarLong(output, zigZag(parser.getLongValue()));
+                    }
+                }
+                case VALUE_NUMBER_FLOAT -> {
+                    if (parser.getNumberType() == JsonParser.NumberType.BIG_DECIMAL) {
+                        output.write(TAG_BIG_DECIMAL);
+                        writeString(output, parser.getDecimalValue().toString());
+                    } else {
+                        writeDouble(output, parser.getDoubleValue());
+                    }
+                }
+                case VALUE_TRUE -> output.write(TAG_TRUE);
+                case VALUE_FALSE -> output.write(TAG_FALSE);
+                case VALUE_NULL -> output.write(TAG_NULL);
+                default -> throw new IOException("Unsupported token " + token);
+            }
+        }
+        return output.toByteArray();
+    }
+
+    private TokenBuffer readTokens(byte[] data, int start, int end) throws IOException {
+        TokenBuffer tokens = new TokenBuffer(objectMapper, false);
+        List<String> fieldNames = new ArrayList<>();
+        int[] position = { start };
+        while (position[0] < end) {
+            int tag = data[position[0]++];
+            switch (tag) {
+                case TAG_START_OBJECT -> tokens.writeStartObject();
+                case TAG_END_OBJECT -> tokens.writeEndObject();
+                case TAG_START_ARRAY -> tokens.writeStartArray();
+                case TAG_END_ARRAY -> tokens.writeEndArray();
+                case TAG_NEW_FIELD_NAME -> {
+                    String name = readString(data, position);
+                    fieldNames.add(name);
+                    tokens.writeFieldName(name);
+                }
+                case TAG_FIELD_NAME_INDEX -> tokens.writeFieldName(fieldNames.get((int) readVarLong(data, position)));
+                case TAG_STRING -> tokens.writeString(readString(data, position));
+                case TAG_LONG -> {
+                    long value = unZigZag(readVarLong(data, position));
+                    if (value == (int) value) {
+                        tokens.writeNumber((int) value);
+                    } else {
+                        tokens.writeNumber(value);
+                    }
+                }
+                case TAG_DOUBLE -> {
+                    long bits = 0;
+                    for (int i = 0; i < 8; ++i) {
+                        bits = (bits << 8) | (data[position[0]++] & 0xFF);
+                    }
+                    tokens.writeNumber(Double.longBitsToDouble(bits));
+                }
+                case TAG_INTEGRAL_DOUBLE -> tokens.writeNumber((double) unZigZag(readVarLong(data, position)));
+                case TAG_TRUE -> tokens.writeBoolean(true);
+                case TAG_FALSE -> tokens.writeBoolean(false);
+                case TAG_NULL -> tokens.writeNull();
+                case TAG_BIG_INTEGER -> tokens.writeNumber(new BigInteger(readString(data, position)));
+                case TAG_BIG_DECIMAL -> tokens.writeNumber(new BigDecimal(readString(data, position)));
+                default -> throw new IOException("Corrupted message, unknown tag " + tag);
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Prices and share counts are often whole numbers, these are stored as a varint instead of 8 bytes.
+     */
+    private static void writeDouble(ByteArrayOutputStream output, double value) {
+        long integralValue = (long) value;
+        if (integralValue == value && Math.abs(integralValue) < (1L << 53) && !(value == 0.0 && 1.0 / value < 0)) {
+            output.write(TAG_INTEGRAL_DOUBLE);
+            writeVarLong(output, zigZag(integralValue));
+        } else {
+            output.write(TAG_DOUBLE);
+            long bits = Double.doubleToRawLongBits(value);
+            for (int i = 56; i >= 0; i -= 8) {
+                output.write((int) (bits >>> i));
+            }
+        }
+    }
+
+    private static void writeString(ByteArrayOutputStream output, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(output, bytes.length);
+        output.write(bytes, 0, bytes.length);
+    }
+
+    private static String readString(byte[] data, int[] position) {
+        int length = (int) readVarLong(data, position);
+        String result = new String(data, position[0], length, StandardCharsets.UTF_8);
+        position[0] += length;
+        return result;
+    }
+
+    private static void writeVarLong(ByteArrayOutputStream output, long value) {
+        while ((value & ~0x7FL) != 0) {
+            output.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        output.write((int) value);
+    }
+
+    private static long readVarLong(byte[] data, int[] position) {
+        long result = 0;
+        int shift = 0;
+        byte current;
+        do {
+            current = data[position[0]++];
+            result |= (long) (current & 0x7F) << shift;
+            shift += 7;
+        } while ((current & 0x80) != 0);
+        return result;
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+}
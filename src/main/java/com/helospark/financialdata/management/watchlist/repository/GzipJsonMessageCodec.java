@@ -0,0 +1,53 @@
+package com.helospark.financialdata.management.watchlist.repository;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Original format, gzipped JSON without any header. Recognized by the gzip magic bytes.
+ */
+public class GzipJsonMessageCodec implements MessageCodec {
+    public static final int VERSION = 0;
+
+    private ObjectMapper objectMapper;
+
+    public GzipJsonMessageCodec(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    public static boolean isGzip(byte[] data, int offset, int length) {
+        return length >= 2 && data[offset] == (byte) 0x1f && data[offset + 1] == (byte) 0x8b;
+    }
+
+    @Override
+    public int getVersion() {
+        return VERSION;
+    }
+
+    @Override
+    public byte[] encode(Object value) throws IOException {
+        return compress(objectMapper.writeValueAsBytes(value));
+    }
+
+    @Override
+    public <T> T decode(byte[] data, int offset, int length, JavaType type) throws IOException {
+        try (GZIPInputStream is = new GZIPInputStream(new ByteArrayInputStream(data, offset, length))) {
+            return objectMapper.readValue(is, type);
+        }
+    }
+
+    public static byte[] compress(byte[] uncompressed) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (GZIPOutputStream os = new GZIPOutputStream(baos)) {
+            os.write(uncompressed);
+        }
+        return baos.toByteArray();
+    }
+
+}
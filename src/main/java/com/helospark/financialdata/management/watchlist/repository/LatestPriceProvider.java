@@ -39,6 +39,8 @@ public class LatestPriceProvider {
     private static final Logger LOGGER = LoggerFactory.getLogger(LatestPriceProvider.class);
     private static final long CACHE_STORE_TIME = 60 * 60 * 24;
     private static final long CACHE_STORE_VARIATION = 60 * 60 * 4;
+    // entries without it store the remaining time in nanos instead of the expiry epoch millis
+    private static final int CACHE_ENTRY_VERSION = 1;
 
     Cache<String, Double> tickerToPriceCache = Caffeine.newBuilder()
             .expireAfter(new Expiry<String, Double>() {
@@ -88,10 +90,12 @@ public class LatestPriceProvider {
                     LOGGER.error("Unable to read cache", e);
                 }
                 long currentDate = new Date().getTime();
+                long maxExpiryMillis = TimeUnit.SECONDS.toMillis(CACHE_STORE_TIME + CACHE_STORE_VARIATION);
                 for (var element : diskCache.entrySet()) {
-                    if (currentDate < element.getValue().expiry) {
+                    if (element.getValue().version == CACHE_ENTRY_VERSION && currentDate < element.getValue().expiry) {
+                        long expiryMillis = Math.min(element.getValue().expiry - currentDate, maxExpiryMillis);
                         tickerToPriceCache.put(element.getKey(), element.getValue().value);
-                        variableExpiry.setExpiresAfter(element.getKey(), Duration.ofNanos(element.getValue().expiry));
+                        variableExpiry.setExpiresAfter(element.getKey(), Duration.ofMillis(expiryMillis));
                     }
                 }
             }
@@ -121,12 +125,14 @@ public class LatestPriceProvider {
         try {
             Map<String, DoubleCacheEntry> diskCache = new HashMap<>();
             Set<String> keys = tickerToPriceCache.asMap().keySet();
+            long currentDate = new Date().getTime();
             for (var key : keys) {
                 Double value = tickerToPriceCache.getIfPresent(key);
                 Optional<Duration> expiry = variableExpiry.getExpiresAfter(key);
                 if (expiry.isPresent() && value != null) {
-                    long expiryNanos = expiry.get().toNanos();
-                    diskCache.put(key, new DoubleCacheEntry(value, expiryNanos));
+                    // stored as absolute epoch millis, so the remaining time is correct after a restart
+                    long expiryMillis = currentDate + expiry.get().toMillis();
+                    diskCache.put(key, new DoubleCacheEntry(value, expiryMillis, CACHE_ENTRY_VERSION));
                 }
             }
             File file = new File(diskCacheLocation);
@@ -168,13 +174,15 @@ public class LatestPriceProvider {
     static class DoubleCacheEntry {
         double value;
         long expiry;
+        int version;
 
         public DoubleCacheEntry() {
         }
 
-        public DoubleCacheEntry(double value, long expiry) {
+        public DoubleCacheEntry(double value, long expiry, int version) {
             this.value = value;
             this.expiry = expiry;
+            this.version = version;
         }
 
         public double getValue() {
@@ -193,6 +201,14 @@ public class LatestPriceProvider {
             this.expiry = expiry;
         }
 
+        public int getVersion() {
+            return version;
+        }
+
+        public void setVersion(int version) {
+            this.version = version;
+        }
+
     }
 
 }
@@ -0,0 +1,19 @@
+package com.helospark.financialdata.management.watchlist.repository;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.databind.JavaType;
+
+/**
+ * Encoding of the compressed blobs stored in DynamoDB (watchlists, screeners, portfolio history).
+ * Each codec is identified by its version, which is written in the header, so blobs written by any codec stay readable.
+ */
+public interface MessageCodec {
+
+    int getVersion();
+
+    byte[] encode(Object value) throws IOException;
+
+    <T> T decode(byte[] data, int offset, int length, JavaType type) throws IOException;
+
+}
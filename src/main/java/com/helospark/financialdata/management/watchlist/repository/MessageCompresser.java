@@ -1,29 +1,53 @@
 package com.helospark.financialdata.management.watchlist.repository;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
+import java.util.Map;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.JavaType;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+/**
+ * Encodes values stored as compressed blobs in DynamoDB.
+ * New values are written with the configured codec, reading detects the codec from the header,
+ * so blobs written in the original gzipped JSON format are still read transparently.
+ */
 @Component
 public class MessageCompresser {
-    @Autowired
     private ObjectMapper objectMapper;
+    private Map<Integer, MessageCodec> versionToCodec = new HashMap<>();
+    private MessageCodec writeCodec;
+
+    @Autowired
+    public MessageCompresser(ObjectMapper objectMapper, @Value("${message-codec.write-version:1}") int writeVersion) {
+        this.objectMapper = objectMapper;
+        registerCodec(new GzipJsonMessageCodec(objectMapper));
+        registerCodec(new FieldIndexZstdMessageCodec(objectMapper));
+        this.writeCodec = versionToCodec.get(writeVersion);
+        if (writeCodec == null) {
+            throw new IllegalArgumentException("Unknown message codec version " + writeVersion);
+        }
+    }
+
+    public MessageCompresser() {
+        this(new ObjectMapper().findAndRegisterModules().disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES), FieldIndexZstdMessageCodec.VERSION);
+    }
+
+    private void registerCodec(MessageCodec codec) {
+        versionToCodec.put(codec.getVersion(), codec);
+    }
 
     public ByteBuffer createCompressedValue(Object elements) {
         try {
-            byte[] bytes = objectMapper.writeValueAsBytes(elements);
-            return compressString(bytes);
+            return ByteBuffer.wrap(writeCodec.encode(elements));
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
@@ -34,49 +58,38 @@ public class MessageCompresser {
             return new ArrayList<>();
         }
         try {
-            String rawString = uncompressString(data);
-
             JavaType type = objectMapper.getTypeFactory().constructCollectionType(List.class, listType);
-            List<T> result = new ArrayList<>(objectMapper.readValue(rawString, type));
+            List<T> result = new ArrayList<>(decode(data, type));
             return result;
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
     }
 
-    public ByteBuffer compressString(byte[] uncompressed) throws IOException {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        GZIPOutputStream os = new GZIPOutputStream(baos);
-        os.write(uncompressed);
-        os.close();
-        baos.close();
-        byte[] compressedBytes = baos.toByteArray();
-
-        ByteBuffer buffer = ByteBuffer.allocate(compressedBytes.length);
-        buffer.put(compressedBytes, 0, compressedBytes.length);
-        buffer.position(0);
-        return buffer;
+    private <T> T decode(ByteBuffer input, JavaType type) throws IOException {
+        byte[] bytes;
+        int offset;
+        int length = input.remaining();
+        if (input.hasArray()) {
+            bytes = input.array();
+            offset = input.arrayOffset() + input.position();
+        } else {
+            bytes = new byte[length];
+            input.duplicate().get(bytes);
+            offset = 0;
+        }
+        return findCodec(bytes, offset, length).decode(bytes, offset, length, type);
     }
 
-    public String uncompressString(ByteBuffer input) throws IOException {
-        byte[] bytes = input.array();
-        ByteArrayInputStream bais = new ByteArrayInputStream(bytes);
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        GZIPInputStream is = new GZIPInputStream(bais);
-
-        int chunkSize = 1024;
-        byte[] buffer = new byte[chunkSize];
-        int length = 0;
-        while ((length = is.read(buffer, 0, chunkSize)) != -1) {
-            baos.write(buffer, 0, length);
+    private MessageCodec findCodec(byte[] bytes, int offset, int length) {
+        if (GzipJsonMessageCodec.isGzip(bytes, offset, length)) {
+            return versionToCodec.get(GzipJsonMessageCodec.VERSION);
+        } else if (FieldIndexZstdMessageCodec.isFieldIndexZstd(bytes, offset, length)) {
+            MessageCodec codec = versionToCodec.get((int) bytes[offset + 1]);
+            if (codec != null) {
+                return codec;
+            }
         }
-
-        String result = new String(baos.toByteArray(), "UTF-8");
-
-        is.close();
-        baos.close();
-        bais.close();
-
-        return result;
+        throw new IllegalArgumentException("Unknown message format");
     }
 }
@@ -10,6 +10,7 @@ import com.helospark.financialdata.management.helper.LocalDateConverter;
 public class PortfolioPerformanceHistoryElement {
     private String email;
     private LocalDate date;
+    private LocalDate priceDate;
 
     private double total;
     private double eps;
@@ -36,6 +37,18 @@ public class PortfolioPerformanceHistoryElement {
         this.date = date;
     }
 
+    /**
+     * Date of the prices the element is valued with, null for elements saved before it was recorded.
+     */
+    @DynamoDBTypeConverted(converter = LocalDateConverter.class)
+    public LocalDate getPriceDate() {
+        return priceDate;
+    }
+
+    public void setPriceDate(LocalDate priceDate) {
+        this.priceDate = priceDate;
+    }
+
     public double getTotal() {
         return total;
     }
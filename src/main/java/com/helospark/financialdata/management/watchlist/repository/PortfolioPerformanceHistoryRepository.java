@@ -1,7 +1,14 @@
 package com.helospark.financialdata.management.watchlist.repository;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
@@ -19,15 +26,72 @@ public class PortfolioPerformanceHistoryRepository {
             .expireAfterWrite(1, TimeUnit.DAYS)
             .maximumSize(200)
             .build();
+    private final List<Consumer<String>> changeListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Called with the email of the user after the user's history is saved or deleted.
+     */
+    public void addChangeListener(Consumer<String> listener) {
+        changeListeners.add(listener);
+    }
 
     public void save(PortfolioPerformanceHistory data) {
         mapper.save(data);
-        cache.invalidate(data.getEmail());
+        onChanged(data.getEmail());
+    }
+
+    /**
+     * Saves with batch writes (25 items per request). Items failing after the mapper's retries are returned.
+     */
+    public List<PortfolioPerformanceHistory> saveAll(List<PortfolioPerformanceHistory> data) {
+        Map<String, PortfolioPerformanceHistory> emailToData = new HashMap<>();
+        for (var element : data) {
+            emailToData.put(element.getEmail(), element);
+        }
+        List<PortfolioPerformanceHistory> failed = new ArrayList<>();
+        for (var failedBatch : mapper.batchSave(data)) {
+            for (var writeRequests : failedBatch.getUnprocessedItems().values()) {
+                for (var writeRequest : writeRequests) {
+                    failed.add(emailToData.get(writeRequest.getPutRequest().getItem().get("email").getS()));
+                }
+            }
+        }
+        for (var element : data) {
+            onChanged(element.getEmail());
+        }
+        return failed;
+    }
+
+    /**
+     * Reads with batch gets, bypassing the cache, used by jobs which touch every user once.
+     */
+    public Map<String, PortfolioPerformanceHistory> readHistoricalPortfolios(Collection<String> emails) {
+        List<Object> keys = new ArrayList<>();
+        for (var email : emails) {
+            PortfolioPerformanceHistory key = new PortfolioPerformanceHistory();
+            key.setEmail(email);
+            keys.add(key);
+        }
+        Map<String, PortfolioPerformanceHistory> result = new HashMap<>();
+        for (var tableResult : mapper.batchLoad(keys).values()) {
+            for (var element : tableResult) {
+                PortfolioPerformanceHistory history = (PortfolioPerformanceHistory) element;
+                result.put(history.getEmail(), history);
+            }
+        }
+        return result;
     }
 
     public void deleteForUser(String user) {
         readHistoricalPortfolio(user).ifPresent(a -> mapper.delete(a));
-        cache.invalidate(user);
+        onChanged(user);
+    }
+
+    private void onChanged(String email) {
+        cache.invalidate(email);
+        for (var listener : changeListeners) {
+            listener.accept(email);
+        }
     }
 
     public Optional<PortfolioPerformanceHistory> readHistoricalPortfolio(String email) {
@@ -11,7 +11,6 @@ import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
-import org.apache.commons.lang3.ObjectUtils;
 import org.apache.commons.text.StringEscapeUtils;
 import org.checkerframework.checker.nullness.qual.PolyNull;
 import org.slf4j.Logger;
@@ -64,6 +63,10 @@ public class WatchlistService {
             .expireAfterWrite(1, TimeUnit.DAYS)
             .maximumSize(1000)
             .build();
+    Cache<String, WatchlistView> watchlistViewCache = Caffeine.newBuilder()
+            .expireAfterAccess(1, TimeUnit.HOURS)
+            .maximumSize(1000)
+            .build();
 
     public PaginatedWatchListResponse getWatchlistColumns() {
         PaginatedWatchListResponse result = new PaginatedWatchListResponse();
@@ -76,41 +79,28 @@ public class WatchlistService {
 
         PaginatedWatchListResponse result = getWatchlistColumns();
 
-        List<WatchlistElement> watchlistElements = readWatchlistFromDb(email);
-        result.recordsTotal = watchlistElements.size();
-
-        if (dataTableRequest.search.value != null) {
-            watchlistElements = watchlistElements.stream()
-                    .filter(a -> matchesSearch(a, dataTableRequest.search.value))
-                    .collect(Collectors.toList());
-        }
-
-        result.recordsFiltered = watchlistElements.size();
-
-        Collections.reverse(watchlistElements);
+        WatchlistView view = getWatchlistView(email, result.columns);
+        result.recordsTotal = view.size();
 
+        int sortColumn = -1;
+        boolean ascending = true;
         if (dataTableRequest.order.size() > 0) {
             Order order = dataTableRequest.order.get(0);
-
-            Collections.sort(watchlistElements, (a, b) -> {
-                Comparable first = getDataAtColumn(a, order.column, result.columns);
-                Comparable second = getDataAtColumn(b, order.column, result.columns);
-                if (order.dir.equals("asc")) {
-                    return ObjectUtils.compare(first, second);
-                } else {
-                    return ObjectUtils.compare(second, first);
-                }
-            });
+            sortColumn = order.column;
+            ascending = order.dir.equals("asc");
         }
+        int[] rows = view.query(dataTableRequest.search.value, sortColumn, ascending);
+
+        result.recordsFiltered = rows.length;
 
         Map<String, CompletableFuture<Double>> prices = new HashMap<>();
-        for (int i = start; i < watchlistElements.size() && i < start + length; ++i) {
-            String symbol = watchlistElements.get(i).symbol;
+        for (int i = start; i < rows.length && i < start + length; ++i) {
+            String symbol = view.getElement(rows[i]).symbol;
             prices.put(symbol, latestPriceProvider.provideLatestPriceAsync(symbol));
         }
 
-        for (int i = start; i < watchlistElements.size() && i < start + length; ++i) {
-            WatchlistElement currentElement = watchlistElements.get(i);
+        for (int i = start; i < rows.length && i < start + length; ++i) {
+            WatchlistElement currentElement = view.getElement(rows[i]);
             String ticker = currentElement.symbol;
             Optional<AtGlanceData> optionalAtGlance = symbolIndexProvider.getAtGlanceData(ticker);
             if (symbolIndexProvider.doesCompanyExists(ticker) && optionalAtGlance.isPresent()) {
@@ -138,44 +128,55 @@ public class WatchlistService {
         return result;
     }
 
-    private boolean matchesSearch(WatchlistElement a, String value) {
-        value = value.toUpperCase();
-
-        if (a.notes.toUpperCase().contains(value)) {
-            return true;
+    /**
+     * Sort keys depend on the at glance data (prices), so the view is rebuilt when that is refreshed.
+     * Built inside compute, so an invalidate from a concurrent save waits for it and the view read before the save is never stored.
+     */
+    private WatchlistView getWatchlistView(String email, List<String> columns) {
+        long datasetVersion = symbolIndexProvider.getDatasetVersion();
+        WatchlistView view = watchlistViewCache.getIfPresent(email);
+        if (view != null && view.getDatasetVersion() == datasetVersion) {
+            return view;
         }
-        if (a.tags != null) {
-            for (var tag : a.tags) {
-                if (tag.toUpperCase().contains(value)) {
-                    return true;
-                }
+        return watchlistViewCache.asMap().compute(email, (key, existing) -> {
+            if (existing != null && existing.getDatasetVersion() == datasetVersion) {
+                return existing;
             }
-        }
-        if (a.symbol.toUpperCase().contains(value)) {
-            return true;
-        }
-        Optional<AtGlanceData> optionalAtGlance = symbolIndexProvider.getAtGlanceData(a.symbol);
-        if (optionalAtGlance.isPresent()) {
-            AtGlanceData glance = optionalAtGlance.get();
+            return createWatchlistView(key, columns, datasetVersion);
+        });
+    }
+
+    @SuppressWarnings("rawtypes")
+    private WatchlistView createWatchlistView(String email, List<String> columns, long datasetVersion) {
+        List<WatchlistElement> watchlistElements = readWatchlistFromDb(email);
+        Collections.reverse(watchlistElements);
 
-            if (glance.companyName != null && glance.companyName.toUpperCase().contains(value)) {
-                return true;
+        Comparable[][] columnSortKeys = new Comparable[columns.size()][watchlistElements.size()];
+        String[] searchTexts = new String[watchlistElements.size()];
+        for (int i = 0; i < watchlistElements.size(); ++i) {
+            WatchlistElement element = watchlistElements.get(i);
+            Optional<AtGlanceData> optionalAtGlance = symbolIndexProvider.getAtGlanceData(element.symbol);
+
+            for (int column = 0; column < columns.size(); ++column) {
+                columnSortKeys[column][i] = getDataAtColumn(element, optionalAtGlance, columns.get(column));
+            }
+
+            List<String> texts = new ArrayList<>();
+            texts.add(element.notes);
+            if (element.tags != null) {
+                texts.addAll(element.tags);
             }
+            texts.add(element.symbol);
+            texts.add(optionalAtGlance.map(glance -> glance.companyName).orElse(null));
+            searchTexts[i] = WatchlistView.toSearchText(texts.toArray(new String[0]));
         }
-        return false;
+        return new WatchlistView(datasetVersion, watchlistElements, columnSortKeys, searchTexts);
     }
 
-    private Comparable getDataAtColumn(WatchlistElement a, int column, List<String> columns) {
-        Map<String, Comparable> datas = new HashMap<>();
-        Optional<AtGlanceData> optionalAtGlance = symbolIndexProvider.getAtGlanceData(a.symbol);
-
+    private Comparable getDataAtColumn(WatchlistElement a, Optional<AtGlanceData> optionalAtGlance, String columnKey) {
         if (optionalAtGlance.isEmpty()) {
             return null;
         }
-        if (column >= columns.size()) {
-            return null;
-        }
-        String columnKey = columns.get(column);
         var glance = optionalAtGlance.get();
 
         switch (columnKey) {
@@ -329,6 +330,7 @@ public class WatchlistService {
 
         watchlistRepository.save(toInsert);
         watchlistCache.invalidate(email);
+        watchlistViewCache.invalidate(email);
     }
 
     private List<String> stripTags(List<String> tags) {
@@ -381,6 +383,7 @@ public class WatchlistService {
 
         watchlistRepository.save(toInsert);
         watchlistCache.invalidate(email);
+        watchlistViewCache.invalidate(email);
     }
 
     public Optional<WatchlistElement> getWatchlistElement(String email, String stock) {
@@ -0,0 +1,117 @@
+package com.helospark.financialdata.management.watchlist.repository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.lang3.ObjectUtils;
+
+/**
+ * Decoded watchlist of a user, with the sort keys of every column and the upper cased search text calculated once.
+ * Rows are in display order (newest first). Immutable apart from the memoized orderings, safe to share between requests.
+ */
+public class WatchlistView {
+    private final long datasetVersion;
+    private final List<WatchlistElement> elements;
+    @SuppressWarnings("rawtypes")
+    private final Comparable[][] columnSortKeys;
+    private final String[] searchTexts;
+
+    private final Map<Integer, int[]> sortedOrders = new ConcurrentHashMap<>();
+    private volatile CachedQuery lastQuery;
+
+    @SuppressWarnings("rawtypes")
+    public WatchlistView(long datasetVersion, List<WatchlistElement> elements, Comparable[][] columnSortKeys, String[] searchTexts) {
+        this.datasetVersion = datasetVersion;
+        this.elements = elements;
+        this.columnSortKeys = columnSortKeys;
+        this.searchTexts = searchTexts;
+    }
+
+    public static String toSearchText(String... texts) {
+        StringBuilder result = new StringBuilder();
+        for (var text : texts) {
+            if (text != null) {
+                // separator, so a search can't match across fields
+                result.append(text.toUpperCase(Locale.ROOT)).append('\n');
+            }
+        }
+        return result.toString();
+    }
+
+    /**
+     * @param column index of the sort column, negative or out of range keeps the display order
+     * @return indices of the matching rows in the requested order
+     */
+    public int[] query(String search, int column, boolean ascending) {
+        String searchKey = (search == null || search.isEmpty()) ? null : search.toUpperCase(Locale.ROOT);
+        CachedQuery cached = lastQuery;
+        if (cached != null && Objects.equals(cached.search, searchKey) && cached.column == column && cached.ascending == ascending) {
+            return cached.result;
+        }
+        int[] order = getSortedOrder(column, ascending);
+        int[] result;
+        if (searchKey == null) {
+            result = order;
+        } else {
+            int[] filtered = new int[order.length];
+            int count = 0;
+            for (int index : order) {
+                if (searchTexts[index].contains(searchKey)) {
+                    filtered[count++] = index;
+                }
+            }
+            result = Arrays.copyOf(filtered, count);
+        }
+        lastQuery = new CachedQuery(searchKey, column, ascending, result);
+        return result;
+    }
+
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    private int[] getSortedOrder(int column, boolean ascending) {
+        int key = (column < 0 || column >= columnSortKeys.length) ? -1 : (ascending ? column : -column - 2);
+        return sortedOrders.computeIfAbsent(key, k -> {
+            List<Integer> indices = new ArrayList<>(elements.size());
+            for (int i = 0; i < elements.size(); ++i) {
+                indices.add(i);
+            }
+            if (k != -1) {
+                Comparable[] sortKeys = columnSortKeys[column];
+                // stable, so equal keys stay in display order
+                indices.sort((a, b) -> ascending ? ObjectUtils.compare(sortKeys[a], sortKeys[b]) : ObjectUtils.compare(sortKeys[b], sortKeys[a]));
+            }
+            return indices.stream().mapToInt(i -> i).toArray();
+        });
+    }
+
+    public WatchlistElement getElement(int index) {
+        return elements.get(index);
+    }
+
+    public int size() {
+        return elements.size();
+    }
+
+    public long getDatasetVersion() {
+        return datasetVersion;
+    }
+
+    static class CachedQuery {
+        String search;
+        int column;
+        boolean ascending;
+        int[] result;
+
+        public CachedQuery(String search, int column, boolean ascending, int[] result) {
+            this.search = search;
+            this.column = column;
+            this.ascending = ascending;
+            this.result = result;
+        }
+    }
+
+}
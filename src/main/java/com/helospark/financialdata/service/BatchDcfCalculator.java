@@ -0,0 +1,107 @@
+package com.helospark.financialdata.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+/**
+ * DCF valuation of arrays of (base value, start growth, end growth), same values as the scalar DcfCalculator methods.
+ * <p>
+ * The discount divisors (1 + discount)^year are computed once per discount rate and shared by every valuation, so the 10 year loop is
+ * only multiplications and divisions. The growth fades linearly from the start to the end growth, so the discounted sum has no closed form
+ * and is still summed year by year, but without any Math.pow call.
+ */
+public class BatchDcfCalculator {
+    public static final int YEARS = 10;
+    public static final double STOCK_DISCOUNT = 0.15;
+
+    private static final DiscountTable STOCK_DISCOUNT_TABLE = new DiscountTable(STOCK_DISCOUNT);
+    private static final Cache<Double, DiscountTable> DISCOUNT_TABLES = Caffeine.newBuilder()
+            .maximumSize(1000)
+            .build();
+
+    public static DiscountTable getDiscountTable(double discount) {
+        if (discount == STOCK_DISCOUNT) {
+            return STOCK_DISCOUNT_TABLE;
+        }
+        return DISCOUNT_TABLES.get(discount, DiscountTable::new);
+    }
+
+    /**
+     * Batch version of DcfCalculator.doStockDcfAnalysis.
+     */
+    public static double[] doStockDcfAnalysis(double[] eps, double[] pastGrowth) {
+        double[] result = new double[eps.length];
+        for (int i = 0; i < eps.length; ++i) {
+            result[i] = stockDcf(eps[i], pastGrowth[i] * 0.8, pastGrowth[i] * 0.4, STOCK_DISCOUNT_TABLE);
+        }
+        return result;
+    }
+
+    /**
+     * Batch version of DcfCalculator.doStockDcfAnalysisWithGrowth.
+     */
+    public static double[] doStockDcfAnalysisWithGrowth(double[] eps, double[] startGrowth, double[] endGrowth) {
+        double[] result = new double[eps.length];
+        for (int i = 0; i < eps.length; ++i) {
+            result[i] = stockDcf(eps[i], startGrowth[i], endGrowth[i], STOCK_DISCOUNT_TABLE);
+        }
+        return result;
+    }
+
+    /**
+     * Batch version of DcfCalculator.doCashFlowDcfAnalysisWithGrowth.
+     */
+    public static double[] doCashFlowDcfAnalysisWithGrowth(double[] cashFlow, double[] startGrowth, double[] endGrowth) {
+        double[] result = new double[cashFlow.length];
+        for (int i = 0; i < cashFlow.length; ++i) {
+            result[i] = cashFlowDcf(cashFlow[i], startGrowth[i], endGrowth[i], STOCK_DISCOUNT_TABLE);
+        }
+        return result;
+    }
+
+    static double stockDcf(double eps, double startGrowth, double endGrowth, DiscountTable table) {
+        double endMultiple = endGrowth;
+        if (endMultiple > 18) {
+            endMultiple = 18;
+        }
+        if (endMultiple < 8) {
+            endMultiple = 8;
+        }
+        double[] divisors = table.divisors;
+        double dcf = 0.0;
+        for (int i = 0; i < YEARS; ++i) {
+            double currentGrowth = startGrowth - ((startGrowth - endGrowth) * i) / (YEARS - 1);
+            eps *= 1.0 + (currentGrowth / 100.0);
+            dcf += (eps / divisors[i]);
+        }
+        dcf += ((eps * endMultiple) / divisors[YEARS - 1]);
+        return dcf;
+    }
+
+    static double cashFlowDcf(double cashFlow, double startGrowth, double endGrowth, DiscountTable table) {
+        double[] divisors = table.divisors;
+        double dcf = 0.0;
+        for (int i = 0; i < YEARS; ++i) {
+            double currentGrowth = startGrowth - ((startGrowth - endGrowth) * i) / (YEARS - 1);
+            cashFlow *= 1.0 + (currentGrowth / 100.0);
+            dcf += (cashFlow / divisors[i]);
+        }
+        return dcf;
+    }
+
+    public static class DiscountTable {
+        /** divisors[i] is (1 + discount)^(i + 1) */
+        final double[] divisors = new double[YEARS];
+
+        public DiscountTable(double discount) {
+            for (int i = 0; i < YEARS; ++i) {
+                divisors[i] = Math.pow(1.0 + discount, i + 1);
+            }
+        }
+
+        public double getDivisor(int year) {
+            return divisors[year - 1];
+        }
+    }
+
+}
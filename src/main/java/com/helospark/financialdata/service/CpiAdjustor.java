@@ -1,7 +1,5 @@
 package com.helospark.financialdata.service;
 
-import static com.helospark.financialdata.service.Helpers.findIndexWithOrBeforeDate;
-
 import java.io.File;
 import java.io.InputStream;
 import java.time.LocalDate;
@@ -17,6 +15,7 @@ import com.helospark.financialdata.domain.DataValuePairData;
 @Service
 public class CpiAdjustor {
     static List<DataValuePairData> cpiData = new ArrayList<>();
+    static ReferenceTimeSeries cpiSeries;
 
     static {
 
@@ -28,19 +27,18 @@ public class CpiAdjustor {
         List<DataValuePairData> oldCpi = readClasspathCsv("/data/old_cpi.csv");
         Collections.reverse(oldCpi);
         cpiData.addAll(oldCpi);
+
+        cpiSeries = ReferenceTimeSeries.create(cpiData, element -> element.value);
     }
 
     public static double adjustForInflationToOldDate(double value, LocalDate oldDate, LocalDate newDate) {
-        int oldIndex = findIndexWithOrBeforeDate(cpiData, oldDate);
-        int newIndex = findIndexWithOrBeforeDate(cpiData, newDate);
+        double oldCpi = cpiSeries.getValueAt(oldDate);
+        double newCpi = cpiSeries.getValueAt(newDate);
 
-        if (oldIndex == -1 || newIndex == -1) {
+        if (Double.isNaN(oldCpi) || Double.isNaN(newCpi)) {
             return value;
         }
 
-        double oldCpi = cpiData.get(oldIndex).value;
-        double newCpi = cpiData.get(newIndex).value;
-
         double adjustment = newCpi / oldCpi;
 
         return value * adjustment;
@@ -7,6 +7,7 @@ import static com.helospark.financialdata.service.Helpers.findIndexWithOrBeforeD
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.time.temporal.ChronoUnit;
@@ -20,7 +21,6 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.Lock;
 import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
@@ -35,7 +35,6 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JSR310Module;
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
-import com.google.common.util.concurrent.Striped;
 import com.helospark.financialdata.domain.AuxilaryInformation;
 import com.helospark.financialdata.domain.BalanceSheet;
 import com.helospark.financialdata.domain.CashFlow;
@@ -50,23 +49,37 @@ import com.helospark.financialdata.domain.IncomeStatement;
 import com.helospark.financialdata.domain.NoTtmNeeded;
 import com.helospark.financialdata.domain.Profile;
 import com.helospark.financialdata.domain.TresuryRate;
+import com.helospark.financialdata.service.cache.FinancialsDiskCache;
+import com.helospark.financialdata.service.cache.FinancialsFingerprint;
+import com.helospark.financialdata.service.cache.RetainedSizeEstimator;
+import com.helospark.financialdata.service.cache.SingleFlight;
 import com.helospark.financialdata.service.exchanges.Exchanges;
 import com.helospark.financialdata.util.StockDataDownloader;
+import com.helospark.financialdata.util.StockDataDownloader.YearMonthPair;
 import com.helospark.financialdata.util.glance.AtGlanceData;
+import com.helospark.financialdata.util.glance.AtGlanceDeltaCodec;
 
 public class DataLoader {
     private static final Logger LOGGER = LoggerFactory.getLogger(DataLoader.class);
-    private static final String CACHE_SAVE_FILE = "/tmp/cache.ser";
-    private static Striped<Lock> duplicateLoadLocks = Striped.lock(1000);
+    private static final SingleFlight<String, CompanyFinancials> financialsLoads = new SingleFlight<>();
+    private static final SingleFlight<String, List<HistoricalPriceElement>> priceHistoryLoads = new SingleFlight<>();
+    private static final SingleFlight<String, Optional<FxRatesResponse>> fxLoads = new SingleFlight<>();
+    private static final SingleFlight<YearMonthPair, Optional<Map<String, AtGlanceData>>> atGlanceLoads = new SingleFlight<>();
+    // bases of the recently read delta snapshots, reading a whole year needs the same base for every month
+    private static final Cache<YearMonthPair, Map<String, AtGlanceData>> deltaBaseCache = Caffeine.newBuilder()
+            .expireAfterAccess(10, TimeUnit.MINUTES)
+            .maximumSize(4)
+            .build();
 
     static ObjectMapper objectMapper = new ObjectMapper();
 
-    static Cache<String, CompanyFinancials> cache;
-    static Cache<String, List<HistoricalPriceElement>> priceHistoryCache;
+    // caches are replaced as a whole on reload, see reloadCaches
+    static volatile Cache<String, CompanyFinancials> cache;
+    static volatile Cache<String, List<HistoricalPriceElement>> priceHistoryCache;
 
-    static Cache<String, FxRatesResponse> fxCache;
-    static Cache<Exchanges, Set<String>> exchangeSymbolCache;
-    static List<TresuryRate> tresuryRateCache;
+    static volatile Cache<String, FxRatesResponse> fxCache;
+    static volatile Cache<Exchanges, Set<String>> exchangeSymbolCache;
+    static volatile List<TresuryRate> tresuryRateCache;
 
     static Set<String> realiableIpoData = Set.of("NTR");
 
@@ -78,37 +91,63 @@ public class DataLoader {
         objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
         objectMapper.registerModule(new JSR310Module());
 
-        int cacheSize = getConfig("STOCK_CACHE_SIZE", 50000);
-        int fcCacheSize = getConfig("FX_CACHE_SIZE", 10000);
+        cache = createFinancialsCache();
+        priceHistoryCache = createPriceHistoryCache();
+        fxCache = createFxCache();
+        exchangeSymbolCache = createExchangeSymbolCache();
+    }
 
-        cache = Caffeine.newBuilder()
+    /**
+     * Bounded by the estimated retained size, since a company with 40 years of reports can be orders of
+     * magnitude bigger than a recent IPO.
+     */
+    private static Cache<String, CompanyFinancials> createFinancialsCache() {
+        if (System.getProperty("STOCK_CACHE_SIZE") != null) {
+            LOGGER.warn("STOCK_CACHE_SIZE is no longer used, the stock cache is bounded by STOCK_CACHE_SIZE_MB and PRICE_CACHE_SIZE_MB");
+        }
+        return Caffeine.newBuilder()
                 .expireAfterWrite(1, TimeUnit.DAYS)
-                .maximumSize(cacheSize)
+                .maximumWeight(getFinancialsCacheBudgetBytes())
+                .weigher((String symbol, CompanyFinancials financials) -> RetainedSizeEstimator.toWeight(RetainedSizeEstimator.estimateFinancials(financials)))
                 .build();
-        priceHistoryCache = Caffeine.newBuilder()
+    }
+
+    private static Cache<String, List<HistoricalPriceElement>> createPriceHistoryCache() {
+        return Caffeine.newBuilder()
                 .expireAfterWrite(20, TimeUnit.MINUTES)
-                .maximumSize(100)
+                .maximumWeight(getConfig("PRICE_CACHE_SIZE_MB", 64) * 1024L * 1024L)
+                .weigher((String key, List<HistoricalPriceElement> prices) -> RetainedSizeEstimator.toWeight(RetainedSizeEstimator.estimatePriceHistory(prices)))
                 .build();
+    }
+
+    public static long getFinancialsCacheBudgetBytes() {
+        return getConfig("STOCK_CACHE_SIZE_MB", 1024) * 1024L * 1024L;
+    }
+
+    public static long getFinancialsCacheEstimatedBytes() {
+        return cache.policy()
+                .eviction()
+                .map(eviction -> eviction.weightedSize().orElse(0L))
+                .orElse(0L);
+    }
 
-        fxCache = Caffeine.newBuilder()
+    public static long getFinancialsCacheEntryCount() {
+        return cache.estimatedSize();
+    }
+
+    private static Cache<String, FxRatesResponse> createFxCache() {
+        int fcCacheSize = getConfig("FX_CACHE_SIZE", 10000);
+        return Caffeine.newBuilder()
                 .expireAfterWrite(1, TimeUnit.DAYS)
                 .maximumSize(fcCacheSize)
                 .build();
+    }
 
-        exchangeSymbolCache = Caffeine.newBuilder()
+    private static Cache<Exchanges, Set<String>> createExchangeSymbolCache() {
+        return Caffeine.newBuilder()
                 .expireAfterWrite(1, TimeUnit.DAYS)
                 .maximumSize(30)
                 .build();
-
-        //        File cacheFile = new File(CACHE_SAVE_FILE);
-        //        if (cacheFile.exists()) {
-        //            try {
-        //                cache.putAll(objectMapper.readValue(cacheFile, new TypeReference<Map<String, CompanyFinancials>>() {
-        //                }));
-        //            } catch (Exception e) {
-        //                e.printStackTrace();
-        //            }
-        //        }
     }
 
     public static int getConfig(String config, int defaultValue) {
@@ -150,8 +189,6 @@ public class DataLoader {
             newFinancialsList.add(newTtm);
             newFinancialsList.addAll(result.financials);
 
-            result.financials.add(0, newTtm);
-
             CompanyFinancials newResult = copyFields(result, new CompanyFinancials());
             newResult.financials = newFinancialsList;
 
@@ -166,28 +203,43 @@ public class DataLoader {
         if (cachedResult != null) {
             return cachedResult;
         }
-        Lock lock = duplicateLoadLocks.get(symbol);
-        try {
-            lock.tryLock(10, TimeUnit.SECONDS);
-            var result = loadData(symbol);
-            if (cacheWriteEnabled) {
-                cache.put(symbol, result);
+        var result = financialsLoads.load(symbol, key -> {
+            // a load may have finished between the cache check and joining the flight
+            CompanyFinancials loadedMeanwhile = cache.getIfPresent(key);
+            return loadedMeanwhile != null ? loadedMeanwhile : loadDataWithDiskCache(key, cacheWriteEnabled);
+        });
+        if (cacheWriteEnabled) {
+            // a slow load should not overwrite a newer value from reloadFinancials
+            CompanyFinancials existing = cache.asMap().putIfAbsent(symbol, result);
+            if (existing != null) {
+                result = existing;
             }
-
-            return result;
-        } catch (Exception e) {
-            throw new RuntimeException(e);
-        } finally {
-            lock.unlock();
         }
+        return result;
     }
 
-    private static CompanyFinancials loadData(String symbol) {
-        CompanyFinancials cachedResult = cache.getIfPresent(symbol);
-        if (cachedResult != null) {
-            return cachedResult;
+    private static CompanyFinancials loadDataWithDiskCache(String symbol) {
+        return loadDataWithDiskCache(symbol, true);
+    }
+
+    /**
+     * @param cacheWriteEnabled false for one-off bulk reads (like snapshot builds), which should not fill the disk cache either
+     */
+    private static CompanyFinancials loadDataWithDiskCache(String symbol, boolean cacheWriteEnabled) {
+        // calculated before loading, so a file changing meanwhile is detected at the next read
+        long fingerprint = FinancialsFingerprint.calculate(symbol);
+        Optional<CompanyFinancials> diskCached = FinancialsDiskCache.read(symbol, fingerprint);
+        if (diskCached.isPresent()) {
+            return diskCached.get();
         }
+        CompanyFinancials result = loadData(symbol);
+        if (cacheWriteEnabled) {
+            FinancialsDiskCache.write(symbol, fingerprint, result);
+        }
+        return result;
+    }
 
+    private static CompanyFinancials loadData(String symbol) {
         //        System.out.println("Loading " + symbol);
 
         List<BalanceSheet> balanceSheet = readFinancialFile(symbol, "balance-sheet.json", BalanceSheet.class);
@@ -525,12 +577,20 @@ public class DataLoader {
     }
 
     public static List<HistoricalPriceElement> readHistoricalPrice(String symbol, int detail) {
-        List<HistoricalPriceElement> cachedResult = priceHistoryCache.getIfPresent(symbol + "_" + detail);
+        String cacheKey = symbol + "_" + detail;
+        List<HistoricalPriceElement> cachedResult = priceHistoryCache.getIfPresent(cacheKey);
         if (cachedResult != null) {
             return cachedResult;
         }
 
-        List<HistoricalPriceElement> prices = readHistoricalPriceNoCache(symbol);
+        return priceHistoryLoads.load(cacheKey, key -> {
+            List<HistoricalPriceElement> result = samplePrices(readHistoricalPriceNoCache(symbol), detail);
+            priceHistoryCache.put(key, result);
+            return result;
+        });
+    }
+
+    private static List<HistoricalPriceElement> samplePrices(List<HistoricalPriceElement> prices, int detail) {
         List<HistoricalPriceElement> result = new ArrayList<>(detail);
         int step = prices.size() / detail;
 
@@ -542,8 +602,6 @@ public class DataLoader {
             result.add(prices.get(i));
         }
 
-        priceHistoryCache.put(symbol + "_" + detail, result);
-
         return result;
     }
 
@@ -842,32 +900,47 @@ public class DataLoader {
                 .collect(Collectors.toSet());
     }
 
-    public static void save() {
-        if (!new File(CACHE_SAVE_FILE).exists()) {
-            try {
-                objectMapper.writeValue(new File(CACHE_SAVE_FILE), cache);
-            } catch (Exception e) {
-                throw new RuntimeException(e);
-            }
-        }
+    /**
+     * Returns the most frequently used cached financials, hottest first.
+     */
+    public static Map<String, CompanyFinancials> getHottestCachedFinancials(int limit) {
+        return cache.policy()
+                .eviction()
+                .map(eviction -> eviction.hottest(limit))
+                .orElseGet(() -> new LinkedHashMap<>(cache.asMap()));
+    }
+
+    public static List<String> getHottestPriceHistoryKeys(int limit) {
+        return priceHistoryCache.policy()
+                .eviction()
+                .map(eviction -> new ArrayList<>(eviction.hottest(limit).keySet()))
+                .orElseGet(() -> new ArrayList<>(priceHistoryCache.asMap().keySet()));
+    }
+
+    public static void putCachedFinancialsIfAbsent(String symbol, CompanyFinancials financials) {
+        cache.asMap().putIfAbsent(symbol, financials);
     }
 
     public static Optional<FxRatesResponse> loadFxFile(String fromCurrency, LocalDate date) {
         String fileName = fromCurrency + "_" + date.getYear() + ".json";
-        try {
-            if (fxCache.getIfPresent(fileName) != null) {
-                return Optional.of(fxCache.getIfPresent(fileName));
-            } else {
-                FxRatesResponse result = objectMapper.readValue(new File(FX_BASE_FOLDER + "/" + fileName), FxRatesResponse.class);
+        FxRatesResponse cachedResult = fxCache.getIfPresent(fileName);
+        if (cachedResult != null) {
+            return Optional.of(cachedResult);
+        }
+        return fxLoads.load(fileName, key -> loadFxFileNoCache(key));
+    }
 
-                if (result.rates == null) {
-                    System.out.println("[Error] " + new File(FX_BASE_FOLDER + "/" + fileName).getAbsolutePath() + " rates is null");
-                    return Optional.empty();
-                }
+    private static Optional<FxRatesResponse> loadFxFileNoCache(String fileName) {
+        try {
+            FxRatesResponse result = objectMapper.readValue(new File(FX_BASE_FOLDER + "/" + fileName), FxRatesResponse.class);
 
-                fxCache.put(fileName, result);
-                return Optional.of(result);
+            if (result.rates == null) {
+                System.out.println("[Error] " + new File(FX_BASE_FOLDER + "/" + fileName).getAbsolutePath() + " rates is null");
+                return Optional.empty();
             }
+
+            fxCache.put(fileName, result);
+            return Optional.of(result);
         } catch (Exception e) {
             return Optional.empty();
         }
@@ -950,8 +1023,9 @@ public class DataLoader {
     }
 
     public static List<TresuryRate> loadTresuryRates() {
-        if (tresuryRateCache != null) {
-            return tresuryRateCache;
+        List<TresuryRate> cachedRates = tresuryRateCache;
+        if (cachedRates != null) {
+            return cachedRates;
         } else {
             List<TresuryRate> result = readListOfClassFromFile(new File(BASE_FOLDER + "/info/tresury_rates.json"), TresuryRate.class);
             tresuryRateCache = result;
@@ -987,10 +1061,15 @@ public class DataLoader {
     }
 
     public static Optional<Map<String, AtGlanceData>> loadHistoricalAtGlanceData(int year, int month) {
+        return atGlanceLoads.load(YearMonthPair.of(year, month), key -> loadHistoricalAtGlanceDataNoCache(year, month));
+    }
+
+    private static Optional<Map<String, AtGlanceData>> loadHistoricalAtGlanceDataNoCache(int year, int month) {
         File file = StockDataDownloader.getBacktestFileAtYear(year, month);
+        File deltaFile = StockDataDownloader.getBacktestDeltaFileAtYear(year, month);
 
         if (!file.exists()) {
-            return Optional.empty();
+            return deltaFile.exists() ? Optional.of(loadHistoricalAtGlanceDelta(year, month, deltaFile)) : Optional.empty();
         }
         /* TypeReference<LinkedHashMap<String, AtGlanceData>> typeRef = new TypeReference<LinkedHashMap<String, AtGlanceData>>() {
         };
@@ -1011,11 +1090,33 @@ public class DataLoader {
             result = Optional.of((Map<String, AtGlanceData>) (LinkedHashMap<String, AtGlanceData>) kryo.readObject(input, LinkedHashMap.class));
             input.close();
         } catch (Exception e) {
+            if (!file.exists() && deltaFile.exists()) {
+                // compacted to a delta meanwhile
+                return Optional.of(loadHistoricalAtGlanceDelta(year, month, deltaFile));
+            }
             throw new RuntimeException(e);
         }
         return result;
     }
 
+    /**
+     * Throws if the base snapshot differs from the one the delta was written with.
+     */
+    private static Map<String, AtGlanceData> loadHistoricalAtGlanceDelta(int year, int month, File deltaFile) {
+        YearMonthPair basePeriod = YearMonthPair.of(year, StockDataDownloader.HISTORICAL_SNAPSHOT_BASE_MONTH);
+        Map<String, AtGlanceData> base = deltaBaseCache.getIfPresent(basePeriod);
+        if (base == null) {
+            base = loadHistoricalAtGlanceData(year, StockDataDownloader.HISTORICAL_SNAPSHOT_BASE_MONTH)
+                    .orElseThrow(() -> new IllegalStateException("Base snapshot of " + deltaFile + " is missing"));
+            deltaBaseCache.put(basePeriod, base);
+        }
+        try {
+            return AtGlanceDeltaCodec.read(base, deltaFile);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
     public static List<EconomicPriceElement> loadEconomicFile(String string) {
         File file = new File(BASE_FOLDER + "/info/" + string + ".json");
         return readListOfClassFromFile(file, EconomicPriceElement.class);
@@ -1024,4 +1125,47 @@ public class DataLoader {
     public static void clearCache(String symbol) {
         cache.invalidate(symbol);
     }
+
+    /**
+     * Loads the symbol from disk and replaces the cached value in one step, so concurrent readers either
+     * get the old or the new financials, but never a cache miss.
+     */
+    public static CompanyFinancials reloadFinancials(String symbol) {
+        FinancialsDiskCache.invalidate(symbol);
+        CompanyFinancials result = loadDataWithDiskCache(symbol);
+        cache.put(symbol, result);
+        priceHistoryCache.asMap().keySet().removeIf(key -> key.startsWith(symbol + "_"));
+        return result;
+    }
+
+    /**
+     * Used after a full data refresh. A new generation of caches is built on the side and pre-warmed
+     * with the currently hottest symbols, then it's swapped in. Requests which already hold
+     * an instance from the old caches finish with that.
+     */
+    public static void reloadCaches() {
+        int prewarmSize = getConfig("RELOAD_PREWARM_SIZE", 1000);
+        long start = System.currentTimeMillis();
+
+        // FX and exchange files can also change during a refresh, financials are calculated with the new ones
+        fxCache = createFxCache();
+        exchangeSymbolCache = createExchangeSymbolCache();
+        tresuryRateCache = null;
+        EconomicDataProvider.clear();
+        // disk cache entries of the currencies with changed FX files are rejected by their fingerprint
+        FinancialsFingerprint.invalidateFxFingerprint();
+
+        Cache<String, CompanyFinancials> newCache = createFinancialsCache();
+        for (var symbol : getHottestCachedFinancials(prewarmSize).keySet()) {
+            try {
+                newCache.put(symbol, loadDataWithDiskCache(symbol));
+            } catch (Exception e) {
+                LOGGER.warn("Unable to prewarm " + symbol, e);
+            }
+        }
+        cache = newCache;
+        priceHistoryCache = createPriceHistoryCache();
+
+        LOGGER.info("Swapped to new financials cache with {} prewarmed symbols in {} ms", newCache.estimatedSize(), (System.currentTimeMillis() - start));
+    }
 }
@@ -1,14 +1,9 @@
 package com.helospark.financialdata.service;
 
-import static com.helospark.financialdata.service.Helpers.findIndexWithOrBeforeDate;
-
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
-import java.util.function.Function;
+import java.util.function.IntToDoubleFunction;
 
-import com.helospark.financialdata.CommonConfig;
 import com.helospark.financialdata.domain.CompanyFinancials;
 import com.helospark.financialdata.domain.FinancialsTtm;
 import com.helospark.financialdata.management.watchlist.domain.CalculatorParameters;
@@ -22,55 +17,23 @@ public class DcfCalculator {
     }
 
     public static double doStockDcfAnalysisWithGrowth(double eps, double startGrowth, double endGrowth) {
-        double dcf = 0.0;
-        int years = 10;
-        double discount = 0.15;
-        double endMultiple = endGrowth;
-        if (endMultiple > 18) {
-            endMultiple = 18;
-        }
-        if (endMultiple < 8) {
-            endMultiple = 8;
-        }
-
-        for (int i = 0; i < years; ++i) {
-            double currentGrowth = startGrowth - ((startGrowth - endGrowth) * i) / (years - 1);
-
-            eps *= 1.0 + (currentGrowth / 100.0);
-
-            dcf += (eps / Math.pow(1.0 + discount, i + 1));
-        }
-
-        dcf += ((eps * endMultiple) / Math.pow(1.0 + discount, years));
-
-        return dcf;
+        return BatchDcfCalculator.stockDcf(eps, startGrowth, endGrowth, BatchDcfCalculator.getDiscountTable(BatchDcfCalculator.STOCK_DISCOUNT));
     }
 
     public static double doCashFlowDcfAnalysisWithGrowth(double eps, double startGrowth, double endGrowth) {
-        double dcf = 0.0;
-        int years = 10;
-        double discount = 0.15;
-
-        for (int i = 0; i < years; ++i) {
-            double currentGrowth = startGrowth - ((startGrowth - endGrowth) * i) / (years - 1);
-
-            eps *= 1.0 + (currentGrowth / 100.0);
-
-            dcf += (eps / Math.pow(1.0 + discount, i + 1));
-        }
-
-        return dcf;
+        return BatchDcfCalculator.cashFlowDcf(eps, startGrowth, endGrowth, BatchDcfCalculator.getDiscountTable(BatchDcfCalculator.STOCK_DISCOUNT));
     }
 
     public static Optional<Double> doFullDcfAnalysisWithGrowth(List<FinancialsTtm> financials, double offsetYear) {
-        int oldIndex = findIndexWithOrBeforeDate(financials, CommonConfig.NOW.minusMonths((long) (offsetYear * 12.0)));
+        GrowthWindowIndex growthIndex = GrowthWindowIndex.of(financials);
+        int oldIndex = growthIndex.findIndexAtYearsAgo(offsetYear);
 
         if (oldIndex == -1) {
             return Optional.empty();
         }
         FinancialsTtm financial = financials.get(oldIndex);
 
-        Optional<Double> pastGrowth = getDcfGrowth(financials, offsetYear, i -> GrowthCalculator.getEpsGrowthInInterval(financials, offsetYear + i, offsetYear));
+        Optional<Double> pastGrowth = getDcfGrowth(i -> growthIndex.getEpsGrowth(offsetYear + i, offsetYear));
 
         double result = 0.0;
 
@@ -91,7 +54,7 @@ public class DcfCalculator {
             }
             result += doStockDcfAnalysisWithGrowth(financial.incomeStatementTtm.eps, pastGrowth.get() * startMultiplier, pastGrowth.get() * endMultiplier);
         }
-        Optional<Double> dividendGrowth = getDcfGrowth(financials, offsetYear, i -> GrowthCalculator.getDividendGrowthInInterval(financials, offsetYear + i, offsetYear));
+        Optional<Double> dividendGrowth = getDcfGrowth(i -> growthIndex.getDividendGrowth(offsetYear + i, offsetYear));
 
         if (dividendGrowth.isPresent()) {
             double startMultiplier = 0.9;
@@ -121,8 +84,7 @@ public class DcfCalculator {
     }
 
     public static Optional<Double> doDcfAnalysisRevenueWithDefaultParametersAndDiscount(CompanyFinancials company, double offsetYear, double discount) {
-        var financials = company.financials;
-        int index = findIndexWithOrBeforeDate(financials, CommonConfig.NOW.minusMonths((long) (offsetYear * 12.0)));
+        int index = GrowthWindowIndex.of(company.financials).findIndexAtYearsAgo(offsetYear);
 
         if (index == -1) {
             return Optional.empty();
@@ -137,8 +99,8 @@ public class DcfCalculator {
     }
 
     public static CalculatorParameters fillCalculatorParameters(CompanyFinancials company, double offsetYear, double discount) {
-        var financials = company.financials;
-        int index = findIndexWithOrBeforeDate(financials, CommonConfig.NOW.minusMonths((long) (offsetYear * 12.0)));
+        GrowthWindowIndex growthIndex = GrowthWindowIndex.of(company.financials);
+        int index = growthIndex.findIndexAtYearsAgo(offsetYear);
 
         if (index == -1) {
             return new CalculatorParameters();
@@ -146,7 +108,10 @@ public class DcfCalculator {
 
         double startGrowth = GrowthCalculator.getMedianRevenueGrowth(company.financials, 8, offsetYear).orElse(10.0);
         double startMargin = MarginCalculator.getAvgNetMargin(company.financials, index) * 100.0;
-        double startShareCountGrowth = GrowthCalculator.getShareCountGrowthInInterval(company.financials, 5 + offsetYear, offsetYear).orElse(0.0);
+        double startShareCountGrowth = growthIndex.getShareCountGrowth(5 + offsetYear, offsetYear);
+        if (Double.isNaN(startShareCountGrowth)) {
+            startShareCountGrowth = 0.0;
+        }
         double endGrowth = startGrowth * 0.5;
 
         double endShareCountGrowth = startShareCountGrowth;
@@ -195,7 +160,8 @@ public class DcfCalculator {
         startShareCountGrowth = calculatorParameters.startShChange / 100.0 + 1.0;
         endShareCountGrowth = calculatorParameters.endShChange / 100.0 + 1.0;
 
-        int years = 10;
+        int years = BatchDcfCalculator.YEARS;
+        double[] divisors = BatchDcfCalculator.getDiscountTable(discount).divisors;
         double value = 0.0;
         double previousRevenue = revenue;
         double previousShareCount = shareCount;
@@ -212,11 +178,11 @@ public class DcfCalculator {
 
             eps = netIncome / previousShareCount;
 
-            double discountedEps = (eps / Math.pow(1.0 + discount, i + 1));
+            double discountedEps = (eps / divisors[i]);
             value += discountedEps;
         }
 
-        value += ((eps * endMultiple) / Math.pow(1.0 + discount, years));
+        value += ((eps * endMultiple) / divisors[years - 1]);
 
         if (!Double.isFinite(value)) {
             return Optional.empty();
@@ -276,23 +242,20 @@ public class DcfCalculator {
         }
     }
 
-    private static Optional<Double> getDcfGrowth(List<FinancialsTtm> financials, double offsetYear, Function<Integer, Optional<Double>> growthFunc) {
-        List<Double> values = new ArrayList<>();
+    private static Optional<Double> getDcfGrowth(IntToDoubleFunction growthFunc) {
+        double[] values = new double[8];
+        int count = 0;
         for (int i = 10; i >= 3; --i) {
-            Optional<Double> growthInInterval = growthFunc.apply(i);
-            if (growthInInterval.isPresent()) {
-                values.add(growthInInterval.get());
-            }
+            count = GrowthWindowIndex.addIfPresent(values, count, growthFunc.applyAsDouble(i));
         }
-        Collections.sort(values);
-        return values.isEmpty() ? getShortTermGrowth(financials, offsetYear, growthFunc) : Optional.of(values.get(values.size() / 2));
+        return count == 0 ? getShortTermGrowth(growthFunc) : Optional.of(GrowthWindowIndex.median(values, count));
     }
 
-    private static Optional<Double> getShortTermGrowth(List<FinancialsTtm> financials, double offsetYear, Function<Integer, Optional<Double>> growthFunc) {
+    private static Optional<Double> getShortTermGrowth(IntToDoubleFunction growthFunc) {
         for (int i = 2; i >= 1; --i) {
-            Optional<Double> growthInInterval = growthFunc.apply(i);
-            if (growthInInterval.isPresent()) {
-                return growthInInterval.map(a -> a * 0.7);
+            double growthInInterval = growthFunc.applyAsDouble(i);
+            if (!Double.isNaN(growthInInterval)) {
+                return Optional.of(growthInInterval * 0.7);
             }
         }
         return Optional.empty();
@@ -0,0 +1,129 @@
+package com.helospark.financialdata.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JSR310Module;
+import com.helospark.financialdata.CommonConfig;
+import com.helospark.financialdata.domain.DateAware;
+import com.helospark.financialdata.domain.EconomicPriceElement;
+import com.helospark.financialdata.domain.SimpleDateDataElement;
+
+/**
+ * Economic data files (indicators and the valuation ratios of the S&P 500 charts), each read from disk once
+ * and kept in memory together with its date lookup series. Cleared by DataLoader.reloadCaches when the files are refreshed.
+ */
+public class EconomicDataProvider {
+    private static final ObjectMapper objectMapper = new ObjectMapper().registerModule(new JSR310Module());
+
+    private static Map<String, IndexedSeries<EconomicPriceElement>> indicators = new ConcurrentHashMap<>();
+    private static Map<String, IndexedSeries<SimpleDateDataElement>> chartData = new ConcurrentHashMap<>();
+
+    public static IndexedSeries<EconomicPriceElement> getIndicator(String indicator) {
+        return indicators.computeIfAbsent(indicator, key -> IndexedSeries.of(DataLoader.loadEconomicFile(key)));
+    }
+
+    /**
+     * @param file in the [["date", "value"], ...] format, ordered oldest first
+     */
+    public static IndexedSeries<SimpleDateDataElement> getLttData(String file) {
+        return getChartData("ltt:" + file, () -> loadLttFile(file));
+    }
+
+    /**
+     * @param file in the [{"date": ..., "value": ...}, ...] format, ordered newest first
+     */
+    public static IndexedSeries<SimpleDateDataElement> getFpData(String file) {
+        return getChartData("fp:" + file, () -> loadFpFile(file));
+    }
+
+    /**
+     * Yearly inflation calculated from a monthly CPI file in the getFpData format.
+     */
+    public static IndexedSeries<SimpleDateDataElement> getInflationData(String cpiFile) {
+        return getChartData("inflation:" + cpiFile, () -> cpiToInflation(getFpData(cpiFile).elements()));
+    }
+
+    public static void clear() {
+        indicators = new ConcurrentHashMap<>();
+        chartData = new ConcurrentHashMap<>();
+    }
+
+    private static IndexedSeries<SimpleDateDataElement> getChartData(String key, IoSupplier<List<SimpleDateDataElement>> loader) {
+        IndexedSeries<SimpleDateDataElement> result = chartData.get(key);
+        if (result == null) {
+            // loaded outside of computeIfAbsent, the inflation data recursively loads the CPI file
+            try {
+                result = IndexedSeries.of(loader.get());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            IndexedSeries<SimpleDateDataElement> existing = chartData.putIfAbsent(key, result);
+            if (existing != null) {
+                result = existing;
+            }
+        }
+        return result;
+    }
+
+    private static List<SimpleDateDataElement> loadLttFile(String file) throws IOException {
+        String[][] rawData = objectMapper.readValue(new File(CommonConfig.BASE_FOLDER + file), String[][].class);
+        List<SimpleDateDataElement> dataElements = new ArrayList<>();
+        for (int i = rawData.length - 1; i >= 0; --i) {
+            LocalDate date = LocalDate.parse(rawData[i][0].replaceAll("T.*", ""));
+            double value = Double.parseDouble(rawData[i][1]);
+            dataElements.add(new SimpleDateDataElement(date, value));
+        }
+        return dataElements;
+    }
+
+    private static List<SimpleDateDataElement> loadFpFile(String file) throws IOException {
+        return Arrays.asList(objectMapper.readValue(new File(CommonConfig.BASE_FOLDER + file), SimpleDateDataElement[].class));
+    }
+
+    private static List<SimpleDateDataElement> cpiToInflation(List<SimpleDateDataElement> cpi) {
+        List<SimpleDateDataElement> result = new ArrayList<>();
+
+        int i = 0;
+        while (i < cpi.size() - 13) {
+            double currentCpi = cpi.get(i).value;
+            double previousCpi = cpi.get(i + 12).value;
+
+            double inflation = ((currentCpi - previousCpi) / previousCpi) * 100.0;
+
+            result.add(new SimpleDateDataElement(cpi.get(i).date, inflation));
+
+            ++i;
+        }
+
+        return result;
+    }
+
+    /**
+     * Elements of a series with the lookup of their index by date.
+     */
+    public record IndexedSeries<T extends DateAware>(List<T> elements, ReferenceTimeSeries series) {
+
+        public static <T extends DateAware> IndexedSeries<T> of(List<T> elements) {
+            return new IndexedSeries<>(Collections.unmodifiableList(elements), ReferenceTimeSeries.create(elements));
+        }
+
+        public int getIndexAt(LocalDate date) {
+            return series.getIndexAt(date);
+        }
+    }
+
+    interface IoSupplier<T> {
+        T get() throws IOException;
+    }
+
+}
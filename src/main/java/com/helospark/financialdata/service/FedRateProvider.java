@@ -10,13 +10,14 @@ import com.helospark.financialdata.domain.DataValuePairData;
 
 public class FedRateProvider {
     public static List<DataValuePairData> fedFundsRate = new ArrayList<>();
+    static ReferenceTimeSeries fedFundsRateSeries;
 
     static {
         fedFundsRate = DataLoader.readListOfClassFromFile(new File(CommonConfig.BASE_FOLDER + "/info/federalFunds.json"), DataValuePairData.class);
+        fedFundsRateSeries = ReferenceTimeSeries.create(fedFundsRate, element -> element.value);
     }
 
     public static double getFedFundsRate(LocalDate date) {
-        int resultIndex = Helpers.findIndexWithOrBeforeDateSafe(fedFundsRate, date);
-        return fedFundsRate.get(resultIndex).value;
+        return fedFundsRateSeries.getValueAtOrOldest(date);
     }
 }
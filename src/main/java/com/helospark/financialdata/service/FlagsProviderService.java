@@ -9,6 +9,9 @@ import com.helospark.financialdata.flags.CompounderFlagProvider;
 import com.helospark.financialdata.flags.DebtFlagFlagProvider;
 import com.helospark.financialdata.flags.DividendFlagProvider;
 import com.helospark.financialdata.flags.EarningQualityFlagProvider;
+import com.helospark.financialdata.flags.FlagCollector;
+import com.helospark.financialdata.flags.FlagContext;
+import com.helospark.financialdata.flags.FlagCounter;
 import com.helospark.financialdata.flags.FlagProvider;
 import com.helospark.financialdata.flags.GrowthFlagProvider;
 import com.helospark.financialdata.flags.IpoFlagProvider;
@@ -36,11 +39,27 @@ public class FlagsProviderService {
     public static List<FlagInformation> giveFlags(CompanyFinancials company, double offsetYears) {
         List<FlagInformation> flags = new ArrayList<>();
 
-        for (var element : flagProviders) {
-            element.addFlags(company, flags, offsetYears);
-        }
+        addFlags(company, offsetYears, FlagCollector.toList(flags));
 
         return flags;
     }
 
+    /**
+     * Same flags as giveFlags, but only counted by type, messages are not built.
+     */
+    public static FlagCounter countFlags(CompanyFinancials company, double offsetYears) {
+        FlagCounter counter = new FlagCounter();
+
+        addFlags(company, offsetYears, counter);
+
+        return counter;
+    }
+
+    private static void addFlags(CompanyFinancials company, double offsetYears, FlagCollector collector) {
+        FlagContext context = new FlagContext(company, offsetYears);
+        for (var element : flagProviders) {
+            element.addFlags(context, collector);
+        }
+    }
+
 }
@@ -0,0 +1,264 @@
+package com.helospark.financialdata.service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.BiFunction;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helospark.financialdata.CommonConfig;
+import com.helospark.financialdata.util.StockDataDownloader;
+import com.helospark.financialdata.util.glance.AtGlanceData;
+
+/**
+ * Forward returns of every symbol between the quarterly historical at glance snapshots, so backtests don't need to walk the snapshots for each bought stock.
+ * <p>
+ * Stored as a symbol x snapshot matrix of prices and dates, plus the dividend reinvestment factor of each January snapshot.
+ * Dividends are reinvested the same way as the backtest always did: at the January snapshots strictly between the buy and sell year,
+ * and if any of those factors is invalid, the dividends of the whole range are ignored.
+ */
+public class ForwardReturnsTable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ForwardReturnsTable.class);
+    public static final String FORWARD_RETURNS_FILE = StockDataDownloader.SYMBOL_CACHE_HISTORY_FILE + "forward-returns.bin";
+    public static final int FIRST_YEAR = 1990;
+    private static final int PERIODS_PER_YEAR = 4;
+    private static final int MAGIC = 0x46525442;
+    private static final int FORMAT_VERSION = 2;
+    private static final int MISSING = Integer.MIN_VALUE;
+    private static final int NULL_DATE = Integer.MIN_VALUE + 1;
+
+    private final int numberOfYears;
+    private final int numberOfPeriods;
+    private final Map<String, Integer> symbolToIndex;
+    /** [symbol * numberOfPeriods + period], NaN if the symbol is missing from the snapshot */
+    private final double[] pricesUsd;
+    /** [symbol * numberOfPeriods + period], epoch day of the snapshot's actual date, MISSING if the symbol is missing from the snapshot */
+    private final int[] actualDates;
+    /** [symbol * numberOfYears + year], share count multiplier of reinvesting the dividends at the January snapshot, 1.0 if missing */
+    private final double[] dividendFactors;
+
+    private ForwardReturnsTable(int numberOfYears, Map<String, Integer> symbolToIndex, double[] pricesUsd, int[] actualDates, double[] dividendFactors) {
+        this.numberOfYears = numberOfYears;
+        this.numberOfPeriods = numberOfYears * PERIODS_PER_YEAR;
+        this.symbolToIndex = symbolToIndex;
+        this.pricesUsd = pricesUsd;
+        this.actualDates = actualDates;
+        this.dividendFactors = dividendFactors;
+    }
+
+    public static ForwardReturnsTable loadOrBuild(BiFunction<Integer, Integer, Optional<Map<String, AtGlanceData>>> snapshotLoader) {
+        File file = new File(FORWARD_RETURNS_FILE);
+        if (file.exists() && file.lastModified() >= getNewestSnapshotModification()) {
+            try {
+                return load(file);
+            } catch (Exception e) {
+                LOGGER.warn("Unable to read forward returns table, rebuilding", e);
+            }
+        }
+        ForwardReturnsTable result = build(snapshotLoader);
+        result.save(file);
+        return result;
+    }
+
+    public static ForwardReturnsTable build(BiFunction<Integer, Integer, Optional<Map<String, AtGlanceData>>> snapshotLoader) {
+        long start = System.currentTimeMillis();
+        int numberOfYears = CommonConfig.NOW.getYear() - FIRST_YEAR + 1;
+        int numberOfPeriods = numberOfYears * PERIODS_PER_YEAR;
+        Map<String, SymbolRow> rows = new LinkedHashMap<>();
+
+        for (int year = FIRST_YEAR; year < FIRST_YEAR + numberOfYears; ++year) {
+            for (int month = 1; month < 12; month += 3) {
+                Optional<Map<String, AtGlanceData>> snapshot = snapshotLoader.apply(year, month);
+                if (snapshot.isEmpty()) {
+                    continue;
+                }
+                int period = toPeriod(year, month);
+                for (var entry : snapshot.get().entrySet()) {
+                    AtGlanceData data = entry.getValue();
+                    SymbolRow row = rows.computeIfAbsent(entry.getKey(), symbol -> new SymbolRow(numberOfYears, numberOfPeriods));
+                    row.pricesUsd[period] = data.latestStockPriceUsd;
+                    row.actualDates[period] = data.actualDate == null ? NULL_DATE : (int) data.actualDate.toEpochDay();
+                    if (month == 1 && data.dividendYield < 100.0) { // data issues
+                        row.dividendFactors[year - FIRST_YEAR] = 1.0 + data.dividendPaid / data.latestStockPrice;
+                    }
+                }
+            }
+        }
+
+        Map<String, Integer> symbolToIndex = new HashMap<>();
+        double[] pricesUsd = new double[rows.size() * numberOfPeriods];
+        int[] actualDates = new int[rows.size() * numberOfPeriods];
+        double[] dividendFactors = new double[rows.size() * numberOfYears];
+        int symbolIndex = 0;
+        for (var entry : rows.entrySet()) {
+            SymbolRow row = entry.getValue();
+            symbolToIndex.put(entry.getKey(), symbolIndex);
+            System.arraycopy(row.pricesUsd, 0, pricesUsd, symbolIndex * numberOfPeriods, numberOfPeriods);
+            System.arraycopy(row.actualDates, 0, actualDates, symbolIndex * numberOfPeriods, numberOfPeriods);
+            System.arraycopy(row.dividendFactors, 0, dividendFactors, symbolIndex * numberOfYears, numberOfYears);
+            ++symbolIndex;
+        }
+        LOGGER.info("Built forward returns table for {} symbols in {} ms", rows.size(), System.currentTimeMillis() - start);
+        return new ForwardReturnsTable(numberOfYears, symbolToIndex, pricesUsd, actualDates, dividendFactors);
+    }
+
+    /**
+     * -1 if the symbol is in none of the snapshots.
+     */
+    public int getSymbolIndex(String symbol) {
+        return symbolToIndex.getOrDefault(symbol, -1);
+    }
+
+    public static int toPeriod(int year, int month) {
+        return (year - FIRST_YEAR) * PERIODS_PER_YEAR + (month - 1) / 3;
+    }
+
+    public boolean hasData(int symbolIndex, int period) {
+        return period >= 0 && period < numberOfPeriods && actualDates[symbolIndex * numberOfPeriods + period] != MISSING;
+    }
+
+    public double getPriceUsd(int symbolIndex, int period) {
+        return pricesUsd[symbolIndex * numberOfPeriods + period];
+    }
+
+    /**
+     * Null if the snapshot has no actual date.
+     */
+    public LocalDate getActualDate(int symbolIndex, int period) {
+        int epochDay = actualDates[symbolIndex * numberOfPeriods + period];
+        return epochDay == NULL_DATE ? null : LocalDate.ofEpochDay(epochDay);
+    }
+
+    /**
+     * Latest January snapshot at or before the given year containing the symbol, -1 if none.
+     */
+    public int findLatestJanuaryPeriod(int symbolIndex, int year) {
+        for (int i = Math.min(year, FIRST_YEAR + numberOfYears - 1); i >= FIRST_YEAR; --i) {
+            int period = toPeriod(i, 1);
+            if (hasData(symbolIndex, period)) {
+                return period;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Multiplier of the share count when the dividends of January snapshots between (exclusive) fromYear and toYear are reinvested,
+     * 1.0 if the result is not finite because of a data issue.
+     */
+    public double getDividendReinvestMultiplier(int symbolIndex, int fromYear, int toYear) {
+        int firstYear = Math.max(fromYear + 1, FIRST_YEAR);
+        int lastYear = Math.min(toYear - 1, FIRST_YEAR + numberOfYears - 1);
+        double result = 1.0;
+        for (int year = firstYear; year <= lastYear; ++year) {
+            result *= dividendFactors[symbolIndex * numberOfYears + year - FIRST_YEAR];
+        }
+        return Double.isFinite(result) ? result : 1.0;
+    }
+
+    private void save(File file) {
+        File tmpFile = new File(file.getAbsolutePath() + ".tmp");
+        String[] symbols = new String[symbolToIndex.size()];
+        for (var entry : symbolToIndex.entrySet()) {
+            symbols[entry.getValue()] = entry.getKey();
+        }
+        try (var output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+            output.writeInt(MAGIC);
+            output.writeInt(FORMAT_VERSION);
+            output.writeInt(FIRST_YEAR);
+            output.writeInt(numberOfYears);
+            output.writeInt(symbols.length);
+            for (int i = 0; i < symbols.length; ++i) {
+                output.writeUTF(symbols[i]);
+                for (int j = 0; j < numberOfPeriods; ++j) {
+                    output.writeDouble(pricesUsd[i * numberOfPeriods + j]);
+                    output.writeInt(actualDates[i * numberOfPeriods + j]);
+                }
+                for (int j = 0; j < numberOfYears; ++j) {
+                    output.writeDouble(dividendFactors[i * numberOfYears + j]);
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Unable to save forward returns table", e);
+            return;
+        }
+        try {
+            Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOGGER.warn("Unable to save forward returns table", e);
+        }
+    }
+
+    private static ForwardReturnsTable load(File file) throws IOException {
+        try (var input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (input.readInt() != MAGIC || input.readInt() != FORMAT_VERSION || input.readInt() != FIRST_YEAR) {
+                throw new IOException("Unknown forward returns format");
+            }
+            int numberOfYears = input.readInt();
+            if (numberOfYears != CommonConfig.NOW.getYear() - FIRST_YEAR + 1) {
+                throw new IOException("Forward returns table is from a previous year");
+            }
+            int numberOfPeriods = numberOfYears * PERIODS_PER_YEAR;
+            int numberOfSymbols = input.readInt();
+            Map<String, Integer> symbolToIndex = new HashMap<>();
+            double[] pricesUsd = new double[numberOfSymbols * numberOfPeriods];
+            int[] actualDates = new int[numberOfSymbols * numberOfPeriods];
+            double[] dividendFactors = new double[numberOfSymbols * numberOfYears];
+            for (int i = 0; i < numberOfSymbols; ++i) {
+                symbolToIndex.put(input.readUTF(), i);
+                for (int j = 0; j < numberOfPeriods; ++j) {
+                    pricesUsd[i * numberOfPeriods + j] = input.readDouble();
+                    actualDates[i * numberOfPeriods + j] = input.readInt();
+                }
+                for (int j = 0; j < numberOfYears; ++j) {
+                    dividendFactors[i * numberOfYears + j] = input.readDouble();
+                }
+            }
+            return new ForwardReturnsTable(numberOfYears, symbolToIndex, pricesUsd, actualDates, dividendFactors);
+        }
+    }
+
+    /**
+     * Newest modification time of the historical snapshot files the table is built from.
+     */
+    public static long getNewestSnapshotModification() {
+        long result = 0;
+        for (int year = FIRST_YEAR; year <= CommonConfig.NOW.getYear(); ++year) {
+            for (int month = 1; month < 12; month += 3) {
+                result = Math.max(result, StockDataDownloader.getHistoricalSnapshotModification(year, month));
+            }
+        }
+        return result;
+    }
+
+    static class SymbolRow {
+        double[] pricesUsd;
+        int[] actualDates;
+        double[] dividendFactors;
+
+        public SymbolRow(int numberOfYears, int numberOfPeriods) {
+            pricesUsd = new double[numberOfPeriods];
+            actualDates = new int[numberOfPeriods];
+            dividendFactors = new double[numberOfYears];
+            Arrays.fill(pricesUsd, Double.NaN);
+            Arrays.fill(actualDates, MISSING);
+            Arrays.fill(dividendFactors, 1.0);
+        }
+    }
+
+}
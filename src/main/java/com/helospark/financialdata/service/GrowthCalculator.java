@@ -157,27 +157,23 @@ public class GrowthCalculator {
     }
 
     public static Optional<Double> getMedianRevenueGrowth(List<FinancialsTtm> financials, int maxYears, double offset) {
-        List<Double> values = new ArrayList<>();
+        GrowthWindowIndex index = GrowthWindowIndex.of(financials);
+        double[] values = new double[Math.max(0, maxYears - 2)];
+        int count = 0;
         for (int i = maxYears; i >= 3; --i) {
-            Optional<Double> growthInInterval = getRevenueGrowthInInterval(financials, i + offset, offset);
-            if (growthInInterval.isPresent()) {
-                values.add(growthInInterval.get());
-            }
+            count = GrowthWindowIndex.addIfPresent(values, count, index.getRevenueGrowth(i + offset, offset));
         }
-        Collections.sort(values);
-        return values.isEmpty() ? getShortTermGrowth(financials, offset) : Optional.of(values.get(values.size() / 2));
+        return count == 0 ? getShortTermGrowth(index, offset) : Optional.of(GrowthWindowIndex.median(values, count));
     }
 
     public static Optional<Double> getMedianEpsGrowth(List<FinancialsTtm> financials, int maxYears, double offset) {
-        List<Double> values = new ArrayList<>();
+        GrowthWindowIndex index = GrowthWindowIndex.of(financials);
+        double[] values = new double[Math.max(0, maxYears - 2)];
+        int count = 0;
         for (int i = maxYears; i >= 3; --i) {
-            Optional<Double> growthInInterval = getEpsGrowthInInterval(financials, i + offset, offset);
-            if (growthInInterval.isPresent()) {
-                values.add(growthInInterval.get());
-            }
+            count = GrowthWindowIndex.addIfPresent(values, count, index.getEpsGrowth(i + offset, offset));
         }
-        Collections.sort(values);
-        return values.isEmpty() ? getShortTermGrowth(financials, offset) : Optional.of(values.get(values.size() / 2));
+        return count == 0 ? getShortTermGrowth(index, offset) : Optional.of(GrowthWindowIndex.median(values, count));
     }
 
     public static Optional<Double> getMedianFcfGrowth(List<FinancialsTtm> financials, int maxYears, double offset) {
@@ -189,14 +185,14 @@ public class GrowthCalculator {
             }
         }
         Collections.sort(values);
-        return values.isEmpty() ? getShortTermGrowth(financials, offset) : Optional.of(values.get(values.size() / 2));
+        return values.isEmpty() ? getShortTermGrowth(GrowthWindowIndex.of(financials), offset) : Optional.of(values.get(values.size() / 2));
     }
 
-    private static Optional<Double> getShortTermGrowth(List<FinancialsTtm> financials, double offset) {
+    private static Optional<Double> getShortTermGrowth(GrowthWindowIndex index, double offset) {
         for (int i = 2; i >= 1; --i) {
-            Optional<Double> growthInInterval = getRevenueGrowthInInterval(financials, i + offset, offset);
-            if (growthInInterval.isPresent()) {
-                return growthInInterval.map(a -> a * 0.6);
+            double growthInInterval = index.getRevenueGrowth(i + offset, offset);
+            if (!Double.isNaN(growthInInterval)) {
+                return Optional.of(growthInInterval * 0.6);
             }
         }
         return Optional.empty();
@@ -397,7 +393,7 @@ public class GrowthCalculator {
         return Optional.of(resultPercent);
     }
 
-    private static double calculatePercentChange(double now, double then, double distance) {
+    static double calculatePercentChange(double now, double then, double distance) {
         if (now < 0.0 && then < 0.0) {
             return -(Math.pow(now / then, 1.0 / distance) - 1.0) * 100.0;
         } else if (now > 0.0 && then > 0.0) {
@@ -0,0 +1,204 @@
+package com.helospark.financialdata.service;
+
+import java.util.Arrays;
+import java.util.List;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.helospark.financialdata.CommonConfig;
+import com.helospark.financialdata.domain.FinancialsTtm;
+
+/**
+ * Same growth calculations as GrowthCalculator, but for many windows of the same company.
+ * <p>
+ * The quarter index of every "months before CommonConfig.NOW" offset is found once in a single sweep, and the metrics are copied
+ * into primitive arrays, so a growth window is two array lookups instead of two date searches. Missing growth is returned as NaN.
+ */
+public class GrowthWindowIndex {
+    private static final Cache<List<FinancialsTtm>, GrowthWindowIndex> CACHE = Caffeine.newBuilder()
+            .weakKeys()
+            .maximumSize(2000)
+            .build();
+
+    /** Index of findIndexWithOrBeforeDate(financials, NOW.minusMonths(i)), -1 for every offset after the end of the array */
+    private final int[] indexByMonthsAgo;
+    private final long[] epochDays;
+    private final double[] eps;
+    private final double[] fcfPerShare;
+    private final double[] revenue;
+    private final double[] dividendPerShare;
+    private final double[] shareCount;
+
+    /**
+     * Index of the given financials, cached by the identity of the list. The index doesn't reference the list,
+     * so the entry is dropped once the list is garbage collected.
+     */
+    public static GrowthWindowIndex of(List<FinancialsTtm> financials) {
+        return CACHE.get(financials, GrowthWindowIndex::new);
+    }
+
+    public GrowthWindowIndex(List<FinancialsTtm> financials) {
+        int size = financials.size();
+        epochDays = new long[size];
+        eps = new double[size];
+        fcfPerShare = new double[size];
+        revenue = new double[size];
+        dividendPerShare = new double[size];
+        shareCount = new double[size];
+        for (int i = 0; i < size; ++i) {
+            FinancialsTtm element = financials.get(i);
+            epochDays[i] = element.getDate().toEpochDay();
+            eps[i] = (double) element.incomeStatementTtm.netIncome / element.incomeStatementTtm.weightedAverageShsOut;
+            fcfPerShare[i] = GrowthCalculator.getFcfPerShare(element);
+            revenue[i] = element.incomeStatementTtm.revenue;
+            dividendPerShare[i] = (double) -element.cashFlowTtm.dividendsPaid / element.incomeStatementTtm.weightedAverageShsOut;
+            shareCount[i] = element.incomeStatementTtm.weightedAverageShsOut;
+        }
+        indexByMonthsAgo = buildMonthIndex();
+    }
+
+    /**
+     * findIndexWithOrBeforeDate returns the first element dated before date + 20 days. Going back in time that set only shrinks,
+     * so the first matching index never decreases and one pointer sweeps through the list once for all offsets.
+     */
+    private int[] buildMonthIndex() {
+        int[] result = new int[Math.max(16, epochDays.length * 4)];
+        int months = 0;
+        int index = 0;
+        while (index < epochDays.length) {
+            long threshold = CommonConfig.NOW.minusMonths(months).toEpochDay() + 20;
+            while (index < epochDays.length && epochDays[index] >= threshold) {
+                ++index;
+            }
+            if (months == result.length) {
+                result = Arrays.copyOf(result, result.length * 2);
+            }
+            result[months++] = (index < epochDays.length ? index : -1);
+        }
+        return Arrays.copyOf(result, months);
+    }
+
+    public int size() {
+        return epochDays.length;
+    }
+
+    public int findIndexAtYearsAgo(double years) {
+        return findIndexAtMonthsAgo((long) (years * 12.0));
+    }
+
+    public int findIndexAtMonthsAgo(long months) {
+        if (months < 0) {
+            return findIndexWithOrBeforeEpochDay(CommonConfig.NOW.minusMonths(months).toEpochDay());
+        }
+        return months < indexByMonthsAgo.length ? indexByMonthsAgo[(int) months] : -1;
+    }
+
+    /**
+     * Same as Helpers.findIndexWithOrBeforeDate, used for the dates after NOW which are not in the month index.
+     */
+    private int findIndexWithOrBeforeEpochDay(long epochDay) {
+        for (int i = 0; i < epochDays.length; ++i) {
+            if (Math.abs(epochDay - epochDays[i]) < 20 || epochDays[i] < epochDay) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Same as GrowthCalculator.getEpsGrowthInInterval ignoring negative transitions.
+     */
+    public double getEpsGrowth(double year, double offsetYear) {
+        int oldIndex = findIndexAtYearsAgo(year);
+        int newIndex = findIndexAtYearsAgo(offsetYear);
+        if (oldIndex < 0 || newIndex < 0) {
+            return Double.NaN;
+        }
+        return growthOrNaN(eps[newIndex], eps[oldIndex], year - offsetYear, true);
+    }
+
+    /**
+     * Same as GrowthCalculator.getFcfGrowthInInterval ignoring negative transitions, NaN growth is indistinguishable from missing growth.
+     */
+    public double getFcfGrowth(double years, double offset) {
+        int oldIndex = findIndexAtYearsAgo(years);
+        int newIndex = findIndexAtYearsAgo(offset);
+        if (oldIndex < 0 || newIndex < 0) {
+            return Double.NaN;
+        }
+        double now = fcfPerShare[newIndex];
+        double then = fcfPerShare[oldIndex];
+        if (GrowthCalculator.isNegativeTransition(now, then)) {
+            return Double.NaN;
+        }
+        return GrowthCalculator.calculatePercentChange(now, then, yearsBetween(newIndex, oldIndex));
+    }
+
+    /**
+     * Same as GrowthCalculator.getRevenueGrowthInInterval ignoring negative transitions.
+     */
+    public double getRevenueGrowth(double years, double offset) {
+        int oldIndex = findIndexAtYearsAgo(years);
+        int newIndex = findIndexAtYearsAgo(offset);
+        if (oldIndex < 0 || newIndex < 0 || revenue[oldIndex] <= 0) {
+            return Double.NaN;
+        }
+        return growthOrNaN(revenue[newIndex], revenue[oldIndex], yearsBetween(newIndex, oldIndex), true);
+    }
+
+    /**
+     * Same as GrowthCalculator.getDividendGrowthInInterval.
+     */
+    public double getDividendGrowth(double years, double offset) {
+        int oldIndex = findIndexAtYearsAgo(years);
+        int newIndex = findIndexAtYearsAgo(offset);
+        if (oldIndex < 0 || newIndex < 0) {
+            return Double.NaN;
+        }
+        return growthOrNaN(dividendPerShare[newIndex], dividendPerShare[oldIndex], years - offset, false);
+    }
+
+    /**
+     * Same as GrowthCalculator.getShareCountGrowthInInterval, where growth which is not finite is 0.
+     */
+    public double getShareCountGrowth(double years, double offset) {
+        int oldIndex = findIndexAtYearsAgo(years);
+        int newIndex = findIndexAtYearsAgo(offset);
+        if (oldIndex < 0 || newIndex < 0) {
+            return Double.NaN;
+        }
+        double result = GrowthCalculator.calculatePercentChange(shareCount[newIndex], shareCount[oldIndex], yearsBetween(newIndex, oldIndex));
+        return Double.isFinite(result) ? result : 0.0;
+    }
+
+    private double yearsBetween(int newIndex, int oldIndex) {
+        return Math.abs((epochDays[newIndex] - epochDays[oldIndex]) / 365.0);
+    }
+
+    private static double growthOrNaN(double now, double then, double distance, boolean ignoreNegativeTransition) {
+        if (ignoreNegativeTransition && GrowthCalculator.isNegativeTransition(now, then)) {
+            return Double.NaN;
+        }
+        double result = GrowthCalculator.calculatePercentChange(now, then, distance);
+        return Double.isFinite(result) ? result : Double.NaN;
+    }
+
+    /**
+     * Adds the growth to the buffer unless it is missing, returns the new number of values in the buffer.
+     */
+    public static int addIfPresent(double[] buffer, int count, double growth) {
+        if (!Double.isNaN(growth)) {
+            buffer[count++] = growth;
+        }
+        return count;
+    }
+
+    /**
+     * Upper median of the first count values, sorts that part of the buffer in place. Same ordering as sorting a List&lt;Double&gt;.
+     */
+    public static double median(double[] buffer, int count) {
+        Arrays.sort(buffer, 0, count);
+        return buffer[count / 2];
+    }
+
+}
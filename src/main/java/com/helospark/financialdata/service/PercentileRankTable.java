@@ -0,0 +1,291 @@
+package com.helospark.financialdata.service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.ToDoubleFunction;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helospark.financialdata.domain.Profile;
+import com.helospark.financialdata.management.screener.AtGlanceReflectionUtil;
+import com.helospark.financialdata.util.StockDataDownloader;
+import com.helospark.financialdata.util.glance.AtGlanceData;
+
+/**
+ * Percentile rank of every screener value of an at glance snapshot within the symbol's sector, industry and exchange.
+ * <p>
+ * Ranks are computed when the snapshots are built and stored next to them, one byte per symbol, value and group, so screening on a rank
+ * costs the same as screening on the value. The rank is the percent of the other members of the group with a lower value, so the lowest value
+ * is 0 and the highest is 100. Missing values, and groups with less than MIN_GROUP_SIZE values, have no rank (NaN).
+ * There is no history of the classification, historical snapshots are ranked with the current sector, industry and exchange of the symbol.
+ */
+public class PercentileRankTable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PercentileRankTable.class);
+    public static final String PERCENTILE_RANKS_FOLDER = StockDataDownloader.SYMBOL_CACHE_HISTORY_FILE + "ranks/";
+    public static final PercentileRankTable EMPTY = new PercentileRankTable(Map.of(), Map.of(), new byte[0]);
+    public static final int MIN_GROUP_SIZE = 5;
+    private static final int MAGIC = 0x50524e4b;
+    private static final int FORMAT_VERSION = 1;
+    private static final byte MISSING = -1;
+
+    private final Map<String, Integer> fieldToIndex;
+    private final Map<String, Integer> symbolToIndex;
+    /** [column * numberOfSymbols + symbol] where column is group * numberOfFields + field, rank between 0 and 100 or MISSING */
+    private final byte[] ranks;
+
+    private PercentileRankTable(Map<String, Integer> fieldToIndex, Map<String, Integer> symbolToIndex, byte[] ranks) {
+        this.fieldToIndex = fieldToIndex;
+        this.symbolToIndex = symbolToIndex;
+        this.ranks = ranks;
+    }
+
+    public static PercentileRankTable build(Map<String, AtGlanceData> data, SymbolGroups symbolGroups) {
+        long start = System.currentTimeMillis();
+        Map<String, ToDoubleFunction<AtGlanceData>> readers = AtGlanceReflectionUtil.getScreenerElementReaders();
+        int numberOfSymbols = data.size();
+        int numberOfFields = readers.size();
+
+        Map<String, Integer> symbolToIndex = new HashMap<>();
+        AtGlanceData[] rows = new AtGlanceData[numberOfSymbols];
+        for (var entry : data.entrySet()) {
+            rows[symbolToIndex.size()] = entry.getValue();
+            symbolToIndex.put(entry.getKey(), symbolToIndex.size());
+        }
+        int[][] groupIds = new int[RankGroup.values().length][];
+        int[] numberOfGroups = new int[groupIds.length];
+        for (var group : RankGroup.values()) {
+            Map<String, Integer> keyToId = new HashMap<>();
+            int[] ids = new int[numberOfSymbols];
+            for (var entry : symbolToIndex.entrySet()) {
+                String key = symbolGroups.getGroup(entry.getKey(), group);
+                ids[entry.getValue()] = key == null ? -1 : keyToId.computeIfAbsent(key, k -> keyToId.size());
+            }
+            groupIds[group.ordinal()] = ids;
+            numberOfGroups[group.ordinal()] = keyToId.size();
+        }
+
+        Map<String, Integer> fieldToIndex = new HashMap<>();
+        byte[] ranks = new byte[groupIds.length * numberOfFields * numberOfSymbols];
+        double[] values = new double[numberOfSymbols];
+        for (var reader : readers.entrySet()) {
+            int field = fieldToIndex.size();
+            fieldToIndex.put(reader.getKey(), field);
+            for (int i = 0; i < numberOfSymbols; ++i) {
+                values[i] = reader.getValue().applyAsDouble(rows[i]);
+            }
+            int[] sortedSymbols = sortByValue(values);
+            for (int group = 0; group < groupIds.length; ++group) {
+                int offset = (group * numberOfFields + field) * numberOfSymbols;
+                rankWithinGroups(sortedSymbols, values, groupIds[group], numberOfGroups[group], ranks, offset);
+            }
+        }
+        LOGGER.info("Built percentile ranks for {} symbols in {} ms", numberOfSymbols, System.currentTimeMillis() - start);
+        return new PercentileRankTable(fieldToIndex, symbolToIndex, ranks);
+    }
+
+    /**
+     * Symbols with non NaN value ordered by ascending value.
+     */
+    private static int[] sortByValue(double[] values) {
+        List<Integer> result = new ArrayList<>();
+        for (int i = 0; i < values.length; ++i) {
+            if (!Double.isNaN(values[i])) {
+                result.add(i);
+            }
+        }
+        result.sort((a, b) -> Double.compare(values[a], values[b]));
+        return result.stream().mapToInt(a -> a).toArray();
+    }
+
+    /**
+     * Walking the symbols in ascending order every group sees its own members in ascending order too,
+     * so all groups are ranked by one pass over the sorted symbols after counting the members of each group.
+     */
+    private static void rankWithinGroups(int[] sortedSymbols, double[] values, int[] groupIds, int numberOfGroups, byte[] ranks, int offset) {
+        Arrays.fill(ranks, offset, offset + values.length, MISSING);
+        int[] groupSizes = new int[numberOfGroups];
+        for (int symbol : sortedSymbols) {
+            if (groupIds[symbol] != -1) {
+                ++groupSizes[groupIds[symbol]];
+            }
+        }
+        int[] seen = new int[numberOfGroups];
+        int[] lastPosition = new int[numberOfGroups];
+        double[] lastValue = new double[numberOfGroups];
+        for (int symbol : sortedSymbols) {
+            int group = groupIds[symbol];
+            if (group == -1 || groupSizes[group] < MIN_GROUP_SIZE) {
+                continue;
+            }
+            if (seen[group] == 0 || values[symbol] != lastValue[group]) { // equal values share the rank of the first one
+                lastPosition[group] = seen[group];
+                lastValue[group] = values[symbol];
+            }
+            ++seen[group];
+            ranks[offset + symbol] = (byte) Math.round(100.0 * lastPosition[group] / (groupSizes[group] - 1));
+        }
+    }
+
+    /**
+     * Column of the given screener element and group to use in getRank, -1 if the element is not ranked.
+     */
+    public int getColumn(String id, RankGroup group) {
+        Integer field = fieldToIndex.get(id);
+        return field == null ? -1 : group.ordinal() * fieldToIndex.size() + field;
+    }
+
+    /**
+     * Rank between 0 and 100, NaN if the symbol has no rank in the column.
+     */
+    public double getRank(int column, String symbol) {
+        Integer symbolIndex = symbolToIndex.get(symbol);
+        if (column == -1 || symbolIndex == null) {
+            return Double.NaN;
+        }
+        byte rank = ranks[column * symbolToIndex.size() + symbolIndex];
+        return rank == MISSING ? Double.NaN : rank;
+    }
+
+    public static File getRankFile(int year, int month) {
+        return new File(PERCENTILE_RANKS_FOLDER + year + "-" + month + ".bin");
+    }
+
+    public static File getCurrentRankFile() {
+        return new File(PERCENTILE_RANKS_FOLDER + "current.bin");
+    }
+
+    public void save(File file) {
+        file.getParentFile().mkdirs();
+        File tmpFile = new File(file.getAbsolutePath() + ".tmp");
+        String[] fields = new String[fieldToIndex.size()];
+        for (var entry : fieldToIndex.entrySet()) {
+            fields[entry.getValue()] = entry.getKey();
+        }
+        String[] symbols = new String[symbolToIndex.size()];
+        for (var entry : symbolToIndex.entrySet()) {
+            symbols[entry.getValue()] = entry.getKey();
+        }
+        try (var output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+            output.writeInt(MAGIC);
+            output.writeInt(FORMAT_VERSION);
+            output.writeInt(fields.length);
+            for (var field : fields) {
+                output.writeUTF(field);
+            }
+            output.writeInt(symbols.length);
+            for (var symbol : symbols) {
+                output.writeUTF(symbol);
+            }
+            output.write(ranks);
+        } catch (IOException e) {
+            LOGGER.warn("Unable to save percentile ranks", e);
+            return;
+        }
+        try {
+            Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOGGER.warn("Unable to save percentile ranks", e);
+        }
+    }
+
+    /**
+     * Empty if the file does not exist or cannot be read.
+     */
+    public static Optional<PercentileRankTable> load(File file) {
+        if (!file.exists()) {
+            return Optional.empty();
+        }
+        try (var input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (input.readInt() != MAGIC || input.readInt() != FORMAT_VERSION) {
+                throw new IOException("Unknown percentile rank format");
+            }
+            int numberOfFields = input.readInt();
+            Map<String, Integer> fieldToIndex = new HashMap<>();
+            for (int i = 0; i < numberOfFields; ++i) {
+                fieldToIndex.put(input.readUTF(), i);
+            }
+            int numberOfSymbols = input.readInt();
+            Map<String, Integer> symbolToIndex = new HashMap<>();
+            for (int i = 0; i < numberOfSymbols; ++i) {
+                symbolToIndex.put(input.readUTF(), i);
+            }
+            byte[] ranks = new byte[RankGroup.values().length * numberOfFields * numberOfSymbols];
+            input.readFully(ranks);
+            return Optional.of(new PercentileRankTable(fieldToIndex, symbolToIndex, ranks));
+        } catch (IOException e) {
+            LOGGER.warn("Unable to read percentile ranks from " + file, e);
+            return Optional.empty();
+        }
+    }
+
+    public enum RankGroup {
+        SECTOR,
+        INDUSTRY,
+        EXCHANGE;
+
+        public String getKey(Profile profile) {
+            switch (this) {
+                case SECTOR:
+                    return profile.sector;
+                case INDUSTRY:
+                    return profile.industry;
+                case EXCHANGE:
+                    return profile.exchangeShortName;
+                default:
+                    throw new IllegalStateException("Unknown group " + this);
+            }
+        }
+    }
+
+    /**
+     * Sector, industry and exchange of each symbol, read once from the downloaded profiles and used for every snapshot.
+     */
+    public static class SymbolGroups {
+        private final Map<String, String[]> symbolToGroups;
+
+        public SymbolGroups(Map<String, String[]> symbolToGroups) {
+            this.symbolToGroups = symbolToGroups;
+        }
+
+        public static SymbolGroups load(Collection<String> symbols) {
+            Map<String, String[]> result = new HashMap<>();
+            for (var symbol : symbols) {
+                List<Profile> profiles = DataLoader.readFinancialFile(symbol, "profile.json", Profile.class);
+                if (profiles.size() > 0) {
+                    String[] groups = new String[RankGroup.values().length];
+                    for (var group : RankGroup.values()) {
+                        String key = group.getKey(profiles.get(0));
+                        groups[group.ordinal()] = (key == null || key.isBlank()) ? null : key;
+                    }
+                    result.put(symbol, groups);
+                }
+            }
+            return new SymbolGroups(result);
+        }
+
+        /**
+         * Null if the symbol is not in any group of the given type.
+         */
+        public String getGroup(String symbol, RankGroup group) {
+            String[] groups = symbolToGroups.get(symbol);
+            return groups == null ? null : groups[group.ordinal()];
+        }
+    }
+
+}
@@ -0,0 +1,341 @@
+package com.helospark.financialdata.service;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.helospark.financialdata.domain.CompanyFinancials;
+import com.helospark.financialdata.domain.FinancialsTtm;
+import com.helospark.financialdata.domain.HistoricalPriceElement;
+import com.helospark.financialdata.service.PercentileRankTable.SymbolGroups;
+import com.helospark.financialdata.util.StockDataDownloader;
+import com.helospark.financialdata.util.glance.AtGlanceData;
+
+/**
+ * At glance data of the whole universe as of any date, not only on the quarterly grid of the stored snapshots.
+ * Fundamentals come from the latest report at or before the date and are calculated once per symbol and report (or taken from the stored
+ * snapshot when it used the same report), only the price dependent fields are recalculated with the close price of the date.
+ * The report dates of each symbol are cached too, so the financials are only read for reports which were not used before.
+ */
+@Component
+public class PointInTimeAtGlanceProvider {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PointInTimeAtGlanceProvider.class);
+    /** Symbols without a close price in this many days before the date were not trading at that date. */
+    private static final int MAX_PRICE_AGE_DAYS = 10;
+
+    private final SymbolAtGlanceProvider symbolAtGlanceProvider;
+
+    private final Cache<String, PriceSeries> priceSeriesCache = Caffeine.newBuilder()
+            .expireAfterAccess(1, TimeUnit.HOURS)
+            .maximumWeight(DataLoader.getConfig("POINT_IN_TIME_PRICE_CACHE_SIZE_MB", 256) * 1024L * 1024L)
+            .weigher((String symbol, PriceSeries series) -> series.size() * 8 + 64)
+            .build();
+    private final Cache<ReportKey, Optional<ReportSnapshot>> reportCache = Caffeine.newBuilder()
+            .expireAfterAccess(1, TimeUnit.DAYS)
+            .maximumSize(DataLoader.getConfig("POINT_IN_TIME_REPORT_CACHE_SIZE", 100_000))
+            .build();
+    /** Epoch days of the reports of each symbol, newest first like the financials */
+    private final Cache<String, int[]> reportDatesCache = Caffeine.newBuilder()
+            .expireAfterAccess(1, TimeUnit.DAYS)
+            .maximumSize(100_000)
+            .build();
+    private final Cache<LocalDate, Map<String, AtGlanceData>> snapshotCache = Caffeine.newBuilder()
+            .expireAfterWrite(1, TimeUnit.DAYS)
+            .maximumSize(30)
+            .build();
+    private final Cache<LocalDate, PercentileRankTable> rankCache = Caffeine.newBuilder()
+            .expireAfterWrite(1, TimeUnit.DAYS)
+            .maximumSize(30)
+            .build();
+    private volatile SymbolGroups symbolGroups;
+
+    public PointInTimeAtGlanceProvider(SymbolAtGlanceProvider symbolAtGlanceProvider) {
+        this.symbolAtGlanceProvider = symbolAtGlanceProvider;
+    }
+
+    /**
+     * At glance data of every symbol trading at the date, keyed by symbol.
+     * Stored snapshots are returned as they are on their own date, the current data for today or later.
+     * The returned map should not be modified.
+     */
+    public Map<String, AtGlanceData> getAtGlanceDataAt(LocalDate date) {
+        if (!date.isBefore(LocalDate.now())) {
+            return symbolAtGlanceProvider.getSymbolCompanyNameCache();
+        }
+        if (isSnapshotDate(date)) {
+            Optional<Map<String, AtGlanceData>> stored = symbolAtGlanceProvider.loadAtGlanceDataAtYear(date.getYear(), date.getMonthValue());
+            if (stored.isPresent()) {
+                return stored.get();
+            }
+        }
+        return snapshotCache.get(date, this::buildSnapshot);
+    }
+
+    /**
+     * Percentile ranks of getAtGlanceDataAt(date), ranked on first use for dates between the stored snapshots.
+     */
+    public PercentileRankTable getPercentileRanksAt(LocalDate date) {
+        if (!date.isBefore(LocalDate.now())) {
+            return symbolAtGlanceProvider.getPercentileRanks();
+        }
+        if (isSnapshotDate(date) && symbolAtGlanceProvider.loadAtGlanceDataAtYear(date.getYear(), date.getMonthValue()).isPresent()) {
+            return symbolAtGlanceProvider.getPercentileRanksAtYear(date.getYear(), date.getMonthValue());
+        }
+        return rankCache.get(date, key -> PercentileRankTable.build(getAtGlanceDataAt(key), getSymbolGroups()));
+    }
+
+    /**
+     * Latest stored snapshot date (first day of a quarter) at or before the date, dates from today are kept as they are the current data.
+     * Other dates rebuild the whole universe on first use.
+     */
+    public static LocalDate snapToSnapshotDate(LocalDate date) {
+        if (!date.isBefore(LocalDate.now())) {
+            return date;
+        }
+        return LocalDate.of(date.getYear(), ((date.getMonthValue() - 1) / 3) * 3 + 1, 1);
+    }
+
+    private boolean isSnapshotDate(LocalDate date) {
+        return date.getDayOfMonth() == 1 && date.getMonthValue() % 3 == 1;
+    }
+
+    private Map<String, AtGlanceData> buildSnapshot(LocalDate date) {
+        long start = System.currentTimeMillis();
+        LocalDate previousSnapshotDate = snapToSnapshotDate(date);
+        Map<String, AtGlanceData> previousSnapshot = symbolAtGlanceProvider.loadAtGlanceDataAtYear(previousSnapshotDate.getYear(), previousSnapshotDate.getMonthValue())
+                .orElse(Map.of());
+
+        Map<String, AtGlanceData> result = new ConcurrentHashMap<>();
+        DataLoader.provideAllSymbols().parallelStream().forEach(symbol -> {
+            try {
+                calculateAtDate(symbol, date, previousSnapshot.get(symbol)).ifPresent(data -> result.put(symbol, data));
+            } catch (RuntimeException e) {
+                LOGGER.warn("Unable to calculate {} at {}", symbol, date, e);
+            }
+        });
+        LOGGER.info("Built at glance data at {} for {} symbols in {} ms", date, result.size(), System.currentTimeMillis() - start);
+        return result;
+    }
+
+    private Optional<AtGlanceData> calculateAtDate(String symbol, LocalDate date, AtGlanceData previousSnapshotData) {
+        PriceSeries prices = priceSeriesCache.get(symbol, key -> PriceSeries.of(DataLoader.readHistoricalPriceNoCache(key)));
+        int priceIndex = prices.findIndexAtOrBefore(date);
+        if (priceIndex == -1 || ChronoUnit.DAYS.between(prices.getDate(priceIndex), date) > MAX_PRICE_AGE_DAYS) {
+            return Optional.empty();
+        }
+        return findReport(symbol, date, previousSnapshotData)
+                .map(report -> reprice(report, prices.getDate(priceIndex), prices.getClose(priceIndex)));
+    }
+
+    /**
+     * Report at or before the date, the financials are only read if that report is not cached.
+     */
+    private Optional<ReportSnapshot> findReport(String symbol, LocalDate date, AtGlanceData previousSnapshotData) {
+        int[] reportDays = reportDatesCache.getIfPresent(symbol);
+        if (reportDays != null) {
+            int reportIndex = findIndexWithOrBeforeDate(reportDays, date);
+            if (reportIndex == -1) {
+                return Optional.empty();
+            }
+            Optional<ReportSnapshot> cached = reportCache.getIfPresent(new ReportKey(symbol, LocalDate.ofEpochDay(reportDays[reportIndex])));
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        CompanyFinancials company = DataLoader.readFinancialsWithCacheEnabled(symbol, false);
+        reportDatesCache.put(symbol, company.financials.stream().mapToInt(financial -> (int) financial.getDate().toEpochDay()).toArray());
+        int reportIndex = Helpers.findIndexWithOrBeforeDate(company.financials, date);
+        if (reportIndex == -1) {
+            return Optional.empty();
+        }
+        FinancialsTtm financial = company.financials.get(reportIndex);
+        return reportCache.get(new ReportKey(symbol, financial.getDate()), key -> {
+            AtGlanceData atReport;
+            if (previousSnapshotData != null && financial.getDate().equals(previousSnapshotData.actualDate)) {
+                atReport = previousSnapshotData;
+            } else {
+                atReport = StockDataDownloader.symbolToSearchData(symbol, company, key.reportDate(), false).orElse(null);
+            }
+            return Optional.ofNullable(atReport).map(data -> new ReportSnapshot(data, company, financial));
+        });
+    }
+
+    /**
+     * Same as Helpers.findIndexWithOrBeforeDate on the report dates.
+     */
+    private static int findIndexWithOrBeforeDate(int[] reportDays, LocalDate date) {
+        long day = date.toEpochDay();
+        for (int i = 0; i < reportDays.length; ++i) {
+            if (Math.abs(day - reportDays[i]) < 20 || reportDays[i] < day) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Copy of the data calculated at the report date with the price dependent fields at the given close price (in trading currency).
+     * Conversion to report currency and USD uses the exchange rate of the report date.
+     * Actual date of the result is the date of the price, the other fields stay at the report date.
+     */
+    public static AtGlanceData reprice(AtGlanceData atReport, CompanyFinancials company, FinancialsTtm financial, LocalDate priceDate, double priceTradingCurrency) {
+        return reprice(new ReportSnapshot(atReport, company, financial), priceDate, priceTradingCurrency);
+    }
+
+    private static AtGlanceData reprice(ReportSnapshot report, LocalDate priceDate, double priceTradingCurrency) {
+        AtGlanceData atReport = report.atReport;
+        FinancialsTtm financial = report.financial;
+        double reportCurrencyRate = financial.price / financial.priceTradingCurrency;
+        double usdRate = financial.priceUsd / financial.priceTradingCurrency;
+        if (!Double.isFinite(reportCurrencyRate) || !Double.isFinite(usdRate)) {
+            reportCurrencyRate = 1.0;
+            usdRate = 1.0;
+        }
+        double price = priceTradingCurrency * reportCurrencyRate;
+        double priceUsd = priceTradingCurrency * usdRate;
+        double priceRatio = price / financial.price;
+
+        AtGlanceData data = atReport.copy();
+        data.actualDate = priceDate;
+        data.latestStockPrice = price;
+        data.latestStockPriceUsd = priceUsd;
+        data.latestStockPriceTradingCur = priceTradingCurrency;
+        data.marketCapUsd = (priceUsd * financial.incomeStatementTtm.weightedAverageShsOut) / 1_000_000.0;
+
+        data.trailingPeg = TrailingPegCalculator.calculateTrailingPeg(price, report.pegEps, report.pegGrowthRate).orElse(Double.NaN).floatValue();
+        data.altman = (float) AltmanZCalculator.calculateAltmanZScore(financial, price);
+        data.evToEbitda = (float) (EnterpriseValueCalculator.calculateEv(financial, price) / financial.incomeStatementTtm.ebitda);
+        data.ptb = (float) RatioCalculator.calculatePriceToBookRatio(financial, price);
+        data.pts = (float) RatioCalculator.calculatePriceToSalesRatio(financial, price);
+        data.priceToGrossProfit = (float) ((price * financial.incomeStatementTtm.weightedAverageShsOut) / financial.incomeStatementTtm.grossProfit);
+        data.peExRnd = Optional.ofNullable(RatioCalculator.calculatePriceToEarningsRatioExRnd(financial, price)).orElse(Double.NaN).floatValue();
+        data.peExMnS = Optional.ofNullable(RatioCalculator.calculatePriceToEarningsRatioExMns(financial, price)).orElse(Double.NaN).floatValue();
+
+        // linear in price
+        data.pe = (float) (atReport.pe * priceRatio);
+        data.cape = (float) (atReport.cape * priceRatio);
+        data.fYrPe = (float) (atReport.fYrPe * priceRatio);
+        data.fYrPFcf = (float) (atReport.fYrPFcf * priceRatio);
+        data.dividendYield = (float) (atReport.dividendYield / priceRatio);
+        data.stockCompensationPerMkt = (float) (atReport.stockCompensationPerMkt / priceRatio);
+        data.fvCalculatorMoS = rescaleMarginOfSafety(atReport.fvCalculatorMoS, priceRatio);
+        data.fvCompositeMoS = rescaleMarginOfSafety(atReport.fvCompositeMoS, priceRatio);
+        data.grahamMoS = rescaleMarginOfSafety(atReport.grahamMoS, priceRatio);
+
+        return data;
+    }
+
+    private static float rescaleMarginOfSafety(float marginOfSafety, double priceRatio) {
+        return (float) (((marginOfSafety / 100.0 + 1.0) / priceRatio - 1.0) * 100.0);
+    }
+
+    private SymbolGroups getSymbolGroups() {
+        SymbolGroups result = symbolGroups;
+        if (result == null) {
+            synchronized (this) {
+                result = symbolGroups;
+                if (result == null) {
+                    result = SymbolGroups.load(DataLoader.provideAllSymbols());
+                    symbolGroups = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    record ReportKey(String symbol, LocalDate reportDate) {
+    }
+
+    /**
+     * Everything reprice needs from the company at one report, without keeping the whole company in memory.
+     */
+    static class ReportSnapshot {
+        final AtGlanceData atReport;
+        /** Only the dates, prices and the statements used by the price dependent ratios */
+        final FinancialsTtm financial;
+        /** Inputs of the trailing PEG, NaN eps if there is no report for it */
+        final double pegEps;
+        final double pegGrowthRate;
+
+        ReportSnapshot(AtGlanceData atReport, CompanyFinancials company, FinancialsTtm financial) {
+            this.atReport = atReport;
+            this.financial = new FinancialsTtm();
+            this.financial.date = financial.date;
+            this.financial.price = financial.price;
+            this.financial.priceTradingCurrency = financial.priceTradingCurrency;
+            this.financial.priceUsd = financial.priceUsd;
+            this.financial.balanceSheet = financial.balanceSheet;
+            this.financial.incomeStatement = financial.incomeStatement;
+            this.financial.incomeStatementTtm = financial.incomeStatementTtm;
+
+            // same as TrailingPegCalculator.calculateTrailingPegWithLatestPrice
+            LocalDate now = LocalDate.now();
+            LocalDate reportDate = financial.getDate();
+            double offsetYear = (now.getYear() - reportDate.getYear()) + ((now.getDayOfYear() - reportDate.getDayOfYear()) / 365.0);
+            int pegIndex = Helpers.findIndexWithOrBeforeDate(company.financials, now.minusMonths((int) (offsetYear * 12.0)));
+            this.pegEps = pegIndex == -1 ? Double.NaN : company.financials.get(pegIndex).incomeStatementTtm.eps;
+            this.pegGrowthRate = pegIndex == -1 ? Double.NaN : TrailingPegCalculator.getPastEpsGrowthRate(company, offsetYear);
+        }
+    }
+
+    /**
+     * Daily close prices in trading currency, ordered by date, stored in primitive arrays to keep the whole universe in memory.
+     */
+    static class PriceSeries {
+        private final int[] epochDays;
+        private final float[] closes;
+
+        PriceSeries(int[] epochDays, float[] closes) {
+            this.epochDays = epochDays;
+            this.closes = closes;
+        }
+
+        static PriceSeries of(List<HistoricalPriceElement> prices) {
+            HistoricalPriceElement[] sorted = prices.stream()
+                    .filter(price -> price.date != null)
+                    .sorted(Comparator.comparing(price -> price.date))
+                    .toArray(HistoricalPriceElement[]::new);
+            int[] epochDays = new int[sorted.length];
+            float[] closes = new float[sorted.length];
+            for (int i = 0; i < sorted.length; ++i) {
+                epochDays[i] = (int) sorted[i].date.toEpochDay();
+                closes[i] = (float) sorted[i].close;
+            }
+            return new PriceSeries(epochDays, closes);
+        }
+
+        int size() {
+            return epochDays.length;
+        }
+
+        /**
+         * Index of the last price at or before the date, -1 if every price is later.
+         */
+        int findIndexAtOrBefore(LocalDate date) {
+            int index = Arrays.binarySearch(epochDays, (int) date.toEpochDay());
+            return index >= 0 ? index : -index - 2;
+        }
+
+        LocalDate getDate(int index) {
+            return LocalDate.ofEpochDay(epochDays[index]);
+        }
+
+        double getClose(int index) {
+            return closes[index];
+        }
+    }
+
+}
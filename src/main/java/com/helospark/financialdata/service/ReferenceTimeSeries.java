@@ -0,0 +1,108 @@
+package com.helospark.financialdata.service;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.ToDoubleFunction;
+
+import com.helospark.financialdata.domain.DateAware;
+
+/**
+ * Macro data series (CPI, rates, index prices) expanded into a dense array indexed by epoch day and forward filled,
+ * so looking up the value at a date is a single array read.
+ * <p>
+ * Lookups give the same result as Helpers.findIndexWithOrBeforeDate on the original list,
+ * which also accepts an element at most 19 days after the requested date.
+ */
+public class ReferenceTimeSeries {
+    private static final int LOOKAHEAD_DAYS = 19;
+
+    private final long firstEpochDay;
+    private final int[] indices;
+    private final double[] values;
+    private final double oldestValue;
+
+    private ReferenceTimeSeries(long firstEpochDay, int[] indices, double[] values, double oldestValue) {
+        this.firstEpochDay = firstEpochDay;
+        this.indices = indices;
+        this.values = values;
+        this.oldestValue = oldestValue;
+    }
+
+    /**
+     * @param elements ordered newest first, like all data files
+     */
+    public static <T extends DateAware> ReferenceTimeSeries create(List<T> elements, ToDoubleFunction<T> valueExtractor) {
+        if (elements.isEmpty()) {
+            return new ReferenceTimeSeries(0, new int[0], new double[0], Double.NaN);
+        }
+        long minDay = Long.MAX_VALUE;
+        long maxDay = Long.MIN_VALUE;
+        for (var element : elements) {
+            long day = element.getDate().toEpochDay();
+            minDay = Math.min(minDay, day);
+            maxDay = Math.max(maxDay, day);
+        }
+
+        // like the linear search, the first element in list order wins, which is the newest one before the date for ordered lists
+        int[] firstIndexAtDay = new int[(int) (maxDay - minDay + 1)];
+        Arrays.fill(firstIndexAtDay, Integer.MAX_VALUE);
+        for (int i = elements.size() - 1; i >= 0; --i) {
+            firstIndexAtDay[(int) (elements.get(i).getDate().toEpochDay() - minDay)] = i;
+        }
+
+        int[] indices = new int[firstIndexAtDay.length];
+        double[] values = new double[firstIndexAtDay.length];
+        int currentIndex = Integer.MAX_VALUE;
+        for (int day = 0; day < values.length; ++day) {
+            currentIndex = Math.min(currentIndex, firstIndexAtDay[day]);
+            indices[day] = currentIndex;
+            values[day] = valueExtractor.applyAsDouble(elements.get(currentIndex));
+        }
+
+        return new ReferenceTimeSeries(minDay, indices, values, valueExtractor.applyAsDouble(elements.get(elements.size() - 1)));
+    }
+
+    /**
+     * Indices only, for callers that need more from the element than a single value.
+     */
+    public static ReferenceTimeSeries create(List<? extends DateAware> elements) {
+        return create(elements, element -> 0.0);
+    }
+
+    /**
+     * @return value at or before the date, NaN if the series starts after it
+     */
+    public double getValueAt(LocalDate date) {
+        int day = getDay(date);
+        return day == -1 ? Double.NaN : values[day];
+    }
+
+    /**
+     * @return index of the element at or before the date in the list the series was created from, -1 if the series starts after it
+     */
+    public int getIndexAt(LocalDate date) {
+        int day = getDay(date);
+        return day == -1 ? -1 : indices[day];
+    }
+
+    private int getDay(LocalDate date) {
+        long day = date.toEpochDay() + LOOKAHEAD_DAYS - firstEpochDay;
+        if (day < 0 || values.length == 0) {
+            return -1;
+        } else if (day >= values.length) {
+            return values.length - 1;
+        } else {
+            return (int) day;
+        }
+    }
+
+    /**
+     * Same as getValueAt, but dates before the start of the series get the oldest value.
+     */
+    public double getValueAtOrOldest(LocalDate date) {
+        double result = getValueAt(date);
+        return Double.isNaN(result) ? oldestValue : result;
+    }
+
+}
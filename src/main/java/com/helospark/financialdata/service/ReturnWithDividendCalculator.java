@@ -14,6 +14,7 @@ import com.helospark.financialdata.domain.FinancialsTtm;
 import com.helospark.financialdata.domain.SimpleDateDataElement;
 
 public class ReturnWithDividendCalculator {
+    /** Series are shared between requests, so they are cached as unmodifiable lists */
     private static final Cache<String, List<SimpleDateDataElement>> CACHE = Caffeine.newBuilder()
             .maximumSize(20)
             .expireAfterAccess(1, TimeUnit.MINUTES)
@@ -23,7 +24,7 @@ public class ReturnWithDividendCalculator {
         if (Strings.isBlank(company.profile.symbol)) {
             return gerPriceGrowthInternal(company);
         } else {
-            return CACHE.get(company.profile.symbol, asd -> gerPriceGrowthInternal(company));
+            return CACHE.get(company.profile.symbol, asd -> Collections.unmodifiableList(gerPriceGrowthInternal(company)));
         }
     }
 
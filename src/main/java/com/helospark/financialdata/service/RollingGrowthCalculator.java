@@ -0,0 +1,173 @@
+package com.helospark.financialdata.service;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.List;
+
+import com.helospark.financialdata.CommonConfig;
+import com.helospark.financialdata.domain.DateAware;
+import com.helospark.financialdata.domain.FinancialsTtm;
+import com.helospark.financialdata.domain.SimpleDateDataElement;
+
+/**
+ * Trailing N year growth for every element of a series, same values as calling GrowthCalculator for each element.
+ * <p>
+ * Going down the series the searched dates only move back in time, so the old and new ends of the window are two cursors that only move
+ * forward, making the whole series a single pass instead of two findIndexWithOrBeforeDate scans per element.
+ */
+public class RollingGrowthCalculator {
+
+    /**
+     * Same as GrowthCalculator.getEpsGrowthInInterval(financials, yearsAgo + year, yearsAgo) for each element.
+     */
+    public static double[] getEpsGrowthSeries(List<FinancialsTtm> financials, int year, double missingValue) {
+        double[] result = new double[financials.size()];
+        BackwardDateCursor oldCursor = new BackwardDateCursor(financials);
+        BackwardDateCursor newCursor = new BackwardDateCursor(financials);
+        LocalDate now = LocalDate.now();
+        for (int i = 0; i < financials.size(); ++i) {
+            double yearsAgo = calculateYearsAgo(financials.get(i).getDate(), now);
+            double years = yearsAgo + year;
+            int oldIndex = oldCursor.find(CommonConfig.NOW.minusMonths((int) (years * 12.0)));
+            int newIndex = newCursor.find(CommonConfig.NOW.minusMonths((int) (yearsAgo * 12.0)));
+
+            result[i] = missingValue;
+            if (oldIndex != -1 && newIndex != -1) {
+                double epsNow = getEps(financials.get(newIndex));
+                double epsThen = getEps(financials.get(oldIndex));
+                if (!GrowthCalculator.isNegativeTransition(epsNow, epsThen)) {
+                    double growth = GrowthCalculator.calculatePercentChange(epsNow, epsThen, years - yearsAgo);
+                    if (Double.isFinite(growth)) {
+                        result[i] = growth;
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Same as GrowthCalculator.getFcfGrowthInInterval(financials, yearsAgo + year, yearsAgo) for each element, a calculated NaN growth is kept.
+     */
+    public static double[] getFcfGrowthSeries(List<FinancialsTtm> financials, int year, double missingValue) {
+        double[] result = new double[financials.size()];
+        BackwardDateCursor oldCursor = new BackwardDateCursor(financials);
+        BackwardDateCursor newCursor = new BackwardDateCursor(financials);
+        LocalDate now = LocalDate.now();
+        for (int i = 0; i < financials.size(); ++i) {
+            double yearsAgo = calculateYearsAgo(financials.get(i).getDate(), now);
+            int oldIndex = oldCursor.find(CommonConfig.NOW.minusMonths((long) ((yearsAgo + year) * 12.0)));
+            int newIndex = newCursor.find(CommonConfig.NOW.minusMonths((long) (yearsAgo * 12.0)));
+
+            result[i] = missingValue;
+            if (oldIndex != -1 && newIndex != -1) {
+                double fcfNow = GrowthCalculator.getFcfPerShare(financials.get(newIndex));
+                double fcfThen = GrowthCalculator.getFcfPerShare(financials.get(oldIndex));
+                if (!GrowthCalculator.isNegativeTransition(fcfNow, fcfThen)) {
+                    double distance = calculateYearsDiff(financials.get(oldIndex).getDate(), financials.get(newIndex).getDate());
+                    result[i] = GrowthCalculator.calculatePercentChange(fcfNow, fcfThen, distance);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Same as GrowthCalculator.getRevenueGrowthInInterval(financials, yearsAgo + year, yearsAgo) for each element.
+     */
+    public static double[] getRevenueGrowthSeries(List<FinancialsTtm> financials, int year, double missingValue) {
+        double[] result = new double[financials.size()];
+        BackwardDateCursor oldCursor = new BackwardDateCursor(financials);
+        BackwardDateCursor newCursor = new BackwardDateCursor(financials);
+        LocalDate now = LocalDate.now();
+        for (int i = 0; i < financials.size(); ++i) {
+            double yearsAgo = calculateYearsAgo(financials.get(i).getDate(), now);
+            int oldIndex = oldCursor.find(CommonConfig.NOW.minusMonths((long) ((yearsAgo + year) * 12.0)));
+            int newIndex = newCursor.find(CommonConfig.NOW.minusMonths((long) (yearsAgo * 12.0)));
+
+            result[i] = missingValue;
+            if (oldIndex != -1 && newIndex != -1 && financials.get(oldIndex).incomeStatementTtm.revenue > 0) {
+                long revenueNow = financials.get(newIndex).incomeStatementTtm.revenue;
+                long revenueThen = financials.get(oldIndex).incomeStatementTtm.revenue;
+                if (!GrowthCalculator.isNegativeTransition(revenueNow, revenueThen)) {
+                    double distance = calculateYearsDiff(financials.get(oldIndex).getDate(), financials.get(newIndex).getDate());
+                    double growth = GrowthCalculator.calculatePercentChange(revenueNow, revenueThen, distance);
+                    if (Double.isFinite(growth)) {
+                        result[i] = growth;
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Growth of a value series (like the price with dividends reinvested) in the yearInterval years before each element.
+     * The series ends at the first element which has no value yearInterval years before it, NaN means the growth is not finite.
+     */
+    public static double[] getValueGrowthSeries(List<SimpleDateDataElement> series, int yearInterval) {
+        double[] result = new double[series.size()];
+        BackwardDateCursor oldCursor = new BackwardDateCursor(series);
+        BackwardDateCursor newCursor = new BackwardDateCursor(series);
+        LocalDate now = LocalDate.now();
+        int i = 0;
+        for (; i < series.size(); ++i) {
+            double yearsAgo = calculateYearsAgo(series.get(i).getDate(), now);
+            int newIndex = newCursor.find(CommonConfig.NOW.minusMonths((int) (yearsAgo * 12.0)));
+            int oldIndex = oldCursor.find(CommonConfig.NOW.minusMonths((int) (yearsAgo * 12.0 + yearInterval * 12.0)));
+
+            if (oldIndex == -1 || newIndex == -1) {
+                break;
+            }
+            SimpleDateDataElement oldElement = series.get(oldIndex);
+            SimpleDateDataElement newElement = series.get(newIndex);
+            double growth = GrowthCalculator.calculateGrowth(newElement.value, oldElement.value, calculateYearsDiff(oldElement.date, newElement.date));
+            result[i] = Double.isFinite(growth) ? growth : Double.NaN;
+        }
+        return i == result.length ? result : Arrays.copyOf(result, i);
+    }
+
+    private static double getEps(FinancialsTtm financials) {
+        return (double) financials.incomeStatementTtm.netIncome / financials.incomeStatementTtm.weightedAverageShsOut;
+    }
+
+    private static double calculateYearsAgo(LocalDate date, LocalDate now) {
+        return Math.abs(ChronoUnit.DAYS.between(date, now) / 365.0);
+    }
+
+    private static double calculateYearsDiff(LocalDate date, LocalDate laterDate) {
+        return Math.abs(ChronoUnit.DAYS.between(date, laterDate) / 365.0);
+    }
+
+    /**
+     * Gives the same index as Helpers.findIndexWithOrBeforeDate, which is the first element dated before date + 20 days.
+     * While the searched dates move back in time the answer can only move forward, so the search continues from the previous answer,
+     * a later date restarts from the beginning.
+     */
+    static class BackwardDateCursor {
+        private final long[] epochDays;
+        private int index = 0;
+        private long lastThreshold = Long.MAX_VALUE;
+
+        public BackwardDateCursor(List<? extends DateAware> series) {
+            epochDays = new long[series.size()];
+            for (int i = 0; i < epochDays.length; ++i) {
+                epochDays[i] = series.get(i).getDate().toEpochDay();
+            }
+        }
+
+        public int find(LocalDate date) {
+            long threshold = date.toEpochDay() + 20;
+            if (threshold > lastThreshold) {
+                index = 0;
+            }
+            lastThreshold = threshold;
+            while (index < epochDays.length && epochDays[index] >= threshold) {
+                ++index;
+            }
+            return index < epochDays.length ? index : -1;
+        }
+    }
+
+}
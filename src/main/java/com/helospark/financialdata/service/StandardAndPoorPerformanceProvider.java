@@ -13,9 +13,11 @@ import com.helospark.financialdata.domain.HistoricalPriceElement;
 public class StandardAndPoorPerformanceProvider {
     public static List<HistoricalPriceElement> prices = new ArrayList<>();
     public static Map<Integer, Double> dividendsPaidPerShare = new HashMap<>();
+    static ReferenceTimeSeries priceSeries;
 
     static {
         prices = DataLoader.loadHistoricalFile(new File(CommonConfig.BASE_FOLDER + "/info/s&p500_price.json"));
+        priceSeries = ReferenceTimeSeries.create(prices, element -> element.close);
 
         // source: https://www.multpl.com/s-p-500-dividend-yield/table/by-year
         dividendsPaidPerShare.put(2022, calculateDividendsPaid(2022, 1.71));
@@ -182,15 +184,9 @@ public class StandardAndPoorPerformanceProvider {
     }
 
     public static double getGrowth(double yearsAgo) {
-        int oldIndex = Helpers.findIndexWithOrBeforeDate(prices, CommonConfig.NOW.minusMonths((long) (yearsAgo * 12.0)));
-        if (oldIndex >= prices.size() || oldIndex == -1) {
-            oldIndex = prices.size() - 1;
-        }
-
-        HistoricalPriceElement latestPrice = prices.get(0);
-        HistoricalPriceElement oldPrice = prices.get(oldIndex);
+        double oldPrice = priceSeries.getValueAtOrOldest(CommonConfig.NOW.minusMonths((long) (yearsAgo * 12.0)));
 
-        return GrowthCalculator.calculateGrowth(latestPrice.close, oldPrice.close, yearsAgo);
+        return GrowthCalculator.calculateGrowth(prices.get(0).close, oldPrice, yearsAgo);
     }
 
     public static double getLatestPrice() {
@@ -198,11 +194,18 @@ public class StandardAndPoorPerformanceProvider {
     }
 
     public static Double getPriceAt(LocalDate date) {
-        int oldIndex = Helpers.findIndexWithOrBeforeDate(prices, date);
-        if (oldIndex == -1) {
+        double price = priceSeries.getValueAt(date);
+        if (Double.isNaN(price)) {
             return null;
         }
-        return prices.get(oldIndex).close;
+        return price;
+    }
+
+    /**
+     * Index in prices at or before the date, -1 if the prices start after it.
+     */
+    public static int findIndexAt(LocalDate date) {
+        return priceSeries.getIndexAt(date);
     }
 
     public static Double getDividendsPaidInYear(int i) {
@@ -12,15 +12,16 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
 import com.esotericsoftware.kryo.Kryo;
 import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.serializers.VersionFieldSerializer;
-import com.fasterxml.jackson.databind.DeserializationFeature;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.datatype.jsr310.JSR310Module;
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
 import com.helospark.financialdata.domain.SearchElement;
@@ -30,28 +31,54 @@ import com.helospark.financialdata.util.glance.AtGlanceData;
 
 @Component
 public class SymbolAtGlanceProvider {
-    List<String> symbols = new ArrayList<>();
-    List<String> companyNames = new ArrayList<>();
-    List<String> upperCompanyNames = new ArrayList<>();
+    private static final Logger LOGGER = LoggerFactory.getLogger(SymbolAtGlanceProvider.class);
+    private static final AtomicLong GENERATION_COUNTER = new AtomicLong(0);
 
-    int longestCompanyName;
-    int longestSymbol;
-
-    LinkedHashMap<String, AtGlanceData> symbolCompanyNameCache;
-
-    Cache<YearMonthPair, Optional<Map<String, AtGlanceData>>> cache = Caffeine.newBuilder()
-            .expireAfterWrite(100, TimeUnit.DAYS)
-            .maximumSize(500)
-            .build();
+    /**
+     * Always replaced as a whole, never modified.
+     * Methods should read this once, so a request sees a consistent dataset even if a reload happens meanwhile.
+     */
+    private volatile AtGlanceGeneration generation = new AtGlanceGeneration(new LinkedHashMap<>(), PercentileRankTable.EMPTY, createHistoricalCache(), createHistoricalCache());
 
     public SymbolAtGlanceProvider() {
         initCache();
     }
 
+    /**
+     * Reloads everything from disk into a new generation. Historical periods used by the current generation
+     * are loaded into the new one before swapping, so readers never see a cold cache.
+     */
     public void initCache() {
-        ObjectMapper om = new ObjectMapper();
-        om.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
-        om.registerModule(new JSR310Module());
+        Optional<LinkedHashMap<String, AtGlanceData>> data = loadAtGlanceFile();
+        if (data.isEmpty()) {
+            return;
+        }
+        AtGlanceGeneration oldGeneration = generation;
+        Cache<YearMonthPair, Optional<Map<String, AtGlanceData>>> newHistoricalCache = createHistoricalCache();
+        for (var period : oldGeneration.getLoadedHistoricalPeriods()) {
+            newHistoricalCache.put(period, DataLoader.loadHistoricalAtGlanceData(period.getYear(), period.getMonth()));
+        }
+        Cache<YearMonthPair, PercentileRankTable> newHistoricalRanks = createHistoricalCache();
+        for (var period : oldGeneration.historicalRanks.asMap().keySet()) {
+            newHistoricalRanks.put(period, loadRanks(PercentileRankTable.getRankFile(period.getYear(), period.getMonth())));
+        }
+        PercentileRankTable ranks = loadRanks(PercentileRankTable.getCurrentRankFile());
+        generation = new AtGlanceGeneration(data.get(), ranks, newHistoricalCache, newHistoricalRanks);
+        LOGGER.info("Swapped to at glance generation {}", generation.version);
+    }
+
+    /**
+     * Swaps in new current data without touching historical snapshots.
+     * The given map is owned by this class after the call, it should not be modified.
+     * Percentile ranks are kept until the next full snapshot build, so symbols new to the data have no rank until then.
+     */
+    public void replaceAtGlanceData(LinkedHashMap<String, AtGlanceData> symbolCompanyNameCache) {
+        AtGlanceGeneration oldGeneration = generation;
+        generation = new AtGlanceGeneration(symbolCompanyNameCache, oldGeneration.ranks, oldGeneration.historicalCache, oldGeneration.historicalRanks);
+        LOGGER.info("Swapped to at glance generation {}", generation.version);
+    }
+
+    private Optional<LinkedHashMap<String, AtGlanceData>> loadAtGlanceFile() {
         File file = new File(StockDataDownloader.SYMBOL_CACHE_FILE);
 
         Kryo kryo = new Kryo();
@@ -62,41 +89,39 @@ public class SymbolAtGlanceProvider {
 
         try {
             Input input = new Input(new FileInputStream(file));
-            symbolCompanyNameCache = kryo.readObject(input, LinkedHashMap.class);
+            LinkedHashMap<String, AtGlanceData> result = kryo.readObject(input, LinkedHashMap.class);
             input.close();
-
-            for (var entry : symbolCompanyNameCache.entrySet()) {
-                if (entry.getKey().length() > longestSymbol) {
-                    longestSymbol = entry.getKey().length();
-                }
-                symbols.add(entry.getKey());
-                if (entry.getValue().companyName != null) {
-                    companyNames.add(entry.getValue().companyName);
-                    upperCompanyNames.add(entry.getValue().companyName.toUpperCase());
-
-                    if (entry.getValue().companyName.length() > longestCompanyName) {
-                        longestCompanyName = entry.getValue().companyName.length();
-                    }
-                } else {
-                    companyNames.add("");
-                    upperCompanyNames.add("");
-                }
-            }
-
+            return Optional.of(result);
         } catch (IOException e) {
             e.printStackTrace();
+            return Optional.empty();
         }
     }
 
+    private static PercentileRankTable loadRanks(File file) {
+        return PercentileRankTable.load(file).orElse(PercentileRankTable.EMPTY);
+    }
+
+    private static <T> Cache<YearMonthPair, T> createHistoricalCache() {
+        return Caffeine.newBuilder()
+                .expireAfterWrite(100, TimeUnit.DAYS)
+                .maximumSize(500)
+                .build();
+    }
+
     public List<SearchElement> getTopResult(String parts) {
-        if (parts.length() > longestCompanyName || parts.isBlank()) {
+        AtGlanceGeneration generation = this.generation;
+        if (parts.length() > generation.longestCompanyName || parts.isBlank()) {
             return List.of();
         }
         Set<SearchElement> result = new LinkedHashSet<>();
         String partsUppercase = parts.toUpperCase();
+        List<String> symbols = generation.symbols;
+        List<String> companyNames = generation.companyNames;
+        List<String> upperCompanyNames = generation.upperCompanyNames;
 
         List<SearchElement> bestSymbols = new ArrayList<>();
-        if (parts.length() <= longestSymbol) {
+        if (parts.length() <= generation.longestSymbol) {
             for (int i = 0; i < symbols.size(); ++i) {
                 var element = symbols.get(i);
                 if (element.equals(partsUppercase)) {
@@ -126,33 +151,109 @@ public class SymbolAtGlanceProvider {
     }
 
     public Optional<String> getCompanyName(String stock) {
-        for (int i = 0; i < symbols.size(); ++i) {
-            if (symbols.get(i).equalsIgnoreCase(stock) && !companyNames.get(i).isBlank()) {
-                return Optional.of(companyNames.get(i));
+        AtGlanceGeneration generation = this.generation;
+        for (int i = 0; i < generation.symbols.size(); ++i) {
+            if (generation.symbols.get(i).equalsIgnoreCase(stock) && !generation.companyNames.get(i).isBlank()) {
+                return Optional.of(generation.companyNames.get(i));
             }
         }
         return Optional.empty();
     }
 
     public Optional<AtGlanceData> getAtGlanceData(String stock) {
-        return Optional.ofNullable(symbolCompanyNameCache.get(stock));
+        return Optional.ofNullable(generation.symbolCompanyNameCache.get(stock));
     }
 
     public LinkedHashMap<String, AtGlanceData> getSymbolCompanyNameCache() {
-        return symbolCompanyNameCache;
+        return generation.symbolCompanyNameCache;
     }
 
     public Optional<Map<String, AtGlanceData>> loadAtGlanceDataAtYear(int year, int month) {
-        return cache.get(YearMonthPair.of(year, month), y -> DataLoader.loadHistoricalAtGlanceData(year, month));
+        return generation.historicalCache.get(YearMonthPair.of(year, month), y -> DataLoader.loadHistoricalAtGlanceData(year, month));
+    }
+
+    public Set<YearMonthPair> getLoadedHistoricalPeriods() {
+        return generation.getLoadedHistoricalPeriods();
+    }
+
+    /**
+     * Percentile ranks of the current data, empty table if the ranks were not built yet.
+     */
+    public PercentileRankTable getPercentileRanks() {
+        return generation.ranks;
+    }
+
+    /**
+     * Percentile ranks of the historical snapshot, empty table if the ranks were not built for it.
+     */
+    public PercentileRankTable getPercentileRanksAtYear(int year, int month) {
+        return generation.historicalRanks.get(YearMonthPair.of(year, month), period -> loadRanks(PercentileRankTable.getRankFile(year, month)));
+    }
+
+    /**
+     * Increases every time a new generation is swapped in, can be used as part of cache keys derived from this data.
+     */
+    public long getDatasetVersion() {
+        return generation.version;
     }
 
     public boolean doesCompanyExists(String stock) {
-        for (int i = 0; i < symbols.size(); ++i) {
-            if (symbols.get(i).equalsIgnoreCase(stock)) {
+        AtGlanceGeneration generation = this.generation;
+        for (int i = 0; i < generation.symbols.size(); ++i) {
+            if (generation.symbols.get(i).equalsIgnoreCase(stock)) {
                 return true;
             }
         }
         return false;
     }
 
+    static class AtGlanceGeneration {
+        final long version;
+        final LinkedHashMap<String, AtGlanceData> symbolCompanyNameCache;
+        final PercentileRankTable ranks;
+        final Cache<YearMonthPair, Optional<Map<String, AtGlanceData>>> historicalCache;
+        final Cache<YearMonthPair, PercentileRankTable> historicalRanks;
+
+        final List<String> symbols = new ArrayList<>();
+        final List<String> companyNames = new ArrayList<>();
+        final List<String> upperCompanyNames = new ArrayList<>();
+        int longestCompanyName;
+        int longestSymbol;
+
+        public AtGlanceGeneration(LinkedHashMap<String, AtGlanceData> symbolCompanyNameCache, PercentileRankTable ranks,
+                Cache<YearMonthPair, Optional<Map<String, AtGlanceData>>> historicalCache, Cache<YearMonthPair, PercentileRankTable> historicalRanks) {
+            this.version = GENERATION_COUNTER.incrementAndGet();
+            this.symbolCompanyNameCache = symbolCompanyNameCache;
+            this.ranks = ranks;
+            this.historicalCache = historicalCache;
+            this.historicalRanks = historicalRanks;
+
+            for (var entry : symbolCompanyNameCache.entrySet()) {
+                if (entry.getKey().length() > longestSymbol) {
+                    longestSymbol = entry.getKey().length();
+                }
+                symbols.add(entry.getKey());
+                if (entry.getValue().companyName != null) {
+                    companyNames.add(entry.getValue().companyName);
+                    upperCompanyNames.add(entry.getValue().companyName.toUpperCase());
+
+                    if (entry.getValue().companyName.length() > longestCompanyName) {
+                        longestCompanyName = entry.getValue().companyName.length();
+                    }
+                } else {
+                    companyNames.add("");
+                    upperCompanyNames.add("");
+                }
+            }
+        }
+
+        public Set<YearMonthPair> getLoadedHistoricalPeriods() {
+            return historicalCache.asMap().entrySet()
+                    .stream()
+                    .filter(entry -> entry.getValue().isPresent())
+                    .map(entry -> entry.getKey())
+                    .collect(Collectors.toSet());
+        }
+    }
+
 }
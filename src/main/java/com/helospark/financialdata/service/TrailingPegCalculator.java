@@ -43,7 +43,13 @@ public class TrailingPegCalculator {
         }
         var financialsTtm = company.financials.get(i);
         double growthRate = growthCalculator.apply(company, offsetYear);
-        double eps = financialsTtm.incomeStatementTtm.eps;
+        return calculateTrailingPeg(latestPrice, financialsTtm.incomeStatementTtm.eps, growthRate);
+    }
+
+    /**
+     * Trailing PEG from the EPS and past growth rate of the report, for callers which calculate it at many prices.
+     */
+    public static Optional<Double> calculateTrailingPeg(double latestPrice, double eps, double growthRate) {
         if (eps <= 0.0) {
             return Optional.empty();
         }
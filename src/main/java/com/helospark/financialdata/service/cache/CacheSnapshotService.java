@@ -0,0 +1,213 @@
+package com.helospark.financialdata.service.cache;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.helospark.financialdata.domain.CompanyFinancials;
+import com.helospark.financialdata.service.DataLoader;
+import com.helospark.financialdata.service.SymbolAtGlanceProvider;
+import com.helospark.financialdata.util.StockDataDownloader.YearMonthPair;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Saves the hot part of the in-memory caches to disk, and restores it in the background after a restart,
+ * so the first users after a deploy does not have to pay for the cold loads.
+ * <p>
+ * File format (all written with Kryo):
+ * <pre>
+ * int magic, int version, long savedAt
+ * int n, n * (String symbol, long fingerprint, CompanyFinancials)
+ * int n, n * String priceHistoryKey
+ * int n, n * (int year, int month)
+ * </pre>
+ * Increase FORMAT_VERSION whenever CompanyFinancials or the calculation in DataLoader changes incompatibly.
+ */
+@Component
+public class CacheSnapshotService {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CacheSnapshotService.class);
+    private static final int MAGIC = 0x46444353;
+    private static final int FORMAT_VERSION = 2;
+
+    @Autowired
+    private SymbolAtGlanceProvider symbolAtGlanceProvider;
+    @Value("${cachesnapshot.enabled:false}")
+    private boolean enabled;
+    @Value("${cachesnapshot.location:/tmp/financials-cache.bin}")
+    private String location;
+    @Value("${cachesnapshot.max-entries:5000}")
+    private int maxEntries;
+
+    private volatile boolean restoreFinished = false;
+    private ExecutorService restoreExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "cache-snapshot-restore");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void restoreInBackground() {
+        if (!enabled) {
+            return;
+        }
+        restoreExecutor.execute(() -> {
+            try {
+                restore();
+            } catch (Exception e) {
+                LOGGER.warn("Unable to restore cache snapshot", e);
+            } finally {
+                restoreFinished = true;
+            }
+        });
+    }
+
+    @Scheduled(fixedDelay = 30, initialDelay = 30, timeUnit = TimeUnit.MINUTES)
+    public void scheduledSave() {
+        if (enabled && restoreFinished) {
+            save();
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        restoreExecutor.shutdownNow();
+        if (enabled && restoreFinished) {
+            save();
+        }
+    }
+
+    public void save() {
+        long start = System.currentTimeMillis();
+        File file = new File(location);
+        File tmpFile = new File(location + ".tmp");
+        Map<String, CompanyFinancials> financials = DataLoader.getHottestCachedFinancials(maxEntries);
+        List<String> priceHistoryKeys = DataLoader.getHottestPriceHistoryKeys(maxEntries);
+        Set<YearMonthPair> atGlancePeriods = symbolAtGlanceProvider.getLoadedHistoricalPeriods();
+
+        Kryo kryo = FinancialsKryo.createKryo();
+        try (Output output = new Output(new FileOutputStream(tmpFile))) {
+            output.writeInt(MAGIC);
+            output.writeInt(FORMAT_VERSION);
+            output.writeLong(System.currentTimeMillis());
+
+            output.writeInt(financials.size());
+            for (var entry : financials.entrySet()) {
+                output.writeString(entry.getKey());
+                output.writeLong(FinancialsFingerprint.withFx(FinancialsFingerprint.calculate(entry.getKey()), getCurrency(entry.getValue())));
+                kryo.writeObject(output, entry.getValue());
+            }
+
+            output.writeInt(priceHistoryKeys.size());
+            for (var key : priceHistoryKeys) {
+                output.writeString(key);
+            }
+
+            output.writeInt(atGlancePeriods.size());
+            for (var period : atGlancePeriods) {
+                output.writeInt(period.getYear());
+                output.writeInt(period.getMonth());
+            }
+        } catch (Exception e) {
+            LOGGER.error("Unable to write cache snapshot", e);
+            tmpFile.delete();
+            return;
+        }
+
+        try {
+            Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            LOGGER.info("Cache snapshot with {} financials saved in {} ms", financials.size(), (System.currentTimeMillis() - start));
+        } catch (Exception e) {
+            LOGGER.error("Unable to move cache snapshot to {}", file, e);
+        }
+    }
+
+    public void restore() {
+        File file = new File(location);
+        if (!file.exists()) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        int restored = 0;
+        int rejected = 0;
+        List<String> priceHistoryKeys = new ArrayList<>();
+        List<YearMonthPair> atGlancePeriods = new ArrayList<>();
+
+        Kryo kryo = FinancialsKryo.createKryo();
+        try (Input input = new Input(new FileInputStream(file))) {
+            int magic = input.readInt();
+            int version = input.readInt();
+            if (magic != MAGIC || version != FORMAT_VERSION) {
+                LOGGER.info("Ignoring cache snapshot with version {}, expected {}", version, FORMAT_VERSION);
+                return;
+            }
+            input.readLong();
+
+            int numberOfFinancials = input.readInt();
+            for (int i = 0; i < numberOfFinancials; ++i) {
+                String symbol = input.readString();
+                long fingerprint = input.readLong();
+                CompanyFinancials financials = kryo.readObject(input, CompanyFinancials.class);
+
+                if (fingerprint == FinancialsFingerprint.withFx(FinancialsFingerprint.calculate(symbol), getCurrency(financials))) {
+                    DataLoader.putCachedFinancialsIfAbsent(symbol, financials);
+                    ++restored;
+                } else {
+                    ++rejected;
+                }
+            }
+
+            int numberOfPriceHistoryKeys = input.readInt();
+            for (int i = 0; i < numberOfPriceHistoryKeys; ++i) {
+                priceHistoryKeys.add(input.readString());
+            }
+
+            int numberOfPeriods = input.readInt();
+            for (int i = 0; i < numberOfPeriods; ++i) {
+                int year = input.readInt();
+                int month = input.readInt();
+                atGlancePeriods.add(YearMonthPair.of(year, month));
+            }
+        } catch (Exception e) {
+            LOGGER.warn("Unable to read cache snapshot, ignoring it", e);
+        }
+        LOGGER.info("Restored {} financials from cache snapshot, rejected {} changed in {} ms", restored, rejected, (System.currentTimeMillis() - start));
+
+        // these are derived from files on disk anyway, it's enough to reload them
+        for (var key : priceHistoryKeys) {
+            int separatorIndex = key.lastIndexOf('_');
+            if (separatorIndex > 0) {
+                DataLoader.readHistoricalPrice(key.substring(0, separatorIndex), Integer.parseInt(key.substring(separatorIndex + 1)));
+            }
+        }
+        for (var period : atGlancePeriods) {
+            symbolAtGlanceProvider.loadAtGlanceDataAtYear(period.getYear(), period.getMonth());
+        }
+    }
+
+    private static String getCurrency(CompanyFinancials financials) {
+        return financials.profile != null ? financials.profile.currency : null;
+    }
+
+}
@@ -0,0 +1,58 @@
+package com.helospark.financialdata.service.cache;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.helospark.financialdata.domain.CompanyFinancials;
+import com.helospark.financialdata.service.DataLoader;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Exposes the weigher's estimated size of the financials cache, and a measured size extrapolated from
+ * walking the object graph of a sample of entries, so the estimate can be validated.
+ */
+@Component
+public class FinancialsCacheMetrics {
+    private static final Logger LOGGER = LoggerFactory.getLogger(FinancialsCacheMetrics.class);
+    private static final int SAMPLE_SIZE = 200;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private AtomicLong measuredBytes = new AtomicLong(0);
+
+    @PostConstruct
+    public void registerMetrics() {
+        Gauge.builder("financials.cache.budget.bytes", () -> DataLoader.getFinancialsCacheBudgetBytes()).register(meterRegistry);
+        Gauge.builder("financials.cache.estimated.bytes", () -> DataLoader.getFinancialsCacheEstimatedBytes()).register(meterRegistry);
+        Gauge.builder("financials.cache.measured.bytes", measuredBytes, value -> value.get()).register(meterRegistry);
+        Gauge.builder("financials.cache.entries", () -> DataLoader.getFinancialsCacheEntryCount()).register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelay = 10, timeUnit = TimeUnit.MINUTES)
+    public void measureSample() {
+        Map<String, CompanyFinancials> sample = DataLoader.getHottestCachedFinancials(SAMPLE_SIZE);
+        long sampleEstimate = 0;
+        long sampleMeasured = 0;
+        for (var financials : sample.values()) {
+            sampleEstimate += RetainedSizeEstimator.estimateFinancials(financials);
+            sampleMeasured += RetainedSizeEstimator.measureDeepSize(financials);
+        }
+        if (sampleEstimate > 0) {
+            double ratio = (double) sampleMeasured / sampleEstimate;
+            measuredBytes.set((long) (DataLoader.getFinancialsCacheEstimatedBytes() * ratio));
+            LOGGER.debug("Financials cache measured/estimated ratio: {}", ratio);
+        }
+    }
+
+}
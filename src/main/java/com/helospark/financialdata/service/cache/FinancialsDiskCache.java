@@ -0,0 +1,174 @@
+package com.helospark.financialdata.service.cache;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.helospark.financialdata.domain.CompanyFinancials;
+
+/**
+ * Second tier behind the on-heap financials cache: fully computed CompanyFinancials stored deflated on local disk, one file per symbol.
+ * <p>
+ * Entries are keyed by the fingerprint of the source files and of the FX files of the symbol's trading currency,
+ * so a re-downloaded symbol is never served stale. The folder is bounded by FINANCIALS_DISK_CACHE_SIZE_MB,
+ * the least recently used entries are deleted when it's exceeded.
+ * Bump FORMAT_VERSION when loadData's logic changes.
+ */
+public class FinancialsDiskCache {
+    private static final Logger LOGGER = LoggerFactory.getLogger(FinancialsDiskCache.class);
+    private static final int MAGIC = 0x46444346;
+    private static final int FORMAT_VERSION = 2;
+    private static final double CLEANUP_TARGET_RATIO = 0.9;
+
+    private static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("FINANCIALS_DISK_CACHE_ENABLED", "true"));
+    private static final File CACHE_FOLDER = new File(System.getProperty("FINANCIALS_DISK_CACHE_FOLDER", "/tmp/financials-disk-cache"));
+    private static final long MAX_BYTES = Integer.getInteger("FINANCIALS_DISK_CACHE_SIZE_MB", 2048) * 1024L * 1024L;
+
+    private static final ThreadLocal<Kryo> KRYO = ThreadLocal.withInitial(() -> FinancialsKryo.createKryo());
+    // lazily initialized from the files left by the previous run
+    private static volatile AtomicLong usedBytes;
+
+    /**
+     * @param fingerprint of the symbol's files, see FinancialsFingerprint.calculate
+     */
+    public static Optional<CompanyFinancials> read(String symbol, long fingerprint) {
+        if (!ENABLED) {
+            return Optional.empty();
+        }
+        File file = getFile(symbol);
+        if (!file.exists()) {
+            return Optional.empty();
+        }
+        try (Input input = new Input(new InflaterInputStream(new FileInputStream(file)), 64 * 1024)) {
+            if (input.readInt() != MAGIC || input.readInt() != FORMAT_VERSION || input.readLong() != fingerprint) {
+                return Optional.empty();
+            }
+            String currency = input.readString();
+            if (input.readLong() != FinancialsFingerprint.calculateFx(currency)) {
+                return Optional.empty();
+            }
+            CompanyFinancials result = KRYO.get().readObject(input, CompanyFinancials.class);
+            file.setLastModified(System.currentTimeMillis());
+            return Optional.of(result);
+        } catch (Exception e) {
+            LOGGER.warn("Unable to read disk cache entry for {}, ignoring it", symbol, e);
+            delete(file);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * @param fingerprint of the symbol's files, calculated before loading the financials
+     */
+    public static void write(String symbol, long fingerprint, CompanyFinancials financials) {
+        if (!ENABLED) {
+            return;
+        }
+        File file = getFile(symbol);
+        File tmpFile = new File(CACHE_FOLDER, file.getName() + "." + Thread.currentThread().getId() + ".tmp");
+        String currency = financials.profile != null ? financials.profile.currency : null;
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            CACHE_FOLDER.mkdirs();
+            try (Output output = new Output(new DeflaterOutputStream(new FileOutputStream(tmpFile), deflater), 64 * 1024)) {
+                output.writeInt(MAGIC);
+                output.writeInt(FORMAT_VERSION);
+                output.writeLong(fingerprint);
+                output.writeString(currency);
+                output.writeLong(FinancialsFingerprint.calculateFx(currency));
+                KRYO.get().writeObject(output, financials);
+            }
+            long previousLength = file.length();
+            Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            if (getUsedBytes().addAndGet(file.length() - previousLength) > MAX_BYTES) {
+                cleanup();
+            }
+        } catch (Exception e) {
+            LOGGER.warn("Unable to write disk cache entry for {}", symbol, e);
+            tmpFile.delete();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    public static void invalidate(String symbol) {
+        delete(getFile(symbol));
+    }
+
+    /**
+     * Deletes the least recently read or written entries until the folder is below the target size.
+     */
+    private static synchronized void cleanup() {
+        File[] files = CACHE_FOLDER.listFiles();
+        if (files == null) {
+            return;
+        }
+        long size = 0;
+        for (var file : files) {
+            size += file.length();
+        }
+        if (size <= MAX_BYTES) {
+            getUsedBytes().set(size);
+            return;
+        }
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        int deleted = 0;
+        for (int i = 0; i < files.length && size > MAX_BYTES * CLEANUP_TARGET_RATIO; ++i) {
+            long length = files[i].length();
+            if (files[i].delete()) {
+                size -= length;
+                ++deleted;
+            }
+        }
+        getUsedBytes().set(size);
+        LOGGER.info("Deleted {} financials disk cache entries, {} MB remaining", deleted, size / 1024 / 1024);
+    }
+
+    private static void delete(File file) {
+        long length = file.length();
+        if (file.delete()) {
+            getUsedBytes().addAndGet(-length);
+        }
+    }
+
+    private static AtomicLong getUsedBytes() {
+        AtomicLong current = usedBytes;
+        if (current == null) {
+            synchronized (FinancialsDiskCache.class) {
+                current = usedBytes;
+                if (current == null) {
+                    long size = 0;
+                    File[] files = CACHE_FOLDER.listFiles();
+                    for (int i = 0; files != null && i < files.length; ++i) {
+                        size += files[i].length();
+                    }
+                    current = new AtomicLong(size);
+                    usedBytes = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    private static File getFile(String symbol) {
+        // symbols can contain characters like '/' or '^'
+        String fileName = symbol.replaceAll("[^A-Za-z0-9.\\-]", "_") + "_" + Integer.toHexString(symbol.hashCode()) + ".bin";
+        return new File(CACHE_FOLDER, fileName);
+    }
+
+}
@@ -0,0 +1,112 @@
+package com.helospark.financialdata.service.cache;
+
+import static com.helospark.financialdata.CommonConfig.BASE_FOLDER;
+import static com.helospark.financialdata.CommonConfig.FX_BASE_FOLDER;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cheap fingerprint of the raw files a CompanyFinancials is computed from.
+ * Based on file size and modification time, so any re-download changes it.
+ * <p>
+ * The FX rate files are fingerprinted separately per currency (all the &lt;currency&gt;_&lt;year&gt;.json files),
+ * since only the files of the trading currency are used for a symbol. These are recalculated at most once a minute
+ * (or when invalidated), since there are thousands of them.
+ */
+public class FinancialsFingerprint {
+    static final String PRICE_FILE = "historical-price.json";
+    static final List<String> SOURCE_FILES = List.of("balance-sheet.json", "income-statement.json", "cash-flow.json", "auxilary.json", PRICE_FILE, "profile.json");
+    static final List<String> NON_PRICE_SOURCE_FILES = SOURCE_FILES.stream().filter(file -> !file.equals(PRICE_FILE)).toList();
+    private static final long FX_FINGERPRINT_REFRESH_MILLIS = 60_000;
+
+    private static volatile FxFingerprints fxFingerprints;
+
+    /**
+     * Fingerprint of the symbol's own files, combine it with {@link #withFx(long, String)} to cover the FX rates too.
+     */
+    public static long calculate(String symbol) {
+        return calculate(symbol, SOURCE_FILES);
+    }
+
+    /**
+     * Fingerprint of every input except the price history, which changes with every daily price update.
+     */
+    public static long calculateWithoutPrices(String symbol) {
+        return calculate(symbol, NON_PRICE_SOURCE_FILES);
+    }
+
+    public static long calculatePrices(String symbol) {
+        return calculate(symbol, List.of(PRICE_FILE));
+    }
+
+    /**
+     * Adds the fingerprint of the FX files used to convert from the given currency.
+     */
+    public static long withFx(long fingerprint, String currency) {
+        return 31 * fingerprint + calculateFx(currency);
+    }
+
+    public static long calculateFx(String currency) {
+        if (currency == null) {
+            return 0;
+        }
+        return getFxFingerprints().values.getOrDefault(currency, 0L);
+    }
+
+    private static long calculate(String symbol, List<String> fileNames) {
+        File folder = new File(BASE_FOLDER + "/fundamentals/" + symbol);
+        long result = 17;
+        for (var fileName : fileNames) {
+            File file = new File(folder, fileName);
+            result = 31 * result + file.length();
+            result = 31 * result + file.lastModified();
+        }
+        return result;
+    }
+
+    /**
+     * Forces the FX files to be checked again on the next calculation, used after an in-process data refresh.
+     */
+    public static void invalidateFxFingerprint() {
+        fxFingerprints = null;
+    }
+
+    private static FxFingerprints getFxFingerprints() {
+        FxFingerprints current = fxFingerprints;
+        long now = System.currentTimeMillis();
+        if (current == null || now - current.calculatedAt > FX_FINGERPRINT_REFRESH_MILLIS) {
+            current = new FxFingerprints(calculateFxFingerprints(new File(FX_BASE_FOLDER).listFiles()), now);
+            fxFingerprints = current;
+        }
+        return current;
+    }
+
+    /**
+     * Fingerprint of the files per currency, independent of the order the files are listed in.
+     */
+    static Map<String, Long> calculateFxFingerprints(File[] files) {
+        Map<String, Long> result = new HashMap<>();
+        if (files == null) {
+            return result;
+        }
+        for (var file : files) {
+            String name = file.getName();
+            int separatorIndex = name.indexOf('_');
+            if (separatorIndex <= 0) {
+                continue;
+            }
+            long fileHash = name.hashCode();
+            fileHash = 31 * fileHash + file.length();
+            fileHash = 31 * fileHash + file.lastModified();
+            result.merge(name.substring(0, separatorIndex), fileHash * 0x9E3779B97F4A7C15L, Long::sum);
+        }
+        return result;
+    }
+
+    record FxFingerprints(Map<String, Long> values, long calculatedAt) {
+    }
+
+}
@@ -0,0 +1,36 @@
+package com.helospark.financialdata.service.cache;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.serializers.VersionFieldSerializer;
+import com.helospark.financialdata.domain.AuxilaryInformation;
+import com.helospark.financialdata.domain.BalanceSheet;
+import com.helospark.financialdata.domain.CashFlow;
+import com.helospark.financialdata.domain.CompanyFinancials;
+import com.helospark.financialdata.domain.FinancialsTtm;
+import com.helospark.financialdata.domain.IncomeStatement;
+import com.helospark.financialdata.domain.Profile;
+
+public class FinancialsKryo {
+
+    /**
+     * Kryo is not thread safe, every reader/writer should create its own instance.
+     */
+    public static Kryo createKryo() {
+        Kryo kryo = new Kryo();
+        kryo.setDefaultSerializer(VersionFieldSerializer.class);
+        kryo.register(CompanyFinancials.class);
+        kryo.register(FinancialsTtm.class);
+        kryo.register(BalanceSheet.class);
+        kryo.register(CashFlow.class);
+        kryo.register(IncomeStatement.class);
+        kryo.register(AuxilaryInformation.class);
+        kryo.register(Profile.class);
+        kryo.register(ArrayList.class);
+        kryo.register(LocalDate.class);
+        return kryo;
+    }
+
+}
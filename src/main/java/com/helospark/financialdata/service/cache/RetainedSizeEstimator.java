@@ -0,0 +1,177 @@
+package com.helospark.financialdata.service.cache;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.helospark.financialdata.domain.AuxilaryInformation;
+import com.helospark.financialdata.domain.BalanceSheet;
+import com.helospark.financialdata.domain.CashFlow;
+import com.helospark.financialdata.domain.CompanyFinancials;
+import com.helospark.financialdata.domain.FinancialsTtm;
+import com.helospark.financialdata.domain.HistoricalPriceElement;
+import com.helospark.financialdata.domain.IncomeStatement;
+
+/**
+ * Estimates the retained heap size of cached objects, assuming 64 bit JVM with compressed oops.
+ * <p>
+ * estimate* methods are fast enough to be used as cache weighers, they only look at list lengths.
+ * measureDeepSize walks the whole object graph, it's used to validate the estimates.
+ */
+public class RetainedSizeEstimator {
+    private static final int OBJECT_HEADER = 12;
+    private static final int REFERENCE = 4;
+    private static final int ARRAY_HEADER = 16;
+    private static final int LOCAL_DATE_SIZE = 24;
+    private static final int BOXED_SIZE = 16;
+    // most strings in the reports are short, like currency or period
+    private static final int AVERAGE_STRING_SIZE = 48;
+
+    private static final Map<Class<?>, Long> SHALLOW_SIZE_CACHE = new ConcurrentHashMap<>();
+
+    private static final long FINANCIALS_TTM_SIZE = estimateFlat(FinancialsTtm.class)
+            + estimateFlat(BalanceSheet.class)
+            + 2 * estimateFlat(CashFlow.class)
+            + 2 * estimateFlat(IncomeStatement.class)
+            + estimateFlat(AuxilaryInformation.class);
+    private static final long PRICE_ELEMENT_SIZE = estimateFlat(HistoricalPriceElement.class);
+
+    public static long estimateFinancials(CompanyFinancials financials) {
+        long result = shallowSize(CompanyFinancials.class) + LOCAL_DATE_SIZE;
+        if (financials.financials != null) {
+            result += estimateListOverhead(financials.financials.size()) + financials.financials.size() * FINANCIALS_TTM_SIZE;
+        }
+        if (financials.profile != null) {
+            // profile has long free text fields, like description, so it is measured instead
+            result += measureDeepSize(financials.profile);
+        }
+        return result;
+    }
+
+    public static long estimatePriceHistory(List<?> prices) {
+        return estimateListOverhead(prices.size()) + prices.size() * PRICE_ELEMENT_SIZE;
+    }
+
+    public static int toWeight(long bytes) {
+        return (int) Math.min(bytes, Integer.MAX_VALUE);
+    }
+
+    public static long measureDeepSize(Object root) {
+        Set<Object> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        return measureDeepSize(root, visited);
+    }
+
+    private static long measureDeepSize(Object object, Set<Object> visited) {
+        if (object == null || !visited.add(object)) {
+            return 0;
+        }
+        Class<?> clazz = object.getClass();
+        if (object instanceof String string) {
+            return align(OBJECT_HEADER + 12) + align(ARRAY_HEADER + string.length());
+        }
+        if (object instanceof LocalDate) {
+            return LOCAL_DATE_SIZE;
+        }
+        if (object instanceof Number || object instanceof Boolean) {
+            return BOXED_SIZE;
+        }
+        if (object instanceof List<?> list) {
+            long result = estimateListOverhead(list.size());
+            for (var element : list) {
+                result += measureDeepSize(element, visited);
+            }
+            return result;
+        }
+        if (clazz.isArray()) {
+            return align(ARRAY_HEADER + (long) Array.getLength(object) * fieldSize(clazz.getComponentType()));
+        }
+        if (!clazz.getName().startsWith("com.helospark")) {
+            // JDK internals are not accessible via reflection, nothing big is expected there
+            return shallowSize(clazz);
+        }
+
+        long result = shallowSize(clazz);
+        for (var field : getInstanceFields(clazz)) {
+            if (!field.getType().isPrimitive()) {
+                try {
+                    field.setAccessible(true);
+                    result += measureDeepSize(field.get(object), visited);
+                } catch (Exception e) {
+                    // not accessible, count only the reference
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Shallow size plus typical sizes of the String and LocalDate fields.
+     */
+    static long estimateFlat(Class<?> clazz) {
+        long result = shallowSize(clazz);
+        for (var field : getInstanceFields(clazz)) {
+            if (field.getType().equals(String.class)) {
+                result += AVERAGE_STRING_SIZE;
+            } else if (field.getType().equals(LocalDate.class)) {
+                result += LOCAL_DATE_SIZE;
+            }
+        }
+        return result;
+    }
+
+    static long shallowSize(Class<?> clazz) {
+        return SHALLOW_SIZE_CACHE.computeIfAbsent(clazz, c -> {
+            long result = OBJECT_HEADER;
+            for (var field : getInstanceFields(c)) {
+                result += fieldSize(field.getType());
+            }
+            return align(result);
+        });
+    }
+
+    private static long estimateListOverhead(int size) {
+        // ArrayList object + backing array, assuming some unused capacity
+        return align(OBJECT_HEADER + 8) + align(ARRAY_HEADER + (long) (size * 1.25) * REFERENCE);
+    }
+
+    private static List<Field> getInstanceFields(Class<?> clazz) {
+        List<Field> result = new ArrayList<>();
+        Class<?> current = clazz;
+        while (current != null && current != Object.class) {
+            for (var field : current.getDeclaredFields()) {
+                if (!Modifier.isStatic(field.getModifiers())) {
+                    result.add(field);
+                }
+            }
+            current = current.getSuperclass();
+        }
+        return result;
+    }
+
+    private static int fieldSize(Class<?> type) {
+        if (type == long.class || type == double.class) {
+            return 8;
+        } else if (type == int.class || type == float.class) {
+            return 4;
+        } else if (type == short.class || type == char.class) {
+            return 2;
+        } else if (type == byte.class || type == boolean.class) {
+            return 1;
+        } else {
+            return REFERENCE;
+        }
+    }
+
+    private static long align(long size) {
+        return (size + 7) & ~7L;
+    }
+
+}
@@ -7,6 +7,8 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.time.LocalDate;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
@@ -63,7 +65,6 @@ import com.helospark.financialdata.domain.CompanyListElement;
 import com.helospark.financialdata.domain.CurrentPrice;
 import com.helospark.financialdata.domain.DateAware;
 import com.helospark.financialdata.domain.EconomicPriceElement;
-import com.helospark.financialdata.domain.FlagInformation;
 import com.helospark.financialdata.domain.FlagType;
 import com.helospark.financialdata.domain.FxRatesResponse;
 import com.helospark.financialdata.domain.FxSupportedSymbolsResponse;
@@ -72,6 +73,7 @@ import com.helospark.financialdata.domain.HistoricalPrice;
 import com.helospark.financialdata.domain.HistoricalPriceElement;
 import com.helospark.financialdata.domain.IncomeStatement;
 import com.helospark.financialdata.domain.Profile;
+import com.helospark.financialdata.flags.FlagCounter;
 import com.helospark.financialdata.service.AltmanZCalculator;
 import com.helospark.financialdata.service.CapeCalculator;
 import com.helospark.financialdata.service.DataLoader;
@@ -80,6 +82,7 @@ import com.helospark.financialdata.service.DividendCalculator;
 import com.helospark.financialdata.service.EnterpriseValueCalculator;
 import com.helospark.financialdata.service.EverythingMoneyCalculator;
 import com.helospark.financialdata.service.FlagsProviderService;
+import com.helospark.financialdata.service.ForwardReturnsTable;
 import com.helospark.financialdata.service.GrahamNumberCalculator;
 import com.helospark.financialdata.service.GrowthCalculator;
 import com.helospark.financialdata.service.GrowthCorrelationCalculator;
@@ -88,6 +91,8 @@ import com.helospark.financialdata.service.Helpers;
 import com.helospark.financialdata.service.IdealGrowthCorrelationCalculator;
 import com.helospark.financialdata.service.InvestmentScoreCalculator;
 import com.helospark.financialdata.service.MarginCalculator;
+import com.helospark.financialdata.service.PercentileRankTable;
+import com.helospark.financialdata.service.PercentileRankTable.SymbolGroups;
 import com.helospark.financialdata.service.PietroskyScoreCalculator;
 import com.helospark.financialdata.service.ProfitabilityCalculator;
 import com.helospark.financialdata.service.RatioCalculator;
@@ -96,12 +101,17 @@ import com.helospark.financialdata.service.StockBasedCompensationCalculator;
 import com.helospark.financialdata.service.SymbolAtGlanceProvider;
 import com.helospark.financialdata.service.TrailingPegCalculator;
 import com.helospark.financialdata.util.glance.AtGlanceData;
+import com.helospark.financialdata.util.glance.AtGlanceDeltaCodec;
 
 public class StockDataDownloader {
     private static final Logger LOGGER = LoggerFactory.getLogger(StockDataDownloader.class);
     public static final String SYMBOL_CACHE_FILE = BASE_FOLDER + "/info/symbols/atGlance.kryo.bin";
     public static final String DOWNLOAD_DATES = BASE_FOLDER + "/info/download-dates.json";
     public static final String SYMBOL_CACHE_HISTORY_FILE = BASE_FOLDER + "/info/symbols/";
+    /** Historical snapshots of this month are saved in full, the other months of the year as a delta to it. */
+    public static final int HISTORICAL_SNAPSHOT_BASE_MONTH = 1;
+    /** Converting the existing full historical snapshots to deltas deletes the full files, so it has to be enabled explicitly */
+    private static final boolean COMPACT_HISTORICAL_SNAPSHOTS = Boolean.parseBoolean(System.getProperty("COMPACT_HISTORICAL_SNAPSHOTS", "false"));
     static final ObjectMapper objectMapper = new ObjectMapper();
     static final Kryo kryo = new Kryo();
     static final String API_KEY = System.getProperty("API_KEY");
@@ -228,18 +238,17 @@ public class StockDataDownloader {
             var lastDownloaded = symbolToDates.remove(symbol);
             downloadStockData(symbol, symbolToDates);
             writeLastAttemptedFile(downloadDates, symbolToDates);
-            DataLoader.clearCache(symbol);
+            CompanyFinancials company = DataLoader.reloadFinancials(symbol);
             DownloadDateData newDownloaded = symbolToDates.get(symbol);
 
             if (lastDownloaded == null || !lastDownloaded.equals(newDownloaded) || forceRenew) {
                 int currentMonth = LocalDate.now().getMonthValue();
-                Optional<AtGlanceData> information = symbolToSearchData(symbol, 0, currentMonth);
+                Optional<AtGlanceData> information = symbolToSearchData(symbol, company, 0, currentMonth);
 
                 if (information.isPresent()) {
                     LinkedHashMap<String, AtGlanceData> companies = new LinkedHashMap<>(symbolAtGlanceProvider.getSymbolCompanyNameCache());
                     companies.put(symbol, information.get());
-                    saveSymbolCache(companies);
-                    symbolAtGlanceProvider.initCache();
+                    symbolAtGlanceProvider.replaceAtGlanceData(saveSymbolCache(companies));
                 }
             }
 
@@ -260,19 +269,18 @@ public class StockDataDownloader {
                 var lastDownloaded = symbolToDates.remove(symbol);
                 downloadStockData(symbol, symbolToDates);
                 writeLastAttemptedFile(downloadDates, symbolToDates);
-                DataLoader.clearCache(symbol);
+                CompanyFinancials company = DataLoader.reloadFinancials(symbol);
                 DownloadDateData newDownloaded = symbolToDates.get(symbol);
 
-                if (!lastDownloaded.equals(newDownloaded)) {
-                    Optional<AtGlanceData> information = symbolToSearchData(symbol, 0, currentMonth);
+                if (lastDownloaded == null || !lastDownloaded.equals(newDownloaded)) {
+                    Optional<AtGlanceData> information = symbolToSearchData(symbol, company, 0, currentMonth);
 
                     if (information.isPresent()) {
                         companies.put(symbol, information.get());
                     }
                 }
             }
-            saveSymbolCache(companies);
-            symbolAtGlanceProvider.initCache();
+            symbolAtGlanceProvider.replaceAtGlanceData(saveSymbolCache(companies));
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
@@ -368,6 +376,7 @@ public class StockDataDownloader {
         int numberOfThreads = Runtime.getRuntime().availableProcessors() - 1;
         ExecutorService executorService = Executors.newFixedThreadPool(numberOfThreads);
         Set<String> symbols = DataLoader.provideAllSymbols();
+        LinkedHashMap<String, AtGlanceData> currentCompanies = null;
         if (regenerateCurrentCompanyCache) {
 
             ConcurrentHashMap<String, AtGlanceData> companies = new ConcurrentHashMap<String, AtGlanceData>();
@@ -397,7 +406,7 @@ public class StockDataDownloader {
                 future.join();
             }
 
-            saveSymbolCache(companies);
+            currentCompanies = saveSymbolCache(companies);
         }
 
         var allSymbolsSet = symbols;
@@ -428,9 +437,8 @@ public class StockDataDownloader {
                     for (int i = 1; i < 35; ++i) {
                         int year = LocalDate.now().minusYears(i).getYear();
                         for (int month = 1; month < 12; month += 3) {
-                            File offsetFile = getBacktestFileAtYear(year, month);
                             YearMonthPair mapIndex = YearMonthPair.of(year, month);
-                            if (!offsetFile.exists()) {
+                            if (!historicalSnapshotExists(year, month)) {
                                 Map<String, AtGlanceData> companyMap = yearData.get(mapIndex);
                                 if (companyMap == null) {
                                     companyMap = new ConcurrentHashMap<>();
@@ -463,20 +471,39 @@ public class StockDataDownloader {
             e1.printStackTrace();
         }
 
-        for (var entry : yearData.entrySet()) {
-            File backtestFile = getBacktestFileAtYear(entry.getKey().year, entry.getKey().month);
-            if (!backtestFile.exists()) {
+        saveHistoricalSnapshots(yearData);
+        if (COMPACT_HISTORICAL_SNAPSHOTS) {
+            statusMessage = "Compact historical data";
+            compactHistoricalSnapshots();
+        }
 
-                try {
-                    Output output = new Output(new FileOutputStream(backtestFile));
-                    kryo.writeObject(output, entry.getValue());
-                    output.close();
-                } catch (Exception e) {
-                    e.printStackTrace();
+        statusMessage = "Generate forward returns";
+        ForwardReturnsTable.loadOrBuild(DataLoader::loadHistoricalAtGlanceData);
+
+        statusMessage = "Generate percentile ranks";
+        createPercentileRanks(currentCompanies, symbols);
+    }
+
+    /**
+     * Ranks the current data, and every historical snapshot which is newer than its ranks.
+     */
+    private static void createPercentileRanks(Map<String, AtGlanceData> currentCompanies, Set<String> symbols) {
+        SymbolGroups symbolGroups = SymbolGroups.load(symbols);
+        if (currentCompanies != null) {
+            PercentileRankTable.build(currentCompanies, symbolGroups).save(PercentileRankTable.getCurrentRankFile());
+        }
+        for (int i = 1; i < 35 && inProgress; ++i) {
+            int year = LocalDate.now().minusYears(i).getYear();
+            for (int month = 1; month < 12; month += 3) {
+                File rankFile = PercentileRankTable.getRankFile(year, month);
+                if (historicalSnapshotExists(year, month) && rankFile.lastModified() < getHistoricalSnapshotModification(year, month)) {
+                    Optional<Map<String, AtGlanceData>> snapshot = DataLoader.loadHistoricalAtGlanceData(year, month);
+                    if (snapshot.isPresent()) {
+                        PercentileRankTable.build(snapshot.get(), symbolGroups).save(rankFile);
+                    }
                 }
             }
         }
-
     }
 
     public void saveWithKryo(LinkedHashMap<String, AtGlanceData> symbolCompanyNameCache, Kryo kryo, String filename) {
@@ -491,7 +518,10 @@ public class StockDataDownloader {
         }
     }
 
-    public static void saveSymbolCache(Map<String, AtGlanceData> companies) {
+    /**
+     * Saves the companies ordered by market cap, and returns the saved ordered map.
+     */
+    public static LinkedHashMap<String, AtGlanceData> saveSymbolCache(Map<String, AtGlanceData> companies) {
         TreeSet<AtGlanceData> orderedCompaniesSet = new TreeSet<>((a, b) -> Double.compare(b.marketCapUsd, a.marketCapUsd));
         orderedCompaniesSet.addAll(companies.values());
 
@@ -500,20 +530,133 @@ public class StockDataDownloader {
             symbolCompanyNameCache.put(element.symbol, element);
         }
 
+        // written to the side and moved, so a concurrent reload never reads a partial file
+        File tmpFile = new File(SYMBOL_CACHE_FILE + ".tmp");
         try {
-            Output output = new Output(new FileOutputStream(SYMBOL_CACHE_FILE));
+            Output output = new Output(new FileOutputStream(tmpFile));
             kryo.writeObject(output, symbolCompanyNameCache);
             output.close();
-        } catch (FileNotFoundException e) {
+            Files.move(tmpFile.toPath(), new File(SYMBOL_CACHE_FILE).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
             e.printStackTrace();
         }
 
+        return symbolCompanyNameCache;
+    }
+
+    /**
+     * Saves the base month of each year in full, the other months as a delta to the base of their year.
+     */
+    private static void saveHistoricalSnapshots(Map<YearMonthPair, Map<String, AtGlanceData>> yearData) {
+        for (var entry : yearData.entrySet()) {
+            if (entry.getKey().month == HISTORICAL_SNAPSHOT_BASE_MONTH && !historicalSnapshotExists(entry.getKey().year, entry.getKey().month)) {
+                saveFullHistoricalSnapshot(entry.getValue(), getBacktestFileAtYear(entry.getKey().year, entry.getKey().month));
+            }
+        }
+        for (var entry : yearData.entrySet()) {
+            int year = entry.getKey().year;
+            int month = entry.getKey().month;
+            if (month == HISTORICAL_SNAPSHOT_BASE_MONTH || historicalSnapshotExists(year, month)) {
+                continue;
+            }
+            Optional<Map<String, AtGlanceData>> base = DataLoader.loadHistoricalAtGlanceData(year, HISTORICAL_SNAPSHOT_BASE_MONTH);
+            if (base.isEmpty()) {
+                saveFullHistoricalSnapshot(entry.getValue(), getBacktestFileAtYear(year, month));
+                continue;
+            }
+            try {
+                AtGlanceDeltaCodec.write(base.get(), entry.getValue(), getBacktestDeltaFileAtYear(year, month));
+            } catch (IOException e) {
+                LOGGER.error("Unable to save historical delta {}-{}, saving in full", year, month, e);
+                saveFullHistoricalSnapshot(entry.getValue(), getBacktestFileAtYear(year, month));
+            }
+        }
+    }
+
+    private static void saveFullHistoricalSnapshot(Map<String, AtGlanceData> data, File file) {
+        try {
+            Output output = new Output(new FileOutputStream(file));
+            kryo.writeObject(output, data);
+            output.close();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Converts historical snapshots saved in full before deltas existed to deltas of their year's base.
+     * The full file is only deleted if the delta reads back to the same data, the delta keeps its modification time so the
+     * data derived from the snapshots is not regenerated. Only runs with COMPACT_HISTORICAL_SNAPSHOTS=true.
+     */
+    private static void compactHistoricalSnapshots() {
+        for (int i = 1; i < 35 && inProgress; ++i) {
+            int year = LocalDate.now().minusYears(i).getYear();
+            if (!getBacktestFileAtYear(year, HISTORICAL_SNAPSHOT_BASE_MONTH).exists()) {
+                continue;
+            }
+            Map<String, AtGlanceData> base = null;
+            for (int month = 1; month < 12; month += 3) {
+                File fullFile = getBacktestFileAtYear(year, month);
+                File deltaFile = getBacktestDeltaFileAtYear(year, month);
+                if (month == HISTORICAL_SNAPSHOT_BASE_MONTH || !fullFile.exists() || deltaFile.exists()) {
+                    continue;
+                }
+                try {
+                    if (base == null) {
+                        base = DataLoader.loadHistoricalAtGlanceData(year, HISTORICAL_SNAPSHOT_BASE_MONTH).get();
+                    }
+                    Map<String, AtGlanceData> snapshot = DataLoader.loadHistoricalAtGlanceData(year, month).get();
+                    AtGlanceDeltaCodec.write(base, snapshot, deltaFile);
+                    if (isSameSnapshot(snapshot, AtGlanceDeltaCodec.read(base, deltaFile))) {
+                        deltaFile.setLastModified(fullFile.lastModified());
+                        LOGGER.info("Compacted {} from {} to {} bytes", fullFile, fullFile.length(), deltaFile.length());
+                        Files.delete(fullFile.toPath());
+                    } else {
+                        LOGGER.error("Delta of {} does not match the full snapshot, keeping the full snapshot", fullFile);
+                        Files.delete(deltaFile.toPath());
+                    }
+                } catch (Exception e) {
+                    LOGGER.error("Unable to compact {}", fullFile, e);
+                }
+            }
+        }
+    }
+
+    private static boolean isSameSnapshot(Map<String, AtGlanceData> expected, Map<String, AtGlanceData> actual) {
+        if (expected.size() != actual.size()) {
+            return false;
+        }
+        for (var entry : expected.entrySet()) {
+            AtGlanceData actualData = actual.get(entry.getKey());
+            if (actualData == null || !AtGlanceDeltaCodec.isSame(entry.getValue(), actualData)) {
+                return false;
+            }
+        }
+        return true;
     }
 
     public static File getBacktestFileAtYear(int year, int month) {
         return new File(SYMBOL_CACHE_HISTORY_FILE + year + "-" + month + ".kryo.bin");
     }
 
+    /**
+     * Historical snapshot stored as the difference to the base month of the same year, see AtGlanceDeltaCodec.
+     */
+    public static File getBacktestDeltaFileAtYear(int year, int month) {
+        return new File(SYMBOL_CACHE_HISTORY_FILE + year + "-" + month + ".delta.bin");
+    }
+
+    public static boolean historicalSnapshotExists(int year, int month) {
+        return getBacktestFileAtYear(year, month).exists() || getBacktestDeltaFileAtYear(year, month).exists();
+    }
+
+    /**
+     * Last modification of the historical snapshot in either format, 0 if it does not exist.
+     */
+    public static long getHistoricalSnapshotModification(int year, int month) {
+        return Math.max(getBacktestFileAtYear(year, month).lastModified(), getBacktestDeltaFileAtYear(year, month).lastModified());
+    }
+
     public static Optional<AtGlanceData> symbolToSearchData(String symbol, int offsetYeari, int month) {
         CompanyFinancials company = DataLoader.readFinancialsWithCacheEnabled(symbol, false);
 
@@ -521,9 +664,17 @@ public class StockDataDownloader {
     }
 
     public static Optional<AtGlanceData> symbolToSearchData(String symbol, CompanyFinancials company, int offsetYeari, int month) {
+        LocalDate now = LocalDate.now();
+        return symbolToSearchData(symbol, company, LocalDate.of(now.getYear() - offsetYeari, month, 1), offsetYeari == 0);
+    }
+
+    /**
+     * At glance data from the latest report at or before the target date.
+     * @param useLatestPrice price dependent fields use the latest price instead of the price at the report date
+     */
+    public static Optional<AtGlanceData> symbolToSearchData(String symbol, CompanyFinancials company, LocalDate targetDate, boolean useLatestPrice) {
         AtGlanceData data = new AtGlanceData();
         LocalDate now = LocalDate.now();
-        LocalDate targetDate = LocalDate.of(now.getYear() - offsetYeari, month, 1);
 
         if (company.financials.isEmpty() || company.profile == null) {
             return Optional.empty();
@@ -542,9 +693,9 @@ public class StockDataDownloader {
         LocalDate actualDate = financial.getDate();
         double offsetYear = (now.getYear() - actualDate.getYear()) + ((now.getDayOfYear() - actualDate.getDayOfYear()) / 365.0);
 
-        double latestPrice = (offsetYeari == 0 ? company.latestPrice : company.financials.get(index).price);
-        double latestPriceUsd = (offsetYeari == 0 ? company.latestPriceUsd : company.financials.get(index).priceUsd);
-        double latestPriceTradingCurrency = (offsetYeari == 0 ? company.latestPriceTradingCurrency : company.financials.get(index).priceTradingCurrency);
+        double latestPrice = (useLatestPrice ? company.latestPrice : company.financials.get(index).price);
+        double latestPriceUsd = (useLatestPrice ? company.latestPriceUsd : company.financials.get(index).priceUsd);
+        double latestPriceTradingCurrency = (useLatestPrice ? company.latestPriceTradingCurrency : company.financials.get(index).priceTradingCurrency);
 
         data.actualDate = actualDate;
         data.marketCapUsd = (latestPriceUsd * financial.incomeStatementTtm.weightedAverageShsOut) / 1_000_000.0;
@@ -647,23 +798,12 @@ public class StockDataDownloader {
 
         data.investmentScore = InvestmentScoreCalculator.calculate(company, offsetYear).orElse(Double.NaN).floatValue();
 
-        List<FlagInformation> flags = FlagsProviderService.giveFlags(company, offsetYear);
-
-        int numRed = 0;
-        int numYellow = 0;
-        int numGreen = 0;
-        int numStar = 0;
-        for (var element : flags) {
-            if (element.type == FlagType.RED) {
-                ++numRed;
-            } else if (element.type == FlagType.YELLOW) {
-                ++numYellow;
-            } else if (element.type == FlagType.GREEN) {
-                ++numGreen;
-            } else if (element.type == FlagType.STAR) {
-                ++numStar;
-            }
-        }
+        FlagCounter flags = FlagsProviderService.countFlags(company, offsetYear);
+
+        int numRed = flags.getCount(FlagType.RED);
+        int numYellow = flags.getCount(FlagType.YELLOW);
+        int numGreen = flags.getCount(FlagType.GREEN);
+        int numStar = flags.getCount(FlagType.STAR);
 
         data.starFlags = (byte) numStar;
         data.redFlags = (byte) numRed;
@@ -1388,6 +1528,14 @@ public class StockDataDownloader {
             return new YearMonthPair(year, month);
         }
 
+        public int getYear() {
+            return year;
+        }
+
+        public int getMonth() {
+            return month;
+        }
+
         @Override
         public int hashCode() {
             return Objects.hash(month, year);
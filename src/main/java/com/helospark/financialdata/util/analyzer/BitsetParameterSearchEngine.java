@@ -0,0 +1,278 @@
+package com.helospark.financialdata.util.analyzer;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.DoublePredicate;
+import java.util.stream.IntStream;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.helospark.financialdata.management.screener.ScreenerController;
+import com.helospark.financialdata.management.screener.ScreenerOperation;
+import com.helospark.financialdata.management.screener.domain.BacktestRequest;
+import com.helospark.financialdata.management.screener.domain.BacktestResult;
+import com.helospark.financialdata.management.screener.domain.BacktestStockReturn;
+import com.helospark.financialdata.management.screener.domain.BacktestYearInformation;
+import com.helospark.financialdata.management.screener.domain.ScreenerDescription;
+import com.helospark.financialdata.management.screener.expression.ScreenerExpression;
+import com.helospark.financialdata.service.PercentileRankTable;
+import com.helospark.financialdata.service.PercentileRankTable.RankGroup;
+import com.helospark.financialdata.service.SymbolAtGlanceProvider;
+import com.helospark.financialdata.util.StockDataDownloader.YearMonthPair;
+import com.helospark.financialdata.util.glance.AtGlanceData;
+
+/**
+ * Backtests screener requests for parameter search, giving the same result as ScreenerController.performBacktestInternal
+ * for a fixed set of exchanges.
+ * <p>
+ * Each snapshot's columns are sorted once when first used, so a threshold is a prefix or suffix of the sorted rows and a candidate's filters
+ * are combined as bitset intersections. Returns of the bought stocks are cached per symbol, period and end year, because random search
+ * evaluates the same stocks over and over.
+ */
+public class BitsetParameterSearchEngine {
+    private final ScreenerController screenerController;
+    private final SymbolAtGlanceProvider symbolAtGlanceProvider;
+    private final List<String> symbolsInExchanges;
+    private final List<String> excludedStocks;
+
+    private final Cache<YearMonthPair, Optional<SnapshotIndex>> snapshotCache = Caffeine.newBuilder().build();
+
+    public BitsetParameterSearchEngine(ScreenerController screenerController, SymbolAtGlanceProvider symbolAtGlanceProvider, List<String> exchanges, List<String> excludedStocks) {
+        this.screenerController = screenerController;
+        this.symbolAtGlanceProvider = symbolAtGlanceProvider;
+        this.symbolsInExchanges = screenerController.getSymbolsInExchanges(exchanges);
+        this.excludedStocks = excludedStocks;
+    }
+
+    /**
+     * Request's exchanges and excluded stocks are ignored, the ones given in the constructor are used instead.
+     */
+    public BacktestResult backtest(BacktestRequest request) {
+        boolean useLatestData = (request.endYear == LocalDate.now().getYear());
+        LocalDate endDate = useLatestData ? LocalDate.now() : LocalDate.of(request.endYear, 1, 1);
+        ScreenerExpression expression = request.expression == null ? null : screenerController.compileExpression(request.expression);
+
+        Map<String, BacktestYearInformation> yearResults = new LinkedHashMap<>();
+        for (int year = request.startYear; year < request.endYear - 1; ++year) {
+            for (int month = 1; month < (screenerController.backtestMultiMonth ? 12 : 2); month += 3) {
+                double yearSp500Sum = 0.0;
+                double yearSp500SumWithDividends = 0.0;
+                double yearScreenerSum = 0.0;
+                double yearScreenerWithDividendSum = 0.0;
+                int yearCount = 0;
+
+                double yearAgo = screenerController.calculateYearsDiff(LocalDate.of(year, month, 1), endDate);
+
+                int[] matchedRows = new int[0];
+                Optional<SnapshotIndex> optionalSnapshot = getSnapshot(year, month);
+                if (optionalSnapshot.isPresent()) {
+                    SnapshotIndex snapshot = optionalSnapshot.get();
+                    matchedRows = selectRows(snapshot.findMatchingRows(request.operations, expression));
+
+                    AtomicReferenceArray<Optional<BacktestStockReturn>> returns = snapshot.getReturns(request.endYear);
+                    for (int row : matchedRows) {
+                        ++yearCount;
+                        Optional<BacktestStockReturn> optionalStockReturn = returns.get(row);
+                        if (optionalStockReturn == null) {
+                            optionalStockReturn = screenerController.calculateStockReturn(snapshot.rows[row], year, request.endYear, useLatestData);
+                            returns.set(row, optionalStockReturn);
+                        }
+                        if (optionalStockReturn.isEmpty()) {
+                            continue;
+                        }
+                        BacktestStockReturn stockReturn = optionalStockReturn.get();
+
+                        yearSp500Sum += (stockReturn.sp500PriceNow / stockReturn.sp500PriceThen) * ScreenerController.BACKTEST_INVEST_AMOUNT;
+                        yearSp500SumWithDividends += stockReturn.finalSpCost;
+                        yearScreenerSum += (stockReturn.stockPriceNow / stockReturn.stockPriceThen) * ScreenerController.BACKTEST_INVEST_AMOUNT;
+                        yearScreenerWithDividendSum += stockReturn.finalScreenerCost;
+                    }
+                }
+
+                BacktestYearInformation yearInfo = screenerController.createYearInformation(yearCount, yearSp500Sum, yearSp500SumWithDividends, yearScreenerSum,
+                        yearScreenerWithDividendSum, yearAgo);
+                yearInfo.investedInAllMatching = matchedRows.length < ScreenerController.MAX_RESULTS;
+                yearInfo.investedStocks = List.of();
+
+                String label = screenerController.backtestMultiMonth ? String.format("%04d-%02d", year, month) : String.valueOf(year);
+                yearResults.put(label, yearInfo);
+            }
+        }
+
+        return screenerController.createBacktestResult(yearResults);
+    }
+
+    private Optional<SnapshotIndex> getSnapshot(int year, int month) {
+        return snapshotCache.get(YearMonthPair.of(year, month), period -> symbolAtGlanceProvider.loadAtGlanceDataAtYear(year, month).map(data -> new SnapshotIndex(period, data)));
+    }
+
+    /**
+     * Same as the controller's randomized screening: a random subset of MAX_RESULTS stocks if more than that matches.
+     */
+    private int[] selectRows(BitSet matches) {
+        int[] rows = matches.stream().toArray();
+        if (rows.length <= ScreenerController.MAX_RESULTS) {
+            return rows;
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < ScreenerController.MAX_RESULTS; ++i) {
+            int j = random.nextInt(i, rows.length);
+            int tmp = rows[i];
+            rows[i] = rows[j];
+            rows[j] = tmp;
+        }
+        int[] result = new int[ScreenerController.MAX_RESULTS];
+        System.arraycopy(rows, 0, result, 0, result.length);
+        return result;
+    }
+
+    class SnapshotIndex {
+        final YearMonthPair period;
+        final AtGlanceData[] rows;
+        /** Keyed by the id, and the rank group for ranked operations */
+        final Map<String, SortedColumn> columns = new ConcurrentHashMap<>();
+        final Map<Integer, AtomicReferenceArray<Optional<BacktestStockReturn>>> returnsByEndYear = new ConcurrentHashMap<>();
+
+        public SnapshotIndex(YearMonthPair period, Map<String, AtGlanceData> data) {
+            this.period = period;
+            List<AtGlanceData> rowList = new ArrayList<>();
+            for (var symbol : symbolsInExchanges) {
+                AtGlanceData atGlanceData = data.get(symbol);
+                if (atGlanceData != null && !screenerController.isBlacklisted(symbol) && !excludedStocks.contains(symbol)) {
+                    rowList.add(atGlanceData);
+                }
+            }
+            this.rows = rowList.toArray(new AtGlanceData[0]);
+        }
+
+        /**
+         * The expression cannot use the sorted columns, it is evaluated on the rows left after the operations.
+         */
+        public BitSet findMatchingRows(List<ScreenerOperation> operations, ScreenerExpression expression) {
+            BitSet result = new BitSet(rows.length);
+            result.set(0, rows.length);
+            for (var operation : operations) {
+                if (result.isEmpty()) {
+                    break;
+                }
+                String columnKey = operation.rankGroup == null ? operation.id : operation.id + "|" + operation.rankGroup;
+                SortedColumn column = columns.computeIfAbsent(columnKey, key -> new SortedColumn(this, operation.id, operation.rankGroup));
+                column.filter(result, operation);
+            }
+            if (expression != null) {
+                for (int row = result.nextSetBit(0); row >= 0; row = result.nextSetBit(row + 1)) {
+                    if (!expression.matches(rows[row])) {
+                        result.clear(row);
+                    }
+                }
+            }
+            return result;
+        }
+
+        public AtomicReferenceArray<Optional<BacktestStockReturn>> getReturns(int endYear) {
+            return returnsByEndYear.computeIfAbsent(endYear, year -> new AtomicReferenceArray<>(rows.length));
+        }
+    }
+
+    class SortedColumn {
+        /** Row indices ordered by ascending value, rows with NaN value never match, so they are left out */
+        final int[] sortedRows;
+        final double[] sortedValues;
+        /** Value of each row, used when the operation cannot be expressed as a range */
+        final double[] values;
+
+        /**
+         * Column of the percentile ranks of the snapshot's period if rankGroup is set, of the raw values otherwise.
+         */
+        public SortedColumn(SnapshotIndex snapshot, String id, RankGroup rankGroup) {
+            ScreenerDescription description = screenerController.getScreenerDescriptions().get(id);
+            if (description == null || description.data == null) {
+                throw new RuntimeException("Unknown screener element " + id);
+            }
+            values = new double[snapshot.rows.length];
+            if (rankGroup != null) {
+                PercentileRankTable ranks = symbolAtGlanceProvider.getPercentileRanksAtYear(snapshot.period.getYear(), snapshot.period.getMonth());
+                int rankColumn = ranks.getColumn(id, rankGroup);
+                for (int i = 0; i < values.length; ++i) {
+                    values[i] = ranks.getRank(rankColumn, snapshot.rows[i].symbol);
+                }
+            } else {
+                ScreenerOperation operation = new ScreenerOperation();
+                operation.id = id;
+                for (int i = 0; i < values.length; ++i) {
+                    values[i] = screenerController.unreflectGetValue(snapshot.rows[i], operation, description);
+                }
+            }
+            sortedRows = IntStream.range(0, values.length)
+                    .filter(i -> !Double.isNaN(values[i]))
+                    .boxed()
+                    .sorted(Comparator.comparingDouble(i -> values[i]))
+                    .mapToInt(i -> i)
+                    .toArray();
+            sortedValues = new double[sortedRows.length];
+            for (int i = 0; i < sortedRows.length; ++i) {
+                sortedValues[i] = values[sortedRows[i]];
+            }
+        }
+
+        public void filter(BitSet result, ScreenerOperation operation) {
+            switch (operation.screenerStrategy.getSymbol()) {
+                case ">":
+                    intersect(result, firstIndexWhere(value -> value > operation.number1), sortedRows.length);
+                    break;
+                case ">=":
+                    intersect(result, firstIndexWhere(value -> value >= operation.number1), sortedRows.length);
+                    break;
+                case "<":
+                    intersect(result, 0, firstIndexWhere(value -> !(value < operation.number1)));
+                    break;
+                case "<=":
+                    intersect(result, 0, firstIndexWhere(value -> !(value <= operation.number1)));
+                    break;
+                case "between":
+                    intersect(result, firstIndexWhere(value -> value >= operation.number1), firstIndexWhere(value -> value > operation.number2));
+                    break;
+                default:
+                    for (int row = result.nextSetBit(0); row >= 0; row = result.nextSetBit(row + 1)) {
+                        if (!operation.screenerStrategy.matches(values[row], operation)) {
+                            result.clear(row);
+                        }
+                    }
+            }
+        }
+
+        private void intersect(BitSet result, int from, int to) {
+            BitSet range = new BitSet(result.size());
+            for (int i = from; i < to; ++i) {
+                range.set(sortedRows[i]);
+            }
+            result.and(range);
+        }
+
+        /**
+         * Binary search for the first sorted index where the predicate holds, predicate must be monotone in the sorted values.
+         */
+        private int firstIndexWhere(DoublePredicate predicate) {
+            int low = 0;
+            int high = sortedValues.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (predicate.test(sortedValues[mid])) {
+                    high = mid;
+                } else {
+                    low = mid + 1;
+                }
+            }
+            return low;
+        }
+    }
+}
@@ -52,6 +52,7 @@ public class ParameterFinderBacktest {
     private static final List<String> EXCLUDED_STOCKS = List.of();
     private static final List<RandomParam> PARAMS = getBestParams();
     ScreenerController screenerController;
+    BitsetParameterSearchEngine searchEngine;
     Set<TestResult> resultSet = Collections.synchronizedSet(new TreeSet<>());
 
     public static void main(String[] args) {
@@ -67,6 +68,7 @@ public class ParameterFinderBacktest {
         List<ScreenerStrategy> screenerStrategies = List.of(new GreaterThanStrategy(), new LessThanStrategy());
         screenerController = new ScreenerController(symbolAtGlanceProvider, screenerStrategies, null);
         screenerController.setBacktestMultiMonth(true);
+        searchEngine = new BitsetParameterSearchEngine(screenerController, symbolAtGlanceProvider, EXCHANGES, EXCLUDED_STOCKS);
 
         int numThreads = Runtime.getRuntime().availableProcessors();
         ExecutorService tpe = Executors.newFixedThreadPool(numThreads);
@@ -194,7 +196,6 @@ public class ParameterFinderBacktest {
         int i = 0;
         long startTime = System.currentTimeMillis();
         long count = 0;
-        ScreenerStrategy greaterThan = new GreaterThanStrategy();
         Set<TestResult> previousSet = Set.of();
         while (true) {
             YearRange yearRange = INTERVAL_GENERATOR_STRATEGY.getYearRange();
@@ -205,23 +206,11 @@ public class ParameterFinderBacktest {
             request.endYear = endYear;
             request.startYear = startYear;
             request.exchanges = EXCHANGES;
-            request.operations = new ArrayList<>();
-            request.operations.add(createOperationsWithFixParam("marketCapUsd", greaterThan, MINIMUM_MARKET_CAP));
-
-            List<Integer> randomIndices = IntStream.range(0, params.size()).mapToObj(a -> a).collect(Collectors.toList());
-            Collections.shuffle(randomIndices);
-            int startIndex = params.size() > MIN_PARAMS ? MIN_PARAMS : 1;
-            int endIndex = params.size() > MAX_PARAMS ? MAX_PARAMS : params.size();
-
-            for (int j = 0; j < random.nextInt(startIndex, endIndex); ++j) {
-                var param = params.get(randomIndices.get(j));
-                var strategyToUse = param.getOp();
-                request.operations.add(createOperations(param, param.name, strategyToUse));
-            }
+            request.operations = createRandomOperations(params, random);
             request.addResultTable = false;
             request.excludedStocks = EXCLUDED_STOCKS;
 
-            BacktestResult result = screenerController.performBacktestInternal(request);
+            BacktestResult result = searchEngine.backtest(request);
             int numberOfQuarters = (endYear - startYear - 1) * 4;
             int minimumInvestCount = (int) (numberOfQuarters * (MINIMUM_INVEST_COUNT_PERCENT / 100.0));
             int minTransactionCount = (int) (MINIMUM_TRANSACTION_COUNT_AVG_QUARTER * numberOfQuarters);
@@ -258,6 +247,26 @@ public class ParameterFinderBacktest {
         }
     }
 
+    /**
+     * Minimum market cap filter and a random subset of the params with random values.
+     */
+    public static List<ScreenerOperation> createRandomOperations(List<RandomParam> params, Random random) {
+        List<ScreenerOperation> operations = new ArrayList<>();
+        operations.add(createOperationsWithFixParam("marketCapUsd", new GreaterThanStrategy(), MINIMUM_MARKET_CAP));
+
+        List<Integer> randomIndices = IntStream.range(0, params.size()).mapToObj(a -> a).collect(Collectors.toList());
+        Collections.shuffle(randomIndices, random);
+        int startIndex = params.size() > MIN_PARAMS ? MIN_PARAMS : 1;
+        int endIndex = params.size() > MAX_PARAMS ? MAX_PARAMS : params.size();
+
+        for (int j = 0; j < random.nextInt(startIndex, endIndex); ++j) {
+            var param = params.get(randomIndices.get(j));
+            var strategyToUse = param.getOp();
+            operations.add(createOperations(param, param.name, strategyToUse));
+        }
+        return operations;
+    }
+
     private void printMostCommonStocks(Set<TestResult> previousSet) {
         Map<String, Integer> stockToCount = new HashMap<>();
         for (var entry : previousSet) {
@@ -325,7 +334,7 @@ public class ParameterFinderBacktest {
         System.out.println();
     }
 
-    public ScreenerOperation createOperations(RandomParam param, String name, ScreenerStrategy strategyToUse) {
+    public static ScreenerOperation createOperations(RandomParam param, String name, ScreenerStrategy strategyToUse) {
         ScreenerOperation op = new ScreenerOperation();
         op.id = name;
         op.number1 = param.getValue();
@@ -334,7 +343,7 @@ public class ParameterFinderBacktest {
         return op;
     }
 
-    public ScreenerOperation createOperationsWithFixParam(String name, ScreenerStrategy operationStrategy, double value) {
+    public static ScreenerOperation createOperationsWithFixParam(String name, ScreenerStrategy operationStrategy, double value) {
         ScreenerOperation op = new ScreenerOperation();
         op.id = name;
         op.number1 = value;
@@ -1,47 +1,32 @@
 package com.helospark.financialdata.util.analyzer;
 
-import static com.helospark.financialdata.service.DataLoader.readFinancials;
-
-import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
 
 import com.helospark.financialdata.domain.CompanyFinancials;
+import com.helospark.financialdata.util.analyzer.harness.BacktestPredicate;
+import com.helospark.financialdata.util.analyzer.harness.BacktestReport;
+import com.helospark.financialdata.util.analyzer.harness.BacktestUniverse;
+import com.helospark.financialdata.util.analyzer.harness.ParallelBacktestHarness;
+import com.helospark.financialdata.util.analyzer.harness.RebalanceSchedule;
 
-public class RandomStockPickBacktest implements StockScreeners {
-    Random random = new Random();
+public class RandomStockPickBacktest implements StockScreeners, BacktestPredicate {
 
     @Override
     public void analyze(Set<String> symbols) {
-        for (int yearsAgo = 5; yearsAgo <= 21; ++yearsAgo) {
-            double growthSum = 0.0;
-            int count = 0;
-            System.out.println("symbol\tincrease (from -> to)");
-            for (var symbol : symbols) {
-                CompanyFinancials company = readFinancials(symbol);
-                var financials = company.financials;
-
-                int latestElement = yearsAgo * 4;
-                if (financials.isEmpty() || financials.size() <= latestElement) {
-                    continue;
-                }
-                if (random.nextInt(100) == 1) {
-                    double latestPriceThen = financials.get(latestElement).price;
-                    double sellPrice = company.latestPrice;
-                    double growthRatio = sellPrice / latestPriceThen;
-                    growthSum += (growthRatio * 1000.0);
-                    ++count;
-
-                    double growthTillSell = (growthRatio - 1.0) * 100.0;
-
-                    System.out.printf("%s\t%.1f%%\t (%.1f -> %.1f)\n", symbol,
-                            growthTillSell, latestPriceThen, sellPrice);
-                }
+        try (ParallelBacktestHarness harness = new ParallelBacktestHarness(BacktestUniverse.load(symbols))) {
+            for (int yearsAgo = 5; yearsAgo <= 21; ++yearsAgo) {
+                BacktestReport report = harness.run(this, RebalanceSchedule.yearly(yearsAgo, yearsAgo));
+                System.out.println("Bought " + report.periods.get(0).holdings + " " + yearsAgo + " years ago");
+                System.out.println(report);
+                System.out.println();
             }
-            double increase = (growthSum / (count * 1000) - 1.0);
-            double annual = Math.pow(growthSum / (count * 1000), (1.0 / yearsAgo)) - 1.0;
-            System.out.println("Have " + (growthSum) + " from " + (count * 1000) + " (" + (increase * 100.0) + "%, " + (annual * 100.0) + "%) invested " + yearsAgo);
-            System.out.println();
         }
     }
 
+    @Override
+    public boolean matches(CompanyFinancials company, int index) {
+        return ThreadLocalRandom.current().nextInt(100) == 1;
+    }
+
 }
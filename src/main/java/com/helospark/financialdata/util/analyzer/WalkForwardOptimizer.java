@@ -0,0 +1,205 @@
+package com.helospark.financialdata.util.analyzer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+
+import com.helospark.financialdata.management.screener.ScreenerController;
+import com.helospark.financialdata.management.screener.ScreenerOperation;
+import com.helospark.financialdata.management.screener.domain.BacktestRequest;
+import com.helospark.financialdata.management.screener.domain.BacktestResult;
+import com.helospark.financialdata.management.screener.strategy.GreaterThanStrategy;
+import com.helospark.financialdata.management.screener.strategy.LessThanStrategy;
+import com.helospark.financialdata.management.screener.strategy.ScreenerStrategy;
+import com.helospark.financialdata.service.SymbolAtGlanceProvider;
+import com.helospark.financialdata.util.analyzer.ParameterFinderBacktest.RandomParam;
+
+/**
+ * Walk forward optimization of screener parameters.
+ * <p>
+ * History is split into folds of a training range followed by a test range. In each fold random candidates are scored on rolling
+ * windows inside the training range using successive halving: every round the better half of the candidates survives and is evaluated
+ * on twice as many windows, so clearly worse candidates are dropped after a few cheap backtests. The winner is then backtested on the
+ * test range, which it has never seen, giving the out of sample result.
+ */
+public class WalkForwardOptimizer {
+    private static final List<String> EXCHANGES = List.of("NASDAQ", "NYSE");
+
+    private static final int FIRST_YEAR = 1998;
+    private static final int LAST_YEAR = 2023;
+    private static final int TRAIN_YEARS = 9;
+    private static final int TEST_YEARS = 4;
+    private static final int FOLD_STEP_YEARS = 3;
+    private static final int WINDOW_YEARS = 4;
+
+    private static final int INITIAL_CANDIDATES = 512;
+    private static final double MINIMUM_INVESTED_PERIOD_PERCENT = 75.0;
+
+    private final BitsetParameterSearchEngine searchEngine;
+    private final ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+    private final Random random = new Random();
+
+    public WalkForwardOptimizer(BitsetParameterSearchEngine searchEngine) {
+        this.searchEngine = searchEngine;
+    }
+
+    public static void main(String[] args) {
+        SymbolAtGlanceProvider symbolAtGlanceProvider = new SymbolAtGlanceProvider();
+        List<ScreenerStrategy> screenerStrategies = List.of(new GreaterThanStrategy(), new LessThanStrategy());
+        ScreenerController screenerController = new ScreenerController(symbolAtGlanceProvider, screenerStrategies, null);
+        screenerController.setBacktestMultiMonth(true);
+        BitsetParameterSearchEngine searchEngine = new BitsetParameterSearchEngine(screenerController, symbolAtGlanceProvider, EXCHANGES, List.of());
+
+        List<FoldResult> results = new WalkForwardOptimizer(searchEngine).optimize(ParameterFinderBacktest.getBestParams());
+        for (var result : results) {
+            System.out.println(result);
+        }
+        System.out.println(summarize(results));
+    }
+
+    public List<FoldResult> optimize(List<RandomParam> params) {
+        List<FoldResult> result = new ArrayList<>();
+        for (var fold : createFolds()) {
+            List<Candidate> candidates = new ArrayList<>();
+            for (int i = 0; i < INITIAL_CANDIDATES; ++i) {
+                candidates.add(new Candidate(ParameterFinderBacktest.createRandomOperations(params, random)));
+            }
+            Candidate best = successiveHalving(candidates, createTrainWindows(fold));
+
+            FoldResult foldResult = new FoldResult();
+            foldResult.fold = fold;
+            foldResult.best = best;
+            foldResult.inSampleScore = best.getScore();
+            foldResult.outOfSample = backtest(best, fold.testStartYear, fold.testEndYear);
+            foldResult.outOfSampleScore = score(foldResult.outOfSample);
+            result.add(foldResult);
+        }
+        return result;
+    }
+
+    private Candidate successiveHalving(List<Candidate> candidates, List<Window> windows) {
+        List<Candidate> survivors = new ArrayList<>(candidates);
+        int budget = 1;
+        while (true) {
+            int windowCount = Math.min(budget, windows.size());
+            List<Window> windowsToEvaluate = windows.subList(0, windowCount);
+            // scores are remembered by the candidate, so each round only runs the windows new to that round
+            pool.submit(() -> survivors.parallelStream().forEach(candidate -> {
+                for (var window : windowsToEvaluate) {
+                    candidate.scores.computeIfAbsent(window, w -> score(backtest(candidate, w.startYear, w.endYear)));
+                }
+            })).join();
+            survivors.sort(Comparator.comparingDouble((Candidate candidate) -> candidate.getScore()).reversed());
+
+            if (survivors.size() == 1 || (windowCount == windows.size() && survivors.size() <= 2)) {
+                return survivors.get(0);
+            }
+            survivors.subList(Math.max(1, survivors.size() / 2), survivors.size()).clear();
+            budget *= 2;
+        }
+    }
+
+    private BacktestResult backtest(Candidate candidate, int startYear, int endYear) {
+        BacktestRequest request = new BacktestRequest();
+        request.startYear = startYear;
+        request.endYear = endYear;
+        request.exchanges = EXCHANGES;
+        request.operations = candidate.operations;
+        request.addResultTable = false;
+        return searchEngine.backtest(request);
+    }
+
+    /**
+     * Average annual return above S&P500, with dividends. Candidates that rarely invest are scored as the worst.
+     */
+    private static double score(BacktestResult result) {
+        int periods = result.yearData.size();
+        if (periods == 0 || result.investedCount * 100.0 / periods < MINIMUM_INVESTED_PERIOD_PERCENT) {
+            return Double.NEGATIVE_INFINITY;
+        }
+        double excessReturn = result.screenerWithDividendsAvgPercent - result.sp500WithDividendsAvgPercent;
+        return Double.isFinite(excessReturn) ? excessReturn : Double.NEGATIVE_INFINITY;
+    }
+
+    private List<Fold> createFolds() {
+        List<Fold> result = new ArrayList<>();
+        for (int start = FIRST_YEAR; start + TRAIN_YEARS + TEST_YEARS <= LAST_YEAR; start += FOLD_STEP_YEARS) {
+            result.add(new Fold(start, start + TRAIN_YEARS, start + TRAIN_YEARS, start + TRAIN_YEARS + TEST_YEARS));
+        }
+        return result;
+    }
+
+    /**
+     * Rolling windows inside the training range in random order, so the first rounds of halving see a random part of the history.
+     */
+    private List<Window> createTrainWindows(Fold fold) {
+        List<Window> result = new ArrayList<>();
+        for (int start = fold.trainStartYear; start + WINDOW_YEARS <= fold.trainEndYear; ++start) {
+            result.add(new Window(start, start + WINDOW_YEARS));
+        }
+        Collections.shuffle(result, random);
+        return result;
+    }
+
+    public static String summarize(List<FoldResult> results) {
+        double inSample = results.stream().mapToDouble(a -> a.inSampleScore).average().orElse(Double.NaN);
+        double outOfSample = results.stream().mapToDouble(a -> a.outOfSampleScore).average().orElse(Double.NaN);
+        long beatCount = results.stream().filter(a -> a.outOfSampleScore > 0.0).count();
+        return String.format("Average excess return in sample=%.2f%%, out of sample=%.2f%%, out of sample beat S&P500 in %d / %d folds", inSample, outOfSample, beatCount,
+                results.size());
+    }
+
+    static class Fold {
+        int trainStartYear;
+        int trainEndYear;
+        int testStartYear;
+        int testEndYear;
+
+        public Fold(int trainStartYear, int trainEndYear, int testStartYear, int testEndYear) {
+            this.trainStartYear = trainStartYear;
+            this.trainEndYear = trainEndYear;
+            this.testStartYear = testStartYear;
+            this.testEndYear = testEndYear;
+        }
+
+        @Override
+        public String toString() {
+            return "train " + trainStartYear + "->" + trainEndYear + ", test " + testStartYear + "->" + testEndYear;
+        }
+    }
+
+    record Window(int startYear, int endYear) {
+    }
+
+    static class Candidate {
+        List<ScreenerOperation> operations;
+        Map<Window, Double> scores = new ConcurrentHashMap<>();
+
+        public Candidate(List<ScreenerOperation> operations) {
+            this.operations = operations;
+        }
+
+        public double getScore() {
+            return scores.values().stream().mapToDouble(a -> a).average().orElse(Double.NEGATIVE_INFINITY);
+        }
+    }
+
+    static class FoldResult {
+        Fold fold;
+        Candidate best;
+        double inSampleScore;
+        double outOfSampleScore;
+        BacktestResult outOfSample;
+
+        @Override
+        public String toString() {
+            return String.format("%s: in sample=%.2f%%, out of sample=%.2f%% (screener=%.2f%%, sp500=%.2f%%, beat=%d / %d)\n%s\n", fold, inSampleScore, outOfSampleScore,
+                    outOfSample.screenerWithDividendsAvgPercent, outOfSample.sp500WithDividendsAvgPercent, outOfSample.beatCount, outOfSample.investedCount, best.operations);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.helospark.financialdata.util.analyzer.harness;
+
+import java.time.LocalDate;
+import java.util.List;
+
+public class BacktestPeriodResult {
+    public int fromIndex;
+    /** -1 if the period lasts until the latest price */
+    public int toIndex;
+    public LocalDate fromDate;
+    public LocalDate toDate;
+
+    public List<String> holdings;
+    /** Equal weighted growth of the holdings, 1.0 if nothing was bought */
+    public double growthRatio;
+    public double spGrowthRatio;
+
+    public boolean isInvested() {
+        return !holdings.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s -> %s\t%d stocks\t%.2f%%\tsp500=%.2f%%", fromDate, toDate, holdings.size(), (growthRatio - 1.0) * 100.0, (spGrowthRatio - 1.0) * 100.0);
+    }
+
+}
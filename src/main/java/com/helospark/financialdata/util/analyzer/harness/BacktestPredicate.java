@@ -0,0 +1,16 @@
+package com.helospark.financialdata.util.analyzer.harness;
+
+import com.helospark.financialdata.domain.CompanyFinancials;
+
+/**
+ * Screener logic usable by ParallelBacktestHarness. Called from multiple threads, so it should be stateless.
+ */
+public interface BacktestPredicate {
+
+    /**
+     * Whether the stock would be bought at the given index of company.financials, index 0 being the latest report.
+     * The harness ensures company.financials has an element at index.
+     */
+    public boolean matches(CompanyFinancials company, int index);
+
+}
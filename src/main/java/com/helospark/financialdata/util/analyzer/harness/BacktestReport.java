@@ -0,0 +1,74 @@
+package com.helospark.financialdata.util.analyzer.harness;
+
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+/**
+ * Result of a rebalanced, equal weighted portfolio compared to holding S&P500 over the same periods.
+ * Drawdowns are measured at the rebalance dates only. Returns don't include dividends.
+ * <p>
+ * CAGR is annualized over the years between the start of the first and the end of the last period, when that's 0
+ * (bought at the latest report and held until the latest price) the return of the whole span is reported as is.
+ */
+public class BacktestReport {
+    public List<BacktestPeriodResult> periods;
+    public double years;
+
+    public double cagr;
+    public double maxDrawdown;
+    public double spCagr;
+    public double spMaxDrawdown;
+
+    public int investedPeriods;
+    public int beatPeriods;
+    public double averageHoldings;
+
+    public static BacktestReport create(List<BacktestPeriodResult> periods) {
+        BacktestReport result = new BacktestReport();
+        result.periods = periods;
+        result.years = periods.isEmpty() ? 0.0 : ChronoUnit.DAYS.between(periods.get(0).fromDate, periods.get(periods.size() - 1).toDate) / 365.25;
+
+        double value = 1.0;
+        double spValue = 1.0;
+        double peak = 1.0;
+        double spPeak = 1.0;
+        int totalHoldings = 0;
+        for (var period : periods) {
+            value *= period.growthRatio;
+            spValue *= period.spGrowthRatio;
+            peak = Math.max(peak, value);
+            spPeak = Math.max(spPeak, spValue);
+            result.maxDrawdown = Math.max(result.maxDrawdown, (1.0 - value / peak) * 100.0);
+            result.spMaxDrawdown = Math.max(result.spMaxDrawdown, (1.0 - spValue / spPeak) * 100.0);
+
+            if (period.isInvested()) {
+                ++result.investedPeriods;
+                totalHoldings += period.holdings.size();
+                if (period.growthRatio > period.spGrowthRatio) {
+                    ++result.beatPeriods;
+                }
+            }
+        }
+        result.cagr = annualize(value, result.years);
+        result.spCagr = annualize(spValue, result.years);
+        result.averageHoldings = result.investedPeriods > 0 ? (double) totalHoldings / result.investedPeriods : 0.0;
+
+        return result;
+    }
+
+    private static double annualize(double growthRatio, double years) {
+        double annualGrowthRatio = years > 0.0 ? Math.pow(growthRatio, 1.0 / years) : growthRatio;
+        return (annualGrowthRatio - 1.0) * 100.0;
+    }
+
+    public double getBeatPercent() {
+        return investedPeriods > 0 ? (double) beatPeriods / investedPeriods * 100.0 : 0.0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("CAGR=%.2f%% (sp500=%.2f%%), maxDrawdown=%.2f%% (sp500=%.2f%%), beat=%d / %d (%.1f%%), avgHoldings=%.1f, years=%.2f",
+                cagr, spCagr, maxDrawdown, spMaxDrawdown, beatPeriods, investedPeriods, getBeatPercent(), averageHoldings, years);
+    }
+
+}
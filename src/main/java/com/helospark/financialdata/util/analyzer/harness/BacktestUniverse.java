@@ -0,0 +1,54 @@
+package com.helospark.financialdata.util.analyzer.harness;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import com.helospark.financialdata.domain.CompanyFinancials;
+import com.helospark.financialdata.service.DataLoader;
+
+/**
+ * Financials of all symbols of a backtest, loaded once and shared between runs.
+ * Loaded without writing the DataLoader cache, so a whole universe doesn't evict the companies used by the application.
+ */
+public class BacktestUniverse {
+    private final List<String> symbols;
+    private final List<CompanyFinancials> companies;
+
+    private BacktestUniverse(List<String> symbols, List<CompanyFinancials> companies) {
+        this.symbols = Collections.unmodifiableList(symbols);
+        this.companies = Collections.unmodifiableList(companies);
+    }
+
+    public static BacktestUniverse load(Collection<String> symbols) {
+        List<String> symbolList = new ArrayList<>(symbols);
+        List<CompanyFinancials> loaded = symbolList.parallelStream()
+                .map(symbol -> DataLoader.readFinancialsWithCacheEnabled(symbol, false))
+                .toList();
+
+        List<String> resultSymbols = new ArrayList<>();
+        List<CompanyFinancials> resultCompanies = new ArrayList<>();
+        for (int i = 0; i < symbolList.size(); ++i) {
+            CompanyFinancials company = loaded.get(i);
+            if (company.financials != null && !company.financials.isEmpty()) {
+                resultSymbols.add(symbolList.get(i));
+                resultCompanies.add(company);
+            }
+        }
+        return new BacktestUniverse(resultSymbols, resultCompanies);
+    }
+
+    public String getSymbol(int i) {
+        return symbols.get(i);
+    }
+
+    public CompanyFinancials getCompany(int i) {
+        return companies.get(i);
+    }
+
+    public int size() {
+        return companies.size();
+    }
+
+}
@@ -0,0 +1,105 @@
+package com.helospark.financialdata.util.analyzer.harness;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+import com.helospark.financialdata.CommonConfig;
+import com.helospark.financialdata.domain.CompanyFinancials;
+import com.helospark.financialdata.service.StandardAndPoorPerformanceProvider;
+
+/**
+ * Runs screeners over a preloaded universe, evaluating periods and symbols in parallel.
+ * <p>
+ * At every rebalance index the matching stocks are bought with equal weight and held until the next rebalance index, prices are taken from
+ * the company's own report at that index, like the analyzer screeners do. S&P500 is compared using the nominal date of the index.
+ * <p>
+ * Owns a thread pool, close it when done.
+ */
+public class ParallelBacktestHarness implements AutoCloseable {
+    private final BacktestUniverse universe;
+    private final ForkJoinPool pool;
+
+    public ParallelBacktestHarness(BacktestUniverse universe) {
+        this(universe, Runtime.getRuntime().availableProcessors());
+    }
+
+    public ParallelBacktestHarness(BacktestUniverse universe, int threads) {
+        this.universe = universe;
+        this.pool = new ForkJoinPool(threads);
+    }
+
+    public BacktestReport run(BacktestPredicate predicate, RebalanceSchedule schedule) {
+        int[] indices = schedule.getIndices();
+        List<BacktestPeriodResult> periods = pool.submit(() -> IntStream.range(0, indices.length)
+                .parallel()
+                .mapToObj(i -> evaluatePeriod(predicate, indices[i], i + 1 < indices.length ? indices[i + 1] : -1))
+                .toList())
+                .join();
+        return BacktestReport.create(periods);
+    }
+
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+
+    private BacktestPeriodResult evaluatePeriod(BacktestPredicate predicate, int fromIndex, int toIndex) {
+        double[] growthRatios = new double[universe.size()];
+        List<String> holdings = IntStream.range(0, universe.size())
+                .parallel()
+                .filter(i -> {
+                    growthRatios[i] = calculateGrowthRatio(predicate, universe.getCompany(i), fromIndex, toIndex);
+                    return Double.isFinite(growthRatios[i]);
+                })
+                .mapToObj(i -> universe.getSymbol(i))
+                .toList();
+        double growthSum = 0.0;
+        for (double growthRatio : growthRatios) {
+            if (Double.isFinite(growthRatio)) {
+                growthSum += growthRatio;
+            }
+        }
+
+        BacktestPeriodResult result = new BacktestPeriodResult();
+        result.fromIndex = fromIndex;
+        result.toIndex = toIndex;
+        result.fromDate = CommonConfig.NOW.minusMonths(fromIndex * 3L);
+        result.toDate = toIndex >= 0 ? CommonConfig.NOW.minusMonths(toIndex * 3L) : CommonConfig.NOW;
+        result.holdings = holdings;
+        result.growthRatio = holdings.isEmpty() ? 1.0 : growthSum / holdings.size();
+        result.spGrowthRatio = calculateSpGrowthRatio(result.fromDate, toIndex >= 0 ? result.toDate : null);
+        return result;
+    }
+
+    /**
+     * Growth of the stock in the period, 0 if it lost all of its value (or has no price anymore), NaN if it's not bought.
+     */
+    private double calculateGrowthRatio(BacktestPredicate predicate, CompanyFinancials company, int fromIndex, int toIndex) {
+        if (company.financials.size() <= fromIndex || !predicate.matches(company, fromIndex)) {
+            return Double.NaN;
+        }
+        double buyPrice = company.financials.get(fromIndex).price;
+        if (!Double.isFinite(buyPrice) || buyPrice <= 0.0) {
+            return Double.NaN;
+        }
+        double sellPrice = toIndex >= 0 ? company.financials.get(toIndex).price : company.latestPrice;
+        double growthRatio = sellPrice / buyPrice;
+        // counted as a total loss, dropping it would bias the result towards the survivors
+        if (!Double.isFinite(growthRatio) || growthRatio < 0.0) {
+            return 0.0;
+        }
+        return growthRatio;
+    }
+
+    private double calculateSpGrowthRatio(LocalDate fromDate, LocalDate toDate) {
+        Double priceThen = StandardAndPoorPerformanceProvider.getPriceAt(fromDate);
+        Double priceNow = toDate != null ? StandardAndPoorPerformanceProvider.getPriceAt(toDate) : StandardAndPoorPerformanceProvider.getLatestPrice();
+        if (priceThen == null || priceNow == null) {
+            return 1.0;
+        }
+        return priceNow / priceThen;
+    }
+
+}
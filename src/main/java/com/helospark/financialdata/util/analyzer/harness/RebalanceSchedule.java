@@ -0,0 +1,46 @@
+package com.helospark.financialdata.util.analyzer.harness;
+
+import java.util.Arrays;
+
+/**
+ * Financials indices, in quarters ago, where the portfolio is rebalanced. The last holding is kept until the latest price.
+ */
+public class RebalanceSchedule {
+    private final int[] indices;
+
+    private RebalanceSchedule(int[] indices) {
+        this.indices = indices;
+    }
+
+    public static RebalanceSchedule quarterly(int fromQuartersAgo, int toQuartersAgo) {
+        return every(1, fromQuartersAgo, toQuartersAgo);
+    }
+
+    public static RebalanceSchedule yearly(int fromYearsAgo, int toYearsAgo) {
+        return every(4, fromYearsAgo * 4, toYearsAgo * 4);
+    }
+
+    public static RebalanceSchedule every(int quarters, int fromQuartersAgo, int toQuartersAgo) {
+        if (quarters < 1 || fromQuartersAgo < toQuartersAgo || toQuartersAgo < 0) {
+            throw new IllegalArgumentException("Invalid schedule " + quarters + " " + fromQuartersAgo + " " + toQuartersAgo);
+        }
+        int[] indices = new int[(fromQuartersAgo - toQuartersAgo) / quarters + 1];
+        for (int i = 0; i < indices.length; ++i) {
+            indices[i] = fromQuartersAgo - i * quarters;
+        }
+        return new RebalanceSchedule(indices);
+    }
+
+    /**
+     * Indices ordered from oldest to newest.
+     */
+    public int[] getIndices() {
+        return indices.clone();
+    }
+
+    @Override
+    public String toString() {
+        return "RebalanceSchedule " + Arrays.toString(indices);
+    }
+
+}
@@ -5,7 +5,7 @@ import java.time.LocalDate;
 import com.helospark.financialdata.management.screener.annotation.AtGlanceFormat;
 import com.helospark.financialdata.management.screener.annotation.ScreenerElement;
 
-public class AtGlanceData {
+public class AtGlanceData implements Cloneable {
     public String companyName;
     public String symbol;
     public double latestStockPrice;
@@ -200,4 +200,15 @@ public class AtGlanceData {
     public double getEarningsYield() {
         return eps / latestStockPrice * 100.0;
     }
+
+    /**
+     * Shallow copy, every field is a primitive or immutable.
+     */
+    public AtGlanceData copy() {
+        try {
+            return (AtGlanceData) clone();
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
 }
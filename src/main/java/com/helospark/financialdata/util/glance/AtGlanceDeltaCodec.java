@@ -0,0 +1,336 @@
+package com.helospark.financialdata.util.glance;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Stores a snapshot of at glance data as the difference to a base snapshot.
+ * Each symbol is written as a bitmask of the fields which differ from the symbol's data in the base (or from an empty AtGlanceData for
+ * symbols missing from the base) followed by only the changed values, so unchanged fields take one bit.
+ * Reading copies the base data and overwrites the changed fields.
+ * <p>
+ * Field names and types are stored in the header, fields added later are left at their default, removed fields are skipped.
+ * <p>
+ * The header also identifies the base: its number of symbols, a checksum of its symbols and a checksum of each field over every symbol.
+ * Reading with a different base fails, since the result would silently mix two snapshots. Fields removed since writing are not checked.
+ */
+public class AtGlanceDeltaCodec {
+    private static final int MAGIC = 0x41474c44;
+    private static final int FORMAT_VERSION = 2;
+    private static final byte FROM_EMPTY = 0;
+    private static final byte FROM_BASE = 1;
+
+    private static final Field[] FIELDS = Arrays.stream(AtGlanceData.class.getDeclaredFields())
+            .filter(field -> !Modifier.isStatic(field.getModifiers()))
+            .sorted(Comparator.comparing(Field::getName))
+            .toArray(Field[]::new);
+    private static final FieldType[] FIELD_TYPES = Arrays.stream(FIELDS)
+            .map(field -> FieldType.fromClass(field.getType()))
+            .toArray(FieldType[]::new);
+    private static final AtGlanceData EMPTY = new AtGlanceData();
+
+    /**
+     * Written to a temporary file and moved, so readers never see a partial file.
+     */
+    public static void write(Map<String, AtGlanceData> base, Map<String, AtGlanceData> snapshot, File file) throws IOException {
+        File tmpFile = new File(file.getAbsolutePath() + ".tmp");
+        try (var output = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(tmpFile))))) {
+            String[] baseSymbols = getSortedSymbols(base);
+            long[] fieldChecksums = calculateFieldChecksums(base, baseSymbols, FIELDS, FIELD_TYPES);
+            output.writeInt(MAGIC);
+            output.writeInt(FORMAT_VERSION);
+            output.writeInt(base.size());
+            output.writeLong(calculateSymbolChecksum(baseSymbols));
+            output.writeInt(FIELDS.length);
+            for (int i = 0; i < FIELDS.length; ++i) {
+                output.writeUTF(FIELDS[i].getName());
+                output.writeByte(FIELD_TYPES[i].ordinal());
+                output.writeLong(fieldChecksums[i]);
+            }
+            output.writeInt(snapshot.size());
+            byte[] changed = new byte[(FIELDS.length + 7) / 8];
+            for (var entry : snapshot.entrySet()) {
+                AtGlanceData data = entry.getValue();
+                AtGlanceData baseData = base.get(entry.getKey());
+                output.writeUTF(entry.getKey());
+                output.writeByte(baseData == null ? FROM_EMPTY : FROM_BASE);
+                AtGlanceData reference = baseData == null ? EMPTY : baseData;
+
+                Arrays.fill(changed, (byte) 0);
+                for (int i = 0; i < FIELDS.length; ++i) {
+                    if (!isSame(FIELDS[i], FIELD_TYPES[i], reference, data)) {
+                        changed[i / 8] |= (byte) (1 << (i % 8));
+                    }
+                }
+                output.write(changed);
+                for (int i = 0; i < FIELDS.length; ++i) {
+                    if ((changed[i / 8] & (1 << (i % 8))) != 0) {
+                        writeValue(output, FIELD_TYPES[i], FIELDS[i].get(data));
+                    }
+                }
+            }
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+        Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static LinkedHashMap<String, AtGlanceData> read(Map<String, AtGlanceData> base, File file) throws IOException {
+        try (var input = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(file))))) {
+            if (input.readInt() != MAGIC || input.readInt() != FORMAT_VERSION) {
+                throw new IOException("Unknown at glance delta format in " + file);
+            }
+            int baseSize = input.readInt();
+            long baseSymbolChecksum = input.readLong();
+            String[] baseSymbols = getSortedSymbols(base);
+            if (baseSize != base.size() || baseSymbolChecksum != calculateSymbolChecksum(baseSymbols)) {
+                throw new IllegalStateException("Base snapshot of " + file + " has changed, it was written with " + baseSize + " symbols, the base has " + base.size());
+            }
+            int numberOfFields = input.readInt();
+            Field[] fields = new Field[numberOfFields];
+            FieldType[] fieldTypes = new FieldType[numberOfFields];
+            long[] expectedFieldChecksums = new long[numberOfFields];
+            for (int i = 0; i < numberOfFields; ++i) {
+                String name = input.readUTF();
+                fieldTypes[i] = FieldType.values()[input.readByte()];
+                fields[i] = findField(name, fieldTypes[i]);
+                expectedFieldChecksums[i] = input.readLong();
+            }
+            long[] fieldChecksums = calculateFieldChecksums(base, baseSymbols, fields, fieldTypes);
+            for (int i = 0; i < numberOfFields; ++i) {
+                if (fields[i] != null && fieldChecksums[i] != expectedFieldChecksums[i]) {
+                    throw new IllegalStateException("Base snapshot of " + file + " has changed, field " + fields[i].getName() + " is different");
+                }
+            }
+            int numberOfSymbols = input.readInt();
+            LinkedHashMap<String, AtGlanceData> result = new LinkedHashMap<>();
+            byte[] changed = new byte[(numberOfFields + 7) / 8];
+            for (int i = 0; i < numberOfSymbols; ++i) {
+                String symbol = input.readUTF();
+                AtGlanceData baseData = input.readByte() == FROM_BASE ? base.get(symbol) : null;
+                if (baseData == null) {
+                    baseData = EMPTY;
+                }
+                AtGlanceData data = baseData.copy();
+                input.readFully(changed);
+                for (int j = 0; j < numberOfFields; ++j) {
+                    if ((changed[j / 8] & (1 << (j % 8))) != 0) {
+                        Object value = readValue(input, fieldTypes[j]);
+                        if (fields[j] != null) {
+                            fields[j].set(data, value);
+                        }
+                    }
+                }
+                result.put(symbol, data);
+            }
+            return result;
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String[] getSortedSymbols(Map<String, AtGlanceData> base) {
+        String[] result = base.keySet().toArray(String[]::new);
+        Arrays.sort(result);
+        return result;
+    }
+
+    private static long calculateSymbolChecksum(String[] sortedSymbols) {
+        long result = 17;
+        for (var symbol : sortedSymbols) {
+            result = 31 * result + symbol.hashCode();
+        }
+        return result;
+    }
+
+    /**
+     * Checksum of each field over the symbols in order, 0 for unknown (null) fields.
+     */
+    private static long[] calculateFieldChecksums(Map<String, AtGlanceData> base, String[] sortedSymbols, Field[] fields, FieldType[] fieldTypes) {
+        long[] result = new long[fields.length];
+        try {
+            for (int i = 0; i < fields.length; ++i) {
+                if (fields[i] == null) {
+                    continue;
+                }
+                long checksum = 17;
+                for (var symbol : sortedSymbols) {
+                    checksum = 31 * checksum + hashValue(fieldTypes[i], fields[i].get(base.get(symbol)));
+                }
+                result[i] = checksum;
+            }
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+        return result;
+    }
+
+    private static long hashValue(FieldType type, Object value) {
+        if (value == null) {
+            return 0;
+        }
+        switch (type) {
+            case DOUBLE:
+                return Double.doubleToLongBits((Double) value);
+            case FLOAT:
+                return Float.floatToIntBits((Float) value);
+            case LOCAL_DATE:
+                return ((LocalDate) value).toEpochDay();
+            default:
+                return value.hashCode();
+        }
+    }
+
+    /**
+     * True if every field is the same, NaN is the same as NaN.
+     */
+    public static boolean isSame(AtGlanceData a, AtGlanceData b) {
+        for (int i = 0; i < FIELDS.length; ++i) {
+            if (!isSame(FIELDS[i], FIELD_TYPES[i], a, b)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isSame(Field field, FieldType type, AtGlanceData a, AtGlanceData b) {
+        try {
+            switch (type) {
+                case DOUBLE:
+                    return Double.doubleToLongBits(field.getDouble(a)) == Double.doubleToLongBits(field.getDouble(b));
+                case FLOAT:
+                    return Float.floatToIntBits(field.getFloat(a)) == Float.floatToIntBits(field.getFloat(b));
+                default:
+                    return Objects.equals(field.get(a), field.get(b));
+            }
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Field findField(String name, FieldType type) {
+        for (int i = 0; i < FIELDS.length; ++i) {
+            if (FIELDS[i].getName().equals(name) && FIELD_TYPES[i] == type) {
+                return FIELDS[i];
+            }
+        }
+        return null;
+    }
+
+    private static void writeValue(DataOutputStream output, FieldType type, Object value) throws IOException {
+        switch (type) {
+            case DOUBLE:
+                output.writeDouble((Double) value);
+                break;
+            case FLOAT:
+                output.writeFloat((Float) value);
+                break;
+            case LONG:
+                output.writeLong((Long) value);
+                break;
+            case INT:
+                output.writeInt((Integer) value);
+                break;
+            case SHORT:
+                output.writeShort((Short) value);
+                break;
+            case BYTE:
+                output.writeByte((Byte) value);
+                break;
+            case BOOLEAN:
+                output.writeBoolean((Boolean) value);
+                break;
+            case STRING:
+                output.writeBoolean(value != null);
+                if (value != null) {
+                    output.writeUTF((String) value);
+                }
+                break;
+            case LOCAL_DATE:
+                output.writeBoolean(value != null);
+                if (value != null) {
+                    output.writeLong(((LocalDate) value).toEpochDay());
+                }
+                break;
+        }
+    }
+
+    private static Object readValue(DataInputStream input, FieldType type) throws IOException {
+        switch (type) {
+            case DOUBLE:
+                return input.readDouble();
+            case FLOAT:
+                return input.readFloat();
+            case LONG:
+                return input.readLong();
+            case INT:
+                return input.readInt();
+            case SHORT:
+                return input.readShort();
+            case BYTE:
+                return input.readByte();
+            case BOOLEAN:
+                return input.readBoolean();
+            case STRING:
+                return input.readBoolean() ? input.readUTF() : null;
+            case LOCAL_DATE:
+                return input.readBoolean() ? LocalDate.ofEpochDay(input.readLong()) : null;
+            default:
+                throw new IOException("Unknown field type " + type);
+        }
+    }
+
+    enum FieldType {
+        DOUBLE,
+        FLOAT,
+        LONG,
+        INT,
+        SHORT,
+        BYTE,
+        BOOLEAN,
+        STRING,
+        LOCAL_DATE;
+
+        static FieldType fromClass(Class<?> clazz) {
+            if (clazz == double.class) {
+                return DOUBLE;
+            } else if (clazz == float.class) {
+                return FLOAT;
+            } else if (clazz == long.class) {
+                return LONG;
+            } else if (clazz == int.class) {
+                return INT;
+            } else if (clazz == short.class) {
+                return SHORT;
+            } else if (clazz == byte.class) {
+                return BYTE;
+            } else if (clazz == boolean.class) {
+                return BOOLEAN;
+            } else if (clazz == String.class) {
+                return STRING;
+            } else if (clazz == LocalDate.class) {
+                return LOCAL_DATE;
+            }
+            throw new IllegalStateException("AtGlanceData field type " + clazz + " is not supported in snapshot deltas");
+        }
+    }
+
+}
@@ -0,0 +1,78 @@
+package com.helospark.financialdata.util.progs;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.helospark.financialdata.management.watchlist.repository.GzipJsonMessageCodec;
+import com.helospark.financialdata.management.watchlist.repository.MessageCompresser;
+import com.helospark.financialdata.management.watchlist.repository.WatchlistElement;
+
+/**
+ * Compares the size and the encode/decode time of the DynamoDB payload codecs on generated watchlists.
+ */
+public class MessageCodecBenchmark {
+    private static final int WARMUP_ITERATIONS = 5_000;
+    private static final int ITERATIONS = 20_000;
+
+    public static void main(String[] args) throws Exception {
+        ObjectMapper om = new ObjectMapper();
+        MessageCompresser messageCompresser = new MessageCompresser();
+
+        for (int size : List.of(3, 100, 1000)) {
+            List<WatchlistElement> watchlist = createWatchlist(size);
+
+            ByteBuffer gzipJson = ByteBuffer.wrap(GzipJsonMessageCodec.compress(om.writeValueAsBytes(watchlist)));
+            ByteBuffer fieldIndexZstd = messageCompresser.createCompressedValue(watchlist);
+
+            int iterations = ITERATIONS * 100 / Math.max(size, 100);
+            for (int i = 0; i < WARMUP_ITERATIONS; ++i) {
+                GzipJsonMessageCodec.compress(om.writeValueAsBytes(watchlist));
+                messageCompresser.createCompressedValue(watchlist);
+                messageCompresser.uncompressListOf(gzipJson.duplicate(), WatchlistElement.class);
+                messageCompresser.uncompressListOf(fieldIndexZstd.duplicate(), WatchlistElement.class);
+            }
+
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; ++i) {
+                GzipJsonMessageCodec.compress(om.writeValueAsBytes(watchlist));
+            }
+            long gzipJsonEncode = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; ++i) {
+                messageCompresser.createCompressedValue(watchlist);
+            }
+            long fieldIndexZstdEncode = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; ++i) {
+                messageCompresser.uncompressListOf(gzipJson.duplicate(), WatchlistElement.class);
+            }
+            long gzipJsonDecode = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; ++i) {
+                messageCompresser.uncompressListOf(fieldIndexZstd.duplicate(), WatchlistElement.class);
+            }
+            long fieldIndexZstdDecode = System.nanoTime() - start;
+
+            System.out.printf("elements=%d size GzipJson=%d FieldIndexZstd=%d%n", size, gzipJson.remaining(), fieldIndexZstd.remaining());
+            System.out.printf("  encode us/op GzipJson=%.1f FieldIndexZstd=%.1f%n", gzipJsonEncode / 1000.0 / iterations, fieldIndexZstdEncode / 1000.0 / iterations);
+            System.out.printf("  decode us/op GzipJson=%.1f FieldIndexZstd=%.1f%n", gzipJsonDecode / 1000.0 / iterations, fieldIndexZstdDecode / 1000.0 / iterations);
+        }
+    }
+
+    public static List<WatchlistElement> createWatchlist(int size) {
+        List<WatchlistElement> result = new ArrayList<>();
+        for (int i = 0; i < size; ++i) {
+            var element = new WatchlistElement();
+            element.symbol = "SYM" + i;
+            element.targetPrice = 100.0 + i;
+            element.ownedShares = i;
+            element.notes = "Cheap company in the building space. Risk is a possible housing slowdown caused by increasing mortgage rates.";
+            element.tags = List.of("GROWTH", "CHEAP");
+            result.add(element);
+        }
+        return result;
+    }
+
+}
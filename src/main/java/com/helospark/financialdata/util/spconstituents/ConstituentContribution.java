@@ -0,0 +1,129 @@
+package com.helospark.financialdata.util.spconstituents;
+
+import java.lang.reflect.Field;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import com.helospark.financialdata.domain.BalanceSheet;
+import com.helospark.financialdata.domain.CashFlow;
+import com.helospark.financialdata.domain.CompanyFinancials;
+import com.helospark.financialdata.domain.FinancialsTtm;
+import com.helospark.financialdata.domain.HistoricalPriceElement;
+import com.helospark.financialdata.domain.IncomeStatement;
+import com.helospark.financialdata.service.Helpers;
+
+/**
+ * Weighted values one constituent adds to the index, for each of the quarters used by Sp500MetricCalculator.
+ * Statement values are stored in the order of the class' numeric fields, NaN where the value is not finite.
+ * <p>
+ * The values only depend on the price history through the close at each report date, so when only the price history changed
+ * (which happens on every daily price update) the contribution is still valid if those closes are the same.
+ */
+public class ConstituentContribution {
+    static final List<Field> INCOME_STATEMENT_FIELDS = getNumericFields(IncomeStatement.class);
+    static final List<Field> BALANCE_SHEET_FIELDS = getNumericFields(BalanceSheet.class);
+    static final List<Field> CASH_FLOW_FIELDS = getNumericFields(CashFlow.class);
+
+    final long fingerprint;
+    final long priceFingerprint;
+    final String currency;
+    final double weight;
+    final LocalDate[] dates;
+    final double[][] incomeStatement;
+    final double[][] balanceSheet;
+    final double[][] cashFlow;
+    final double[] price;
+    final double[] closeAtReport;
+
+    /**
+     * @param fingerprint of the inputs except the price history, including the FX files of the trading currency
+     */
+    public ConstituentContribution(long fingerprint, long priceFingerprint, double weight, CompanyFinancials financials, int quarters) {
+        this.fingerprint = fingerprint;
+        this.priceFingerprint = priceFingerprint;
+        this.currency = financials.profile != null ? financials.profile.currency : null;
+        this.weight = weight;
+
+        int available = Math.min(quarters, financials.financials.size());
+        dates = new LocalDate[available];
+        incomeStatement = new double[available][];
+        balanceSheet = new double[available][];
+        cashFlow = new double[available][];
+        price = new double[available];
+        closeAtReport = new double[available];
+
+        for (int i = 0; i < available; ++i) {
+            FinancialsTtm element = financials.financials.get(i);
+            dates[i] = element.date;
+            incomeStatement[i] = getWeightedValues(INCOME_STATEMENT_FIELDS, element.incomeStatementTtm, weight);
+            balanceSheet[i] = getWeightedValues(BALANCE_SHEET_FIELDS, element.balanceSheet, weight);
+            cashFlow[i] = getWeightedValues(CASH_FLOW_FIELDS, element.cashFlowTtm, weight);
+            price[i] = element.priceUsd * weight;
+            closeAtReport[i] = element.priceTradingCurrency;
+        }
+    }
+
+    private ConstituentContribution(ConstituentContribution other, long priceFingerprint) {
+        this.fingerprint = other.fingerprint;
+        this.priceFingerprint = priceFingerprint;
+        this.currency = other.currency;
+        this.weight = other.weight;
+        this.dates = other.dates;
+        this.incomeStatement = other.incomeStatement;
+        this.balanceSheet = other.balanceSheet;
+        this.cashFlow = other.cashFlow;
+        this.price = other.price;
+        this.closeAtReport = other.closeAtReport;
+    }
+
+    /**
+     * Same contribution for a new version of the price history, empty if the close at any of the report dates changed
+     * (for example the history was split adjusted) and the contribution has to be calculated again.
+     */
+    public Optional<ConstituentContribution> withPrices(long newPriceFingerprint, List<HistoricalPriceElement> prices) {
+        for (int i = 0; i < dates.length; ++i) {
+            int index = Helpers.findIndexWithOrBeforeDate(prices, dates[i]);
+            if (index == -1 || prices.get(index).close != closeAtReport[i]) {
+                return Optional.empty();
+            }
+        }
+        return Optional.of(new ConstituentContribution(this, newPriceFingerprint));
+    }
+
+    public int getQuarters() {
+        return dates.length;
+    }
+
+    private static double[] getWeightedValues(List<Field> fields, Object statement, double weight) {
+        double[] result = new double[fields.size()];
+        for (int i = 0; i < fields.size(); ++i) {
+            result[i] = Double.NaN;
+            if (statement == null) {
+                continue;
+            }
+            try {
+                Field field = fields.get(i);
+                double value = field.getType().equals(long.class) ? (long) field.get(statement) : (double) field.get(statement);
+                if (Double.isFinite(value)) {
+                    result[i] = value * weight;
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+        return result;
+    }
+
+    private static List<Field> getNumericFields(Class<?> clazz) {
+        List<Field> result = new ArrayList<>();
+        for (var field : clazz.getDeclaredFields()) {
+            if (field.getType().equals(long.class) || field.getType().equals(double.class)) {
+                result.add(field);
+            }
+        }
+        return result;
+    }
+
+}
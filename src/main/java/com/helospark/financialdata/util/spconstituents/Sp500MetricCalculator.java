@@ -3,11 +3,14 @@ package com.helospark.financialdata.util.spconstituents;
 import java.lang.reflect.Field;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
@@ -24,19 +27,31 @@ import com.helospark.financialdata.service.InvestmentScoreCalculator;
 import com.helospark.financialdata.service.RatioCalculator;
 import com.helospark.financialdata.service.RoicCalculator;
 import com.helospark.financialdata.service.SymbolAtGlanceProvider;
+import com.helospark.financialdata.service.cache.FinancialsFingerprint;
 import com.helospark.financialdata.util.glance.AtGlanceData;
 
 @Component
 public class Sp500MetricCalculator {
+    private static final Logger LOGGER = LoggerFactory.getLogger(Sp500MetricCalculator.class);
+    private static final int QUARTERS = 6 * 4;
+
     @Autowired
     private Sp500ConstituentsProvider constituentsProvider;
     @Autowired
     private SymbolAtGlanceProvider symbolIndexProvider;
 
-    public GeneralCompanyMetrics calculateMetrics() {
+    /**
+     * Contributions of the constituents, only recalculated when the source files of the constituent or its weight change,
+     * a price history update only recalculates it if the closes at the report dates changed.
+     */
+    private Map<String, ConstituentContribution> contributions = new HashMap<>();
+
+    public synchronized GeneralCompanyMetrics calculateMetrics() {
         List<Sp500WeightedConstituent> constituents = constituentsProvider.getConstituents();
 
-        Map<String, CompanyFinancials> localCache = new HashMap<>();
+        int recalculated = 0;
+        int priceChecked = 0;
+        Map<String, ConstituentContribution> newContributions = new HashMap<>();
         for (var cons : constituents) {
             Optional<AtGlanceData> atGlanceOpt = symbolIndexProvider.getAtGlanceData(cons.symbol);
 
@@ -45,14 +60,29 @@ public class Sp500MetricCalculator {
                 continue;
             }
 
-            CompanyFinancials financials = DataLoader.readFinancials(cons.symbol);
-
-            localCache.put(cons.symbol, financials);
+            ConstituentContribution contribution = contributions.get(cons.symbol);
+            String currency = contribution != null ? contribution.currency : null;
+            long fingerprintWithoutFx = FinancialsFingerprint.calculateWithoutPrices(cons.symbol);
+            long fingerprint = FinancialsFingerprint.withFx(fingerprintWithoutFx, currency);
+            long priceFingerprint = FinancialsFingerprint.calculatePrices(cons.symbol);
+            if (contribution != null && contribution.fingerprint == fingerprint && contribution.weight == cons.weight && contribution.priceFingerprint != priceFingerprint) {
+                contribution = contribution.withPrices(priceFingerprint, DataLoader.readHistoricalPriceNoCache(cons.symbol)).orElse(null);
+                ++priceChecked;
+            }
+            if (contribution == null || contribution.fingerprint != fingerprint || contribution.weight != cons.weight) {
+                CompanyFinancials financials = DataLoader.readFinancials(cons.symbol);
+                fingerprint = FinancialsFingerprint.withFx(fingerprintWithoutFx, financials.profile.currency);
+                contribution = new ConstituentContribution(fingerprint, priceFingerprint, cons.weight, financials, QUARTERS);
+                ++recalculated;
+            }
+            newContributions.put(cons.symbol, contribution);
         }
+        contributions = newContributions;
+        LOGGER.info("Recalculated {} of {} S&P500 constituents, checked prices of {}", recalculated, constituents.size(), priceChecked);
 
         List<FinancialsTtm> financials = new ArrayList<>();
-        for (int i = 0; i < 6 * 4; ++i) {
-            financials.add(convertToTtm(constituents, localCache, i));
+        for (int i = 0; i < QUARTERS; ++i) {
+            financials.add(convertToTtm(constituents, newContributions, i));
         }
 
         FinancialsTtm latestData = financials.get(0);
@@ -85,41 +115,33 @@ public class Sp500MetricCalculator {
         return result;
     }
 
-    public FinancialsTtm convertToTtm(List<Sp500WeightedConstituent> constituents, Map<String, CompanyFinancials> localCache, int index) {
-        Map<String, Double> mergedIncomeStatementData = new HashMap<>();
-        Map<String, Double> mergedBalanceSheetData = new HashMap<>();
-        Map<String, Double> mergedCashflowStatementData = new HashMap<>();
+    public FinancialsTtm convertToTtm(List<Sp500WeightedConstituent> constituents, Map<String, ConstituentContribution> contributions, int index) {
+        double[] mergedIncomeStatementData = createEmpty(ConstituentContribution.INCOME_STATEMENT_FIELDS);
+        double[] mergedBalanceSheetData = createEmpty(ConstituentContribution.BALANCE_SHEET_FIELDS);
+        double[] mergedCashflowStatementData = createEmpty(ConstituentContribution.CASH_FLOW_FIELDS);
 
         double price = 0.0;
-        double weights = 0.0;
         LocalDate date = null;
 
         for (var cons : constituents) {
-            CompanyFinancials financials = localCache.get(cons.symbol);
+            ConstituentContribution contribution = contributions.get(cons.symbol);
 
-            if (financials == null || financials.financials.size() <= index) {
+            if (contribution == null || contribution.getQuarters() <= index) {
                 System.out.println(cons.symbol + " has empty financials");
                 continue;
             }
-            FinancialsTtm currentElement = financials.financials.get(index);
-            date = currentElement.date;
-
-            IncomeStatement incomeStatement = currentElement.incomeStatementTtm;
-            BalanceSheet balanceSheet = currentElement.balanceSheet;
-            CashFlow cashflowStatement = currentElement.cashFlowTtm;
+            date = contribution.dates[index];
 
-            calculateFor(mergedIncomeStatementData, cons, incomeStatement);
-            calculateFor(mergedBalanceSheetData, cons, balanceSheet);
-            calculateFor(mergedCashflowStatementData, cons, cashflowStatement);
-
-            price += currentElement.priceUsd * cons.weight;
-            weights += cons.weight;
+            add(mergedIncomeStatementData, contribution.incomeStatement[index]);
+            add(mergedBalanceSheetData, contribution.balanceSheet[index]);
+            add(mergedCashflowStatementData, contribution.cashFlow[index]);
 
+            price += contribution.price[index];
         }
 
-        IncomeStatement incomeStatement = convertTo(mergedIncomeStatementData, IncomeStatement.class);
-        BalanceSheet balanceSheet = convertTo(mergedBalanceSheetData, BalanceSheet.class);
-        CashFlow cashflowStatement = convertTo(mergedCashflowStatementData, CashFlow.class);
+        IncomeStatement incomeStatement = convertTo(mergedIncomeStatementData, ConstituentContribution.INCOME_STATEMENT_FIELDS, IncomeStatement.class);
+        BalanceSheet balanceSheet = convertTo(mergedBalanceSheetData, ConstituentContribution.BALANCE_SHEET_FIELDS, BalanceSheet.class);
+        CashFlow cashflowStatement = convertTo(mergedCashflowStatementData, ConstituentContribution.CASH_FLOW_FIELDS, CashFlow.class);
 
         incomeStatement.weightedAverageShsOut *= 0.5844; // divisor adjustment
         incomeStatement.weightedAverageShsOutDil *= 0.5844;
@@ -138,14 +160,34 @@ public class Sp500MetricCalculator {
         return ttm;
     }
 
-    private <T> T convertTo(Map<String, Double> mergedIncomeStatementData, Class<T> class1) {
+    private double[] createEmpty(List<Field> fields) {
+        double[] result = new double[fields.size()];
+        Arrays.fill(result, Double.NaN);
+        return result;
+    }
+
+    /**
+     * NaN means no constituent had a value, these fields are left on default, like the fields missing from the merged map before.
+     */
+    private void add(double[] mergedData, double[] values) {
+        for (int i = 0; i < values.length; ++i) {
+            if (!Double.isNaN(values[i])) {
+                mergedData[i] = Double.isNaN(mergedData[i]) ? values[i] : mergedData[i] + values[i];
+            }
+        }
+    }
+
+    private <T> T convertTo(double[] mergedData, List<Field> fields, Class<T> class1) {
         try {
-            T newInstance = class1.newInstance();
+            T newInstance = class1.getDeclaredConstructor().newInstance();
 
-            for (var entry : mergedIncomeStatementData.entrySet()) {
-                Field field = class1.getField(entry.getKey());
+            for (int i = 0; i < fields.size(); ++i) {
+                if (Double.isNaN(mergedData[i])) {
+                    continue;
+                }
+                Field field = fields.get(i);
                 Class<?> type = field.getType();
-                double value = entry.getValue();
+                double value = mergedData[i];
 
                 if (long.class.equals(type)) {
                     field.set(newInstance, (long) value);
@@ -161,29 +203,4 @@ public class Sp500MetricCalculator {
         }
     }
 
-    public void calculateFor(Map<String, Double> mergedData, Sp500WeightedConstituent cons, Object incomeStatement) {
-        try {
-            for (var field : incomeStatement.getClass().getDeclaredFields()) {
-                String name = field.getName();
-                double value = 0.0;
-                boolean found = false;
-                if (field.getType().equals(long.class)) {
-                    value = (long) field.get(incomeStatement);
-                    found = true;
-                } else if (field.getType().equals(double.class)) {
-                    value = (double) field.get(incomeStatement);
-                    found = true;
-                }
-
-                if (found && Double.isFinite(value)) {
-                    double prevValue = mergedData.getOrDefault(name, 0.0);
-                    prevValue += value * cons.weight;
-                    mergedData.put(name, prevValue);
-                }
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-    }
-
 }
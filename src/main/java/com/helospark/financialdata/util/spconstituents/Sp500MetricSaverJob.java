@@ -5,6 +5,8 @@ import static com.helospark.financialdata.CommonConfig.BASE_FOLDER;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.time.LocalDate;
 import java.time.temporal.ChronoUnit;
 import java.util.Optional;
@@ -29,6 +31,8 @@ public class Sp500MetricSaverJob {
     @Autowired
     private JobLastRunRepository jobLastRunRepository;
 
+    private volatile CachedMetric cachedMetric;
+
     @Scheduled(fixedDelay = 1, timeUnit = TimeUnit.DAYS)
     public void saveMetrics() {
         LocalDate currentDate = LocalDate.now();
@@ -42,8 +46,12 @@ public class Sp500MetricSaverJob {
     public void runJob(LocalDate currentDate) {
         try {
             GeneralCompanyMetrics metric = calculator.calculateMetrics();
-            FileOutputStream fos = new FileOutputStream(FUNDAMENTALS_FILE);
-            objectMapper.writeValue(fos, metric);
+            File tmpFile = new File(FUNDAMENTALS_FILE.getAbsolutePath() + ".tmp");
+            try (FileOutputStream fos = new FileOutputStream(tmpFile)) {
+                objectMapper.writeValue(fos, metric);
+            }
+            Files.move(tmpFile.toPath(), FUNDAMENTALS_FILE.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            cachedMetric = new CachedMetric(metric, FUNDAMENTALS_FILE.lastModified());
 
             jobLastRunRepository.save(new JobLastRunData(JOB_NAME, currentDate));
         } catch (Exception e) {
@@ -51,11 +59,19 @@ public class Sp500MetricSaverJob {
         }
     }
 
+    /**
+     * Served from memory, the file is only parsed again if it was written since it was last read (e.g. by another instance).
+     */
     public GeneralCompanyMetrics loadCachedMetric() {
-        try {
-            FileInputStream fis = new FileInputStream(FUNDAMENTALS_FILE);
-
-            return objectMapper.readValue(fis, GeneralCompanyMetrics.class);
+        CachedMetric cached = cachedMetric;
+        long lastModified = FUNDAMENTALS_FILE.lastModified();
+        if (cached != null && cached.lastModified == lastModified) {
+            return cached.metric;
+        }
+        try (FileInputStream fis = new FileInputStream(FUNDAMENTALS_FILE)) {
+            GeneralCompanyMetrics metric = objectMapper.readValue(fis, GeneralCompanyMetrics.class);
+            cachedMetric = new CachedMetric(metric, lastModified);
+            return metric;
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
@@ -65,4 +81,14 @@ public class Sp500MetricSaverJob {
         return ChronoUnit.MONTHS.between(lastRanDate, currentDate) >= 1;
     }
 
+    static class CachedMetric {
+        GeneralCompanyMetrics metric;
+        long lastModified;
+
+        public CachedMetric(GeneralCompanyMetrics metric, long lastModified) {
+            this.metric = metric;
+            this.lastModified = lastModified;
+        }
+    }
+
 }
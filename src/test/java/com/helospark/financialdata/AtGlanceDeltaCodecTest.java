@@ -0,0 +1,123 @@
+package com.helospark.financialdata;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.helospark.financialdata.util.glance.AtGlanceData;
+import com.helospark.financialdata.util.glance.AtGlanceDeltaCodec;
+
+public class AtGlanceDeltaCodecTest {
+
+    @Test
+    public void testReadReturnsWrittenSnapshot() throws Exception {
+        Map<String, AtGlanceData> base = new LinkedHashMap<>();
+        base.put("AAA", createData("AAA", 10.0f, LocalDate.of(2020, 1, 1)));
+        base.put("BBB", createData("BBB", 20.0f, LocalDate.of(2020, 1, 1)));
+        base.put("REMOVED", createData("REMOVED", 30.0f, LocalDate.of(2020, 1, 1)));
+
+        Map<String, AtGlanceData> snapshot = new LinkedHashMap<>();
+        snapshot.put("BBB", createData("BBB", Float.NaN, LocalDate.of(2020, 3, 31)));
+        snapshot.put("AAA", base.get("AAA").copy());
+        AtGlanceData newSymbol = createData("NEW", 5.0f, null);
+        newSymbol.companyName = null;
+        snapshot.put("NEW", newSymbol);
+
+        File file = Files.createTempFile("snapshot", ".delta.bin").toFile();
+        try {
+            AtGlanceDeltaCodec.write(base, snapshot, file);
+            Map<String, AtGlanceData> result = AtGlanceDeltaCodec.read(base, file);
+
+            Assertions.assertEquals(snapshot.keySet(), result.keySet());
+            for (var entry : snapshot.entrySet()) {
+                Assertions.assertTrue(AtGlanceDeltaCodec.isSame(entry.getValue(), result.get(entry.getKey())), entry.getKey());
+            }
+            Assertions.assertTrue(Float.isNaN(result.get("BBB").roic));
+            Assertions.assertEquals(LocalDate.of(2020, 3, 31), result.get("BBB").actualDate);
+            Assertions.assertNull(result.get("NEW").actualDate);
+            Assertions.assertNotSame(base.get("AAA"), result.get("AAA"), "base data should not be shared");
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testUnchangedFieldsAreNotWritten() throws Exception {
+        Map<String, AtGlanceData> base = new LinkedHashMap<>();
+        Map<String, AtGlanceData> unchanged = new LinkedHashMap<>();
+        Map<String, AtGlanceData> changed = new LinkedHashMap<>();
+        for (int i = 0; i < 1000; ++i) {
+            String symbol = "S" + i;
+            base.put(symbol, createData(symbol, i, LocalDate.of(2020, 1, 1)));
+            unchanged.put(symbol, createData(symbol, i, LocalDate.of(2020, 1, 1)));
+            changed.put(symbol, createData(symbol, i + 0.5f, LocalDate.of(2020, 4, 1)));
+        }
+
+        File unchangedFile = Files.createTempFile("unchanged", ".delta.bin").toFile();
+        File changedFile = Files.createTempFile("changed", ".delta.bin").toFile();
+        File emptyBaseFile = Files.createTempFile("emptybase", ".delta.bin").toFile();
+        try {
+            AtGlanceDeltaCodec.write(base, unchanged, unchangedFile);
+            AtGlanceDeltaCodec.write(base, changed, changedFile);
+            AtGlanceDeltaCodec.write(Map.of(), changed, emptyBaseFile);
+
+            Assertions.assertTrue(unchangedFile.length() < changedFile.length());
+            Assertions.assertTrue(changedFile.length() < emptyBaseFile.length());
+            Assertions.assertTrue(AtGlanceDeltaCodec.isSame(changed.get("S5"), AtGlanceDeltaCodec.read(Map.of(), emptyBaseFile).get("S5")));
+        } finally {
+            unchangedFile.delete();
+            changedFile.delete();
+            emptyBaseFile.delete();
+        }
+    }
+
+    @Test
+    public void testReadWithDifferentBaseFails() throws Exception {
+        Map<String, AtGlanceData> base = new LinkedHashMap<>();
+        base.put("AAA", createData("AAA", 10.0f, LocalDate.of(2020, 1, 1)));
+        base.put("BBB", createData("BBB", 20.0f, LocalDate.of(2020, 1, 1)));
+        Map<String, AtGlanceData> snapshot = Map.of("AAA", createData("AAA", 11.0f, LocalDate.of(2020, 4, 1)));
+
+        Map<String, AtGlanceData> reorderedBase = new LinkedHashMap<>();
+        reorderedBase.put("BBB", base.get("BBB"));
+        reorderedBase.put("AAA", base.get("AAA"));
+        Map<String, AtGlanceData> changedValueBase = new LinkedHashMap<>(base);
+        changedValueBase.put("BBB", createData("BBB", 21.0f, LocalDate.of(2020, 1, 1)));
+        Map<String, AtGlanceData> changedSymbolBase = new LinkedHashMap<>(base);
+        changedSymbolBase.put("CCC", changedSymbolBase.remove("BBB"));
+
+        File file = Files.createTempFile("snapshot", ".delta.bin").toFile();
+        try {
+            AtGlanceDeltaCodec.write(base, snapshot, file);
+
+            Assertions.assertEquals(11.0f, AtGlanceDeltaCodec.read(reorderedBase, file).get("AAA").roic);
+            Assertions.assertThrows(IllegalStateException.class, () -> AtGlanceDeltaCodec.read(changedValueBase, file));
+            Assertions.assertThrows(IllegalStateException.class, () -> AtGlanceDeltaCodec.read(changedSymbolBase, file));
+            Assertions.assertThrows(IllegalStateException.class, () -> AtGlanceDeltaCodec.read(Map.of(), file));
+        } finally {
+            file.delete();
+        }
+    }
+
+    private AtGlanceData createData(String symbol, float value, LocalDate actualDate) {
+        AtGlanceData data = new AtGlanceData();
+        data.symbol = symbol;
+        data.companyName = symbol + " Inc.";
+        data.actualDate = actualDate;
+        data.roic = value;
+        data.pe = value * 2;
+        data.marketCapUsd = value * 1000.0;
+        data.shareCount = 1_000_000L;
+        data.redFlags = 2;
+        data.profitableYears = 7;
+        data.altman = 3.0f;
+        data.grMargin = 40.0f;
+        return data;
+    }
+
+}
@@ -0,0 +1,162 @@
+package com.helospark.financialdata;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.helospark.financialdata.management.screener.BacktestJobService;
+import com.helospark.financialdata.management.screener.ScreenerClientSideException;
+import com.helospark.financialdata.management.screener.domain.BacktestJobStatus;
+import com.helospark.financialdata.management.screener.domain.BacktestJobStatus.BacktestJobState;
+import com.helospark.financialdata.management.screener.domain.BacktestRequest;
+import com.helospark.financialdata.management.screener.domain.BacktestResult;
+
+public class BacktestJobServiceTest {
+
+    @Test
+    public void testUsersTakeTurns() throws Exception {
+        List<String> runOrder = new CopyOnWriteArrayList<>();
+        CountDownLatch release = new CountDownLatch(1);
+        BacktestJobService underTest = new BacktestJobService(request -> request.expression, (request, progressListener) -> {
+            await(release);
+            runOrder.add(request.expression);
+            return new BacktestResult();
+        }, 1, 1, 5);
+
+        underTest.submit("a", createRequest("a1"));
+        underTest.submit("a", createRequest("a2"));
+        BacktestJobStatus last = underTest.submit("a", createRequest("a3"));
+        underTest.submit("b", createRequest("b1"));
+        release.countDown();
+        awaitDone(underTest, "a", last.jobId);
+
+        Assertions.assertEquals(List.of("a1", "b1", "a2", "a3"), runOrder);
+        underTest.destroy();
+    }
+
+    @Test
+    public void testRepeatedBacktestIsServedFromCacheWithProgress() throws Exception {
+        List<String> runs = new CopyOnWriteArrayList<>();
+        BacktestJobService underTest = new BacktestJobService(request -> request.expression, (request, progressListener) -> {
+            runs.add(request.expression);
+            progressListener.onPeriodFinished(1, 2);
+            progressListener.onPeriodFinished(2, 2);
+            return new BacktestResult();
+        }, 2, 1, 5);
+
+        BacktestJobStatus first = underTest.submit("a", createRequest("x"));
+        BacktestJobStatus firstDone = awaitDone(underTest, "a", first.jobId);
+        BacktestJobStatus second = underTest.submit("b", createRequest("x"));
+
+        Assertions.assertEquals(2, firstDone.totalPeriods);
+        Assertions.assertEquals(100.0, firstDone.progressPercent);
+        Assertions.assertEquals(BacktestJobState.DONE, second.state);
+        Assertions.assertSame(firstDone.result, second.result);
+        Assertions.assertEquals(List.of("x"), runs);
+        Assertions.assertTrue(underTest.getStatus("b", first.jobId).isEmpty());
+        underTest.destroy();
+    }
+
+    @Test
+    public void testSameRunningBacktestIsFollowedWithoutWorker() throws Exception {
+        List<String> runs = new CopyOnWriteArrayList<>();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        BacktestJobService underTest = new BacktestJobService(request -> request.expression, (request, progressListener) -> {
+            runs.add(request.expression);
+            if (request.expression.equals("x")) {
+                progressListener.onPeriodFinished(1, 4);
+                started.countDown();
+                await(release);
+            }
+            return new BacktestResult();
+        }, 2, 1, 5);
+
+        BacktestJobStatus leader = underTest.submit("a", createRequest("x"));
+        started.await(10, TimeUnit.SECONDS);
+        BacktestJobStatus follower = underTest.submit("b", createRequest("x"));
+        BacktestJobStatus other = underTest.submit("c", createRequest("y"));
+
+        // the follower doesn't take the second worker, so the other backtest runs while x is still running
+        Assertions.assertEquals(BacktestJobState.DONE, awaitDone(underTest, "c", other.jobId).state);
+        Assertions.assertEquals(BacktestJobState.RUNNING, follower.state);
+        Assertions.assertEquals(25.0, follower.progressPercent);
+
+        release.countDown();
+        BacktestJobStatus leaderDone = awaitDone(underTest, "a", leader.jobId);
+        BacktestJobStatus followerDone = awaitDone(underTest, "b", follower.jobId);
+
+        Assertions.assertSame(leaderDone.result, followerDone.result);
+        Assertions.assertEquals(List.of("x", "y"), runs);
+        underTest.destroy();
+    }
+
+    @Test
+    public void testQueuePerUserIsLimited() {
+        CountDownLatch release = new CountDownLatch(1);
+        BacktestJobService underTest = new BacktestJobService(request -> request.expression, (request, progressListener) -> {
+            await(release);
+            return new BacktestResult();
+        }, 1, 1, 1);
+
+        underTest.submit("a", createRequest("a1"));
+        underTest.submit("a", createRequest("a2"));
+
+        Assertions.assertThrows(ScreenerClientSideException.class, () -> underTest.submit("a", createRequest("a3")));
+        release.countDown();
+        underTest.destroy();
+    }
+
+    @Test
+    public void testSubmitAndWaitReturnsResultOrTimesOut() {
+        List<String> runs = new CopyOnWriteArrayList<>();
+        CountDownLatch release = new CountDownLatch(1);
+        BacktestJobService underTest = new BacktestJobService(request -> request.expression, (request, progressListener) -> {
+            runs.add(request.expression);
+            if (request.expression.equals("slow")) {
+                await(release);
+            }
+            return new BacktestResult();
+        }, 2, 1, 5);
+
+        BacktestResult result = underTest.submitAndWait("a", createRequest("x"), 10_000);
+
+        Assertions.assertSame(result, underTest.submitAndWait("b", createRequest("x"), 10_000));
+        Assertions.assertThrows(ScreenerClientSideException.class, () -> underTest.submitAndWait("a", createRequest("slow"), 50));
+        release.countDown();
+        Assertions.assertNotNull(underTest.submitAndWait("a", createRequest("slow"), 10_000));
+        Assertions.assertEquals(List.of("x", "slow"), runs);
+        underTest.destroy();
+    }
+
+    private BacktestJobStatus awaitDone(BacktestJobService underTest, String user, String jobId) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (System.currentTimeMillis() < deadline) {
+            BacktestJobStatus status = underTest.getStatus(user, jobId).get();
+            if (status.state == BacktestJobState.DONE || status.state == BacktestJobState.FAILED) {
+                return status;
+            }
+            Thread.sleep(5);
+        }
+        throw new AssertionError("Backtest job did not finish");
+    }
+
+    private BacktestRequest createRequest(String expression) {
+        BacktestRequest request = new BacktestRequest();
+        request.expression = expression;
+        return request;
+    }
+
+    private void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+}
@@ -0,0 +1,63 @@
+package com.helospark.financialdata;
+
+import java.lang.ref.WeakReference;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.helospark.financialdata.domain.CashFlow;
+import com.helospark.financialdata.domain.FinancialsTtm;
+import com.helospark.financialdata.domain.IncomeStatement;
+import com.helospark.financialdata.service.GrowthWindowIndex;
+import com.helospark.financialdata.service.Helpers;
+
+public class GrowthWindowIndexTest {
+
+    @Test
+    public void testCachedIndexDoesNotKeepFinancialsAlive() throws InterruptedException {
+        List<FinancialsTtm> financials = createFinancials(CommonConfig.NOW);
+        GrowthWindowIndex.of(financials);
+        WeakReference<List<FinancialsTtm>> reference = new WeakReference<>(financials);
+        financials = null;
+
+        for (int i = 0; i < 50 && reference.get() != null; ++i) {
+            System.gc();
+            Thread.sleep(20);
+        }
+
+        Assertions.assertNull(reference.get());
+    }
+
+    @Test
+    public void testIndexAfterNowIsSameAsDateSearch() {
+        // reports dated after NOW are found by the negative offsets
+        List<FinancialsTtm> financials = createFinancials(CommonConfig.NOW.plusMonths(9));
+        GrowthWindowIndex index = new GrowthWindowIndex(financials);
+
+        for (int months = -12; months <= 40; ++months) {
+            int expected = Helpers.findIndexWithOrBeforeDate(financials, CommonConfig.NOW.minusMonths(months));
+            Assertions.assertEquals(expected, index.findIndexAtMonthsAgo(months), "months=" + months);
+        }
+    }
+
+    private List<FinancialsTtm> createFinancials(LocalDate latestDate) {
+        List<FinancialsTtm> result = new ArrayList<>();
+        for (int i = 0; i < 12; ++i) {
+            FinancialsTtm financial = new FinancialsTtm();
+            financial.date = latestDate.minusMonths(3L * i);
+            financial.incomeStatementTtm = new IncomeStatement();
+            financial.incomeStatementTtm.revenue = 1_000_000 - i * 10_000;
+            financial.incomeStatementTtm.netIncome = 100_000 - i * 1_000;
+            financial.incomeStatementTtm.weightedAverageShsOut = 1_000;
+            financial.cashFlowTtm = new CashFlow();
+            financial.cashFlowTtm.freeCashFlow = 80_000 - i * 1_000;
+            financial.cashFlowTtm.dividendsPaid = -10_000;
+            result.add(financial);
+        }
+        return result;
+    }
+
+}
@@ -1,20 +1,23 @@
 package com.helospark.financialdata;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.helospark.financialdata.management.watchlist.repository.GzipJsonMessageCodec;
 import com.helospark.financialdata.management.watchlist.repository.MessageCompresser;
 import com.helospark.financialdata.management.watchlist.repository.WatchlistElement;
+import com.helospark.financialdata.util.progs.MessageCodecBenchmark;
 
 public class MessageConverterCompressionRatioTest {
 
     @Test
     public void testSmallList() throws IOException {
-        MessageCompresser messageCompresser = new MessageCompresser();
         List<WatchlistElement> watchlistElements = new ArrayList<>();
 
         var amazon = new WatchlistElement();
@@ -44,14 +47,13 @@ public class MessageConverterCompressionRatioTest {
 
         System.out.println("Uncompressed=" + uncompressed.length);
 
-        byte[] compressed = messageCompresser.compressString(uncompressed).array();
+        byte[] compressed = GzipJsonMessageCodec.compress(uncompressed);
 
         System.out.println("Compressed=" + compressed.length);
     }
 
     @Test
     public void testEmptyNotes() throws IOException {
-        MessageCompresser messageCompresser = new MessageCompresser();
         List<WatchlistElement> watchlistElements = new ArrayList<>();
 
         var amazon = new WatchlistElement();
@@ -72,9 +74,24 @@ public class MessageConverterCompressionRatioTest {
 
         System.out.println("Uncompressed=" + uncompressed.length);
 
-        byte[] compressed = messageCompresser.compressString(uncompressed).array();
+        byte[] compressed = GzipJsonMessageCodec.compress(uncompressed);
 
         System.out.println("Compressed=" + compressed.length);
     }
 
+    @Test
+    public void testCodecComparison() throws IOException {
+        List<WatchlistElement> watchlistElements = MessageCodecBenchmark.createWatchlist(100);
+        ObjectMapper om = new ObjectMapper();
+        MessageCompresser messageCompresser = new MessageCompresser();
+
+        ByteBuffer gzipJson = ByteBuffer.wrap(GzipJsonMessageCodec.compress(om.writeValueAsBytes(watchlistElements)));
+        ByteBuffer fieldIndexZstd = messageCompresser.createCompressedValue(watchlistElements);
+
+        System.out.println("GzipJson=" + gzipJson.remaining() + " FieldIndexZstd=" + fieldIndexZstd.remaining());
+
+        Assertions.assertEquals(om.writeValueAsString(messageCompresser.uncompressListOf(gzipJson, WatchlistElement.class)),
+                om.writeValueAsString(messageCompresser.uncompressListOf(fieldIndexZstd, WatchlistElement.class)));
+    }
+
 }
@@ -0,0 +1,82 @@
+package com.helospark.financialdata;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.helospark.financialdata.service.PercentileRankTable;
+import com.helospark.financialdata.service.PercentileRankTable.RankGroup;
+import com.helospark.financialdata.service.PercentileRankTable.SymbolGroups;
+import com.helospark.financialdata.util.glance.AtGlanceData;
+
+public class PercentileRankTableTest {
+
+    @Test
+    public void testRanksWithinGroups() throws Exception {
+        Map<String, AtGlanceData> data = new LinkedHashMap<>();
+        Map<String, String[]> groups = new LinkedHashMap<>();
+        float[] techRoic = { 30.0f, 10.0f, 20.0f, 20.0f, 50.0f };
+        for (int i = 0; i < techRoic.length; ++i) {
+            addSymbol(data, groups, "TECH" + i, techRoic[i], "Technology", "NASDAQ");
+        }
+        for (int i = 0; i < 3; ++i) {
+            addSymbol(data, groups, "BANK" + i, i, "Financial Services", "NASDAQ");
+        }
+        addSymbol(data, groups, "NAN", Float.NaN, "Technology", "NASDAQ");
+
+        PercentileRankTable underTest = PercentileRankTable.build(data, new SymbolGroups(groups));
+
+        int sectorColumn = underTest.getColumn("roic", RankGroup.SECTOR);
+        Assertions.assertEquals(75.0, underTest.getRank(sectorColumn, "TECH0"));
+        Assertions.assertEquals(0.0, underTest.getRank(sectorColumn, "TECH1"));
+        Assertions.assertEquals(25.0, underTest.getRank(sectorColumn, "TECH2"));
+        Assertions.assertEquals(25.0, underTest.getRank(sectorColumn, "TECH3"));
+        Assertions.assertEquals(100.0, underTest.getRank(sectorColumn, "TECH4"));
+        Assertions.assertTrue(Double.isNaN(underTest.getRank(sectorColumn, "BANK0")), "group is too small to rank");
+        Assertions.assertTrue(Double.isNaN(underTest.getRank(sectorColumn, "NAN")));
+        Assertions.assertTrue(Double.isNaN(underTest.getRank(sectorColumn, "UNKNOWN")));
+
+        int exchangeColumn = underTest.getColumn("roic", RankGroup.EXCHANGE);
+        Assertions.assertEquals(0.0, underTest.getRank(exchangeColumn, "BANK0"));
+        Assertions.assertEquals(100.0, underTest.getRank(exchangeColumn, "TECH4"));
+
+        Assertions.assertTrue(Double.isNaN(underTest.getRank(underTest.getColumn("roic", RankGroup.INDUSTRY), "TECH0")));
+        Assertions.assertEquals(-1, underTest.getColumn("notAScreenerElement", RankGroup.SECTOR));
+    }
+
+    @Test
+    public void testSaveAndLoad() throws Exception {
+        Map<String, AtGlanceData> data = new LinkedHashMap<>();
+        Map<String, String[]> groups = new LinkedHashMap<>();
+        for (int i = 0; i < 10; ++i) {
+            addSymbol(data, groups, "S" + i, i * 3.0f, "Technology", "NYSE");
+        }
+        PercentileRankTable table = PercentileRankTable.build(data, new SymbolGroups(groups));
+        File file = new File(Files.createTempDirectory("ranks").toFile(), "ranks/current.bin");
+
+        table.save(file);
+        PercentileRankTable loaded = PercentileRankTable.load(file).get();
+
+        for (var group : RankGroup.values()) {
+            for (var symbol : data.keySet()) {
+                Assertions.assertEquals(table.getRank(table.getColumn("roic", group), symbol), loaded.getRank(loaded.getColumn("roic", group), symbol));
+                Assertions.assertEquals(table.getRank(table.getColumn("pe", group), symbol), loaded.getRank(loaded.getColumn("pe", group), symbol));
+            }
+        }
+        Assertions.assertTrue(PercentileRankTable.load(new File(file.getParentFile(), "missing.bin")).isEmpty());
+    }
+
+    private void addSymbol(Map<String, AtGlanceData> data, Map<String, String[]> groups, String symbol, float roic, String sector, String exchange) {
+        AtGlanceData atGlanceData = new AtGlanceData();
+        atGlanceData.symbol = symbol;
+        atGlanceData.roic = roic;
+        atGlanceData.pe = -roic;
+        data.put(symbol, atGlanceData);
+        groups.put(symbol, new String[] { sector, null, exchange });
+    }
+
+}
@@ -0,0 +1,133 @@
+package com.helospark.financialdata;
+
+import java.time.LocalDate;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.helospark.financialdata.domain.AuxilaryInformation;
+import com.helospark.financialdata.domain.BalanceSheet;
+import com.helospark.financialdata.domain.CashFlow;
+import com.helospark.financialdata.domain.CompanyFinancials;
+import com.helospark.financialdata.domain.FinancialsTtm;
+import com.helospark.financialdata.domain.IncomeStatement;
+import com.helospark.financialdata.domain.Profile;
+import com.helospark.financialdata.service.PointInTimeAtGlanceProvider;
+import com.helospark.financialdata.util.StockDataDownloader;
+import com.helospark.financialdata.util.glance.AtGlanceData;
+
+public class PointInTimeAtGlanceProviderTest {
+    private static final LocalDate LATEST_REPORT_DATE = LocalDate.of(2020, 3, 31);
+
+    @Test
+    public void testRepriceIsSameAsCalculatingWithNewPrice() {
+        CompanyFinancials company = createCompany(1.0);
+        CompanyFinancials companyAtDoublePrice = createCompany(2.0);
+        AtGlanceData atReport = StockDataDownloader.symbolToSearchData("TEST", company, LATEST_REPORT_DATE, false).get();
+        AtGlanceData expected = StockDataDownloader.symbolToSearchData("TEST", companyAtDoublePrice, LATEST_REPORT_DATE, false).get();
+        LocalDate priceDate = LATEST_REPORT_DATE.plusDays(40);
+
+        AtGlanceData result = PointInTimeAtGlanceProvider.reprice(atReport, company, company.financials.get(0), priceDate, 2.0 * company.financials.get(0).priceTradingCurrency);
+
+        Assertions.assertEquals(priceDate, result.actualDate);
+        Assertions.assertEquals(expected.latestStockPrice, result.latestStockPrice, 1e-6);
+        Assertions.assertEquals(expected.latestStockPriceUsd, result.latestStockPriceUsd, 1e-6);
+        Assertions.assertEquals(expected.marketCapUsd, result.marketCapUsd, 1e-6);
+        assertFloatEquals(expected.pe, result.pe);
+        assertFloatEquals(expected.peExRnd, result.peExRnd);
+        assertFloatEquals(expected.ptb, result.ptb);
+        assertFloatEquals(expected.pts, result.pts);
+        assertFloatEquals(expected.priceToGrossProfit, result.priceToGrossProfit);
+        assertFloatEquals(expected.evToEbitda, result.evToEbitda);
+        assertFloatEquals(expected.altman, result.altman);
+        assertFloatEquals(expected.cape, result.cape);
+        assertFloatEquals(expected.trailingPeg, result.trailingPeg);
+        assertFloatEquals(expected.dividendYield, result.dividendYield);
+        assertFloatEquals(expected.grahamMoS, result.grahamMoS);
+        assertFloatEquals(expected.fYrPe, result.fYrPe);
+        assertFloatEquals(expected.fYrPFcf, result.fYrPFcf);
+        assertFloatEquals(atReport.roic, result.roic);
+        assertFloatEquals(atReport.revenueGrowth, result.revenueGrowth);
+        Assertions.assertEquals(LATEST_REPORT_DATE, atReport.actualDate, "report data is not modified");
+    }
+
+    private void assertFloatEquals(float expected, float actual) {
+        Assertions.assertTrue(Float.isFinite(expected), "Test data should have every field");
+        Assertions.assertEquals(expected, actual, Math.abs(expected) * 1e-4 + 1e-4);
+    }
+
+    private CompanyFinancials createCompany(double priceMultiplier) {
+        CompanyFinancials company = new CompanyFinancials();
+        company.profile = new Profile();
+        company.profile.companyName = "Test company";
+        for (int i = 0; i < 40; ++i) {
+            double scale = Math.pow(1.02, 40 - i);
+            LocalDate date = LATEST_REPORT_DATE.minusMonths(3L * i);
+            FinancialsTtm financial = new FinancialsTtm();
+            financial.date = date;
+            financial.priceTradingCurrency = 50.0 * scale * priceMultiplier;
+            financial.price = financial.priceTradingCurrency;
+            financial.priceUsd = financial.priceTradingCurrency * 0.5;
+            financial.incomeStatement = createIncomeStatement(date, scale / 4);
+            financial.incomeStatementTtm = createIncomeStatement(date, scale);
+            financial.cashFlow = createCashFlow(date, scale / 4);
+            financial.cashFlowTtm = createCashFlow(date, scale);
+            financial.balanceSheet = createBalanceSheet(date, scale);
+            financial.auxilaryInfo = new AuxilaryInformation();
+            company.financials.add(financial);
+        }
+        company.latestPrice = company.financials.get(0).price;
+        company.latestPriceUsd = company.financials.get(0).priceUsd;
+        company.latestPriceTradingCurrency = company.financials.get(0).priceTradingCurrency;
+        company.latestPriceDate = LATEST_REPORT_DATE;
+        return company;
+    }
+
+    private IncomeStatement createIncomeStatement(LocalDate date, double scale) {
+        IncomeStatement result = new IncomeStatement();
+        result.date = date;
+        result.revenue = (long) (1_000_000_000 * scale);
+        result.grossProfit = (long) (400_000_000 * scale);
+        result.ebitda = (long) (250_000_000 * scale);
+        result.operatingIncome = (long) (200_000_000 * scale);
+        result.netIncome = (long) (150_000_000 * scale);
+        result.researchAndDevelopmentExpenses = (long) (50_000_000 * scale);
+        result.sellingGeneralAndAdministrativeExpenses = (long) (80_000_000 * scale);
+        result.interestExpense = (long) (10_000_000 * scale);
+        result.incomeBeforeTax = (long) (190_000_000 * scale);
+        result.incomeTaxExpense = (long) (40_000_000 * scale);
+        result.weightedAverageShsOut = 100_000_000;
+        result.weightedAverageShsOutDil = 100_000_000;
+        result.eps = result.netIncome / (double) result.weightedAverageShsOut;
+        return result;
+    }
+
+    private CashFlow createCashFlow(LocalDate date, double scale) {
+        CashFlow result = new CashFlow();
+        result.date = date;
+        result.freeCashFlow = (long) (120_000_000 * scale);
+        result.operatingCashFlow = (long) (170_000_000 * scale);
+        result.capitalExpenditure = (long) (-50_000_000 * scale);
+        result.dividendsPaid = (long) (-30_000_000 * scale);
+        result.stockBasedCompensation = (long) (10_000_000 * scale);
+        return result;
+    }
+
+    private BalanceSheet createBalanceSheet(LocalDate date, double scale) {
+        BalanceSheet result = new BalanceSheet();
+        result.date = date;
+        result.cashAndCashEquivalents = (long) (300_000_000 * scale);
+        result.totalCurrentAssets = (long) (800_000_000 * scale);
+        result.totalAssets = (long) (2_000_000_000 * scale);
+        result.totalCurrentLiabilities = (long) (400_000_000 * scale);
+        result.totalLiabilities = (long) (900_000_000 * scale);
+        result.longTermDebt = (long) (500_000_000 * scale);
+        result.shortTermDebt = (long) (50_000_000 * scale);
+        result.totalDebt = (long) (550_000_000 * scale);
+        result.retainedEarnings = (long) (600_000_000 * scale);
+        result.totalStockholdersEquity = (long) (1_100_000_000 * scale);
+        result.totalEquity = result.totalStockholdersEquity;
+        return result;
+    }
+
+}
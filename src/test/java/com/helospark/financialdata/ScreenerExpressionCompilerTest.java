@@ -0,0 +1,89 @@
+package com.helospark.financialdata;
+
+import java.util.Map;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.helospark.financialdata.management.screener.ScreenerClientSideException;
+import com.helospark.financialdata.management.screener.expression.NumericExpression;
+import com.helospark.financialdata.management.screener.expression.ScreenerExpressionCompiler;
+import com.helospark.financialdata.util.glance.AtGlanceData;
+
+public class ScreenerExpressionCompilerTest {
+    private static final Map<String, NumericExpression> FIELDS = Map.of(
+            "roic", data -> data.roic,
+            "pe", data -> data.pe,
+            "dividendYield", data -> data.dividendYield,
+            "fcf_yield", data -> data.getFreeCashFlowYield());
+
+    ScreenerExpressionCompiler underTest = new ScreenerExpressionCompiler(FIELDS::get);
+
+    @Test
+    public void testArithmeticAndPrecedence() {
+        AtGlanceData data = createData(20.0f, 12.0f, 3.0f);
+
+        Assertions.assertTrue(underTest.compile("roic - 10 > 5").matches(data));
+        Assertions.assertTrue(underTest.compile("roic > 2 * dividendYield + 10").matches(data));
+        Assertions.assertFalse(underTest.compile("roic > 2 * (dividendYield + 10)").matches(data));
+        Assertions.assertTrue(underTest.compile("-pe < -10 and abs(-roic) = 20").matches(data));
+        Assertions.assertTrue(underTest.compile("max(pe, roic) >= 20 AND min(pe, roic) <= 12").matches(data));
+        Assertions.assertTrue(underTest.compile("roic / 4 == 5").matches(data));
+    }
+
+    @Test
+    public void testLogicalOperators() {
+        AtGlanceData data = createData(20.0f, 12.0f, 3.0f);
+
+        Assertions.assertTrue(underTest.compile("pe > 100 OR roic > 15 AND dividendYield > 1").matches(data));
+        Assertions.assertFalse(underTest.compile("(pe > 100 OR roic > 15) AND dividendYield > 5").matches(data));
+        Assertions.assertTrue(underTest.compile("NOT pe > 15 && !(roic < 10) || pe > 100").matches(data));
+        Assertions.assertTrue(underTest.compile("pe BETWEEN 10 AND 15 AND roic BETWEEN 19.5 AND 20").matches(data));
+        Assertions.assertFalse(underTest.compile("NOT pe between 0 and 15").matches(data));
+        Assertions.assertTrue(underTest.compile("pe != 11").matches(data));
+    }
+
+    @Test
+    public void testComparisonWithMissingValueIsFalse() {
+        AtGlanceData data = createData(Float.NaN, 12.0f, 3.0f);
+
+        Assertions.assertFalse(underTest.compile("roic > -1000").matches(data));
+        Assertions.assertFalse(underTest.compile("roic < 1000").matches(data));
+        Assertions.assertFalse(underTest.compile("roic != 5").matches(data));
+        Assertions.assertFalse(underTest.compile("roic between -1000 and 1000").matches(data));
+        Assertions.assertTrue(underTest.compile("roic > 5 OR pe > 5").matches(data));
+        Assertions.assertFalse(underTest.compile("NOT roic between 0 and 15").matches(data));
+        Assertions.assertFalse(underTest.compile("!(roic > 5)").matches(data));
+        Assertions.assertFalse(underTest.compile("NOT (roic > 5 AND pe > 5)").matches(data));
+        Assertions.assertTrue(underTest.compile("NOT (roic > 5 AND pe > 100)").matches(data));
+        Assertions.assertTrue(underTest.compile("NOT NOT pe > 5").matches(data));
+    }
+
+    @Test
+    public void testInvalidExpressions() {
+        assertInvalid("roic >", "at position 6");
+        assertInvalid("costOfCapital > 5", "'costOfCapital' at position 0 is not a valid screener element");
+        assertInvalid("roic + 5", "Expected a condition");
+        assertInvalid("(roic > 5) * 2 > 1", "Expected a number");
+        assertInvalid("roic > 5 pe", "Unexpected 'pe'");
+        assertInvalid("pe between 1 5", "Expected AND in BETWEEN");
+        assertInvalid("sqrt(roic) > 1", "Unknown function 'sqrt'");
+        assertInvalid("min(roic) > 1", "min expects 2 arguments");
+        assertInvalid("roic > 5 # 1", "Unexpected character '#'");
+        assertInvalid("(roic > 5", "Expected ')'");
+    }
+
+    private void assertInvalid(String expression, String expectedMessagePart) {
+        ScreenerClientSideException exception = Assertions.assertThrows(ScreenerClientSideException.class, () -> underTest.compile(expression));
+        Assertions.assertTrue(exception.getMessage().contains(expectedMessagePart), exception.getMessage());
+    }
+
+    private AtGlanceData createData(float roic, float pe, float dividendYield) {
+        AtGlanceData data = new AtGlanceData();
+        data.roic = roic;
+        data.pe = pe;
+        data.dividendYield = dividendYield;
+        return data;
+    }
+
+}
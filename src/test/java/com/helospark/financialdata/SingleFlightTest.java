@@ -0,0 +1,66 @@
+package com.helospark.financialdata;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.helospark.financialdata.service.cache.SingleFlight;
+
+public class SingleFlightTest {
+
+    @Test
+    public void testConcurrentLoadsAreDeduplicated() throws Exception {
+        SingleFlight<String, Integer> underTest = new SingleFlight<>();
+        AtomicInteger loadCount = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < 8; ++i) {
+            futures.add(executor.submit(() -> underTest.load("AAPL", key -> {
+                loadCount.incrementAndGet();
+                await(release);
+                return 42;
+            })));
+        }
+        while (underTest.getInFlightCount() == 0) {
+            Thread.sleep(1);
+        }
+        Thread.sleep(100);
+        release.countDown();
+
+        for (var future : futures) {
+            Assertions.assertEquals(42, future.get());
+        }
+        Assertions.assertEquals(1, loadCount.get());
+        Assertions.assertEquals(0, underTest.getInFlightCount());
+        executor.shutdown();
+    }
+
+    @Test
+    public void testFailureIsNotRemembered() {
+        SingleFlight<String, Integer> underTest = new SingleFlight<>();
+
+        Assertions.assertThrows(IllegalStateException.class, () -> underTest.load("AAPL", key -> {
+            throw new IllegalStateException("failed");
+        }));
+
+        Assertions.assertEquals(1, underTest.load("AAPL", key -> 1));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+}
@@ -0,0 +1,135 @@
+package com.helospark.financialdata;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.auth.AWSStaticCredentialsProvider;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.client.builder.AwsClientBuilder.EndpointConfiguration;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClientBuilder;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapperConfig;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapperConfig.TableNameOverride;
+import com.amazonaws.services.dynamodbv2.model.CreateTableRequest;
+import com.helospark.financialdata.management.user.UserBatchJobRunner;
+import com.helospark.financialdata.management.user.repository.User;
+import com.helospark.financialdata.management.user.repository.UserRepository;
+import com.helospark.financialdata.management.watchlist.repository.JobLastRunData;
+import com.helospark.financialdata.management.watchlist.repository.JobLastRunRepository;
+
+/**
+ * Runs against DynamoDB Local (the docker-compose one by default, override with -DDYNAMODB_LOCAL_ENDPOINT),
+ * skipped if it's not running. Uses its own prefixed tables, which are deleted afterwards.
+ */
+public class UserBatchJobRunnerDynamoDbLocalTest {
+    private static final String TABLE_PREFIX = "UserBatchJobRunnerTest_";
+    private static final String JOB_NAME = "test_job";
+    private static final int SEGMENTS = 4;
+    private static final int USERS = 40;
+
+    private AmazonDynamoDB amazonDynamoDB;
+    private DynamoDBMapper mapper;
+    private UserBatchJobRunner underTest;
+
+    @BeforeEach
+    public void setUp() {
+        String endpoint = System.getProperty("DYNAMODB_LOCAL_ENDPOINT", "http://localhost:8000");
+        amazonDynamoDB = AmazonDynamoDBClientBuilder.standard()
+                .withEndpointConfiguration(new EndpointConfiguration(endpoint, "us-east-1"))
+                .withCredentials(new AWSStaticCredentialsProvider(new BasicAWSCredentials("test", "test")))
+                .withClientConfiguration(new ClientConfiguration().withConnectionTimeout(1000).withMaxErrorRetry(0))
+                .build();
+        try {
+            amazonDynamoDB.listTables();
+        } catch (Exception e) {
+            Assumptions.abort("DynamoDB Local is not running on " + endpoint);
+        }
+        mapper = new DynamoDBMapper(amazonDynamoDB, DynamoDBMapperConfig.builder()
+                .withTableNameOverride(TableNameOverride.withTableNamePrefix(TABLE_PREFIX))
+                .build());
+        createTable(User.class);
+        createTable(JobLastRunData.class);
+
+        for (int i = 0; i < USERS; ++i) {
+            User user = new User();
+            user.setEmail("user" + i + "@test.com");
+            mapper.save(user);
+        }
+
+        UserRepository userRepository = new UserRepository();
+        ReflectionTestUtils.setField(userRepository, "mapper", mapper);
+        JobLastRunRepository jobLastRunRepository = new JobLastRunRepository();
+        ReflectionTestUtils.setField(jobLastRunRepository, "mapper", mapper);
+
+        underTest = new UserBatchJobRunner();
+        ReflectionTestUtils.setField(underTest, "userRepository", userRepository);
+        ReflectionTestUtils.setField(underTest, "jobLastRunRepository", jobLastRunRepository);
+        ReflectionTestUtils.setField(underTest, "totalSegments", SEGMENTS);
+        ReflectionTestUtils.setField(underTest, "batchSize", 3);
+        underTest.setThreads(2);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        if (underTest != null) {
+            underTest.destroy();
+        }
+        if (mapper != null) {
+            for (var table : List.of(User.class, JobLastRunData.class)) {
+                amazonDynamoDB.deleteTable(mapper.generateDeleteTableRequest(table));
+            }
+        }
+    }
+
+    @Test
+    public void testInterruptedRunIsContinuedWithUnfinishedSegments() {
+        LocalDate firstDate = LocalDate.of(2023, 1, 1);
+        String failingUser = "user7@test.com";
+        Set<String> processedInFirstRun = ConcurrentHashMap.newKeySet();
+
+        Assertions.assertThrows(CompletionException.class, () -> underTest.run(JOB_NAME, firstDate, (users, runDate) -> {
+            for (var user : users) {
+                if (user.getEmail().equals(failingUser)) {
+                    throw new RuntimeException("Simulated crash");
+                }
+            }
+            users.forEach(user -> processedInFirstRun.add(user.getEmail()));
+        }).join());
+        Assertions.assertTrue(underTest.hasUnfinishedRun(JOB_NAME));
+
+        Set<String> processedInSecondRun = ConcurrentHashMap.newKeySet();
+        LocalDate resumedDate = underTest.run(JOB_NAME, firstDate.plusDays(1), (users, runDate) -> {
+            Assertions.assertEquals(firstDate, runDate);
+            users.forEach(user -> processedInSecondRun.add(user.getEmail()));
+        }).join();
+
+        Assertions.assertEquals(firstDate, resumedDate);
+        Assertions.assertFalse(underTest.hasUnfinishedRun(JOB_NAME));
+        Assertions.assertTrue(processedInSecondRun.contains(failingUser));
+        for (int i = 0; i < USERS; ++i) {
+            String email = "user" + i + "@test.com";
+            Assertions.assertTrue(processedInFirstRun.contains(email) || processedInSecondRun.contains(email), email + " was not processed");
+        }
+        // finished segments are not processed again, only the failing one (and any that didn't finish before the failure)
+        Assertions.assertTrue(processedInSecondRun.size() < USERS);
+    }
+
+    private void createTable(Class<?> clazz) {
+        CreateTableRequest tableRequest = mapper.generateCreateTableRequest(clazz);
+        tableRequest.setBillingMode("PAY_PER_REQUEST");
+        amazonDynamoDB.createTable(tableRequest);
+    }
+
+}